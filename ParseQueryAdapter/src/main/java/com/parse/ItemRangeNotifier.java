@@ -0,0 +1,65 @@
+package com.parse;
+
+import com.tiagobagni.parse.paging.QueryPager;
+
+/**
+ * Translates the range changes of a {@link QueryPager} into the item notifications of a
+ * {@code RecyclerView.Adapter}, so only the rows of the changed ranges are bound again.
+ *
+ * @param <P>
+ */
+class ItemRangeNotifier<P extends QueryPager> implements QueryPager.OnObjectsChangedCallback<P> {
+
+    /**
+     * The notifications of a {@code RecyclerView.Adapter}, which are final there.
+     */
+    interface Target {
+        void notifyDataSetChanged();
+
+        void notifyItemRangeChanged(int positionStart, int itemCount);
+
+        void notifyItemRangeInserted(int positionStart, int itemCount);
+
+        void notifyItemMoved(int fromPosition, int toPosition);
+
+        void notifyItemRangeRemoved(int positionStart, int itemCount);
+    }
+
+    private final Target mTarget;
+
+    ItemRangeNotifier(Target target) {
+        mTarget = target;
+    }
+
+    @Override
+    public void onChanged(P sender) {
+        mTarget.notifyDataSetChanged();
+    }
+
+    @Override
+    public void onItemRangeChanged(P sender, int positionStart, int itemCount) {
+        mTarget.notifyItemRangeChanged(positionStart, itemCount);
+    }
+
+    @Override
+    public void onItemRangeInserted(P sender, int positionStart, int itemCount) {
+        mTarget.notifyItemRangeInserted(positionStart, itemCount);
+    }
+
+    @Override
+    public void onItemRangeMoved(P sender, int fromPosition, int toPosition, int itemCount) {
+        // RecyclerView only knows how to move one item at a time
+        for (int i = 0; i < itemCount; i++) {
+            if (toPosition > fromPosition) {
+                mTarget.notifyItemMoved(fromPosition, toPosition + itemCount - 1);
+            } else {
+                mTarget.notifyItemMoved(fromPosition + i, toPosition + i);
+            }
+        }
+    }
+
+    @Override
+    public void onItemRangeRemoved(P sender, int positionStart, int itemCount) {
+        mTarget.notifyItemRangeRemoved(positionStart, itemCount);
+    }
+}
\ No newline at end of file
@@ -0,0 +1,299 @@
+package com.parse;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Encodes loaded pages of {@link ParseObject}s in a compact binary format, so they can be restored
+ * without going through JSON.
+ * <p/>
+ * Each object is written as its class name, id, timestamps and a list of tagged values. Related
+ * objects are only written as pointers. Values that can't be encoded are skipped and the object is
+ * restored as incomplete, so it can still be fetched with {@link ParseObject#fetchIfNeeded()}.
+ */
+class PageSnapshotCodec {
+
+    private static final int MAGIC = 0x50514153; // "PQAS"
+    private static final int VERSION = 2;
+
+    private static final byte TYPE_NULL = 0;
+    private static final byte TYPE_STRING = 1;
+    private static final byte TYPE_BOOLEAN = 2;
+    private static final byte TYPE_INT = 3;
+    private static final byte TYPE_LONG = 4;
+    private static final byte TYPE_DOUBLE = 5;
+    private static final byte TYPE_DATE = 6;
+    private static final byte TYPE_BYTES = 7;
+    private static final byte TYPE_POINTER = 8;
+    private static final byte TYPE_GEO_POINT = 9;
+    private static final byte TYPE_FILE = 10;
+    private static final byte TYPE_LIST = 11;
+    private static final byte TYPE_MAP = 12;
+
+    private static final long NO_DATE = Long.MIN_VALUE;
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    /**
+     * The decoded contents of a snapshot.
+     *
+     * @param <T>
+     */
+    static class Snapshot<T extends ParseObject> {
+        final List<T> objects;
+        final boolean hasNextPage;
+        // The number of objects counted in count mode, or -1
+        final int totalCount;
+
+        Snapshot(List<T> objects, boolean hasNextPage, int totalCount) {
+            this.objects = objects;
+            this.hasNextPage = hasNextPage;
+            this.totalCount = totalCount;
+        }
+    }
+
+    private PageSnapshotCodec() {
+    }
+
+    static void encode(List<? extends ParseObject> objects, boolean hasNextPage, int totalCount,
+            OutputStream os) throws IOException {
+        DataOutputStream out = new DataOutputStream(os);
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        out.writeBoolean(hasNextPage);
+        out.writeInt(totalCount);
+        out.writeInt(objects.size());
+        for (ParseObject object : objects) {
+            encodeObject(object.getState(), out);
+        }
+        out.flush();
+    }
+
+    @SuppressWarnings("unchecked")
+    static <T extends ParseObject> Snapshot<T> decode(InputStream is) throws IOException {
+        DataInputStream in = new DataInputStream(is);
+        if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+            throw new IOException("Not a snapshot, or written by another version");
+        }
+        boolean hasNextPage = in.readBoolean();
+        int totalCount = in.readInt();
+        int count = in.readInt();
+        List<T> objects = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            objects.add((T) ParseObject.from(decodeObject(in)));
+        }
+        return new Snapshot<>(objects, hasNextPage, totalCount);
+    }
+
+    private static void encodeObject(ParseObject.State state, DataOutputStream out)
+            throws IOException {
+        out.writeUTF(state.className());
+        out.writeUTF(state.objectId());
+        out.writeLong(state.createdAt() > 0 ? state.createdAt() : NO_DATE);
+        out.writeLong(state.updatedAt() > 0 ? state.updatedAt() : NO_DATE);
+
+        // Encode the values first to know which ones are supported
+        List<String> keys = new ArrayList<>();
+        List<Object> values = new ArrayList<>();
+        boolean isComplete = state.isComplete();
+        for (String key : state.keySet()) {
+            Object value = state.get(key);
+            if (value instanceof ParseACL) {
+                // Not displayed, and kept on the server anyway
+                continue;
+            }
+            if (!isSupported(value)) {
+                isComplete = false;
+                continue;
+            }
+            keys.add(key);
+            values.add(value);
+        }
+
+        out.writeBoolean(isComplete);
+        out.writeInt(keys.size());
+        for (int i = 0; i < keys.size(); i++) {
+            out.writeUTF(keys.get(i));
+            encodeValue(values.get(i), out);
+        }
+    }
+
+    private static ParseObject.State decodeObject(DataInputStream in) throws IOException {
+        ParseObject.State.Init<?> builder = ParseObject.State.newBuilder(in.readUTF())
+                .objectId(in.readUTF());
+        long createdAt = in.readLong();
+        if (createdAt != NO_DATE) {
+            builder.createdAt(createdAt);
+        }
+        long updatedAt = in.readLong();
+        if (updatedAt != NO_DATE) {
+            builder.updatedAt(updatedAt);
+        }
+        builder.isComplete(in.readBoolean());
+        int count = in.readInt();
+        for (int i = 0; i < count; i++) {
+            builder.put(in.readUTF(), decodeValue(in));
+        }
+        return builder.build();
+    }
+
+    private static boolean isSupported(Object value) {
+        if (value instanceof List) {
+            for (Object item : (List<?>) value) {
+                if (!isSupported(item)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+        if (value instanceof Map) {
+            for (Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet()) {
+                if (!(entry.getKey() instanceof String) || !isSupported(entry.getValue())) {
+                    return false;
+                }
+            }
+            return true;
+        }
+        if (value instanceof ParseObject) {
+            return ((ParseObject) value).getObjectId() != null;
+        }
+        if (value instanceof ParseFile) {
+            return ((ParseFile) value).getUrl() != null;
+        }
+        return value == null || value instanceof String || value instanceof Boolean ||
+                value instanceof Number || value instanceof Date || value instanceof byte[] ||
+                value instanceof ParseGeoPoint;
+    }
+
+    private static void encodeValue(Object value, DataOutputStream out) throws IOException {
+        if (value == null) {
+            out.writeByte(TYPE_NULL);
+        } else if (value instanceof String) {
+            out.writeByte(TYPE_STRING);
+            writeString((String) value, out);
+        } else if (value instanceof Boolean) {
+            out.writeByte(TYPE_BOOLEAN);
+            out.writeBoolean((Boolean) value);
+        } else if (value instanceof Integer) {
+            out.writeByte(TYPE_INT);
+            out.writeInt((Integer) value);
+        } else if (value instanceof Long) {
+            out.writeByte(TYPE_LONG);
+            out.writeLong((Long) value);
+        } else if (value instanceof Number) {
+            out.writeByte(TYPE_DOUBLE);
+            out.writeDouble(((Number) value).doubleValue());
+        } else if (value instanceof Date) {
+            out.writeByte(TYPE_DATE);
+            out.writeLong(((Date) value).getTime());
+        } else if (value instanceof byte[]) {
+            byte[] bytes = (byte[]) value;
+            out.writeByte(TYPE_BYTES);
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        } else if (value instanceof ParseObject) {
+            ParseObject pointer = (ParseObject) value;
+            out.writeByte(TYPE_POINTER);
+            out.writeUTF(pointer.getClassName());
+            out.writeUTF(pointer.getObjectId());
+        } else if (value instanceof ParseGeoPoint) {
+            ParseGeoPoint point = (ParseGeoPoint) value;
+            out.writeByte(TYPE_GEO_POINT);
+            out.writeDouble(point.getLatitude());
+            out.writeDouble(point.getLongitude());
+        } else if (value instanceof ParseFile) {
+            ParseFile file = (ParseFile) value;
+            out.writeByte(TYPE_FILE);
+            writeString(file.getName(), out);
+            writeString(file.getUrl(), out);
+        } else if (value instanceof List) {
+            List<?> list = (List<?>) value;
+            out.writeByte(TYPE_LIST);
+            out.writeInt(list.size());
+            for (Object item : list) {
+                encodeValue(item, out);
+            }
+        } else if (value instanceof Map) {
+            Map<?, ?> map = (Map<?, ?>) value;
+            out.writeByte(TYPE_MAP);
+            out.writeInt(map.size());
+            for (Map.Entry<?, ?> entry : map.entrySet()) {
+                out.writeUTF((String) entry.getKey());
+                encodeValue(entry.getValue(), out);
+            }
+        } else {
+            // Filtered out by isSupported()
+            throw new IllegalArgumentException("Unable to encode " + value.getClass());
+        }
+    }
+
+    private static Object decodeValue(DataInputStream in) throws IOException {
+        byte type = in.readByte();
+        switch (type) {
+            case TYPE_NULL:
+                return null;
+            case TYPE_STRING:
+                return readString(in);
+            case TYPE_BOOLEAN:
+                return in.readBoolean();
+            case TYPE_INT:
+                return in.readInt();
+            case TYPE_LONG:
+                return in.readLong();
+            case TYPE_DOUBLE:
+                return in.readDouble();
+            case TYPE_DATE:
+                return new Date(in.readLong());
+            case TYPE_BYTES:
+                byte[] bytes = new byte[in.readInt()];
+                in.readFully(bytes);
+                return bytes;
+            case TYPE_POINTER:
+                return ParseObject.createWithoutData(in.readUTF(), in.readUTF());
+            case TYPE_GEO_POINT:
+                return new ParseGeoPoint(in.readDouble(), in.readDouble());
+            case TYPE_FILE:
+                return new ParseFile(new ParseFile.State.Builder()
+                        .name(readString(in))
+                        .url(readString(in))
+                        .build());
+            case TYPE_LIST:
+                int size = in.readInt();
+                List<Object> list = new ArrayList<>(size);
+                for (int i = 0; i < size; i++) {
+                    list.add(decodeValue(in));
+                }
+                return list;
+            case TYPE_MAP:
+                int count = in.readInt();
+                Map<String, Object> map = new HashMap<>(count * 2);
+                for (int i = 0; i < count; i++) {
+                    map.put(in.readUTF(), decodeValue(in));
+                }
+                return map;
+            default:
+                throw new IOException("Unknown value type " + type);
+        }
+    }
+
+    // Unlike writeUTF, not limited to 64KB
+    private static void writeString(String value, DataOutputStream out) throws IOException {
+        byte[] bytes = value.getBytes(UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        return new String(bytes, UTF_8);
+    }
+}
\ No newline at end of file
@@ -0,0 +1,106 @@
+package com.parse;
+
+import android.content.Context;
+import android.util.Log;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.List;
+
+/**
+ * Stores the first loaded pages of a list in app storage, so they can be displayed right away the
+ * next time the list is created, even after the process was killed.
+ */
+class PageSnapshotStore {
+
+    private static final String TAG = "PageSnapshotStore";
+    private static final String DIRECTORY = "ParseQueryAdapter";
+    private static final String EXTENSION = ".snapshot";
+
+    private final File mDirectory;
+
+    PageSnapshotStore(Context context) {
+        mDirectory = new File(context.getCacheDir(), DIRECTORY);
+    }
+
+    /**
+     * Writes {@code objects} to the snapshot identified by {@code key}, replacing the previous one.
+     * Must not be called on the UI thread.
+     *
+     * @param totalCount The number of objects counted in count mode, or -1.
+     */
+    void save(String key, List<? extends ParseObject> objects, boolean hasNextPage,
+            int totalCount) {
+        if (!mDirectory.isDirectory() && !mDirectory.mkdirs()) {
+            Log.w(TAG, "Unable to create " + mDirectory);
+            return;
+        }
+
+        // Write to a temporary file first, so a snapshot is never read half written
+        File file = getFile(key);
+        File tmp = new File(file.getPath() + ".tmp");
+        OutputStream out = null;
+        try {
+            out = new BufferedOutputStream(new FileOutputStream(tmp));
+            PageSnapshotCodec.encode(objects, hasNextPage, totalCount, out);
+            out.close();
+            out = null;
+            if (!tmp.renameTo(file)) {
+                Log.w(TAG, "Unable to write snapshot " + file);
+                tmp.delete();
+            }
+        } catch (IOException | RuntimeException e) {
+            Log.w(TAG, "Unable to write snapshot " + file, e);
+            // Closed first, so the file can be deleted
+            closeQuietly(out);
+            tmp.delete();
+        } finally {
+            closeQuietly(out);
+        }
+    }
+
+    /**
+     * Reads the snapshot identified by {@code key}.
+     *
+     * @return the snapshot, or {@code null} if there is none or it can't be read.
+     */
+    <T extends ParseObject> PageSnapshotCodec.Snapshot<T> load(String key) {
+        File file = getFile(key);
+        if (!file.isFile()) {
+            return null;
+        }
+
+        InputStream in = null;
+        try {
+            in = new BufferedInputStream(new FileInputStream(file));
+            return PageSnapshotCodec.decode(in);
+        } catch (IOException | RuntimeException e) {
+            Log.w(TAG, "Unable to read snapshot " + file + ", deleting it", e);
+            file.delete();
+            return null;
+        } finally {
+            closeQuietly(in);
+        }
+    }
+
+    private File getFile(String key) {
+        return new File(mDirectory, key.replaceAll("[^A-Za-z0-9_.-]", "_") + EXTENSION);
+    }
+
+    private static void closeQuietly(Closeable closeable) {
+        if (closeable != null) {
+            try {
+                closeable.close();
+            } catch (IOException e) {
+                // Nothing else to do
+            }
+        }
+    }
+}
\ No newline at end of file
@@ -0,0 +1,143 @@
+package com.parse;
+
+import com.tiagobagni.parse.paging.IdentityMap;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+
+/**
+ * The canonical instances of the objects loaded by the pagers of the process, by class name and
+ * id, so an object loaded by several pages or pagers is held once and an update loaded by one of
+ * them is seen by all the lists displaying it.
+ * <p/>
+ * The instances are weakly referenced, the map doesn't keep the objects of discarded pages alive.
+ * Interning updates the canonical instances in place, so it must be done on the UI thread, where
+ * the objects are bound.
+ */
+class ParseObjectIdentityMap {
+
+    private static final IdentityMap<String, ParseObject> sObjects = new IdentityMap<>();
+    // The pagers to notify when the objects they display are updated
+    private static final Map<ParseQueryPager<?>, Boolean> sPagers = new WeakHashMap<>();
+
+    private ParseObjectIdentityMap() {
+    }
+
+    static IdentityMap<String, ParseObject> getMap() {
+        return sObjects;
+    }
+
+    /**
+     * Notifies {@code pager} when the objects it displays are updated by another pager.
+     */
+    static void addPager(ParseQueryPager<?> pager) {
+        synchronized (sPagers) {
+            sPagers.put(pager, Boolean.TRUE);
+        }
+    }
+
+    /**
+     * @return the canonical instance of the object, or {@code null} if there is none.
+     */
+    static ParseObject get(String className, String objectId) {
+        return sObjects.get(getKey(className, objectId));
+    }
+
+    /**
+     * Makes {@code object} the canonical instance of the object if there is none, without updating
+     * the canonical instance otherwise. Safe to call from any thread.
+     */
+    static void putIfAbsent(ParseObject object) {
+        if (object.getObjectId() != null) {
+            sObjects.intern(getKey(object.getClassName(), object.getObjectId()), object);
+        }
+    }
+
+    /**
+     * Replaces the objects by their canonical instances, updating the canonical instances with the
+     * objects that are more recent, and notifies the pagers displaying the updated ones. Must be
+     * called on the UI thread.
+     *
+     * @param objects The loaded objects.
+     * @return the canonical instances of {@code objects}, in the same order.
+     */
+    @SuppressWarnings("unchecked")
+    static <T extends ParseObject> List<T> intern(List<T> objects) {
+        List<T> interned = new ArrayList<>(objects.size());
+        Set<String> updatedIds = null;
+        for (T object : objects) {
+            if (object.getObjectId() == null) {
+                interned.add(object);
+                continue;
+            }
+            // Subclasses are registered by class name, the canonical instance has the same type
+            T canonical = (T) sObjects.intern(
+                    getKey(object.getClassName(), object.getObjectId()), object);
+            if (canonical != object && merge(canonical, object)) {
+                if (updatedIds == null) {
+                    updatedIds = new HashSet<>();
+                }
+                updatedIds.add(canonical.getObjectId());
+            }
+            interned.add(canonical);
+        }
+        if (updatedIds != null) {
+            notifyPagers(updatedIds);
+        }
+        return interned;
+    }
+
+    /**
+     * Gives {@code canonical} the state of {@code object} if it is more recent, or as recent but
+     * with more keys. The keys of an incomplete {@code object}, loaded with selected keys, are
+     * merged into the state of {@code canonical} instead, like {@link ParseObject#from} does, so
+     * they don't wipe the other keys.
+     *
+     * @return whether the data of {@code canonical} changed.
+     */
+    private static boolean merge(ParseObject canonical, ParseObject object) {
+        Date canonicalUpdatedAt = canonical.getUpdatedAt();
+        Date updatedAt = object.getUpdatedAt();
+        if (updatedAt == null ||
+                (canonicalUpdatedAt != null && updatedAt.before(canonicalUpdatedAt))) {
+            // A stale copy, such as a page from a cache
+            return false;
+        }
+        if (updatedAt.equals(canonicalUpdatedAt)) {
+            if (!canonical.isDataAvailable()) {
+                // The same data, with the keys not loaded yet
+                apply(canonical, object);
+            }
+            return false;
+        }
+        apply(canonical, object);
+        return true;
+    }
+
+    private static void apply(ParseObject canonical, ParseObject object) {
+        if (object.isDataAvailable()) {
+            canonical.setState(object.getState());
+        } else {
+            canonical.setState(canonical.getState().newBuilder().apply(object.getState()).build());
+        }
+    }
+
+    private static void notifyPagers(Set<String> objectIds) {
+        List<ParseQueryPager<?>> pagers;
+        synchronized (sPagers) {
+            pagers = new ArrayList<>(sPagers.keySet());
+        }
+        for (ParseQueryPager<?> pager : pagers) {
+            pager.notifyObjectsChanged(objectIds);
+        }
+    }
+
+    private static String getKey(String className, String objectId) {
+        return className + ":" + objectId;
+    }
+}
\ No newline at end of file
@@ -0,0 +1,505 @@
+package com.parse;
+
+import com.tiagobagni.parse.paging.CachedResultIndex;
+import com.tiagobagni.parse.paging.CountablePageSource;
+import com.tiagobagni.parse.paging.EvictablePageSource;
+import com.tiagobagni.parse.paging.PageCache;
+import com.tiagobagni.parse.paging.PageRequest;
+import com.tiagobagni.parse.paging.PinBudget;
+import com.tiagobagni.parse.paging.RandomAccessPageSource;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import bolts.Continuation;
+import bolts.Task;
+
+/**
+ * Loads the pages of a {@link ParseQueryPager} with the queries it creates.
+ *
+ * @param <T>
+ */
+class ParsePageSource<T extends ParseObject> implements EvictablePageSource<T>,
+        RandomAccessPageSource<T>, CountablePageSource<T> {
+
+    // Rough sizes of the parts of an object, to keep the page cache within its byte budget
+    private static final int OBJECT_BYTES = 256;
+    private static final int VALUE_BYTES = 16;
+    private static final int NESTED_OBJECT_BYTES = 64;
+
+    private ParseQueryPager<T> mPager;
+
+    void setPager(ParseQueryPager<T> pager) {
+        mPager = pager;
+    }
+
+    /**
+     * Delivers the results to the pager once the pointers they hold are resolved, in the order
+     * they arrive.
+     *
+     * @param <T>
+     */
+    private static class PointerResolvingCallback<T extends ParseObject> implements Callback<T> {
+        private final Callback<T> mCallback;
+        private final PointerResolver mResolver;
+        private final boolean mIsRefresh;
+        private final Executor mExecutor;
+        private Task<Void> mDelivered = Task.forResult(null);
+
+        PointerResolvingCallback(Callback<T> callback, PointerResolver resolver,
+                boolean isRefresh, Executor executor) {
+            mCallback = callback;
+            mResolver = resolver;
+            mIsRefresh = isRefresh;
+            mExecutor = executor;
+        }
+
+        @Override
+        public synchronized void onResult(final List<T> objects, final boolean isFinal) {
+            mDelivered = mDelivered.continueWithTask(new Continuation<Void, Task<Void>>() {
+                @Override
+                public Task<Void> then(Task<Void> task) throws Exception {
+                    return mResolver.resolve(objects, mIsRefresh);
+                }
+            }).continueWith(new Continuation<Void, Void>() {
+                @Override
+                public Void then(Task<Void> task) throws Exception {
+                    mCallback.onResult(objects, isFinal);
+                    return null;
+                }
+            }, mExecutor);
+        }
+
+        @Override
+        public synchronized void onError(final Exception e, final boolean isFinal) {
+            mDelivered = mDelivered.continueWith(new Continuation<Void, Void>() {
+                @Override
+                public Void then(Task<Void> task) throws Exception {
+                    mCallback.onError(e, isFinal);
+                    return null;
+                }
+            }, mExecutor);
+        }
+    }
+
+    /**
+     * Replaces the results by their canonical instances on the callback executor, the UI thread,
+     * before delivering them in the order they arrive.
+     *
+     * @param <T>
+     */
+    private static class InterningCallback<T extends ParseObject> implements Callback<T> {
+        private final Callback<T> mCallback;
+        private final Executor mExecutor;
+
+        InterningCallback(Callback<T> callback, Executor executor) {
+            mCallback = callback;
+            mExecutor = executor;
+        }
+
+        @Override
+        public void onResult(final List<T> objects, final boolean isFinal) {
+            mExecutor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    mCallback.onResult(ParseObjectIdentityMap.intern(objects), isFinal);
+                }
+            });
+        }
+
+        @Override
+        public void onError(final Exception e, final boolean isFinal) {
+            mExecutor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    mCallback.onError(e, isFinal);
+                }
+            });
+        }
+    }
+
+    /**
+     * Returns {@code callback}, resolving the pointers of the results and then interning them
+     * first if the pager does. The pointers are resolved in the background while the results are
+     * still their own instances, none of them is displayed yet.
+     */
+    private Callback<T> wrap(Callback<T> callback, boolean isRefresh) {
+        if (mPager.isObjectInterning()) {
+            callback = new InterningCallback<>(callback, mPager.getCallbackExecutor());
+        }
+        return resolvePointers(callback, isRefresh);
+    }
+
+    /**
+     * Returns {@code callback}, resolving the pointers of the results first if the pager resolves
+     * them.
+     */
+    private Callback<T> resolvePointers(Callback<T> callback, boolean isRefresh) {
+        PointerResolver resolver = mPager.getPointerResolver();
+        if (resolver == null) {
+            return callback;
+        }
+        return new PointerResolvingCallback<>(callback, resolver, isRefresh,
+                mPager.getCallbackExecutor());
+    }
+
+    @Override
+    public void loadPage(final PageRequest<T> request, Callback<T> resultCallback) {
+        final Callback<T> callback = wrap(resultCallback, request.isRefresh());
+        final ParseQuery<T> query = mPager.createQuery(request);
+        if (request.isGapFill()) {
+            loadGapFill(query, callback);
+            return;
+        }
+        PinBudget pinBudget = mPager.getPinBudget();
+        if (pinBudget != null) {
+            loadPinnedPage(request, query, pinBudget, callback);
+            return;
+        }
+
+        ParseQuery.CachePolicy policy = query.getCachePolicy();
+        final PageCache pageCache = mPager.getPageCache();
+        final CachedResultIndex index = mPager.getCachedResultIndex();
+        final String queryKey = pageCache != null || index != null ?
+                ParseQueryPager.getCacheKey(mPager.getQuery()) : null;
+        final String pageKey = queryKey != null ? ParseQueryPager.getCacheKey(query) : null;
+        if (pageCache != null && pageKey != null && !request.isRefresh()) {
+            long lookupStart = System.nanoTime();
+            PageCache.CachedPage<T> cached = pageCache.getPage(queryKey, pageKey);
+            if (cached != null) {
+                request.recordCacheLookup(true, System.nanoTime() - lookupStart);
+                // Displayed right away, and revalidated if it is stale
+                boolean isRevalidated = cached.isStale() || mPager.isStaleWhileRevalidate() ||
+                        policy == ParseQuery.CachePolicy.CACHE_THEN_NETWORK;
+                callback.onResult(cached.getObjects(), !isRevalidated);
+                if (!isRevalidated) {
+                    return;
+                }
+                // The page cache is more recent than the query cache, only query the network
+                query.setCachePolicy(ParseQuery.CachePolicy.NETWORK_ONLY);
+                policy = ParseQuery.CachePolicy.NETWORK_ONLY;
+            }
+        }
+
+        boolean isNetworkFallback = false;
+        if (policy == ParseQuery.CachePolicy.CACHE_THEN_NETWORK ||
+                policy == ParseQuery.CachePolicy.CACHE_ELSE_NETWORK) {
+
+            // If there is no cached results, don't waste time looking for it!
+            long lookupStart = System.nanoTime();
+            boolean hasCachedResult = hasCachedResult(query, index, queryKey, pageKey);
+            request.recordCacheLookup(hasCachedResult, System.nanoTime() - lookupStart);
+            if (!hasCachedResult) {
+                query.setCachePolicy(ParseQuery.CachePolicy.NETWORK_ONLY);
+            } else if (policy == ParseQuery.CachePolicy.CACHE_ELSE_NETWORK) {
+                // Falls back to the network on a miss itself, to know which results to cache
+                query.setCachePolicy(ParseQuery.CachePolicy.CACHE_ONLY);
+                isNetworkFallback = true;
+            }
+        }
+
+        // The results are interned before they are cached, unless their pointers are resolved
+        // first: the canonical instances may be displayed, they are only updated once resolved
+        boolean isInterning = mPager.isObjectInterning() && mPager.getPointerResolver() == null;
+        query.findInBackground(new PageQueryCallback<>(request, query, callback, pageCache,
+                mPager.getPageCacheTtl(), index, queryKey, pageKey, isInterning,
+                isNetworkFallback));
+    }
+
+    /**
+     * Delivers the results of a page query, keeping the {@link CachedResultIndex} up to date and
+     * putting the final network results in the {@link PageCache}, if any.
+     *
+     * @param <T>
+     */
+    static class PageQueryCallback<T extends ParseObject> implements FindCallback<T> {
+        private final PageRequest<T> mRequest;
+        private final ParseQuery<T> mQuery;
+        private final Callback<T> mCallback;
+        private final PageCache mPageCache;
+        private final long mPageCacheTtl;
+        private final CachedResultIndex mIndex;
+        private final String mQueryKey;
+        private final String mPageKey;
+        private final boolean mIsInterning;
+        // Whether a CACHE_ONLY miss is queried again from the network, for CACHE_ELSE_NETWORK
+        private boolean mIsNetworkFallback;
+        private final AtomicInteger mCallbacks = new AtomicInteger();
+
+        /**
+         * @param pageCache The page cache, or {@code null}.
+         * @param index     The query cache index, or {@code null}.
+         * @param queryKey  The cache key of the pager query, or {@code null} if there is neither a
+         *                  page cache nor an index, or it can't be encoded.
+         * @param pageKey   The cache key of {@code query}, or {@code null} like {@code queryKey}.
+         */
+        PageQueryCallback(PageRequest<T> request, ParseQuery<T> query, Callback<T> callback,
+                PageCache pageCache, long pageCacheTtl, CachedResultIndex index, String queryKey,
+                String pageKey, boolean interning, boolean networkFallback) {
+            mRequest = request;
+            mQuery = query;
+            mCallback = callback;
+            mPageCache = pageCache;
+            mPageCacheTtl = pageCacheTtl;
+            mIndex = index;
+            mQueryKey = queryKey;
+            mPageKey = pageKey;
+            mIsInterning = interning;
+            mIsNetworkFallback = networkFallback;
+        }
+
+        @Override
+        public void done(List<T> results, ParseException e) {
+            ParseQuery.CachePolicy policy = null;
+            try {
+                policy = mQuery.getCachePolicy();
+            } catch (IllegalStateException ex) {
+                // do nothing, LDS is enabled and there is no cache policy
+            }
+            boolean isCacheThenNetwork = policy == ParseQuery.CachePolicy.CACHE_THEN_NETWORK;
+            boolean isFinal = !isCacheThenNetwork || mCallbacks.incrementAndGet() >= 2;
+            boolean isMiss = e != null && e.getCode() == ParseException.CACHE_MISS;
+            if (mIndex != null && mPageKey != null) {
+                // The query cache stores the results of every query that uses it
+                if (e == null && policy != ParseQuery.CachePolicy.IGNORE_CACHE) {
+                    mIndex.put(mQueryKey, mPageKey, true);
+                } else if (isMiss) {
+                    mIndex.put(mQueryKey, mPageKey, false);
+                }
+            }
+            if (isMiss && mIsNetworkFallback) {
+                mIsNetworkFallback = false;
+                mQuery.setCachePolicy(ParseQuery.CachePolicy.NETWORK_ONLY);
+                mQuery.findInBackground(this);
+                return;
+            }
+            if (e != null) {
+                mCallback.onError(e, isFinal);
+                return;
+            }
+
+            if (mRequest.isTraced()) {
+                mRequest.recordBytes(estimateBytes(results));
+            }
+            // Only network results are put in the page cache, with a new time to live
+            boolean isFromQueryCache = policy == ParseQuery.CachePolicy.CACHE_ELSE_NETWORK ||
+                    policy == ParseQuery.CachePolicy.CACHE_ONLY;
+            if (mPageCache != null && mPageKey != null && isFinal && !isFromQueryCache) {
+                if (mIsInterning) {
+                    // The cache holds the instances the rows display
+                    results = ParseObjectIdentityMap.intern(results);
+                }
+                mPageCache.put(mQueryKey, mPageKey, results, estimateBytes(results),
+                        mPageCacheTtl);
+            }
+            mCallback.onResult(results, isFinal);
+        }
+    }
+
+    /**
+     * Delivers the results of {@code query} from the network only, without caching or pinning
+     * them: they only fill a page shortened by its duplicates, which is cached as a whole.
+     */
+    private void loadGapFill(ParseQuery<T> query, final Callback<T> callback) {
+        try {
+            query.setCachePolicy(ParseQuery.CachePolicy.IGNORE_CACHE);
+        } catch (IllegalStateException ex) {
+            // do nothing, LDS is enabled and there is no cache policy
+        }
+        query.findInBackground(new FindCallback<T>() {
+            @Override
+            public void done(List<T> results, ParseException e) {
+                if (e != null) {
+                    callback.onError(e, true);
+                } else {
+                    callback.onResult(results, true);
+                }
+            }
+        });
+    }
+
+    /**
+     * Delivers the page pinned under the label of {@code query}, if any, then the results of the
+     * query, which are pinned in its place. If the query fails, the pinned page is kept.
+     */
+    private void loadPinnedPage(final PageRequest<T> request, final ParseQuery<T> query,
+            final PinBudget pinBudget, final Callback<T> callback) {
+        final String label = mPager.getPinLabel(query);
+        if (label == null || request.isRefresh()) {
+            loadAndPinPage(request, query, label, null, callback);
+            return;
+        }
+
+        // Only the objects of the page are pinned under its label
+        ParseQuery<T> pinnedQuery = new ParseQuery<>(query).fromPin(label);
+        pinnedQuery.setSkip(0);
+        pinnedQuery.findInBackground(new FindCallback<T>() {
+            @Override
+            public void done(List<T> results, ParseException e) {
+                List<T> pinned = null;
+                if (e == null && !results.isEmpty()) {
+                    pinned = results;
+                    pinBudget.touch(label);
+                    callback.onResult(pinned, false);
+                }
+                loadAndPinPage(request, query, label, pinned, callback);
+            }
+        });
+    }
+
+    private void loadAndPinPage(final PageRequest<T> request, ParseQuery<T> query,
+            final String label, final List<T> pinned, final Callback<T> callback) {
+        query.findInBackground(new FindCallback<T>() {
+            @Override
+            public void done(List<T> results, ParseException e) {
+                if (e != null) {
+                    if (pinned != null) {
+                        // Offline, the pinned page stands
+                        callback.onResult(pinned, true);
+                    } else {
+                        callback.onError(e, true);
+                    }
+                    return;
+                }
+                if (request.isTraced()) {
+                    request.recordBytes(estimateBytes(results));
+                }
+                if (label != null) {
+                    mPager.pinPage(label, results);
+                }
+                callback.onResult(results, true);
+            }
+        });
+    }
+
+    /**
+     * Returns whether the cache of the query holds its results, from the index if it knows,
+     * otherwise from the cache, which is then indexed.
+     */
+    private static boolean hasCachedResult(ParseQuery<?> query, CachedResultIndex index,
+            String queryKey, String pageKey) {
+        if (index == null || pageKey == null) {
+            return query.hasCachedResult();
+        }
+        Boolean isCached = index.isCached(queryKey, pageKey, query.getMaxCacheAge());
+        if (isCached == null) {
+            isCached = query.hasCachedResult();
+            index.put(queryKey, pageKey, isCached);
+        }
+        return isCached;
+    }
+
+    /**
+     * Roughly estimates the memory used by {@code objects}, from the number of their values and
+     * the length of their strings. Only the keys they hold are counted, so objects loaded with
+     * {@link ParseQueryPager#setSelectedKeys selected keys} are smaller.
+     */
+    static long estimateBytes(List<? extends ParseObject> objects) {
+        long bytes = 0;
+        for (ParseObject object : objects) {
+            bytes += OBJECT_BYTES;
+            for (String key : object.keySet()) {
+                if (object.isDataAvailable(key)) {
+                    bytes += VALUE_BYTES + 2 * key.length() + estimateBytes(object.get(key));
+                }
+            }
+        }
+        return bytes;
+    }
+
+    private static long estimateBytes(Object value) {
+        if (value instanceof String) {
+            return 2 * ((String) value).length();
+        } else if (value instanceof byte[]) {
+            return ((byte[]) value).length;
+        } else if (value instanceof Collection) {
+            long bytes = 0;
+            for (Object item : (Collection<?>) value) {
+                bytes += VALUE_BYTES + estimateBytes(item);
+            }
+            return bytes;
+        } else if (value instanceof Map) {
+            long bytes = 0;
+            for (Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet()) {
+                bytes += VALUE_BYTES + estimateBytes(entry.getKey()) +
+                        estimateBytes(entry.getValue());
+            }
+            return bytes;
+        } else if (value instanceof ParseObject) {
+            // Only a pointer, or counted with its own page
+            return NESTED_OBJECT_BYTES;
+        }
+        return 0;
+    }
+
+    @Override
+    public void countObjects(boolean isRefresh, final CountResultCallback callback) {
+        ParseQuery<T> query = isRefresh ? mPager.createNetworkFirstQuery() :
+                new ParseQuery<>(mPager.getQuery());
+        query.countInBackground(new CountCallback() {
+            @Override
+            public void done(int count, ParseException e) {
+                if (e != null) {
+                    callback.onError(e);
+                } else {
+                    callback.onCount(count);
+                }
+            }
+        });
+    }
+
+    @Override
+    public boolean isRandomAccess() {
+        // Keyset pages are built from the last object of the previous page
+        return !mPager.isKeysetPagination();
+    }
+
+    @Override
+    public Object getKey(T object) {
+        return object.getObjectId();
+    }
+
+    @Override
+    public boolean areContentsTheSame(T oldObject, T newObject) {
+        // Also known for the objects loaded with selected keys, unlike the other keys
+        Date oldUpdatedAt = oldObject.getUpdatedAt();
+        Date newUpdatedAt = newObject.getUpdatedAt();
+        return oldUpdatedAt == null ? newUpdatedAt == null : oldUpdatedAt.equals(newUpdatedAt);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public T createPlaceholder(T object) {
+        return (T) ParseObject.createWithoutData(object.getClassName(), object.getObjectId());
+    }
+
+    @Override
+    public void loadObjects(List<T> placeholders, Callback<T> resultCallback) {
+        final Callback<T> callback = wrap(resultCallback, false);
+        List<String> objectIds = new ArrayList<>(placeholders.size());
+        for (T placeholder : placeholders) {
+            objectIds.add(placeholder.getObjectId());
+        }
+
+        // The ids are known, no need to page through the results again
+        ParseQuery<T> query = mPager.createNetworkFirstQuery();
+        mPager.applySelectedKeys(query);
+        query.whereContainedIn("objectId", objectIds);
+        query.setLimit(objectIds.size());
+        query.findInBackground(new FindCallback<T>() {
+            @Override
+            public void done(List<T> results, ParseException e) {
+                if (e != null) {
+                    callback.onError(e, true);
+                } else {
+                    callback.onResult(results, true);
+                }
+            }
+        });
+    }
+}
\ No newline at end of file
@@ -1,15 +1,37 @@
 package com.parse;
 
+import android.content.ComponentCallbacks2;
 import android.content.Context;
+import android.content.res.Configuration;
+import android.os.SystemClock;
 import android.support.v7.widget.RecyclerView;
+import android.view.Choreographer;
 import android.widget.Adapter;
 
+import com.tiagobagni.parse.paging.ChangeCoalescer;
+import com.tiagobagni.parse.paging.HistogramPagerMetrics;
+import com.tiagobagni.parse.paging.PagerMetrics;
+import com.tiagobagni.parse.paging.PageCache;
+import com.tiagobagni.parse.paging.PageSizePolicy;
+import com.tiagobagni.parse.paging.PinBudget;
+import com.tiagobagni.parse.paging.PrefetchPolicy;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.WeakHashMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executor;
 
+import bolts.CancellationToken;
 import bolts.CancellationTokenSource;
+import bolts.Continuation;
+import bolts.Task;
 
 public abstract class ParseQueryAdapter<T extends ParseObject, U extends RecyclerView.ViewHolder>
         extends RecyclerView.Adapter<U> {
@@ -37,8 +59,50 @@ public abstract class ParseQueryAdapter<T extends ParseObject, U extends Recycle
 
     private ParseQuery<T> mQuery;
     private int mObjectsPerPage = 20;
+    private PageSizePolicy mPageSizePolicy;
+    private int mMaxConcurrentPages = 4;
+    private boolean mIsCountMode;
+    private String mKeysetSortKey;
+    private boolean mKeysetDescending;
+    private int mPageWindow;
+    private PagerMetrics mMetrics = PagerMetrics.NONE;
+    private PageCache mPageCache;
+    private long mPageCacheTtlMillis = ParseQueryPager.DEFAULT_PAGE_CACHE_TTL_MILLIS;
+    private PinBudgetStore mPinBudgetStore;
+    // The keys displayed by each view type, none if all the keys are loaded
+    private final Map<Integer, Set<String>> mSelectedKeys = new HashMap<>();
+    private Set<String> mResolvedPointers;
+    private boolean mIsObjectInterning = true;
+    private Executor mFetchExecutor;
+    private Executor mMergeExecutor;
+    private Executor mNotificationExecutor;
+
+    // Key and number of pages of the snapshot restored on creation, if any
+    private String mSnapshotKey;
+    private int mSnapshotPages;
+    private boolean mIsSnapshotRestoreAttempted;
+    private PageSnapshotStore mSnapshotStore;
+
+    // Saves the snapshot when the app goes to the background
+    private final ComponentCallbacks2 mTrimMemoryCallbacks = new ComponentCallbacks2() {
+        @Override
+        public void onTrimMemory(int level) {
+            if (level >= ComponentCallbacks2.TRIM_MEMORY_UI_HIDDEN) {
+                saveSnapshot();
+            }
+        }
+
+        @Override
+        public void onConfigurationChanged(Configuration newConfig) {
+        }
+
+        @Override
+        public void onLowMemory() {
+        }
+    };
 
-    private ParseQuery.CachePolicy mPrevCachePolicy;
+    // Whether the next loadObjects() revalidates the cached pages, set by forceUpdate()
+    private boolean mIsForceUpdate;
 
     // A WeakHashMap, keeping track of the DataSetObservers on this class
     private WeakHashMap<RecyclerView.AdapterDataObserver, Void> mDataSetObservers =
@@ -52,6 +116,110 @@ public abstract class ParseQueryAdapter<T extends ParseObject, U extends Recycle
 
     private Set<OnQueryLoadListener<T>> mOnQueryLoadListeners = new HashSet<>();
 
+    // Whether the next page is requested automatically as rows get close to the end of the list
+    private boolean mIsAutoPrefetch = false;
+    private final PrefetchPolicy mPrefetchPolicy = new PrefetchPolicy();
+
+    // The pager's changes, waiting for the next frame to be notified together
+    private final ChangeCoalescer<ParseQueryPager<T>> mCoalescer = new ChangeCoalescer<>();
+    private boolean mIsFrameAligned = true;
+    private boolean mIsFlushScheduled;
+    // The objects the RecyclerView was notified of, the pager may be up to a frame ahead
+    private List<T> mDisplayedObjects = Collections.emptyList();
+
+    private final Choreographer.FrameCallback mFlushCallback = new Choreographer.FrameCallback() {
+        @Override
+        public void doFrame(long frameTimeNanos) {
+            mIsFlushScheduled = false;
+            flushChanges();
+        }
+    };
+
+    private final Runnable mFlushRunnable = new Runnable() {
+        @Override
+        public void run() {
+            mIsFlushScheduled = false;
+            flushChanges();
+        }
+    };
+
+    // Collects the pager's range changes until they are flushed
+    private final ParseQueryPager.OnObjectsChangedCallback<ParseQueryPager<T>> mPagerCallback =
+            new ParseQueryPager.OnObjectsChangedCallback<ParseQueryPager<T>>() {
+        @Override
+        public void onChanged(ParseQueryPager<T> sender) {
+            if (isCurrentPager(sender)) {
+                mCoalescer.onChanged(sender);
+                scheduleFlush();
+            }
+        }
+
+        @Override
+        public void onItemRangeChanged(ParseQueryPager<T> sender, int positionStart,
+                int itemCount) {
+            if (isCurrentPager(sender)) {
+                mCoalescer.onItemRangeChanged(sender, positionStart, itemCount);
+                scheduleFlush();
+            }
+        }
+
+        @Override
+        public void onItemRangeInserted(ParseQueryPager<T> sender, int positionStart,
+                int itemCount) {
+            if (isCurrentPager(sender)) {
+                mCoalescer.onItemRangeInserted(sender, positionStart, itemCount);
+                scheduleFlush();
+            }
+        }
+
+        @Override
+        public void onItemRangeMoved(ParseQueryPager<T> sender, int fromPosition, int toPosition,
+                int itemCount) {
+            if (isCurrentPager(sender)) {
+                mCoalescer.onItemRangeMoved(sender, fromPosition, toPosition, itemCount);
+                scheduleFlush();
+            }
+        }
+
+        @Override
+        public void onItemRangeRemoved(ParseQueryPager<T> sender, int positionStart,
+                int itemCount) {
+            if (isCurrentPager(sender)) {
+                mCoalescer.onItemRangeRemoved(sender, positionStart, itemCount);
+                scheduleFlush();
+            }
+        }
+    };
+
+    // Translates the coalesced range changes into RecyclerView item notifications
+    private final ItemRangeNotifier<ParseQueryPager<T>> mNotifyingCallback =
+            new ItemRangeNotifier<>(new ItemRangeNotifier.Target() {
+        @Override
+        public void notifyDataSetChanged() {
+            ParseQueryAdapter.this.notifyDataSetChanged();
+        }
+
+        @Override
+        public void notifyItemRangeChanged(int positionStart, int itemCount) {
+            ParseQueryAdapter.this.notifyItemRangeChanged(positionStart, itemCount);
+        }
+
+        @Override
+        public void notifyItemRangeInserted(int positionStart, int itemCount) {
+            ParseQueryAdapter.this.notifyItemRangeInserted(positionStart, itemCount);
+        }
+
+        @Override
+        public void notifyItemMoved(int fromPosition, int toPosition) {
+            ParseQueryAdapter.this.notifyItemMoved(fromPosition, toPosition);
+        }
+
+        @Override
+        public void notifyItemRangeRemoved(int positionStart, int itemCount) {
+            ParseQueryAdapter.this.notifyItemRangeRemoved(positionStart, itemCount);
+        }
+    });
+
     /**
      * Constructs a {@code ParseQueryAdapter}. Given a class name, this adapter
      * will fetch and display all {@link ParseObject}s of the specified class, ordered by creation
@@ -105,12 +273,57 @@ public abstract class ParseQueryAdapter<T extends ParseObject, U extends Recycle
         synchronized (mLock) {
             if (mPager == null) {
                 mPager = new ParseQueryPager<>(mQuery, mObjectsPerPage);
+                mPager.setPageWindow(mPageWindow);
+                mPager.setPageSizePolicy(mPageSizePolicy);
+                mPager.setCountMode(mIsCountMode);
+                mPager.setMetrics(mMetrics);
+                mPager.setPageCache(mPageCache, mPageCacheTtlMillis);
+                mPager.setLocalDatastorePinning(mPinBudgetStore);
+                mPager.setSelectedKeys(getSelectedKeys());
+                mPager.setResolvedPointers(mResolvedPointers);
+                mPager.setObjectInterning(mIsObjectInterning);
+                mPager.setFetchExecutor(mFetchExecutor);
+                mPager.setMergeExecutor(mMergeExecutor);
+                mPager.setNotificationExecutor(mNotificationExecutor);
+                mPager.addOnObjectsChangedCallback(mPagerCallback);
+                if (mKeysetSortKey != null) {
+                    mPager.setKeysetPagination(mKeysetSortKey, mKeysetDescending);
+                }
                 mCancelTokenSource = new CancellationTokenSource();
             }
             return mPager;
         }
     }
 
+    private boolean isCurrentPager(ParseQueryPager<T> pager) {
+        synchronized (mLock) {
+            return pager == mPager;
+        }
+    }
+
+    /**
+     * Detaches the current pager, if any.
+     *
+     * @return the number of rows the detached pager held.
+     */
+    private int dropPager() {
+        synchronized (mLock) {
+            if (mPager == null) {
+                return 0;
+            }
+            if (mCancelTokenSource != null) {
+                mCancelTokenSource.cancel();
+            }
+            mPager.removeOnObjectsChangedCallback(mPagerCallback);
+            mCoalescer.clear();
+            int count = mDisplayedObjects.size();
+            mDisplayedObjects = Collections.emptyList();
+            mPager = null;
+            mCancelTokenSource = null;
+            return count;
+        }
+    }
+
     public void setQuery(QueryFactory<T> queryFactory) {
         mQuery = queryFactory.create();
 
@@ -119,19 +332,149 @@ public abstract class ParseQueryAdapter<T extends ParseObject, U extends Recycle
     }
 
     private List<T> getObjects() {
-        return getPager().getObjects();
+        return mDisplayedObjects;
     }
 
-    private int getPaginationCellRow() {
-        // Pagination cell row is the last element, after all objects from that page
-        return getObjects().size();
+    private void scheduleFlush() {
+        if (mIsFlushScheduled) {
+            return;
+        }
+        mIsFlushScheduled = true;
+        if (mIsFrameAligned) {
+            Choreographer.getInstance().postFrameCallback(mFlushCallback);
+        } else {
+            // Posted even then: a page from the cache is merged while the row that loads it is
+            // bound, when the RecyclerView can't be notified
+            Task.UI_THREAD_EXECUTOR.execute(mFlushRunnable);
+        }
+    }
+
+    /**
+     * Notifies the {@code RecyclerView} of the pager's changes received so far and displays the
+     * objects they led to.
+     */
+    private void flushChanges() {
+        ParseQueryPager<T> pager;
+        synchronized (mLock) {
+            pager = mPager;
+        }
+        if (pager == null || mCoalescer.isEmpty()) {
+            return;
+        }
+        // The changes are received on the UI thread, after the pager's objects are updated
+        mDisplayedObjects = pager.getObjects();
+        mCoalescer.flush(pager, mNotifyingCallback);
     }
 
+    /**
+     * Enable or disable the batching of the pager's changes into one notification of the
+     * {@code RecyclerView} per frame. Pages loaded in the same frame, such as during a fling with
+     * {@link #setAutoPrefetch(boolean) auto prefetch}, or the cache and network results of a
+     * {@code CACHE_THEN_NETWORK} query, then cause a single layout pass, adjacent ranges being
+     * merged. Defaults to true.
+     *
+     * @param frameAligned
+     *          Whether changes are notified once per frame rather than right after the message
+     *          that made them.
+     */
+    public void setFrameAlignedNotifications(boolean frameAligned) {
+        mIsFrameAligned = frameAligned;
+        if (!frameAligned) {
+            flushChanges();
+        }
+    }
+
+    /**
+     * Returns the object displayed at {@code index}.
+     * <p/>
+     * When a {@link #setPageWindow(int) page window} is set, the object may be a placeholder whose
+     * data is not available yet (see {@link ParseObject#isDataAvailable()}). In
+     * {@link #setCountMode(boolean) count mode}, it is {@code null} until its page is loaded.
+     * Either way its row is notified as changed once it is loaded.
+     * <p/>
+     * Reading an object doesn't load pages, only binding its row does.
+     */
     public T getItem(int index) {
-        if (index == getPaginationCellRow()) {
+        // Read a single snapshot, a page may be merged in between two calls to getObjects()
+        List<T> objects = getObjects();
+        if (index == objects.size()) {
+            // Pagination cell row is the last element, after all objects from that page
             return null;
         }
-        return getObjects().get(index);
+        return objects.get(index);
+    }
+
+    /**
+     * Enable or disable the automatic loading of the next page while rows are being bound. When
+     * enabled, there is no need to call {@link #loadNextPage()} from a scroll listener. Defaults to
+     * false.
+     *
+     * @param prefetch
+     *          Defaults to false.
+     */
+    public void setAutoPrefetch(boolean prefetch) {
+        mIsAutoPrefetch = prefetch;
+    }
+
+    /**
+     * Sets how many rows before the end of the list the next page is requested when
+     * {@link #setAutoPrefetch(boolean) auto prefetch} is enabled. The distance starts at
+     * {@code minDistance} and grows up to {@code maxDistance} with the measured scroll speed and
+     * page load time.
+     *
+     * @param minDistance
+     *          The minimum number of rows left when the next page is requested.
+     * @param maxDistance
+     *          The maximum number of rows left when the next page is requested.
+     */
+    public void setPrefetchDistance(int minDistance, int maxDistance) {
+        mPrefetchPolicy.setDistanceBounds(minDistance, maxDistance);
+    }
+
+    /**
+     * Loads the pages the row bound at {@code position} needs, and samples the scrolling.
+     */
+    private void onPositionBound(int position) {
+        ParseQueryPager<T> pager;
+        synchronized (mLock) {
+            pager = mPager;
+        }
+        if (pager == null) {
+            // Cleared, nothing to load until the next loadObjects()
+            return;
+        }
+        List<T> objects = getObjects();
+        if (mIsCountMode && position < objects.size() && objects.get(position) == null) {
+            // A placeholder row, load its page
+            int page = pager.getPageAt(position);
+            if (!pager.isLoadingPage(page)) {
+                CancellationToken token;
+                synchronized (mLock) {
+                    token = mCancelTokenSource.getToken();
+                }
+                pager.loadPage(page, null, token);
+            }
+        }
+        if (mPageWindow > 0) {
+            CancellationToken token;
+            synchronized (mLock) {
+                token = mCancelTokenSource.getToken();
+            }
+            pager.setVisiblePosition(position, token);
+        }
+        if (mPageSizePolicy != null) {
+            mPageSizePolicy.onBind(position, SystemClock.uptimeMillis());
+        }
+
+        if (!mIsAutoPrefetch) {
+            return;
+        }
+
+        mPrefetchPolicy.onBind(position, SystemClock.uptimeMillis());
+        if (pager.getCurrentPage() >= 0 && pager.hasNextPage() && !pager.isLoadingNextPage() &&
+                mPrefetchPolicy.shouldPrefetch(position, getObjects().size())) {
+            loadNextPage(false);
+        }
     }
 
     /**
@@ -154,18 +497,16 @@ public abstract class ParseQueryAdapter<T extends ParseObject, U extends Recycle
     }
 
     /**
-     * Clear the cache results to force an updated query next time. This method only makes sense
-     * if the query provided has a cache policy.
+     * Forces an updated query the next time the objects are loaded, without waiting for it: the
+     * cached results are displayed right away, then queried from the network, and only the rows
+     * that differ are updated. This method only makes sense if the query provided has a cache
+     * policy or the adapter has a {@link #setPageCache(PageCache) page cache}.
+     *
+     * @see ParseQueryPager#setStaleWhileRevalidate(boolean)
      */
     public void forceUpdate() {
-        if(mQuery.getCachePolicy() != ParseQuery.CachePolicy.IGNORE_CACHE) {
-            // For some reason, clearCachedResult does not work as expected and, even after calling it
-            // Query gets the results from the Cache. In order to workaround this SHIT, we set the Cache
-            // policy here to NETWORK_ELSE_CACHE and then, after the objects are loaded, we set it back
-            // to what it was.
-            //mQuery.clearCachedResult();
-            mPrevCachePolicy = mQuery.getCachePolicy();
-            mQuery.setCachePolicy(ParseQuery.CachePolicy.NETWORK_ELSE_CACHE);
+        synchronized (mLock) {
+            mIsForceUpdate = true;
         }
     }
 
@@ -177,20 +518,83 @@ public abstract class ParseQueryAdapter<T extends ParseObject, U extends Recycle
      * to {@code false}.
      */
     public void loadObjects() {
+        if (restoreSnapshot()) {
+            // The snapshot is displayed and revalidated, or the first page loaded, once it is read
+            return;
+        }
         loadNextPage(true);
     }
 
-    private void loadNextPage(final boolean shouldClear) {
+    /**
+     * Reloads the pages loaded so far without clearing the table. The new results are compared
+     * with the displayed ones in the background and only the rows that were removed, moved,
+     * inserted or updated are notified, so there is no flash and unchanged rows are not rebound.
+     * <p/>
+     * Falls back to {@link #loadObjects()} when nothing has been loaded yet.
+     */
+    public void refreshObjects() {
+        final ParseQueryPager<T> pager;
+        final CancellationToken token;
         synchronized (mLock) {
-            if (shouldClear && mPager != null) {
-                mCancelTokenSource.cancel();
-                mPager = null;
+            pager = mPager;
+            token = mCancelTokenSource != null ? mCancelTokenSource.getToken() : null;
+        }
+        if (pager == null || pager.getCurrentPage() < 0) {
+            loadObjects();
+            return;
+        }
+
+        notifyOnLoadingListeners(true);
+        pager.refreshInBackground(token).continueWith(new Continuation<List<T>, Void>() {
+            @Override
+            public Void then(Task<List<T>> task) throws Exception {
+                if (task.isCancelled()) {
+                    notifyOnCanceledListeners();
+                    return null;
+                }
+
+                Exception error = task.getError();
+                if (error == null) {
+                    notifyOnLoadedListeners(task.getResult(), null);
+                } else {
+                    notifyOnLoadedListeners(null, error instanceof ParseException ?
+                            (ParseException) error : new ParseException(error));
+                }
+                return null;
+            }
+        }, Task.UI_THREAD_EXECUTOR);
+    }
+
+    private void loadNextPage(final boolean shouldClear) {
+        if (shouldClear) {
+            int removedCount = dropPager();
+            if (removedCount > 0) {
+                notifyItemRangeRemoved(0, removedCount);
+            }
+            mPrefetchPolicy.reset();
+            if (mPageSizePolicy != null) {
+                mPageSizePolicy.reset();
             }
         }
+        final long loadStartTime = SystemClock.uptimeMillis();
 
-        notifyOnLoadingListeners(mPager == null || mPager.getCurrentPage() < 0);
+        ParseQueryPager<T> pager = getPager();
+        if (shouldClear) {
+            synchronized (mLock) {
+                // Only the objects loaded right after forceUpdate() are revalidated
+                pager.setStaleWhileRevalidate(mIsForceUpdate);
+                mIsForceUpdate = false;
+            }
+        }
+        if (pager.isLoadingPage(pager.getCurrentPage() + 1)) {
+            // The page is already on its way and the listeners know about it, just join it
+            pager.loadNextPage(null, mCancelTokenSource.getToken());
+            return;
+        }
+
+        notifyOnLoadingListeners(pager.getCurrentPage() < 0);
 
-        getPager().loadNextPage(new FindCallback<T>() {
+        pager.loadNextPage(new FindCallback<T>() {
             @Override
             public void done(List<T> results, ParseException e) {
                 if (results == null && e == null) {
@@ -206,14 +610,9 @@ public abstract class ParseQueryAdapter<T extends ParseObject, U extends Recycle
                         return;
                     }
 
-                    // Reset the cache policy to what it were if we are force updating
-                    if (mPrevCachePolicy != null) {
-                        mQuery.setCachePolicy(mPrevCachePolicy);
-                        mPrevCachePolicy = null;
-                    }
-
                     // Loaded
-                    notifyDataSetChanged();
+                    // The rows were already notified through mPagerCallback
+                    mPrefetchPolicy.onPageLoaded(SystemClock.uptimeMillis() - loadStartTime);
                     notifyOnLoadedListeners(results, e);
                 }
 
@@ -232,18 +631,69 @@ public abstract class ParseQueryAdapter<T extends ParseObject, U extends Recycle
     }
 
     /**
-     * Remove all elements from the list.
+     * Loads the pages up to the one holding {@code position}, such as when the scrollbar is dragged
+     * far from the loaded rows. Up to {@link #setMaxConcurrentPages(int)} pages are queried at a
+     * time, and they are displayed in order as they arrive.
+     *
+     * @param position
+     *          The position of the row to load.
      */
-    public void clear() {
-        synchronized (mLock) {
-            if (mCancelTokenSource != null) {
-                mCancelTokenSource.cancel();
+    public void loadObjectsTo(int position) {
+        ParseQueryPager<T> pager = getPager();
+        int toPage = pager.getPageAt(position);
+        if (!pager.hasNextPage() || toPage <= pager.getCurrentPage()) {
+            return;
+        }
+
+        notifyOnLoadingListeners(pager.getCurrentPage() < 0);
+        pager.loadPages(toPage, mMaxConcurrentPages, new FindCallback<T>() {
+            @Override
+            public void done(List<T> results, ParseException e) {
+                if (results == null && e == null) {
+                    notifyOnCanceledListeners();
+                } else {
+                    notifyOnLoadedListeners(results, e);
+                }
             }
-            mPager = null;
-            mCancelTokenSource = null;
+        }, mCancelTokenSource.getToken());
+    }
+
+    /**
+     * Enable or disable count mode. The objects are counted along with the first page, so the
+     * {@code RecyclerView} lays out every row and its scrollbar reflects the whole result set. The
+     * rows of the pages not loaded yet hold {@code null} until they are displayed, which loads
+     * their page. The count is kept until the objects are refreshed. Takes effect on the next
+     * {@link #loadObjects()}.
+     *
+     * @param countMode
+     *          Defaults to false.
+     * @see ParseQueryPager#setCountMode(boolean)
+     */
+    public void setCountMode(boolean countMode) {
+        mIsCountMode = countMode;
+    }
+
+    /**
+     * Sets how many pages {@link #loadObjectsTo(int)} may query at a time. Defaults to 4.
+     *
+     * @param maxConcurrentPages
+     *          The maximum number of page queries in flight.
+     */
+    public void setMaxConcurrentPages(int maxConcurrentPages) {
+        if (maxConcurrentPages < 1) {
+            throw new IllegalArgumentException("The maximum number of pages must be positive");
         }
+        mMaxConcurrentPages = maxConcurrentPages;
+    }
 
-        notifyDataSetChanged();
+    /**
+     * Remove all elements from the list.
+     */
+    public void clear() {
+        int removedCount = dropPager();
+        if (removedCount > 0) {
+            notifyItemRangeRemoved(0, removedCount);
+        }
     }
 
     public void setObjectsPerPage(int objectsPerPage) {
@@ -254,6 +704,423 @@ public abstract class ParseQueryAdapter<T extends ParseObject, U extends Recycle
         return mObjectsPerPage;
     }
 
+    /**
+     * Adapts the size of the pages to the network and to the scrolling: pages grow when the next
+     * page would not arrive before the user gets to it, or when most of their load time is the
+     * round trip, and shrink back when the user slows down. The first page has
+     * {@link #setObjectsPerPage(int)} objects. Takes effect on the next {@link #loadObjects()}.
+     *
+     * @param policy
+     *          The policy deciding the page sizes, with its size bounds, or {@code null} for pages
+     *          of {@link #getObjectsPerPage()} objects. Defaults to {@code null}.
+     * @see ParseQueryPager#setPageSizePolicy(PageSizePolicy)
+     */
+    public void setPageSizePolicy(PageSizePolicy policy) {
+        mPageSizePolicy = policy;
+    }
+
+    /**
+     * @return the number of {@link #loadNextPage()} calls, since the last {@link #loadObjects()},
+     * that joined a page already being loaded instead of issuing a new query.
+     */
+    public int getDeduplicatedRequestCount() {
+        return getPager().getDeduplicatedRequestCount();
+    }
+
+    /**
+     * @return the number of objects dropped from the pages, since the last {@link #loadObjects()},
+     * because an earlier page already held them, such as when objects were inserted before the
+     * loaded pages while paging.
+     * @see ParseQueryPager#setDuplicateSuppression(boolean)
+     */
+    public int getDroppedDuplicateCount() {
+        return getPager().getDroppedDuplicateCount();
+    }
+
+    /**
+     * @return the number of queries issued, since the last {@link #loadObjects()}, to fill the
+     * pages shortened by the dropped duplicates.
+     */
+    public int getGapFillRequestCount() {
+        return getPager().getGapFillRequestCount();
+    }
+
+    /**
+     * Limits the number of pages kept in memory to {@code pages} around the displayed rows. Pages
+     * out of that window only keep placeholders with the {@code objectId} of their objects, and are
+     * fetched again when scrolled back into view. Takes effect on the next {@link #loadObjects()}.
+     *
+     * @param pages
+     *          The number of pages to keep in memory, or 0 to keep every loaded page. Defaults
+     *          to 0.
+     * @see ParseQueryPager#setPageWindow(int)
+     */
+    public void setPageWindow(int pages) {
+        mPageWindow = pages;
+    }
+
+    /**
+     * Reports the timings of every page load to {@code metrics}: the cache lookup, the query, the
+     * merge into the loaded objects and the notification of the {@code RecyclerView}, along with
+     * cache hits, result counts, cancellations and errors.
+     *
+     * @param metrics
+     *          The listener, such as a {@link HistogramPagerMetrics}, or {@code null} to stop
+     *          measuring page loads.
+     * @see ParseQueryPager#setMetrics(PagerMetrics)
+     */
+    public void setMetrics(PagerMetrics metrics) {
+        synchronized (mLock) {
+            mMetrics = metrics == null ? PagerMetrics.NONE : metrics;
+            if (mPager != null) {
+                mPager.setMetrics(mMetrics);
+            }
+        }
+    }
+
+    /**
+     * Looks the pages up in {@code cache} before querying them, and stores them in it once
+     * queried, with a time to live of 30 seconds.
+     *
+     * @param cache
+     *          The cache, or {@code null} to query every page. Defaults to {@code null}.
+     * @see #setPageCache(PageCache, long)
+     */
+    public void setPageCache(PageCache cache) {
+        setPageCache(cache, ParseQueryPager.DEFAULT_PAGE_CACHE_TTL_MILLIS);
+    }
+
+    /**
+     * Looks the pages up in {@code cache} before querying them, and stores them in it once
+     * queried. With the {@link PageCache#getDefault() process-wide cache}, a new adapter for a
+     * query displayed recently, such as after its {@code Fragment} is recreated, shows its pages
+     * right away instead of waiting for the network. Pages older than {@code ttlMillis} are
+     * queried again right after being displayed, and only the rows that differ are updated.
+     *
+     * @param cache
+     *          The cache, or {@code null} to query every page. Defaults to {@code null}.
+     * @param ttlMillis
+     *          How long a cached page is displayed without querying it again.
+     * @see ParseQueryPager#setPageCache(PageCache, long)
+     */
+    public void setPageCache(PageCache cache, long ttlMillis) {
+        synchronized (mLock) {
+            mPageCache = cache;
+            mPageCacheTtlMillis = ttlMillis;
+            if (mPager != null) {
+                mPager.setPageCache(cache, ttlMillis);
+            }
+        }
+    }
+
+    /**
+     * Drops the pages of the query of this adapter from its {@link #setPageCache(PageCache) page
+     * cache}, so they are queried again before being displayed.
+     */
+    public void invalidatePageCache() {
+        PageCache cache;
+        synchronized (mLock) {
+            cache = mPageCache;
+        }
+        String key = cache != null && mQuery != null ? ParseQueryPager.getCacheKey(mQuery) : null;
+        if (key != null) {
+            cache.invalidate(key);
+        }
+    }
+
+    /**
+     * Only loads the keys the rows of {@code viewType} display, so the pages are smaller and
+     * faster to load. The page queries select the keys of every view type, as a page holds rows of
+     * all of them. Call {@link #fetchFullObject(ParseObject)} before displaying the other keys of
+     * an object, such as when its row is opened. Takes effect on the next {@link #loadObjects()}.
+     *
+     * @param viewType
+     *          The view type, 0 if the adapter has a single one.
+     * @param keys
+     *          The keys the rows of {@code viewType} display, or {@code null} to load all the keys
+     *          for them, the default.
+     * @see ParseQueryPager#setSelectedKeys(Collection)
+     */
+    public void setSelectedKeys(int viewType, Collection<String> keys) {
+        synchronized (mLock) {
+            if (keys != null) {
+                mSelectedKeys.put(viewType, new HashSet<>(keys));
+            } else {
+                mSelectedKeys.remove(viewType);
+            }
+        }
+    }
+
+    /**
+     * @return the keys selected for every view type, or {@code null} to load all the keys.
+     */
+    private Set<String> getSelectedKeys() {
+        synchronized (mLock) {
+            if (mSelectedKeys.isEmpty()) {
+                return null;
+            }
+            Set<String> keys = new HashSet<>();
+            for (Set<String> viewTypeKeys : mSelectedKeys.values()) {
+                keys.addAll(viewTypeKeys);
+            }
+            return keys;
+        }
+    }
+
+    /**
+     * Resolves the related objects the rows display, such as the author of each post, with one
+     * query per class of the related objects for each page instead of a fetch per row. Takes
+     * effect on the next {@link #loadObjects()}.
+     *
+     * @param keys
+     *          The keys holding the pointers to resolve, or {@code null} to not resolve them, the
+     *          default.
+     * @see ParseQueryPager#setResolvedPointers(Collection)
+     */
+    public void setResolvedPointers(Collection<String> keys) {
+        synchronized (mLock) {
+            mResolvedPointers = keys != null ? new HashSet<>(keys) : null;
+        }
+    }
+
+    /**
+     * Sets whether the loaded objects are shared with the other adapters of the process, the
+     * default, so an object displayed by several lists is held once and an update loaded by one
+     * of them rebinds its rows in all of them. Takes effect on the next {@link #loadObjects()}.
+     *
+     * @param interning
+     *          Whether to intern the loaded objects.
+     * @see ParseQueryPager#setObjectInterning(boolean)
+     */
+    public void setObjectInterning(boolean interning) {
+        synchronized (mLock) {
+            mIsObjectInterning = interning;
+        }
+    }
+
+    /**
+     * Fetches all the keys of an object loaded with {@link #setSelectedKeys(int, Collection)
+     * selected keys}, such as when its row is opened. The objects requested together are fetched
+     * with a single request.
+     *
+     * @param object
+     *          An object of the adapter.
+     * @return a task that completes with {@code object} once it holds all of its keys.
+     * @see ParseQueryPager#fetchFullObject(ParseObject)
+     */
+    public Task<T> fetchFullObject(T object) {
+        return getPager().fetchFullObject(object);
+    }
+
+    /**
+     * Pins the loaded pages to the Local Datastore and displays them from there first, so the list
+     * shows its last loaded pages when the app is relaunched offline. The pinned pages are then
+     * queried from the network, only the rows that differ being updated. The least recently used
+     * pages are unpinned once the pages pinned by all the adapters hold more than
+     * {@link PinBudget#getDefault() 2000 objects}, including the ones pinned by previous
+     * processes. Takes effect on the next {@link #loadObjects()}.
+     *
+     * @param pinned
+     *          Whether to pin the pages. Defaults to false.
+     * @throws IllegalStateException if the Local Datastore is not enabled.
+     * @see ParseQueryPager#setLocalDatastorePinning(PinBudget)
+     */
+    public void setLocalDatastorePinning(boolean pinned) {
+        if (pinned && !Parse.isLocalDatastoreEnabled()) {
+            throw new IllegalStateException("The Local Datastore is not enabled");
+        }
+        PinBudgetStore store = pinned ? PinBudgetStore.getDefault(mContext) : null;
+        synchronized (mLock) {
+            mPinBudgetStore = store;
+        }
+    }
+
+    /**
+     * Unpins the pages of the query of this adapter, such as after objects it matches were
+     * deleted.
+     *
+     * @see #setLocalDatastorePinning(boolean)
+     */
+    public void unpinPages() {
+        ParseQueryPager<T> pager;
+        synchronized (mLock) {
+            pager = mPager;
+        }
+        if (pager != null) {
+            pager.unpinPages();
+        }
+    }
+
+    /**
+     * Sets the executor the page queries are issued from.
+     *
+     * @param executor
+     *          The executor, or {@code null} to issue them from the thread loading the page.
+     * @see ParseQueryPager#setFetchExecutor(Executor)
+     */
+    public void setFetchExecutor(Executor executor) {
+        synchronized (mLock) {
+            mFetchExecutor = executor;
+            if (mPager != null) {
+                mPager.setFetchExecutor(executor);
+            }
+        }
+    }
+
+    /**
+     * Sets the executor the pages are merged into the loaded objects on, and refreshes are diffed
+     * and applied on, such as a low priority pool, keeping that work off the UI thread. The work
+     * runs one task at a time, in order, even on a pool.
+     *
+     * @param executor
+     *          The executor, or {@code null} to merge pages on the UI thread.
+     * @see ParseQueryPager#setMergeExecutor(Executor)
+     */
+    public void setMergeExecutor(Executor executor) {
+        synchronized (mLock) {
+            mMergeExecutor = executor;
+            if (mPager != null) {
+                mPager.setMergeExecutor(executor);
+            }
+        }
+    }
+
+    /**
+     * Sets the executor the {@code RecyclerView} is notified of the changes on. It must run its
+     * commands on the UI thread; the changes made before it gets to run are notified together.
+     *
+     * @param executor
+     *          The executor, or {@code null} to notify the changes right away on the UI thread and
+     *          post the ones made on other threads to it.
+     * @see ParseQueryPager#setNotificationExecutor(Executor)
+     */
+    public void setNotificationExecutor(Executor executor) {
+        synchronized (mLock) {
+            mNotificationExecutor = executor;
+            if (mPager != null) {
+                mPager.setNotificationExecutor(executor);
+            }
+        }
+    }
+
+    /**
+     * Keeps a snapshot of the first {@code pages} loaded pages in app storage, written when the
+     * adapter is detached from its {@code RecyclerView} or the app goes to the background. The
+     * next adapter created with the same {@code key}, even in a new process, reads the snapshot in
+     * the background on its first {@link #loadObjects()}, displays it instead of waiting for the
+     * first page and then refreshes it.
+     * <p/>
+     * Must be called before the adapter is attached to a {@code RecyclerView}.
+     *
+     * @param key
+     *          Identifies the list, it must be different for lists showing different queries. Pass
+     *          {@code null} to disable snapshots.
+     * @param pages
+     *          The number of pages to keep.
+     */
+    public void setSnapshot(String key, int pages) {
+        if (key != null && pages <= 0) {
+            throw new IllegalArgumentException("The number of pages must be positive");
+        }
+        mSnapshotKey = key;
+        mSnapshotPages = pages;
+        if (key != null && mSnapshotStore == null) {
+            mSnapshotStore = new PageSnapshotStore(mContext);
+        }
+    }
+
+    /**
+     * Reads the snapshot in the background, the first time the objects are loaded, then displays
+     * it and revalidates it, or loads the first page if there is no snapshot to display.
+     * <p/>
+     * Decoding a few pages takes longer than a frame, so the list stays empty until the snapshot
+     * is read rather than blocking the UI thread.
+     *
+     * @return whether a snapshot is being read.
+     */
+    private boolean restoreSnapshot() {
+        if (mSnapshotKey == null || mIsSnapshotRestoreAttempted) {
+            return false;
+        }
+        mIsSnapshotRestoreAttempted = true;
+
+        final String key = mSnapshotKey;
+        Task.callInBackground(new Callable<PageSnapshotCodec.Snapshot<T>>() {
+            @Override
+            public PageSnapshotCodec.Snapshot<T> call() throws Exception {
+                return mSnapshotStore.load(key);
+            }
+        }).continueWith(new Continuation<PageSnapshotCodec.Snapshot<T>, Void>() {
+            @Override
+            public Void then(Task<PageSnapshotCodec.Snapshot<T>> task) throws Exception {
+                ParseQueryPager<T> pager = getPager();
+                if (pager.getCurrentPage() >= 0 || pager.isLoadingNextPage()) {
+                    // Loaded again while the snapshot was read, it is outdated
+                    return null;
+                }
+                PageSnapshotCodec.Snapshot<T> snapshot = task.getResult();
+                if (snapshot != null) {
+                    pager.restoreObjects(snapshot.objects, snapshot.hasNextPage,
+                            snapshot.totalCount);
+                }
+                if (pager.getCurrentPage() >= 0) {
+                    refreshObjects();
+                } else {
+                    loadNextPage(true);
+                }
+                return null;
+            }
+        }, Task.UI_THREAD_EXECUTOR);
+        return true;
+    }
+
+    private void saveSnapshot() {
+        final String key = mSnapshotKey;
+        ParseQueryPager<T> pager;
+        synchronized (mLock) {
+            pager = mPager;
+        }
+        if (key == null || pager == null || pager.getCurrentPage() < 0) {
+            return;
+        }
+
+        List<T> objects = pager.getObjects();
+        int end = Math.min(objects.size(), pager.getPageStart(mSnapshotPages));
+        int count = 0;
+        // Stop at the placeholders of count mode and the evicted pages, there is nothing to save
+        while (count < end && objects.get(count) != null &&
+                objects.get(count).isDataAvailable()) {
+            count++;
+        }
+        final List<T> snapshot = new ArrayList<>(objects.subList(0, count));
+        final boolean hasNextPage = count < objects.size() || pager.hasNextPage();
+        final int totalCount = pager.isCountMode() ? pager.getTotalCount() : -1;
+        Task.callInBackground(new Callable<Void>() {
+            @Override
+            public Void call() throws Exception {
+                mSnapshotStore.save(key, snapshot, hasNextPage, totalCount);
+                return null;
+            }
+        });
+    }
+
+    /**
+     * Pages through the results using the value of {@code sortKey} in the last loaded object
+     * instead of an offset, so deep pages are as fast as the first one. Takes effect on the next
+     * {@link #loadObjects()}.
+     *
+     * @param sortKey
+     *          The key the results are ordered by, such as {@code "createdAt"}, or {@code null} to
+     *          go back to offset pagination.
+     * @param descending
+     *          Whether the results are ordered by descending {@code sortKey}.
+     * @see ParseQueryPager#setKeysetPagination(String, boolean)
+     */
+    public void setKeysetPagination(String sortKey, boolean descending) {
+        mKeysetSortKey = sortKey;
+        mKeysetDescending = descending;
+    }
+
     public void addOnQueryLoadListener(OnQueryLoadListener<T> listener) {
         mOnQueryLoadListeners.add(listener);
     }
@@ -298,6 +1165,29 @@ public abstract class ParseQueryAdapter<T extends ParseObject, U extends Recycle
         return position;
     }
 
+    @Override
+    public void onBindViewHolder(U holder, int position, List<Object> payloads) {
+        onPositionBound(position);
+        super.onBindViewHolder(holder, position, payloads);
+    }
+
+    @Override
+    public void onAttachedToRecyclerView(RecyclerView recyclerView) {
+        super.onAttachedToRecyclerView(recyclerView);
+        if (mSnapshotKey != null) {
+            mContext.getApplicationContext().registerComponentCallbacks(mTrimMemoryCallbacks);
+        }
+    }
+
+    @Override
+    public void onDetachedFromRecyclerView(RecyclerView recyclerView) {
+        super.onDetachedFromRecyclerView(recyclerView);
+        if (mSnapshotKey != null) {
+            mContext.getApplicationContext().unregisterComponentCallbacks(mTrimMemoryCallbacks);
+            saveSnapshot();
+        }
+    }
+
     @Override
     public void registerAdapterDataObserver(RecyclerView.AdapterDataObserver observer) {
         super.registerAdapterDataObserver(observer);
@@ -1,91 +1,97 @@
 package com.parse;
 
+import android.os.Looper;
 import android.util.Log;
 
+import com.tiagobagni.parse.paging.CachedResultIndex;
+import com.tiagobagni.parse.paging.Cancellation;
+import com.tiagobagni.parse.paging.IdentityMap;
+import com.tiagobagni.parse.paging.LoadCallback;
+import com.tiagobagni.parse.paging.PageCache;
+import com.tiagobagni.parse.paging.PageRequest;
+import com.tiagobagni.parse.paging.PinBudget;
+import com.tiagobagni.parse.paging.QueryPager;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
-import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executor;
 
-import bolts.CancellationToken;
 import bolts.Continuation;
+
+import bolts.CancellationToken;
 import bolts.Task;
 import bolts.TaskCompletionSource;
 
 /**
  * A utility class to page through {@link ParseQuery} results.
+ * <p/>
+ * The paging itself is done by {@link QueryPager}, this class loads its pages with
+ * {@link ParseQuery}s and delivers its results on the UI thread. Unless another
+ * {@link #setNotificationExecutor(Executor) notification executor} is set, changes are notified
+ * on the UI thread too, right away when they are made on it.
  *
  * @param <T>
  */
-public class ParseQueryPager<T extends ParseObject> {
+public class ParseQueryPager<T extends ParseObject> extends QueryPager<T> {
 
-    private static final int DEFAULT_PAGE_SIZE = 20;
     private static final String TAG = "ParseQueryPager";
+    private static final int DEFAULT_PAGE_SIZE = 20;
+    private static final String PIN_LABEL_PREFIX = "ParseQueryPager.";
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    static final long DEFAULT_PAGE_CACHE_TTL_MILLIS = 30000;
 
     /**
-     * The callback that is called by {@link ParseQueryPager} when the results have changed.
-     *
-     * @param <T>
-     */
-    public interface OnObjectsChangedCallback<T extends ParseQueryPager> {
-        /**
-         * Called whenever a change of unknown type has occurred, such as the entire list being set
-         * to new values.
-         *
-         * @param sender The changing pager.
-         */
-        void onChanged(T sender);
-
-        /**
-         * Called whenever one or more items have changed.
-         *
-         * @param sender        The changing pager.
-         * @param positionStart The starting index that has changed.
-         * @param itemCount     The number of items that have been changed.
-         */
-        void onItemRangeChanged(T sender, int positionStart, int itemCount);
-
-        /**
-         * Called whenever one or more items have been inserted into the result set.
-         *
-         * @param sender        The changing pager.
-         * @param positionStart The starting index that has been inserted.
-         * @param itemCount     The number of items that have been inserted.
-         */
-        void onItemRangeInserted(T sender, int positionStart, int itemCount);
-
-        /**
-         * Called whenever one or more items have been moved from the result set.
-         *
-         * @param sender       The changing pager.
-         * @param fromPosition The position from which the items were moved.
-         * @param toPosition   The destination position of the items.
-         * @param itemCount    The number of items that have been inserted.
-         */
-        void onItemRangeMoved(T sender, int fromPosition, int toPosition, int itemCount);
-
-        /**
-         * Called whenever one or more items have been removed from the result set.
-         *
-         * @param sender        The changing pager.
-         * @param positionStart The starting index that has been inserted.
-         * @param itemCount     The number of items that have been inserted.
-         */
-        void onItemRangeRemoved(T sender, int positionStart, int itemCount);
-    }
+     * Runs the commands right away on the UI thread and posts them to it from any other thread.
+     */
+    private static final Executor UI_THREAD_NOTIFICATION_EXECUTOR = new Executor() {
+        @Override
+        public void execute(Runnable command) {
+            if (Looper.myLooper() == Looper.getMainLooper()) {
+                command.run();
+            } else {
+                Task.UI_THREAD_EXECUTOR.execute(command);
+            }
+        }
+    };
 
     private final ParseQuery<T> mQuery;
-    private final int mPageSize;
-    private final List<T> mObjects = new ArrayList<>();
-    private final List<T> mUnmodifiableObjects = Collections.unmodifiableList(mObjects);
-    private final Set<OnObjectsChangedCallback> mCallbacks = new HashSet<>();
     private final Object mLock = new Object();
 
-    private int mCurrentPage = -1;
-    private boolean mHasNextPage = true;
-    private Task<List<T>> mLoadNextPageTask;
+    // When set, pages are built from the sort key of the last loaded object instead of setSkip
+    private String mKeysetSortKey;
+    private boolean mKeysetDescending;
+    private PageCache mPageCache;
+    private long mPageCacheTtlMillis = DEFAULT_PAGE_CACHE_TTL_MILLIS;
+    // Whether cached pages are displayed and then queried again, whatever their age
+    private boolean mIsStaleWhileRevalidate;
+    private CachedResultIndex mCachedResultIndex = CachedResultIndex.getDefault();
+    // When set, the page queries only select these keys
+    private Set<String> mSelectedKeys;
+    // The objects to fetch in full, fetched together once the current UI thread message is done
+    private List<T> mPendingFetches = new ArrayList<>();
+    private TaskCompletionSource<Void> mPendingFetch;
+    // When set, the pointers held under its keys are resolved before the pages are delivered
+    private PointerResolver mPointerResolver;
+    // Whether the loaded objects are replaced by their canonical instances
+    private boolean mIsObjectInterning = true;
+    // When set, pages are pinned to the Local Datastore and served from it first
+    private PinBudget mPinBudget;
+    private PinBudgetStore mPinBudgetStore;
 
     /**
      * Constructs a new instance of {@code ParseQueryPager} with the specified mQuery.
@@ -103,8 +109,16 @@ public class ParseQueryPager<T extends ParseObject> {
      * @param pageSize The size of each page.
      */
     public ParseQueryPager(ParseQuery<T> query, int pageSize) {
+        this(new ParsePageSource<T>(), query, pageSize);
+    }
+
+    private ParseQueryPager(ParsePageSource<T> source, ParseQuery<T> query, int pageSize) {
+        super(source, pageSize);
         this.mQuery = new ParseQuery<>(query);
-        this.mPageSize = pageSize;
+        source.setPager(this);
+        // Changes may be merged on a background executor, but observers expect the UI thread
+        super.setNotificationExecutor(UI_THREAD_NOTIFICATION_EXECUTOR);
+        ParseObjectIdentityMap.addPager(this);
     }
 
     /**
@@ -115,206 +129,887 @@ public class ParseQueryPager<T extends ParseObject> {
     }
 
     /**
-     * @return the size of each page for this {@code ParseQueryPager}.
+     * Enables keyset (cursor) pagination.
+     * <p/>
+     * Instead of skipping {@code pageSize * page} rows, each page is built from the value of
+     * {@code sortKey} in the last loaded object, so the server cost of a page does not grow with
+     * its index and objects inserted while paging do not shift the following pages. The query
+     * is ordered by {@code sortKey} and then by {@code objectId} to break ties, replacing any order
+     * set on the original query.
+     * <p/>
+     * Must be called before the first page is loaded.
+     *
+     * @param sortKey    The key the results are ordered by, such as {@code "createdAt"}.
+     * @param descending Whether the results are ordered by descending {@code sortKey}.
+     */
+    public void setKeysetPagination(String sortKey, boolean descending) {
+        if (sortKey == null) {
+            throw new IllegalArgumentException("The sort key must not be null");
+        }
+        if (getCurrentPage() >= 0 || isLoadingNextPage()) {
+            throw new IllegalStateException("Keyset pagination must be enabled before the " +
+                    "first page is loaded");
+        }
+        synchronized (mLock) {
+            mKeysetSortKey = sortKey;
+            mKeysetDescending = descending;
+        }
+    }
+
+    /**
+     * @return whether this {@code ParseQueryPager} uses keyset pagination.
      */
-    public int getPageSize() {
-        return mPageSize;
+    public boolean isKeysetPagination() {
+        synchronized (mLock) {
+            return mKeysetSortKey != null;
+        }
     }
 
     /**
-     * Returns the current page of the pager in the result set.
+     * Only selects {@code keys} in the page queries, the keys displayed in the list, so the pages
+     * are smaller and faster to load and decode. The loaded objects only hold these keys, plus
+     * their {@code objectId}, {@code createdAt} and {@code updatedAt}: use
+     * {@link #fetchFullObject(ParseObject)} before displaying the others, such as when a row is
+     * opened. The keyset sort key, if any, is always selected.
      * <p/>
-     * The value is zero-based. When the row set is first returned the pager will be at position -1,
-     * which is before the first page.
+     * Must be called before the first page is loaded.
      *
-     * @return the current page.
+     * @param keys The keys to select, or {@code null} to select all of them, the default.
      */
-    public int getCurrentPage() {
+    public void setSelectedKeys(Collection<String> keys) {
+        if (getCurrentPage() >= 0 || isLoadingNextPage()) {
+            throw new IllegalStateException("The selected keys must be set before the first " +
+                    "page is loaded");
+        }
         synchronized (mLock) {
-            return mCurrentPage;
+            mSelectedKeys = keys != null ? new HashSet<>(keys) : null;
         }
     }
 
     /**
-     * @return whether the pager has more pages.
+     * @return the keys selected by the page queries, or {@code null} if all of them are.
      */
-    public boolean hasNextPage() {
+    public Set<String> getSelectedKeys() {
         synchronized (mLock) {
-            return mHasNextPage;
+            return mSelectedKeys != null ? Collections.unmodifiableSet(mSelectedKeys) : null;
         }
     }
 
     /**
-     * @return whether the pager is currently loading the next page.
+     * Makes {@code query} only select the {@link #setSelectedKeys(Collection) selected keys}.
      */
-    public boolean isLoadingNextPage() {
+    void applySelectedKeys(ParseQuery<T> query) {
+        Set<String> keys;
         synchronized (mLock) {
-            return mLoadNextPageTask != null && !mLoadNextPageTask.isCompleted();
+            if (mSelectedKeys == null) {
+                return;
+            }
+            keys = new HashSet<>(mSelectedKeys);
+            if (mKeysetSortKey != null) {
+                // Needed to build the cursor of the next page
+                keys.add(mKeysetSortKey);
+            }
         }
+        query.selectKeys(keys);
     }
 
     /**
-     * @return the loaded objects.
+     * Resolves the related objects the loaded objects point to under {@code keys}, such as the
+     * author of each post, before delivering each page. The pointers of a page are resolved with
+     * one query per class of the related objects, whatever the number of rows and keys, and the
+     * objects resolved recently are reused across pages and pagers. Unlike
+     * {@link ParseQuery#include(String)}, an object related to several rows is only loaded once.
+     * <p/>
+     * Keys holding lists of pointers are resolved too. If the pointers can't be resolved, the
+     * page is delivered with them as they are. When {@link #setSelectedKeys(Collection) keys are
+     * selected}, {@code keys} must be selected too.
+     *
+     * @param keys The keys holding the pointers to resolve, or {@code null} to not resolve them,
+     *             the default.
      */
-    public List<T> getObjects() {
-        return mUnmodifiableObjects;
+    public void setResolvedPointers(Collection<String> keys) {
+        synchronized (mLock) {
+            mPointerResolver = keys != null && !keys.isEmpty() ?
+                    new PointerResolver(new HashSet<>(keys)) : null;
+        }
     }
 
-    public void addOnObjectsChangedCallback(OnObjectsChangedCallback callback) {
+    /**
+     * @return the keys holding the pointers to resolve, or {@code null} if they are not resolved.
+     */
+    public Set<String> getResolvedPointers() {
+        PointerResolver resolver = getPointerResolver();
+        return resolver != null ? Collections.unmodifiableSet(resolver.getKeys()) : null;
+    }
+
+    PointerResolver getPointerResolver() {
         synchronized (mLock) {
-            mCallbacks.add(callback);
+            return mPointerResolver;
         }
     }
 
-    public void removeOnObjectsChangedCallback(OnObjectsChangedCallback callback) {
+    /**
+     * Sets whether the loaded objects are replaced by their canonical instances, shared with the
+     * other pages and pagers of the process, the default. An object displayed by several lists is
+     * then held once, and when one of them loads a more recent version of it the instance is
+     * updated in place and its rows are notified as changed in every list.
+     * <p/>
+     * The canonical instances are weakly referenced, they are forgotten with the pages holding
+     * them. When disabled, each page holds the instances its query returned.
+     *
+     * @param interning Whether to intern the loaded objects.
+     */
+    public void setObjectInterning(boolean interning) {
         synchronized (mLock) {
-            mCallbacks.remove(callback);
+            mIsObjectInterning = interning;
         }
     }
 
-    @SuppressWarnings("unchecked")
-    private void notifyRangeChanged(int positionStart, int positionEnd) {
+    public boolean isObjectInterning() {
         synchronized (mLock) {
-            for (OnObjectsChangedCallback callback : mCallbacks) {
-                callback.onItemRangeChanged(this, positionStart, positionEnd);
-            }
+            return mIsObjectInterning;
         }
     }
 
-    @SuppressWarnings("unchecked")
-    private void notifyRangeInserted(int positionStart, int positionEnd) {
+    /**
+     * @return the canonical instances of the objects loaded by the pagers of the process, by class
+     * name and id, with the number of loaded objects that were replaced by one.
+     */
+    public static IdentityMap<String, ParseObject> getIdentityMap() {
+        return ParseObjectIdentityMap.getMap();
+    }
+
+    /**
+     * Fetches all the keys of an object loaded with {@link #setSelectedKeys(Collection) selected
+     * keys}, such as when its row is opened. The objects requested while the UI thread handles
+     * the same message are fetched together, with a single
+     * {@link ParseObject#fetchAllIfNeededInBackground(List)}.
+     *
+     * @param object A loaded object.
+     * @return a task that completes with {@code object} once it holds all of its keys.
+     */
+    public Task<T> fetchFullObject(final T object) {
+        if (object.isDataAvailable()) {
+            return Task.forResult(object);
+        }
+        Task<Void> fetch;
         synchronized (mLock) {
-            for (OnObjectsChangedCallback callback : mCallbacks) {
-                callback.onItemRangeInserted(this, positionStart, positionEnd);
+            if (mPendingFetch == null) {
+                mPendingFetch = new TaskCompletionSource<>();
+                // Posted, so the objects requested by the rest of the message are fetched with it
+                getFullFetchExecutor().execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        fetchPendingObjects();
+                    }
+                });
             }
+            if (!mPendingFetches.contains(object)) {
+                mPendingFetches.add(object);
+            }
+            fetch = mPendingFetch.getTask();
         }
+        return fetch.onSuccess(new Continuation<Void, T>() {
+            @Override
+            public T then(Task<Void> task) throws Exception {
+                return object;
+            }
+        });
+    }
+
+    /**
+     * @return the executor the pending {@link #fetchFullObject(ParseObject) full fetches} are
+     * started on, after the message that requested them, and merged on.
+     */
+    Executor getFullFetchExecutor() {
+        return Task.UI_THREAD_EXECUTOR;
+    }
+
+    /**
+     * Fetches the full objects of {@code objects} in a single request.
+     *
+     * @return a task that completes with the fetched objects, which may be other instances.
+     */
+    Task<List<T>> fetchAll(List<T> objects) {
+        return ParseObject.fetchAllIfNeededInBackground(objects);
     }
 
-    private void setLoadNextPageTask(Task<List<T>> task) {
+    private void fetchPendingObjects() {
+        final List<T> objects;
+        final TaskCompletionSource<Void> tcs;
         synchronized (mLock) {
-            mLoadNextPageTask = task.continueWithTask(new Continuation<List<T>, Task<List<T>>>() {
-                @Override
-                public Task<List<T>> then(Task<List<T>> task) throws Exception {
-                    synchronized (mLock) {
-                        mLoadNextPageTask = null;
-                    }
-                    return task;
+            objects = mPendingFetches;
+            tcs = mPendingFetch;
+            mPendingFetches = new ArrayList<>();
+            mPendingFetch = null;
+        }
+        fetchAll(objects).continueWith(new Continuation<List<T>, Void>() {
+            @Override
+            public Void then(Task<List<T>> task) throws Exception {
+                if (task.isFaulted()) {
+                    tcs.trySetError(task.getError());
+                } else if (task.isCancelled()) {
+                    tcs.trySetCancelled();
+                } else {
+                    mergeFullObjects(objects, task.getResult());
+                    tcs.trySetResult(null);
                 }
-            });
+                return null;
+            }
+        }, getFullFetchExecutor());
+    }
+
+    /**
+     * Merges the fetched objects into the projected instances the rows hold, and rebinds their
+     * rows.
+     */
+    private void mergeFullObjects(List<T> objects, List<T> fetched) {
+        Map<String, T> fetchedById = new HashMap<>();
+        for (T object : fetched) {
+            fetchedById.put(object.getObjectId(), object);
+        }
+        List<Object> keys = new ArrayList<>(objects.size());
+        for (T object : objects) {
+            T full = fetchedById.get(object.getObjectId());
+            if (full == null) {
+                continue;
+            }
+            if (full != object) {
+                object.setState(full.getState());
+            }
+            keys.add(getSource().getKey(object));
+        }
+        if (!keys.isEmpty()) {
+            notifyObjectsChanged(keys);
         }
     }
 
     /**
-     * Returns a new instance of {@link ParseQuery} to be used to load the next page of results.
-     * <p/>
-     * Its limit should be one more than {@code mPageSize} so that {@code mHasNextPage} can be
-     * determined.
+     * Sets the cache the pages are looked up in before querying them, and stored in once queried
+     * from the network, with a time to live of 30 seconds.
      *
-     * @param page The page the mQuery should load.
-     * @return a new instance of {@link ParseQuery}.
+     * @param cache The cache, or {@code null} to query every page.
+     * @see #setPageCache(PageCache, long)
      */
-    protected ParseQuery<T> createQuery(int page) {
-        ParseQuery<T> query = new ParseQuery<>(getQuery());
-        query.setSkip(getPageSize() * page);
-        // Limit is mPageSize + 1 so we can detect if there are more pages
-        query.setLimit(getPageSize() + 1);
-        return query;
+    public void setPageCache(PageCache cache) {
+        setPageCache(cache, DEFAULT_PAGE_CACHE_TTL_MILLIS);
     }
 
     /**
-     * Loads the next page.
+     * Sets the cache the pages are looked up in before querying them, and stored in once queried
+     * from the network, such as the {@link PageCache#getDefault() process-wide cache} so that a
+     * new pager for a query displayed recently starts from its pages.
      * <p/>
-     * The next page is defined by {@code mCurrentPage + 1}.
+     * Pages are loaded stale-while-revalidate: a page found in the cache is delivered right away.
+     * If it is older than its time to live it is then queried from the network, and only the rows
+     * that differ are updated. A page younger than that is not queried, unless the query uses
+     * {@link ParseQuery.CachePolicy#CACHE_THEN_NETWORK}. Refreshes always query the network and
+     * update the cache.
      *
-     * @param callback A {@code callback} that will be called with the result of the next page.
-     * @param ct       Token used to cancel the task.
+     * @param cache     The cache, or {@code null} to query every page.
+     * @param ttlMillis How long a page stored by this pager is used without revalidating it, 0 to
+     *                  always revalidate it.
      */
-    public void loadNextPage(final FindCallback<T> callback, final CancellationToken ct) {
-        if (!hasNextPage()) {
-            throw new IllegalStateException("Unable to load next page when there are no more " +
-                    "pages available");
+    public void setPageCache(PageCache cache, long ttlMillis) {
+        if (ttlMillis < 0) {
+            throw new IllegalArgumentException("The time to live must not be negative");
         }
+        synchronized (mLock) {
+            mPageCache = cache;
+            mPageCacheTtlMillis = ttlMillis;
+        }
+    }
 
-        final int page = getCurrentPage() + 1;
+    /**
+     * @return the cache of the pages, {@code null} by default.
+     */
+    public PageCache getPageCache() {
+        synchronized (mLock) {
+            return mPageCache;
+        }
+    }
 
-        final TaskCompletionSource<List<T>> tcs = new TaskCompletionSource<>();
-        final ParseQuery<T> query = createQuery(page);
+    /**
+     * @return how long a page stored in the {@link #setPageCache(PageCache, long) page cache} is
+     * used without revalidating it.
+     */
+    public long getPageCacheTtl() {
+        synchronized (mLock) {
+            return mPageCacheTtlMillis;
+        }
+    }
 
-        ParseQuery.CachePolicy policy = query.getCachePolicy();
-        if (policy == ParseQuery.CachePolicy.CACHE_THEN_NETWORK ||
-                policy == ParseQuery.CachePolicy.CACHE_ELSE_NETWORK) {
+    /**
+     * Revalidates every cached page, whatever its age: the pages found in the
+     * {@link #setPageCache(PageCache) page cache}, or in the cache of the query if its policy is
+     * {@link ParseQuery.CachePolicy#CACHE_ELSE_NETWORK} or
+     * {@link ParseQuery.CachePolicy#CACHE_ONLY}, are delivered right away and then queried from the
+     * network, so only the rows that differ are updated.
+     *
+     * @param staleWhileRevalidate Whether cached pages are always revalidated. Defaults to false.
+     */
+    public void setStaleWhileRevalidate(boolean staleWhileRevalidate) {
+        synchronized (mLock) {
+            mIsStaleWhileRevalidate = staleWhileRevalidate;
+        }
+    }
 
-            // If there is no cached results, don't waste time looking for it!
-            if (!query.hasCachedResult()) {
-                query.setCachePolicy(ParseQuery.CachePolicy.NETWORK_ONLY);
-            }
+    /**
+     * @return whether cached pages are always revalidated.
+     */
+    public boolean isStaleWhileRevalidate() {
+        synchronized (mLock) {
+            return mIsStaleWhileRevalidate;
         }
+    }
 
-        query.findInBackground(new FindCallback<T>() {
+    /**
+     * Drops the pages of the query of this pager from its {@link #setPageCache(PageCache) cache},
+     * such as after objects it matches were saved or deleted.
+     */
+    public void invalidatePageCache() {
+        PageCache cache = getPageCache();
+        String key = getCacheKey(getQuery());
+        if (cache != null && key != null) {
+            cache.invalidate(key);
+        }
+    }
 
-            AtomicInteger callbacks = new AtomicInteger();
+    /**
+     * Sets the index telling which pages are in the cache of the query, so that a page is only
+     * looked up in the cache, which is on disk, the first time it is loaded with
+     * {@link ParseQuery.CachePolicy#CACHE_THEN_NETWORK} or
+     * {@link ParseQuery.CachePolicy#CACHE_ELSE_NETWORK}. The index is kept up to date as pages
+     * are loaded, but not when the cache is cleared other than with
+     * {@link #clearAllCachedResults()}.
+     *
+     * @param index The index, {@link CachedResultIndex#getDefault() the process-wide one} by
+     *              default, or {@code null} to look every page up in the cache.
+     */
+    public void setCachedResultIndex(CachedResultIndex index) {
+        synchronized (mLock) {
+            mCachedResultIndex = index;
+        }
+    }
+
+    public CachedResultIndex getCachedResultIndex() {
+        synchronized (mLock) {
+            return mCachedResultIndex;
+        }
+    }
+
+    /**
+     * Clears the cached results of every query, and the
+     * {@link CachedResultIndex#getDefault() process-wide index} of the cached pages. To be used
+     * instead of {@link ParseQuery#clearAllCachedResults()}, which leaves the index out of date.
+     */
+    public static void clearAllCachedResults() {
+        ParseQuery.clearAllCachedResults();
+        CachedResultIndex.getDefault().invalidateAll();
+    }
+
+    /**
+     * Pins each loaded page to the Local Datastore, under a label derived from its query, and
+     * serves the pages from their pins first: a pinned page is delivered right away and then
+     * queried from the network, updating only the rows that differ and pinning the new results.
+     * If the network query fails, the pinned page is kept, so a list loaded once can be paged
+     * through offline. Pinned pages are served instead of the {@link #setPageCache(PageCache) page
+     * cache} and of the cache of the query, which can't be used with the Local Datastore.
+     * <p/>
+     * Once the pinned pages hold more objects than {@code budget} allows, the least recently used
+     * ones are unpinned. The budget is only kept for the lifetime of the process, unless it is the
+     * one of {@link ParseQueryAdapter#setLocalDatastorePinning(boolean)}.
+     *
+     * @param budget The budget of the pinned pages, such as {@link PinBudget#getDefault()}, or
+     *               {@code null} to stop pinning pages. Defaults to {@code null}.
+     * @throws IllegalStateException if the Local Datastore is not enabled.
+     */
+    public void setLocalDatastorePinning(PinBudget budget) {
+        if (budget != null && !Parse.isLocalDatastoreEnabled()) {
+            throw new IllegalStateException("The Local Datastore is not enabled");
+        }
+        synchronized (mLock) {
+            mPinBudget = budget;
+            mPinBudgetStore = null;
+        }
+    }
+
+    /**
+     * Pins the pages within the budget of {@code store}, saving it each time it changes.
+     */
+    void setLocalDatastorePinning(PinBudgetStore store) {
+        setLocalDatastorePinning(store != null ? store.getBudget() : null);
+        synchronized (mLock) {
+            mPinBudgetStore = store;
+        }
+    }
+
+    /**
+     * @return the budget of the pinned pages, or {@code null} if pages are not pinned.
+     */
+    public PinBudget getPinBudget() {
+        synchronized (mLock) {
+            return mPinBudget;
+        }
+    }
+
+    /**
+     * Returns the label the page loaded by {@code pageQuery} is pinned under: the digests of the
+     * {@link #getCacheKey(ParseQuery) keys} of the query of this pager and of the page query, so
+     * it is the same in every process and the pages of a query share a prefix.
+     *
+     * @return the label, or {@code null} if the page can't be pinned.
+     */
+    String getPinLabel(ParseQuery<T> pageQuery) {
+        String queryKey = getCacheKey(getQuery());
+        String pageKey = getCacheKey(pageQuery);
+        if (queryKey == null || pageKey == null) {
+            return null;
+        }
+        return PIN_LABEL_PREFIX + digest(queryKey) + "." + digest(pageKey);
+    }
 
+    /**
+     * Replaces the objects pinned under {@code label} with {@code objects}, and unpins the least
+     * recently used pages if the budget is exceeded.
+     */
+    void pinPage(final String label, final List<T> objects) {
+        final PinBudget budget;
+        final PinBudgetStore store;
+        synchronized (mLock) {
+            budget = mPinBudget;
+            store = mPinBudgetStore;
+        }
+        if (budget == null) {
+            return;
+        }
+        Task<Void> unpinned = ParseObject.unpinAllInBackground(label);
+        unpinned.continueWithTask(new Continuation<Void, Task<Void>>() {
             @Override
-            public void done(List<T> results, ParseException e) {
-                boolean isCancelled = ct != null && ct.isCancellationRequested();
-                if (!isCancelled && e == null) {
-                    onPage(page, results);
-                } else if (isCancelled) {
-                    Log.d(TAG, "Load was canceled, set the results to null!");
-                    results = null;
+            public Task<Void> then(Task<Void> task) throws Exception {
+                return ParseObject.pinAllInBackground(label, objects);
+            }
+        }).continueWith(new Continuation<Void, Void>() {
+            @Override
+            public Void then(Task<Void> task) throws Exception {
+                if (task.isFaulted()) {
+                    Log.w(TAG, "Unable to pin " + label, task.getError());
+                    budget.unpin(label);
+                } else {
+                    for (String evicted : budget.pin(label, objects.size())) {
+                        ParseObject.unpinAllInBackground(evicted);
+                    }
                 }
-
-                boolean isCacheThenNetwork = false;
-                try {
-                    ParseQuery.CachePolicy policy = query.getCachePolicy();
-                    isCacheThenNetwork = policy == ParseQuery.CachePolicy.CACHE_THEN_NETWORK;
-                } catch (IllegalStateException ex) {
-                    // do nothing, LDS is enabled and we can't use CACHE_THEN_NETWORK
+                if (store != null) {
+                    store.save();
                 }
+                return null;
+            }
+        }, Task.BACKGROUND_EXECUTOR);
+    }
 
-                if (!isCacheThenNetwork || callbacks.incrementAndGet() >= 2) {
-                    if (isCancelled) {
-                        tcs.trySetCancelled();
-                    } else {
-                        tcs.trySetResult(results);
-                    }
+    /**
+     * Unpins the pages of the query of this pager pinned within its budget, such as after objects
+     * it matches were deleted.
+     */
+    public void unpinPages() {
+        final PinBudget budget;
+        final PinBudgetStore store;
+        synchronized (mLock) {
+            budget = mPinBudget;
+            store = mPinBudgetStore;
+        }
+        String queryKey = getCacheKey(getQuery());
+        if (budget == null || queryKey == null) {
+            return;
+        }
+        String prefix = PIN_LABEL_PREFIX + digest(queryKey) + ".";
+        for (String label : budget.getPinnedPages().keySet()) {
+            if (label.startsWith(prefix)) {
+                budget.unpin(label);
+                ParseObject.unpinAllInBackground(label);
+            }
+        }
+        if (store != null) {
+            Task.callInBackground(new Callable<Void>() {
+                @Override
+                public Void call() throws Exception {
+                    store.save();
+                    return null;
                 }
+            });
+        }
+    }
+
+    /**
+     * Returns a short hex digest of {@code key}, to keep the pin labels short.
+     */
+    private static String digest(String key) {
+        byte[] hash;
+        try {
+            hash = MessageDigest.getInstance("SHA-1").digest(key.getBytes(UTF_8));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+        StringBuilder hex = new StringBuilder(32);
+        for (int i = 0; i < 16; i++) {
+            hex.append(Character.forDigit((hash[i] >> 4) & 0xf, 16))
+                    .append(Character.forDigit(hash[i] & 0xf, 16));
+        }
+        return hex.toString();
+    }
+
+    /**
+     * Returns the key identifying the results of {@code query} in a {@link PageCache}: its class,
+     * constraints, order, limit, skip and included and selected keys, in a canonical form so that
+     * equal queries built in a different order share their pages. The cache policy is ignored.
+     *
+     * @param query The query.
+     * @return the key of the query, or {@code null} if it can't be encoded, such as when it is
+     * constrained by an unsaved object.
+     */
+    public static String getCacheKey(ParseQuery<?> query) {
+        JSONObject json;
+        try {
+            json = query.getBuilder().build().toJSON(PointerEncoder.get());
+        } catch (RuntimeException e) {
+            return null;
+        }
+        StringBuilder key = new StringBuilder();
+        appendCanonical(json, key);
+        return key.toString();
+    }
 
-                callback.done(results, e);
+    private static void appendCanonical(Object value, StringBuilder out) {
+        if (value instanceof JSONObject) {
+            JSONObject object = (JSONObject) value;
+            List<String> names = new ArrayList<>();
+            Iterator<String> keys = object.keys();
+            while (keys.hasNext()) {
+                names.add(keys.next());
             }
-        });
+            Collections.sort(names);
+            out.append('{');
+            for (int i = 0; i < names.size(); i++) {
+                if (i > 0) {
+                    out.append(',');
+                }
+                out.append(JSONObject.quote(names.get(i))).append(':');
+                appendCanonical(object.opt(names.get(i)), out);
+            }
+            out.append('}');
+        } else if (value instanceof JSONArray) {
+            JSONArray array = (JSONArray) value;
+            out.append('[');
+            for (int i = 0; i < array.length(); i++) {
+                if (i > 0) {
+                    out.append(',');
+                }
+                appendCanonical(array.opt(i), out);
+            }
+            out.append(']');
+        } else if (value instanceof String) {
+            out.append(JSONObject.quote((String) value));
+        } else {
+            out.append(value);
+        }
+    }
 
-        setLoadNextPageTask(tcs.getTask());
+    /**
+     * Sets the executor the changes and results are delivered on.
+     *
+     * @param executor The executor, or {@code null} to deliver them right away on the UI thread
+     *                 and post the ones made on other threads to it.
+     */
+    @Override
+    public void setNotificationExecutor(Executor executor) {
+        super.setNotificationExecutor(executor != null ? executor :
+                UI_THREAD_NOTIFICATION_EXECUTOR);
+    }
+
+    /**
+     * Background work runs on the Bolts background executor.
+     */
+    @Override
+    protected Executor getBackgroundExecutor() {
+        return Task.BACKGROUND_EXECUTOR;
+    }
+
+    /**
+     * Results of background work are applied on the UI thread, where the {@link FindCallback}s of
+     * the page queries are called.
+     */
+    @Override
+    protected Executor getCallbackExecutor() {
+        return Task.UI_THREAD_EXECUTOR;
     }
 
-    private void onPage(int page, List<T> results) {
+    /**
+     * Returns a new instance of {@link ParseQuery} to be used to load a page of results.
+     * <p/>
+     * Its limit should be {@link PageRequest#getLimit()}, one more than the page size, so that the
+     * pager can tell if there is a next page.
+     *
+     * @param request The page the mQuery should load.
+     * @return a new instance of {@link ParseQuery}.
+     */
+    protected ParseQuery<T> createQuery(PageRequest<T> request) {
+        ParseQuery<T> query = request.isRefresh() ? createNetworkFirstQuery() :
+                new ParseQuery<>(getQuery());
+        if (!request.isRefresh() && !request.isGapFill() && isStaleWhileRevalidate()) {
+            revalidateCachedResults(query);
+        }
         synchronized (mLock) {
-            int itemCount = results.size();
+            if (mKeysetSortKey != null) {
+                applyKeysetCursor(query, request);
+            } else {
+                query.setSkip(request.getOffset());
+            }
+        }
+        applySelectedKeys(query);
+        // Limit is mPageSize + 1 so we can detect if there are more pages
+        query.setLimit(request.getLimit());
+        return query;
+    }
 
-            mCurrentPage = page;
+    /**
+     * Constrains {@code query} to the objects after the last object of the previous page.
+     * <p/>
+     * Objects are ordered by the sort key, then by ascending {@code objectId}, and the cursor
+     * matches the objects past the sort value of the last object, or sharing it with a greater
+     * {@code objectId}, so ties never cause gaps or repeats, however many objects share a value.
+     */
+    private void applyKeysetCursor(ParseQuery<T> query, PageRequest<T> request) {
+        if (mKeysetDescending) {
+            query.orderByDescending(mKeysetSortKey);
+        } else {
+            query.orderByAscending(mKeysetSortKey);
+        }
+        if (!"objectId".equals(mKeysetSortKey)) {
+            query.addAscendingOrder("objectId");
+        }
+
+        List<T> previousObjects = request.getPreviousObjects();
+        if (previousObjects.isEmpty()) {
+            // First page, nothing to start from
+            return;
+        }
 
-            // We detect if there are more pages by setting the limit mPageSize + 1 and we
-            // remove the extra if there are more pages.
-            mHasNextPage = itemCount >= mPageSize + 1;
-            if (itemCount > mPageSize) {
-                results.remove(mPageSize);
+        T last = previousObjects.get(previousObjects.size() - 1);
+        Object cursor = last.isDataAvailable() ? getSortKeyValue(last) : null;
+        if (cursor == null ||
+                !whereAfter(query, mKeysetSortKey, mKeysetDescending, cursor, last.getObjectId())) {
+            // Can't build a cursor from a missing value, fall back to the offset
+            query.setSkip(request.getOffset());
+        }
+    }
+
+    /**
+     * Constrains {@code query} to the objects after the one with {@code value} under
+     * {@code sortKey} and {@code objectId}, in the order of the sort key and then of ascending
+     * {@code objectId}.
+     *
+     * @return whether the constraint was added, not when {@code query} already has an
+     * {@code $or} constraint of its own.
+     */
+    static <T extends ParseObject> boolean whereAfter(ParseQuery<T> query, String sortKey,
+            boolean descending, Object value, String objectId) {
+        if ("objectId".equals(sortKey)) {
+            // Unique, no ties
+            if (descending) {
+                query.whereLessThan(sortKey, value);
+            } else {
+                query.whereGreaterThan(sortKey, value);
             }
+            return true;
+        }
+        if (query.getBuilder().build().constraints().containsKey("$or")) {
+            return false;
+        }
 
-            int objectsSize = mObjects.size();
-            boolean inserted = true;
-            if (objectsSize > mPageSize * page) {
-                inserted = false;
-                mObjects.subList(mPageSize * page, Math.min(objectsSize, mPageSize *
-                        (page + 1))).clear();
+        ParseQuery<T> past = ParseQuery.getQuery(query.getClassName());
+        if (descending) {
+            past.whereLessThan(sortKey, value);
+        } else {
+            past.whereGreaterThan(sortKey, value);
+        }
+        ParseQuery<T> tied = ParseQuery.getQuery(query.getClassName());
+        tied.whereEqualTo(sortKey, value);
+        tied.whereGreaterThan("objectId", objectId);
+        // ParseQuery.or() only builds a query of its own, add its clause to the page query
+        Object clause = ParseQuery.or(Arrays.asList(past, tied)).getBuilder().build()
+                .constraints().get("$or");
+        query.whereEqualTo("$or", clause);
+        return true;
+    }
+
+    /**
+     * Returns the value of the keyset sort key for {@code object}.
+     *
+     * @param object A loaded object.
+     * @return the value used as the cursor for the following page.
+     */
+    protected Object getSortKeyValue(T object) {
+        switch (mKeysetSortKey) {
+            case "createdAt":
+                return object.getCreatedAt();
+            case "updatedAt":
+                return object.getUpdatedAt();
+            case "objectId":
+                return object.getObjectId();
+            default:
+                return object.get(mKeysetSortKey);
+        }
+    }
+
+    /**
+     * Returns a copy of the query that only uses the cache if the network is unavailable, unless it
+     * is {@link ParseQuery.CachePolicy#CACHE_ONLY}.
+     */
+    ParseQuery<T> createNetworkFirstQuery() {
+        ParseQuery<T> query = new ParseQuery<>(getQuery());
+        try {
+            ParseQuery.CachePolicy policy = query.getCachePolicy();
+            if (policy == ParseQuery.CachePolicy.CACHE_THEN_NETWORK ||
+                    policy == ParseQuery.CachePolicy.CACHE_ELSE_NETWORK) {
+                query.setCachePolicy(ParseQuery.CachePolicy.NETWORK_ELSE_CACHE);
             }
-            mObjects.addAll(mPageSize * page, results);
+        } catch (IllegalStateException ex) {
+            // do nothing, LDS is enabled and there is no cache policy
+        }
+        return query;
+    }
 
-            int positionStart = mPageSize * page;
-            if (inserted) {
-                notifyRangeInserted(positionStart, itemCount);
-            } else {
-                notifyRangeChanged(positionStart, itemCount);
+    /**
+     * Makes {@code query} deliver its cached results, if any, then the network results.
+     */
+    private static void revalidateCachedResults(ParseQuery<?> query) {
+        try {
+            ParseQuery.CachePolicy policy = query.getCachePolicy();
+            if (policy == ParseQuery.CachePolicy.CACHE_ELSE_NETWORK ||
+                    policy == ParseQuery.CachePolicy.CACHE_ONLY) {
+                query.setCachePolicy(ParseQuery.CachePolicy.CACHE_THEN_NETWORK);
             }
+        } catch (IllegalStateException ex) {
+            // do nothing, LDS is enabled and there is no cache policy
         }
     }
+
+    /**
+     * Moves the page window to {@code position}.
+     *
+     * @param position The position being displayed.
+     * @param ct       Token used to cancel the reloads.
+     * @see #setVisiblePosition(int, Cancellation)
+     */
+    public void setVisiblePosition(int position, CancellationToken ct) {
+        setVisiblePosition(position, toCancellation(ct));
+    }
+
+    /**
+     * Loads the next page.
+     * <p/>
+     * The next page is defined by {@code mCurrentPage + 1}. If that page is already being loaded,
+     * no new query is issued and {@code callback} is called once with the final result of the
+     * query in flight.
+     *
+     * @param callback A {@code callback} that will be called with the result of the next page, may
+     *                 be {@code null}.
+     * @param ct       Token used to cancel the task.
+     */
+    public void loadNextPage(final FindCallback<T> callback, CancellationToken ct) {
+        loadNextPage(callback == null ? null : new LoadCallback<T>() {
+            @Override
+            public void done(List<T> objects, Exception e) {
+                callback.done(objects, toParseException(e));
+            }
+        }, toCancellation(ct));
+    }
+
+    /**
+     * Loads {@code page}, such as when a placeholder row of count mode is displayed.
+     *
+     * @param page     The zero-based page.
+     * @param callback A {@code callback} that will be called with the objects of the page, may be
+     *                 {@code null}.
+     * @param ct       Token used to cancel the task.
+     * @see #loadPage(int, LoadCallback, Cancellation)
+     */
+    public void loadPage(int page, final FindCallback<T> callback, CancellationToken ct) {
+        loadPage(page, callback == null ? null : new LoadCallback<T>() {
+            @Override
+            public void done(List<T> objects, Exception e) {
+                callback.done(objects, toParseException(e));
+            }
+        }, toCancellation(ct));
+    }
+
+    /**
+     * Loads the pages after the current page up to {@code toPage}, with up to
+     * {@code maxConcurrency} queries in flight unless keyset pagination is enabled, in which case
+     * each page is queried after the previous one.
+     *
+     * @param toPage         The zero-based index of the last page to load.
+     * @param maxConcurrency The maximum number of queries in flight.
+     * @param callback       A {@code callback} that will be called once with the objects of the
+     *                       loaded pages, may be {@code null}.
+     * @param ct             Token used to cancel the task.
+     * @see #loadPages(int, int, LoadCallback, Cancellation)
+     */
+    public void loadPages(int toPage, int maxConcurrency, final FindCallback<T> callback,
+            CancellationToken ct) {
+        loadPages(toPage, maxConcurrency, callback == null ? null : new LoadCallback<T>() {
+            @Override
+            public void done(List<T> objects, Exception e) {
+                callback.done(objects, toParseException(e));
+            }
+        }, toCancellation(ct));
+    }
+
+    /**
+     * Reloads the pages loaded so far without clearing the loaded objects.
+     * <p/>
+     * The pages are fetched with a query that only uses the cache if the network is unavailable,
+     * then the differences with the loaded objects are computed in the background, by
+     * {@code objectId} and {@code updatedAt}, and applied on the UI thread as the minimal set of
+     * removed, moved, inserted and changed ranges.
+     *
+     * @param ct Token used to cancel the refresh.
+     * @return a task that completes once the differences are applied, with the refreshed objects.
+     */
+    public Task<List<T>> refreshInBackground(CancellationToken ct) {
+        final TaskCompletionSource<List<T>> tcs = new TaskCompletionSource<>();
+        refresh(new LoadCallback<T>() {
+            @Override
+            public void done(List<T> objects, Exception e) {
+                if (e != null) {
+                    tcs.trySetError(e);
+                } else if (objects == null) {
+                    tcs.trySetCancelled();
+                } else {
+                    tcs.trySetResult(objects);
+                }
+            }
+        }, toCancellation(ct));
+        return tcs.getTask();
+    }
+
+    static ParseException toParseException(Exception e) {
+        if (e == null || e instanceof ParseException) {
+            return (ParseException) e;
+        }
+        return new ParseException(e);
+    }
+
+    private static Cancellation toCancellation(final CancellationToken ct) {
+        if (ct == null) {
+            return null;
+        }
+        return new Cancellation() {
+            @Override
+            public boolean isCancellationRequested() {
+                return ct.isCancellationRequested();
+            }
+        };
+    }
 }
\ No newline at end of file
@@ -0,0 +1,153 @@
+package com.parse;
+
+import android.content.Context;
+import android.util.Log;
+
+import com.tiagobagni.parse.paging.PinBudget;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+
+import bolts.Task;
+
+/**
+ * Stores the state of the {@link PinBudget#getDefault() process-wide pin budget} in app storage,
+ * next to the Local Datastore, so the pages pinned by a previous process are still unpinned when
+ * the budget is exceeded.
+ */
+class PinBudgetStore {
+
+    private static final String TAG = "PinBudgetStore";
+    private static final String DIRECTORY = "ParseQueryAdapter";
+    private static final String FILE_NAME = "pins";
+    private static final int VERSION = 1;
+
+    private static PinBudgetStore sDefault;
+
+    private final File mFile;
+    private final PinBudget mBudget;
+
+    private PinBudgetStore(Context context, PinBudget budget) {
+        mFile = new File(new File(context.getFilesDir(), DIRECTORY), FILE_NAME);
+        mBudget = budget;
+    }
+
+    /**
+     * Returns the store of the process-wide budget, restoring the budget in the background the
+     * first time.
+     */
+    static synchronized PinBudgetStore getDefault(Context context) {
+        if (sDefault == null) {
+            final PinBudgetStore store = new PinBudgetStore(context.getApplicationContext(),
+                    PinBudget.getDefault());
+            sDefault = store;
+            Task.callInBackground(new Callable<Void>() {
+                @Override
+                public Void call() throws Exception {
+                    store.restore();
+                    return null;
+                }
+            });
+        }
+        return sDefault;
+    }
+
+    PinBudget getBudget() {
+        return mBudget;
+    }
+
+    private void restore() {
+        List<String> evicted = mBudget.restore(load());
+        for (String label : evicted) {
+            ParseObject.unpinAllInBackground(label);
+        }
+        if (!evicted.isEmpty()) {
+            save();
+        }
+    }
+
+    private Map<String, Integer> load() {
+        Map<String, Integer> pages = new LinkedHashMap<>();
+        if (!mFile.isFile()) {
+            return pages;
+        }
+
+        DataInputStream in = null;
+        try {
+            in = new DataInputStream(new BufferedInputStream(new FileInputStream(mFile)));
+            if (in.readInt() != VERSION) {
+                throw new IOException("Unknown version");
+            }
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                pages.put(in.readUTF(), in.readInt());
+            }
+        } catch (IOException e) {
+            // The pages it listed stay pinned, but the budget keeps working
+            Log.w(TAG, "Unable to read " + mFile + ", deleting it", e);
+            mFile.delete();
+            pages.clear();
+        } finally {
+            closeQuietly(in);
+        }
+        return pages;
+    }
+
+    /**
+     * Writes the state of the budget, replacing the previous one. Must not be called on the UI
+     * thread.
+     */
+    synchronized void save() {
+        File directory = mFile.getParentFile();
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            Log.w(TAG, "Unable to create " + directory);
+            return;
+        }
+
+        // Write to a temporary file first, so the state is never read half written
+        Map<String, Integer> pages = mBudget.getPinnedPages();
+        File tmp = new File(mFile.getPath() + ".tmp");
+        DataOutputStream out = null;
+        try {
+            out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)));
+            out.writeInt(VERSION);
+            out.writeInt(pages.size());
+            for (Map.Entry<String, Integer> page : pages.entrySet()) {
+                out.writeUTF(page.getKey());
+                out.writeInt(page.getValue());
+            }
+            out.close();
+            out = null;
+            if (!tmp.renameTo(mFile)) {
+                Log.w(TAG, "Unable to write " + mFile);
+                tmp.delete();
+            }
+        } catch (IOException e) {
+            Log.w(TAG, "Unable to write " + mFile, e);
+            tmp.delete();
+        } finally {
+            closeQuietly(out);
+        }
+    }
+
+    private static void closeQuietly(Closeable closeable) {
+        if (closeable != null) {
+            try {
+                closeable.close();
+            } catch (IOException e) {
+                // Nothing else to do
+            }
+        }
+    }
+}
\ No newline at end of file
@@ -0,0 +1,164 @@
+package com.parse;
+
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import bolts.Continuation;
+import bolts.Task;
+
+/**
+ * Resolves the pointers the loaded objects hold under some keys, such as the author of each post,
+ * with one query per class of the related objects instead of one fetch per row, and without
+ * repeating related objects across rows like {@link ParseQuery#include(String)} does.
+ * <p/>
+ * The related objects are resolved from their {@link ParseObjectIdentityMap canonical instances}
+ * when they are still displayed by a row, except when a page is refreshed.
+ */
+class PointerResolver {
+
+    private static final String TAG = "PointerResolver";
+    // The largest limit of a query
+    private static final int MAX_IDS_PER_QUERY = 1000;
+
+    private final Set<String> mKeys;
+
+    PointerResolver(Set<String> keys) {
+        mKeys = keys;
+    }
+
+    Set<String> getKeys() {
+        return mKeys;
+    }
+
+    /**
+     * Resolves the pointers {@code objects} hold under the keys of this resolver, in place.
+     * Pointers that can't be resolved stay pointers.
+     *
+     * @param objects   The loaded objects.
+     * @param isRefresh Whether the related objects must be queried even if they are in memory.
+     * @return a task that completes once the pointers are resolved, never faulted.
+     */
+    Task<Void> resolve(List<? extends ParseObject> objects, boolean isRefresh) {
+        // The pointers to resolve, by class name and then by id, as several rows can point to the
+        // same object through different instances
+        Map<String, Map<String, List<ParseObject>>> pointers = new HashMap<>();
+        for (ParseObject object : objects) {
+            for (String key : mKeys) {
+                if (object.isDataAvailable(key)) {
+                    collectPointers(object.get(key), pointers);
+                }
+            }
+        }
+        if (pointers.isEmpty()) {
+            return Task.forResult(null);
+        }
+
+        List<Task<Void>> queries = new ArrayList<>();
+        for (Map.Entry<String, Map<String, List<ParseObject>>> entry : pointers.entrySet()) {
+            String className = entry.getKey();
+            Map<String, List<ParseObject>> byId = entry.getValue();
+            if (!isRefresh) {
+                resolveFromMemory(className, byId);
+            }
+            List<String> ids = new ArrayList<>(byId.keySet());
+            for (int start = 0; start < ids.size(); start += MAX_IDS_PER_QUERY) {
+                List<String> chunk = ids.subList(start,
+                        Math.min(ids.size(), start + MAX_IDS_PER_QUERY));
+                queries.add(query(className, chunk, byId));
+            }
+        }
+        return Task.whenAll(queries);
+    }
+
+    private static void collectPointers(Object value,
+            Map<String, Map<String, List<ParseObject>>> pointers) {
+        if (value instanceof ParseObject) {
+            ParseObject pointer = (ParseObject) value;
+            if (pointer.isDataAvailable() || pointer.getObjectId() == null) {
+                return;
+            }
+            Map<String, List<ParseObject>> byId = pointers.get(pointer.getClassName());
+            if (byId == null) {
+                byId = new HashMap<>();
+                pointers.put(pointer.getClassName(), byId);
+            }
+            List<ParseObject> instances = byId.get(pointer.getObjectId());
+            if (instances == null) {
+                instances = new ArrayList<>(1);
+                byId.put(pointer.getObjectId(), instances);
+            }
+            instances.add(pointer);
+        } else if (value instanceof Collection) {
+            for (Object item : (Collection<?>) value) {
+                collectPointers(item, pointers);
+            }
+        }
+    }
+
+    /**
+     * Resolves the pointers to the objects that have a canonical instance with data, and removes
+     * them from {@code byId}.
+     */
+    private static void resolveFromMemory(String className, Map<String, List<ParseObject>> byId) {
+        List<String> resolvedIds = new ArrayList<>();
+        for (Map.Entry<String, List<ParseObject>> entry : byId.entrySet()) {
+            ParseObject resolved = ParseObjectIdentityMap.get(className, entry.getKey());
+            if (resolved != null && resolved.isDataAvailable()) {
+                fill(entry.getValue(), resolved);
+                resolvedIds.add(entry.getKey());
+            }
+        }
+        byId.keySet().removeAll(resolvedIds);
+    }
+
+    /**
+     * Queries the objects of {@code className} with the given ids.
+     */
+    Task<List<ParseObject>> find(String className, List<String> ids) {
+        ParseQuery<ParseObject> query = ParseQuery.getQuery(className);
+        query.whereContainedIn("objectId", ids);
+        query.setLimit(ids.size());
+        return query.findInBackground();
+    }
+
+    private Task<Void> query(final String className, List<String> ids,
+            final Map<String, List<ParseObject>> byId) {
+        return find(className, ids).continueWith(new Continuation<List<ParseObject>, Void>() {
+            @Override
+            public Void then(Task<List<ParseObject>> task) throws Exception {
+                if (task.isFaulted() || task.isCancelled()) {
+                    Log.w(TAG, "Unable to resolve the pointers to " + className, task.getError());
+                    return null;
+                }
+                for (ParseObject resolved : task.getResult()) {
+                    List<ParseObject> instances = byId.get(resolved.getObjectId());
+                    if (instances != null) {
+                        fill(instances, resolved);
+                        // A pointer lives as long as its row, unlike the result of the query.
+                        // Not merged into an existing canonical instance, off the UI thread
+                        ParseObjectIdentityMap.putIfAbsent(instances.get(0));
+                    }
+                }
+                return null;
+            }
+        });
+    }
+
+    /**
+     * Gives the pointers the data of the resolved object, without making them dirty.
+     */
+    private static void fill(List<ParseObject> pointers, ParseObject resolved) {
+        ParseObject.State state = resolved.getState();
+        for (ParseObject pointer : pointers) {
+            if (pointer != resolved) {
+                pointer.setState(state);
+            }
+        }
+    }
+}
\ No newline at end of file
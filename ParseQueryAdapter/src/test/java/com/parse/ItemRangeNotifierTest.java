@@ -0,0 +1,148 @@
+package com.parse;
+
+import com.tiagobagni.parse.paging.ChangeCoalescer;
+import com.tiagobagni.parse.paging.QueryPager;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class ItemRangeNotifierTest {
+
+    /**
+     * Applies the notifications to a list of rows like a RecyclerView would, counting the rows
+     * bound again.
+     */
+    private static class RecordingTarget implements ItemRangeNotifier.Target {
+        final List<String> rows = new ArrayList<>();
+        int bindCount;
+        int notificationCount;
+        boolean isDataSetChanged;
+
+        @Override
+        public void notifyDataSetChanged() {
+            notificationCount++;
+            isDataSetChanged = true;
+        }
+
+        @Override
+        public void notifyItemRangeChanged(int positionStart, int itemCount) {
+            notificationCount++;
+            for (int i = positionStart; i < positionStart + itemCount; i++) {
+                rows.set(i, rows.get(i) + "'");
+            }
+            bindCount += itemCount;
+        }
+
+        @Override
+        public void notifyItemRangeInserted(int positionStart, int itemCount) {
+            notificationCount++;
+            for (int i = 0; i < itemCount; i++) {
+                rows.add(positionStart + i, "new");
+            }
+            bindCount += itemCount;
+        }
+
+        @Override
+        public void notifyItemMoved(int fromPosition, int toPosition) {
+            notificationCount++;
+            rows.add(toPosition, rows.remove(fromPosition));
+        }
+
+        @Override
+        public void notifyItemRangeRemoved(int positionStart, int itemCount) {
+            notificationCount++;
+            rows.subList(positionStart, positionStart + itemCount).clear();
+        }
+    }
+
+    private RecordingTarget mTarget;
+    private ItemRangeNotifier<QueryPager> mNotifier;
+    private ChangeCoalescer<QueryPager> mCoalescer;
+
+    @Before
+    public void setUp() {
+        mTarget = new RecordingTarget();
+        mTarget.rows.addAll(Arrays.asList("a", "b", "c", "d", "e", "f"));
+        mNotifier = new ItemRangeNotifier<>(mTarget);
+        mCoalescer = new ChangeCoalescer<>();
+    }
+
+    @Test
+    public void pageLoad_bindsOnlyTheInsertedRows() {
+        mCoalescer.onItemRangeInserted(null, 6, 3);
+        mCoalescer.onItemRangeInserted(null, 9, 3);
+        mCoalescer.flush(null, mNotifier);
+
+        assertEquals(1, mTarget.notificationCount);
+        assertEquals(6, mTarget.bindCount);
+        assertEquals(12, mTarget.rows.size());
+        assertFalse(mTarget.isDataSetChanged);
+    }
+
+    @Test
+    public void change_bindsOnlyTheChangedRows() {
+        mCoalescer.onItemRangeChanged(null, 1, 1);
+        mCoalescer.onItemRangeChanged(null, 2, 2);
+        mCoalescer.flush(null, mNotifier);
+
+        assertEquals(1, mTarget.notificationCount);
+        assertEquals(3, mTarget.bindCount);
+        assertEquals(Arrays.asList("a", "b'", "c'", "d'", "e", "f"), mTarget.rows);
+    }
+
+    @Test
+    public void changeOfInsertedRows_bindsThemOnce() {
+        mCoalescer.onItemRangeInserted(null, 2, 2);
+        mCoalescer.onItemRangeChanged(null, 3, 1);
+        mCoalescer.flush(null, mNotifier);
+
+        assertEquals(2, mTarget.bindCount);
+        assertEquals(Arrays.asList("a", "b", "new", "new", "c", "d", "e", "f"), mTarget.rows);
+    }
+
+    @Test
+    public void removal_bindsNothing() {
+        mCoalescer.onItemRangeRemoved(null, 3, 2);
+        mCoalescer.onItemRangeRemoved(null, 2, 1);
+        mCoalescer.flush(null, mNotifier);
+
+        assertEquals(1, mTarget.notificationCount);
+        assertEquals(0, mTarget.bindCount);
+        assertEquals(Arrays.asList("a", "b", "f"), mTarget.rows);
+    }
+
+    @Test
+    public void moveDown_movesTheRangeAfterTheTarget() {
+        mNotifier.onItemRangeMoved(null, 1, 3, 2);
+
+        assertEquals(2, mTarget.notificationCount);
+        assertEquals(0, mTarget.bindCount);
+        assertEquals(Arrays.asList("a", "d", "e", "b", "c", "f"), mTarget.rows);
+    }
+
+    @Test
+    public void moveUp_movesTheRangeBeforeTheTarget() {
+        mNotifier.onItemRangeMoved(null, 3, 0, 3);
+
+        assertEquals(3, mTarget.notificationCount);
+        assertEquals(0, mTarget.bindCount);
+        assertEquals(Arrays.asList("d", "e", "f", "a", "b", "c"), mTarget.rows);
+    }
+
+    @Test
+    public void onChanged_notifiesTheDataSetChanged() {
+        mCoalescer.onItemRangeInserted(null, 0, 1);
+        mCoalescer.onChanged(null);
+        mCoalescer.flush(null, mNotifier);
+
+        assertEquals(1, mTarget.notificationCount);
+        assertTrue(mTarget.isDataSetChanged);
+        assertEquals(0, mTarget.bindCount);
+    }
+}
\ No newline at end of file
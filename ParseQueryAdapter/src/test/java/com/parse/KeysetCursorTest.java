@@ -0,0 +1,139 @@
+package com.parse;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class KeysetCursorTest {
+
+    private static final int PAGE_SIZE = 4;
+
+    private static class Row {
+        final int score;
+        final String objectId;
+
+        Row(int score, String objectId) {
+            this.score = score;
+            this.objectId = objectId;
+        }
+
+        Object get(String key) {
+            return "score".equals(key) ? score : objectId;
+        }
+
+        @Override
+        public String toString() {
+            return score + ":" + objectId;
+        }
+    }
+
+    /**
+     * By descending score, then ascending objectId, like the page queries.
+     */
+    private static final Comparator<Row> ORDER = new Comparator<Row>() {
+        @Override
+        public int compare(Row lhs, Row rhs) {
+            if (lhs.score != rhs.score) {
+                return lhs.score > rhs.score ? -1 : 1;
+            }
+            return lhs.objectId.compareTo(rhs.objectId);
+        }
+    };
+
+    @Test
+    public void tiesLongerThanAPageAreNeitherRepeatedNorSkipped() throws Exception {
+        List<Row> rows = new ArrayList<>();
+        rows.add(new Row(9, "y"));
+        rows.add(new Row(1, "k"));
+        // Ten objects share a score, more than two pages
+        for (char id = 'a'; id <= 'j'; id++) {
+            rows.add(new Row(5, String.valueOf(id)));
+        }
+        rows.add(new Row(9, "x"));
+        Collections.sort(rows, ORDER);
+
+        List<Row> loaded = new ArrayList<>();
+        while (true) {
+            ParseQuery<ParseObject> query = ParseQuery.getQuery("Post");
+            if (!loaded.isEmpty()) {
+                Row last = loaded.get(loaded.size() - 1);
+                assertTrue(ParseQueryPager.whereAfter(query, "score", true, last.score,
+                        last.objectId));
+            }
+            JSONObject where = query.getBuilder().build().toJSON(PointerEncoder.get())
+                    .optJSONObject("where");
+            assertFalse(String.valueOf(where).contains("$nin"));
+
+            List<Row> page = new ArrayList<>();
+            for (Row row : rows) {
+                if (page.size() < PAGE_SIZE && (where == null || matches(where, row))) {
+                    page.add(row);
+                }
+            }
+            if (page.isEmpty()) {
+                break;
+            }
+            loaded.addAll(page);
+        }
+
+        assertEquals(rows, loaded);
+    }
+
+    /**
+     * Evaluates the constraints the cursor uses, as the server would.
+     */
+    @SuppressWarnings("unchecked")
+    private static boolean matches(JSONObject where, Row row) throws JSONException {
+        Iterator<String> keys = where.keys();
+        while (keys.hasNext()) {
+            String key = keys.next();
+            if ("$or".equals(key)) {
+                JSONArray clauses = where.getJSONArray(key);
+                boolean matched = false;
+                for (int i = 0; i < clauses.length(); i++) {
+                    matched |= matches(clauses.getJSONObject(i), row);
+                }
+                if (!matched) {
+                    return false;
+                }
+                continue;
+            }
+
+            Comparable<Object> value = (Comparable<Object>) row.get(key);
+            Object condition = where.get(key);
+            if (!(condition instanceof JSONObject)) {
+                if (!value.equals(condition)) {
+                    return false;
+                }
+                continue;
+            }
+            JSONObject operators = (JSONObject) condition;
+            Iterator<String> names = operators.keys();
+            while (names.hasNext()) {
+                String operator = names.next();
+                int comparison = value.compareTo(operators.get(operator));
+                if ("$lt".equals(operator)) {
+                    if (comparison >= 0) {
+                        return false;
+                    }
+                } else if ("$gt".equals(operator)) {
+                    if (comparison <= 0) {
+                        return false;
+                    }
+                } else {
+                    fail("Unexpected operator " + operator);
+                }
+            }
+        }
+        return true;
+    }
+}
\ No newline at end of file
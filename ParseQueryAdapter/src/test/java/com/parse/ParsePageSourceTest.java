@@ -0,0 +1,91 @@
+package com.parse;
+
+import com.tiagobagni.parse.paging.CachedResultIndex;
+import com.tiagobagni.parse.paging.PageCache;
+import com.tiagobagni.parse.paging.PageRequest;
+import com.tiagobagni.parse.paging.PageRequests;
+import com.tiagobagni.parse.paging.PageSource;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class ParsePageSourceTest {
+
+    private static final String QUERY_KEY = "query";
+    private static final String PAGE_KEY = "page";
+
+    /**
+     * Records the results delivered to the pager.
+     */
+    private static class RecordingCallback implements PageSource.Callback<ParseObject> {
+        final List<String> events = new ArrayList<>();
+
+        @Override
+        public void onResult(List<ParseObject> objects, boolean isFinal) {
+            events.add("result " + objects.size() + (isFinal ? " final" : ""));
+        }
+
+        @Override
+        public void onError(Exception e, boolean isFinal) {
+            events.add("error" + (isFinal ? " final" : ""));
+        }
+    }
+
+    private static ParsePageSource.PageQueryCallback<ParseObject> newCallback(
+            ParseQuery<ParseObject> query, RecordingCallback callback, PageCache pageCache,
+            CachedResultIndex index) {
+        PageRequest<ParseObject> request = PageRequests.firstPage(20);
+        return new ParsePageSource.PageQueryCallback<>(request, query, callback, pageCache, 0,
+                index, QUERY_KEY, PAGE_KEY, false, false);
+    }
+
+    @Test
+    public void done_withoutPageCacheAndWithTheDefaultIndex() throws Exception {
+        ParseQuery<ParseObject> query = ParseQuery.getQuery("Row");
+        query.setCachePolicy(ParseQuery.CachePolicy.NETWORK_ONLY);
+        RecordingCallback callback = new RecordingCallback();
+        CachedResultIndex index = CachedResultIndex.getDefault();
+
+        newCallback(query, callback, null, index).done(Collections.<ParseObject>emptyList(), null);
+
+        assertEquals("[result 0 final]", callback.events.toString());
+        assertEquals(Boolean.TRUE, index.isCached(QUERY_KEY, PAGE_KEY, Long.MAX_VALUE));
+    }
+
+    @Test
+    public void done_cachesTheNetworkResultsOnly() throws Exception {
+        ParseQuery<ParseObject> query = ParseQuery.getQuery("Row");
+        query.setCachePolicy(ParseQuery.CachePolicy.CACHE_THEN_NETWORK);
+        RecordingCallback callback = new RecordingCallback();
+        PageCache pageCache = new PageCache();
+        ParsePageSource.PageQueryCallback<ParseObject> queryCallback =
+                newCallback(query, callback, pageCache, new CachedResultIndex());
+
+        List<ParseObject> cached = new ArrayList<>();
+        queryCallback.done(cached, null);
+        assertNull(pageCache.get(QUERY_KEY, PAGE_KEY));
+
+        List<ParseObject> network = new ArrayList<>();
+        queryCallback.done(network, null);
+        assertNotNull(pageCache.get(QUERY_KEY, PAGE_KEY));
+        assertEquals("[result 0, result 0 final]", callback.events.toString());
+    }
+
+    @Test
+    public void done_doesNotCacheTheQueryCacheResults() throws Exception {
+        ParseQuery<ParseObject> query = ParseQuery.getQuery("Row");
+        query.setCachePolicy(ParseQuery.CachePolicy.CACHE_ONLY);
+        RecordingCallback callback = new RecordingCallback();
+        PageCache pageCache = new PageCache();
+
+        newCallback(query, callback, pageCache, null).done(new ArrayList<ParseObject>(), null);
+
+        assertNull(pageCache.get(QUERY_KEY, PAGE_KEY));
+        assertEquals("[result 0 final]", callback.events.toString());
+    }
+}
\ No newline at end of file
@@ -0,0 +1,103 @@
+package com.parse;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+import bolts.Task;
+
+import static org.junit.Assert.*;
+
+public class ParseQueryPagerTest {
+
+    /**
+     * Holds the posted full fetches until {@link #runPosted()}, and answers them from memory with
+     * new instances, as the server would.
+     */
+    private static class RecordingPager extends ParseQueryPager<ParseObject> {
+        final List<Runnable> posted = new ArrayList<>();
+        final List<Integer> fetches = new ArrayList<>();
+
+        RecordingPager() {
+            super(ParseQuery.getQuery("Post"));
+        }
+
+        @Override
+        Executor getFullFetchExecutor() {
+            return new Executor() {
+                @Override
+                public void execute(Runnable command) {
+                    posted.add(command);
+                }
+            };
+        }
+
+        @Override
+        Task<List<ParseObject>> fetchAll(List<ParseObject> objects) {
+            fetches.add(objects.size());
+            List<ParseObject> results = new ArrayList<>(objects.size());
+            for (ParseObject object : objects) {
+                results.add(newPost(object.getObjectId(), true));
+            }
+            return Task.forResult(results);
+        }
+
+        void runPosted() {
+            while (!posted.isEmpty()) {
+                posted.remove(0).run();
+            }
+        }
+    }
+
+    private static ParseObject newPost(String objectId, boolean isComplete) {
+        ParseObject.State.Init<?> builder = ParseObject.State.newBuilder("Post")
+                .objectId(objectId)
+                .isComplete(isComplete)
+                .put("title", "Title " + objectId);
+        if (isComplete) {
+            builder.put("body", "Body " + objectId);
+        }
+        return ParseObject.from(builder.build());
+    }
+
+    @Test
+    public void fetchFullObject_fetchesTheObjectsOfAMessageTogether() throws Exception {
+        RecordingPager pager = new RecordingPager();
+        List<ParseObject> projected = Arrays.asList(newPost("a", false), newPost("b", false),
+                newPost("c", false));
+
+        List<Task<ParseObject>> tasks = new ArrayList<>();
+        for (ParseObject object : projected) {
+            tasks.add(pager.fetchFullObject(object));
+        }
+        tasks.add(pager.fetchFullObject(projected.get(0)));
+        assertTrue(pager.fetches.isEmpty());
+        pager.runPosted();
+
+        assertEquals("[3]", pager.fetches.toString());
+        for (Task<ParseObject> task : tasks) {
+            task.waitForCompletion();
+        }
+        for (int i = 0; i < projected.size(); i++) {
+            ParseObject object = projected.get(i);
+            assertSame(object, tasks.get(i).getResult());
+            assertTrue(object.isDataAvailable());
+            assertEquals("Body " + object.getObjectId(), object.getString("body"));
+        }
+    }
+
+    @Test
+    public void fetchFullObject_skipsTheCompleteObjects() throws Exception {
+        RecordingPager pager = new RecordingPager();
+        ParseObject object = newPost("a", true);
+
+        Task<ParseObject> task = pager.fetchFullObject(object);
+
+        assertSame(object, task.getResult());
+        assertTrue(pager.posted.isEmpty());
+        assertTrue(pager.fetches.isEmpty());
+    }
+}
\ No newline at end of file
@@ -0,0 +1,123 @@
+package com.parse;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+
+import bolts.Task;
+
+import static org.junit.Assert.*;
+
+public class PointerResolverTest {
+
+    /**
+     * Answers the queries from memory, recording them.
+     */
+    private static class RecordingResolver extends PointerResolver {
+        final List<String> queries = new ArrayList<>();
+
+        RecordingResolver(String... keys) {
+            super(new HashSet<>(Arrays.asList(keys)));
+        }
+
+        @Override
+        Task<List<ParseObject>> find(String className, List<String> ids) {
+            queries.add(className + " " + ids.size());
+            List<ParseObject> results = new ArrayList<>(ids.size());
+            for (String id : ids) {
+                results.add(newObject(className, id, Collections.<String, Object>singletonMap(
+                        "name", className + id)));
+            }
+            return Task.forResult(results);
+        }
+    }
+
+    private static ParseObject newObject(String className, String objectId,
+            Map<String, Object> values) {
+        ParseObject.State.Init<?> builder = ParseObject.State.newBuilder(className)
+                .objectId(objectId)
+                .isComplete(true);
+        for (Map.Entry<String, Object> entry : values.entrySet()) {
+            builder.put(entry.getKey(), entry.getValue());
+        }
+        return ParseObject.from(builder.build());
+    }
+
+    /**
+     * @return {@code count} posts, each pointing to one of {@code authorCount} authors and one of
+     * {@code categoryCount} categories.
+     */
+    private static List<ParseObject> newPosts(String prefix, int count, int authorCount,
+            int categoryCount) {
+        List<ParseObject> posts = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            Map<String, Object> values = new HashMap<>();
+            values.put("author",
+                    ParseObject.createWithoutData("Author", prefix + (i % authorCount)));
+            values.put("category",
+                    ParseObject.createWithoutData("Category", prefix + (i % categoryCount)));
+            posts.add(newObject("Post", prefix + i, values));
+        }
+        return posts;
+    }
+
+    @Test
+    public void resolve_queriesEachRelatedClassOncePerPage() throws Exception {
+        RecordingResolver resolver = new RecordingResolver("author", "category");
+        List<ParseObject> posts = newPosts("small", 20, 5, 3);
+
+        resolver.resolve(posts, true).waitForCompletion();
+
+        Collections.sort(resolver.queries);
+        assertEquals("[Author 5, Category 3]", resolver.queries.toString());
+        ParseObject author = posts.get(6).getParseObject("author");
+        assertTrue(author.isDataAvailable());
+        assertEquals("Authorsmall1", author.getString("name"));
+    }
+
+    @Test
+    public void resolve_roundTripsDontGrowWithThePageSize() throws Exception {
+        RecordingResolver small = new RecordingResolver("author", "category");
+        small.resolve(newPosts("a", 10, 10, 10), true).waitForCompletion();
+        RecordingResolver large = new RecordingResolver("author", "category");
+        large.resolve(newPosts("b", 500, 50, 7), true).waitForCompletion();
+
+        assertEquals(2, small.queries.size());
+        assertEquals(2, large.queries.size());
+    }
+
+    @Test
+    public void resolve_chunksTheIdsByQueryLimit() throws Exception {
+        RecordingResolver resolver = new RecordingResolver("author");
+
+        resolver.resolve(newPosts("many", 2500, 2500, 1), true).waitForCompletion();
+
+        Collections.sort(resolver.queries);
+        assertEquals("[Author 1000, Author 1000, Author 500]", resolver.queries.toString());
+    }
+
+    @Test
+    public void resolve_usesTheCanonicalInstancesUnlessRefreshing() throws Exception {
+        ParseObject author = newObject("Author", "canonical0",
+                Collections.<String, Object>singletonMap("name", "In memory"));
+        ParseObjectIdentityMap.intern(Collections.singletonList(author));
+        List<ParseObject> posts = newPosts("canonical", 3, 1, 1);
+
+        RecordingResolver resolver = new RecordingResolver("author");
+        resolver.resolve(posts, false).waitForCompletion();
+        assertTrue(resolver.queries.isEmpty());
+        assertEquals("In memory", posts.get(0).getParseObject("author").getString("name"));
+
+        RecordingResolver refreshing = new RecordingResolver("author");
+        refreshing.resolve(newPosts("canonical", 3, 1, 1), true).waitForCompletion();
+        assertEquals("[Author 1]", refreshing.queries.toString());
+        // Keeps the object alive until here, the identity map only holds it weakly
+        assertEquals("canonical0", author.getObjectId());
+    }
+}
\ No newline at end of file
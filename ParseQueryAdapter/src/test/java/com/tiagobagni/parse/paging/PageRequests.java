@@ -0,0 +1,19 @@
+package com.tiagobagni.parse.paging;
+
+import java.util.Collections;
+
+/**
+ * Creates the page requests a {@link QueryPager} would, for the tests of the sources.
+ */
+public class PageRequests {
+
+    private PageRequests() {
+    }
+
+    /**
+     * @return a request for the first page.
+     */
+    public static <T> PageRequest<T> firstPage(int pageSize) {
+        return new PageRequest<>(0, 0, pageSize, Collections.<T>emptyList(), false, false);
+    }
+}
\ No newline at end of file
@@ -0,0 +1,177 @@
+package com.tiagobagni.parse.paging.benchmark;
+
+import com.tiagobagni.parse.paging.CachedResultIndex;
+import com.tiagobagni.parse.paging.InMemoryPageSource;
+import com.tiagobagni.parse.paging.PageRequest;
+import com.tiagobagni.parse.paging.PageSource;
+import com.tiagobagni.parse.paging.QueryPager;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the time {@link QueryPager#loadNextPage} spends on the calling thread, usually the main
+ * thread, to load every page of a list whose pages are checked against a query cache on disk
+ * before being loaded, like Parse queries using {@code CACHE_THEN_NETWORK} or
+ * {@code CACHE_ELSE_NETWORK} do with {@code hasCachedResult()}.
+ * <p/>
+ * The cache is laid out like the one of Parse, a directory with a file per cached result, found by
+ * listing the directory and read to check it. Every other page is cached. Without an index every
+ * page is looked up on disk; with a {@link CachedResultIndex} only the first load of a page is,
+ * as the index outlives the pagers like the process-wide one does.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+public class CachedResultLookupBenchmark {
+
+    // Results of other queries, the directory listing goes through them too
+    private static final int OTHER_CACHED_RESULTS = 200;
+    private static final int RESULT_BYTES = 4096;
+
+    /**
+     * Looks each page up in the cache before loading it, through the index if there is one.
+     */
+    static class CacheCheckingSource implements PageSource<InMemoryPageSource.Row> {
+        private final InMemoryPageSource mSource;
+        private final File mCacheDir;
+        private final CachedResultIndex mIndex;
+
+        CacheCheckingSource(InMemoryPageSource source, File cacheDir, CachedResultIndex index) {
+            mSource = source;
+            mCacheDir = cacheDir;
+            mIndex = index;
+        }
+
+        @Override
+        public void loadPage(PageRequest<InMemoryPageSource.Row> request,
+                Callback<InMemoryPageSource.Row> callback) {
+            long lookupStart = System.nanoTime();
+            request.recordCacheLookup(hasCachedResult(request.getPage()),
+                    System.nanoTime() - lookupStart);
+            mSource.loadPage(request, callback);
+        }
+
+        private boolean hasCachedResult(int page) {
+            if (mIndex == null) {
+                return readCachedResult(page);
+            }
+            Boolean isCached = mIndex.isCached("query", page, Long.MAX_VALUE);
+            if (isCached == null) {
+                isCached = readCachedResult(page);
+                mIndex.put("query", page, isCached);
+            }
+            return isCached;
+        }
+
+        private boolean readCachedResult(int page) {
+            final String suffix = "." + getCacheKey(page);
+            File[] files = mCacheDir.listFiles(new FilenameFilter() {
+                @Override
+                public boolean accept(File dir, String name) {
+                    return name.endsWith(suffix);
+                }
+            });
+            if (files == null || files.length == 0) {
+                return false;
+            }
+            byte[] buffer = new byte[RESULT_BYTES];
+            try (InputStream in = new FileInputStream(files[0])) {
+                while (in.read(buffer) != -1) {
+                    // Read the whole result, like the cache does to parse it
+                }
+            } catch (IOException e) {
+                return false;
+            }
+            return true;
+        }
+
+        @Override
+        public Object getKey(InMemoryPageSource.Row object) {
+            return mSource.getKey(object);
+        }
+
+        @Override
+        public boolean areContentsTheSame(InMemoryPageSource.Row oldObject,
+                InMemoryPageSource.Row newObject) {
+            return mSource.areContentsTheSame(oldObject, newObject);
+        }
+    }
+
+    @Param({"1000", "10000"})
+    public int rows;
+
+    @Param({"false", "true"})
+    public boolean indexed;
+
+    private File mCacheDir;
+    private CacheCheckingSource mSource;
+
+    @Setup
+    public void setUp() throws IOException {
+        mCacheDir = File.createTempFile("query-cache", "");
+        if (!mCacheDir.delete() || !mCacheDir.mkdir()) {
+            throw new IOException("Can't create " + mCacheDir);
+        }
+        for (int i = 0; i < OTHER_CACHED_RESULTS; i++) {
+            writeCachedResult("other-" + i);
+        }
+        int pages = (rows + Pagers.PAGE_SIZE - 1) / Pagers.PAGE_SIZE;
+        for (int page = 0; page < pages; page += 2) {
+            writeCachedResult(getCacheKey(page));
+        }
+        mSource = new CacheCheckingSource(Pagers.newSource(rows, false), mCacheDir,
+                indexed ? new CachedResultIndex() : null);
+    }
+
+    @TearDown
+    public void tearDown() {
+        File[] files = mCacheDir.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        mCacheDir.delete();
+    }
+
+    private void writeCachedResult(String key) throws IOException {
+        File file = new File(mCacheDir, System.nanoTime() + "." + key);
+        try (OutputStream out = new FileOutputStream(file)) {
+            out.write(new byte[RESULT_BYTES]);
+        }
+    }
+
+    private static String getCacheKey(int page) {
+        return "query-" + page;
+    }
+
+    @Benchmark
+    public QueryPager<InMemoryPageSource.Row> loadAllPages() {
+        QueryPager<InMemoryPageSource.Row> pager = Pagers.newPager(mSource);
+        Pagers.loadAll(pager);
+        return pager;
+    }
+}
\ No newline at end of file
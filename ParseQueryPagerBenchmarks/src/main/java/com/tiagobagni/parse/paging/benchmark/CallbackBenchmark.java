@@ -0,0 +1,93 @@
+package com.tiagobagni.parse.paging.benchmark;
+
+import com.tiagobagni.parse.paging.InMemoryPageSource;
+import com.tiagobagni.parse.paging.QueryPager;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures loading every page while {@code observers} callbacks are registered on the pager, each
+ * page load notifying all of them.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+public class CallbackBenchmark {
+
+    /**
+     * Consumes the notifications so they are not optimized away.
+     */
+    static class ConsumingCallback
+            implements QueryPager.OnObjectsChangedCallback<QueryPager> {
+        private final Blackhole mBlackhole;
+
+        ConsumingCallback(Blackhole blackhole) {
+            mBlackhole = blackhole;
+        }
+
+        @Override
+        public void onChanged(QueryPager sender) {
+            mBlackhole.consume(sender);
+        }
+
+        @Override
+        public void onItemRangeChanged(QueryPager sender, int positionStart, int itemCount) {
+            mBlackhole.consume(positionStart + itemCount);
+        }
+
+        @Override
+        public void onItemRangeInserted(QueryPager sender, int positionStart, int itemCount) {
+            mBlackhole.consume(positionStart + itemCount);
+        }
+
+        @Override
+        public void onItemRangeMoved(QueryPager sender, int fromPosition, int toPosition,
+                int itemCount) {
+            mBlackhole.consume(fromPosition + toPosition + itemCount);
+        }
+
+        @Override
+        public void onItemRangeRemoved(QueryPager sender, int positionStart, int itemCount) {
+            mBlackhole.consume(positionStart + itemCount);
+        }
+    }
+
+    @Param({"1000", "10000", "100000"})
+    public int rows;
+
+    @Param({"1", "10", "100"})
+    public int observers;
+
+    private InMemoryPageSource mSource;
+
+    @Setup
+    public void setUp() {
+        mSource = Pagers.newSource(rows, true);
+    }
+
+    @Benchmark
+    public QueryPager<InMemoryPageSource.Row> loadAllPages(Blackhole blackhole) {
+        QueryPager<InMemoryPageSource.Row> pager = Pagers.newPager(mSource);
+        for (int i = 0; i < observers; i++) {
+            pager.addOnObjectsChangedCallback(new ConsumingCallback(blackhole));
+        }
+        Pagers.loadAll(pager);
+        return pager;
+    }
+}
\ No newline at end of file
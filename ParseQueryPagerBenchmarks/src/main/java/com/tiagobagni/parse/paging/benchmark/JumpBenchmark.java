@@ -0,0 +1,87 @@
+package com.tiagobagni.parse.paging.benchmark;
+
+import com.tiagobagni.parse.paging.InMemoryPageSource;
+import com.tiagobagni.parse.paging.LoadCallback;
+import com.tiagobagni.parse.paging.QueryPager;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the time to load the row at {@code position} from an empty list, the way the scrollbar
+ * is dragged far from the loaded rows, when every page takes {@code latencyMs} to arrive.
+ * <p/>
+ * With a concurrency of 1 the pages are loaded one after the other, like
+ * {@link QueryPager#loadNextPage}; with more, the time should approach the latency of a single
+ * page times the number of pages divided by the concurrency.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class JumpBenchmark {
+
+    @Param({"2000"})
+    public int position;
+
+    @Param({"1", "4", "16", "64"})
+    public int concurrency;
+
+    @Param({"5"})
+    public int latencyMs;
+
+    private InMemoryPageSource mSource;
+    private ScheduledExecutorService mNetwork;
+
+    @Setup
+    public void setUp() {
+        mNetwork = Executors.newScheduledThreadPool(4);
+        mSource = Pagers.newSource(position * 2, false);
+        // Each page is delivered after the latency, pages in flight overlap
+        mSource.setExecutor(new Executor() {
+            @Override
+            public void execute(Runnable command) {
+                mNetwork.schedule(command, latencyMs, TimeUnit.MILLISECONDS);
+            }
+        });
+    }
+
+    @TearDown
+    public void tearDown() {
+        mNetwork.shutdownNow();
+    }
+
+    @Benchmark
+    public List<InMemoryPageSource.Row> loadToPosition() throws InterruptedException {
+        QueryPager<InMemoryPageSource.Row> pager = Pagers.newPager(mSource);
+        final CountDownLatch latch = new CountDownLatch(1);
+        pager.loadPages(position / Pagers.PAGE_SIZE, concurrency,
+                new LoadCallback<InMemoryPageSource.Row>() {
+            @Override
+            public void done(List<InMemoryPageSource.Row> objects, Exception e) {
+                latch.countDown();
+            }
+        }, null);
+        latch.await();
+        return pager.getObjects();
+    }
+}
\ No newline at end of file
@@ -0,0 +1,90 @@
+package com.tiagobagni.parse.paging.benchmark;
+
+import com.tiagobagni.parse.paging.InMemoryPageSource;
+import com.tiagobagni.parse.paging.QueryPager;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures how long the pager state can't be read while pages are loaded and slow observers are
+ * notified: one thread loads pages, another samples the latency of {@code getCurrentPage()}.
+ */
+@State(Scope.Group)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+public class LockContentionBenchmark {
+
+    private static final int ROWS = 10000;
+    private static final int OBSERVERS = 4;
+    // Work done by each observer for each notification, in Blackhole tokens
+    private static final long OBSERVER_WORK = 10000;
+
+    /**
+     * An observer doing some work for each notification, like posting to the UI thread.
+     */
+    static class SlowCallback extends CallbackBenchmark.ConsumingCallback {
+        SlowCallback(Blackhole blackhole) {
+            super(blackhole);
+        }
+
+        @Override
+        public void onItemRangeInserted(QueryPager sender, int positionStart, int itemCount) {
+            Blackhole.consumeCPU(OBSERVER_WORK);
+        }
+    }
+
+    private InMemoryPageSource mSource;
+    private volatile QueryPager<InMemoryPageSource.Row> mPager;
+    private Blackhole mBlackhole;
+
+    @Setup
+    public void setUp(Blackhole blackhole) {
+        mSource = Pagers.newSource(ROWS, true);
+        mBlackhole = blackhole;
+        mPager = newPager();
+    }
+
+    private QueryPager<InMemoryPageSource.Row> newPager() {
+        QueryPager<InMemoryPageSource.Row> pager = Pagers.newPager(mSource);
+        for (int i = 0; i < OBSERVERS; i++) {
+            pager.addOnObjectsChangedCallback(new SlowCallback(mBlackhole));
+        }
+        return pager;
+    }
+
+    @Benchmark
+    @Group("contended")
+    @GroupThreads(1)
+    public void loadPage() {
+        QueryPager<InMemoryPageSource.Row> pager = mPager;
+        if (!pager.hasNextPage()) {
+            pager = newPager();
+            mPager = pager;
+        }
+        pager.loadNextPage(null, null);
+    }
+
+    @Benchmark
+    @Group("contended")
+    @GroupThreads(1)
+    public int readState() {
+        return mPager.getCurrentPage();
+    }
+}
\ No newline at end of file
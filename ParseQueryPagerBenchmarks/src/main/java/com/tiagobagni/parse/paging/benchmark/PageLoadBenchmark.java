@@ -0,0 +1,106 @@
+package com.tiagobagni.parse.paging.benchmark;
+
+import com.tiagobagni.parse.paging.InMemoryPageSource;
+import com.tiagobagni.parse.paging.PageRequest;
+import com.tiagobagni.parse.paging.PageSource;
+import com.tiagobagni.parse.paging.QueryPager;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures loading every page of a result set, the way a list is scrolled to its end.
+ * <p/>
+ * {@code offset} pages walk over the skipped rows like a database does, {@code keyset} pages start
+ * after the last loaded row. {@link #loadAllPagesTwice()} delivers each page twice, like a cache
+ * then network query, so its difference with {@link #loadAllPages()} is the cost of replacing
+ * pages.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+public class PageLoadBenchmark {
+
+    /**
+     * Delivers each page twice, the first result not being final.
+     */
+    static class CacheThenNetworkSource implements PageSource<InMemoryPageSource.Row> {
+        private final InMemoryPageSource mSource;
+
+        CacheThenNetworkSource(InMemoryPageSource source) {
+            mSource = source;
+        }
+
+        @Override
+        public void loadPage(PageRequest<InMemoryPageSource.Row> request,
+                final Callback<InMemoryPageSource.Row> callback) {
+            mSource.loadPage(request, new Callback<InMemoryPageSource.Row>() {
+                @Override
+                public void onResult(List<InMemoryPageSource.Row> objects, boolean isFinal) {
+                    callback.onResult(objects, false);
+                    callback.onResult(objects, isFinal);
+                }
+
+                @Override
+                public void onError(Exception e, boolean isFinal) {
+                    callback.onError(e, isFinal);
+                }
+            });
+        }
+
+        @Override
+        public Object getKey(InMemoryPageSource.Row object) {
+            return mSource.getKey(object);
+        }
+
+        @Override
+        public boolean areContentsTheSame(InMemoryPageSource.Row oldObject,
+                InMemoryPageSource.Row newObject) {
+            return mSource.areContentsTheSame(oldObject, newObject);
+        }
+    }
+
+    @Param({"1000", "10000", "100000"})
+    public int rows;
+
+    @Param({"offset", "keyset"})
+    public String pagination;
+
+    private InMemoryPageSource mSource;
+    private CacheThenNetworkSource mCacheThenNetworkSource;
+
+    @Setup
+    public void setUp() {
+        mSource = Pagers.newSource(rows, "keyset".equals(pagination));
+        mCacheThenNetworkSource = new CacheThenNetworkSource(mSource);
+    }
+
+    @Benchmark
+    public QueryPager<InMemoryPageSource.Row> loadAllPages() {
+        QueryPager<InMemoryPageSource.Row> pager = Pagers.newPager(mSource);
+        Pagers.loadAll(pager);
+        return pager;
+    }
+
+    @Benchmark
+    public QueryPager<InMemoryPageSource.Row> loadAllPagesTwice() {
+        QueryPager<InMemoryPageSource.Row> pager = Pagers.newPager(mCacheThenNetworkSource);
+        Pagers.loadAll(pager);
+        return pager;
+    }
+}
\ No newline at end of file
@@ -0,0 +1,137 @@
+package com.tiagobagni.parse.paging.benchmark;
+
+import com.tiagobagni.parse.paging.InMemoryPageSource;
+import com.tiagobagni.parse.paging.PageRequest;
+import com.tiagobagni.parse.paging.QueryPager;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures a scroll from the first row to the last one with and without a page window, and the
+ * heap the pager retains once it is over.
+ * <p/>
+ * The rows hold 1 kB of data, about a decoded object with a few short keys, and their
+ * placeholders only their id. The retained heap is printed at the end of each iteration: the used
+ * heap after a garbage collection with the pager, minus the one without it.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+public class PageWindowBenchmark {
+
+    private static final int ROW_BYTES = 1024;
+
+    /**
+     * A row and its data. The placeholders are plain rows.
+     */
+    static class Post extends InMemoryPageSource.Row {
+        final byte[] mData = new byte[ROW_BYTES];
+
+        Post(InMemoryPageSource.Row row) {
+            super(row.getId(), row.getSortKey());
+        }
+    }
+
+    /**
+     * Adds the data to the rows it loads.
+     */
+    static class PostSource extends InMemoryPageSource {
+        PostSource(int rows) {
+            super(false);
+            addRows(rows);
+        }
+
+        @Override
+        public void loadPage(PageRequest<Row> request, Callback<Row> callback) {
+            super.loadPage(request, wrap(callback));
+        }
+
+        @Override
+        public void loadObjects(List<Row> placeholders, Callback<Row> callback) {
+            super.loadObjects(placeholders, wrap(callback));
+        }
+
+        private static Callback<Row> wrap(final Callback<Row> callback) {
+            return new Callback<Row>() {
+                @Override
+                public void onResult(List<Row> rows, boolean isFinal) {
+                    List<Row> posts = new ArrayList<>(rows.size());
+                    for (Row row : rows) {
+                        posts.add(new Post(row));
+                    }
+                    callback.onResult(posts, isFinal);
+                }
+
+                @Override
+                public void onError(Exception e, boolean isFinal) {
+                    callback.onError(e, isFinal);
+                }
+            };
+        }
+    }
+
+    @Param({"10000"})
+    public int rows;
+
+    // The number of pages kept, 0 to keep all of them
+    @Param({"0", "5"})
+    public int window;
+
+    private PostSource mSource;
+    private QueryPager<InMemoryPageSource.Row> mPager;
+
+    @Setup
+    public void setUp() {
+        mSource = new PostSource(rows);
+    }
+
+    @Benchmark
+    public QueryPager<InMemoryPageSource.Row> scroll() {
+        QueryPager<InMemoryPageSource.Row> pager = Pagers.newPager(mSource);
+        pager.setPageWindow(window);
+        // Bound one row at a time, like a RecyclerView does while scrolling
+        for (int position = 0; position < rows; position++) {
+            if (position >= pager.getObjects().size() - 1 && pager.hasNextPage()) {
+                pager.loadNextPage(null, null);
+            }
+            pager.setVisiblePosition(position, null);
+        }
+        mPager = pager;
+        return pager;
+    }
+
+    @TearDown(Level.Iteration)
+    public void printRetainedHeap() {
+        long withPager = usedHeapAfterGc();
+        mPager = null;
+        long withoutPager = usedHeapAfterGc();
+        System.out.println("Retained heap: " + (withPager - withoutPager) / 1024 + " kB");
+    }
+
+    private static long usedHeapAfterGc() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
\ No newline at end of file
@@ -0,0 +1,49 @@
+package com.tiagobagni.parse.paging.benchmark;
+
+import com.tiagobagni.parse.paging.InMemoryPageSource;
+import com.tiagobagni.parse.paging.PageSource;
+import com.tiagobagni.parse.paging.QueryPager;
+
+import java.util.concurrent.Executor;
+
+/**
+ * Helpers shared by the benchmarks.
+ */
+final class Pagers {
+
+    static final int PAGE_SIZE = 50;
+
+    private Pagers() {
+    }
+
+    /**
+     * Returns a pager that runs all of its work on the calling thread, so a benchmark measures the
+     * work itself and not the hand-offs between threads.
+     */
+    static QueryPager<InMemoryPageSource.Row> newPager(PageSource<InMemoryPageSource.Row> source) {
+        return new QueryPager<InMemoryPageSource.Row>(source, PAGE_SIZE) {
+            @Override
+            protected Executor getBackgroundExecutor() {
+                return getCallbackExecutor();
+            }
+        };
+    }
+
+    /**
+     * Loads every page of {@code pager}.
+     */
+    static void loadAll(QueryPager<?> pager) {
+        while (pager.hasNextPage()) {
+            pager.loadNextPage(null, null);
+        }
+    }
+
+    /**
+     * Returns a source with {@code rows} rows.
+     */
+    static InMemoryPageSource newSource(int rows, boolean keyset) {
+        InMemoryPageSource source = new InMemoryPageSource(keyset);
+        source.addRows(rows);
+        return source;
+    }
+}
\ No newline at end of file
@@ -0,0 +1,121 @@
+package com.tiagobagni.parse.paging.benchmark;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the decoding of a page of query results with all the keys of its objects and with
+ * only the keys a list cell displays, as {@code ParseQueryPager.setSelectedKeys} selects them.
+ * <p/>
+ * A page is the JSON response of the server, decoded like Parse decodes it: parsed with
+ * {@code org.json} and each value of each object converted to a Java value. The rows are posts
+ * with a body of about 1.5 kB, the cells display their title, author and likes.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+public class ProjectionBenchmark {
+
+    private static final int BODY_CHARS = 1500;
+
+    @Param({"false", "true"})
+    public boolean projected;
+
+    private String mResponse;
+
+    @Setup
+    public void setUp() throws JSONException {
+        mResponse = newResponse(Pagers.PAGE_SIZE, projected);
+    }
+
+    static String newResponse(int rows, boolean projected) throws JSONException {
+        StringBuilder body = new StringBuilder(BODY_CHARS);
+        while (body.length() < BODY_CHARS) {
+            body.append("Lorem ipsum dolor sit amet, consectetur adipiscing elit. ");
+        }
+        JSONArray results = new JSONArray();
+        for (int i = 0; i < rows; i++) {
+            JSONObject post = new JSONObject();
+            post.put("objectId", "post" + i);
+            post.put("createdAt", "2016-01-20T10:15:30.000Z");
+            post.put("updatedAt", "2016-01-21T08:00:00.000Z");
+            post.put("title", "The title of the post number " + i);
+            post.put("author", new JSONObject()
+                    .put("__type", "Pointer")
+                    .put("className", "_User")
+                    .put("objectId", "user" + (i % 7)));
+            post.put("likes", i * 3);
+            if (!projected) {
+                post.put("body", body.toString());
+                post.put("tags", new JSONArray().put("android").put("parse").put("paging"));
+                post.put("location", new JSONObject()
+                        .put("__type", "GeoPoint")
+                        .put("latitude", 37.7749)
+                        .put("longitude", -122.4194));
+                post.put("image", new JSONObject()
+                        .put("__type", "File")
+                        .put("name", "tfss-image-" + i + ".jpg")
+                        .put("url", "https://files.example.com/tfss-image-" + i + ".jpg"));
+                post.put("commentCount", i % 13);
+                post.put("ACL", new JSONObject()
+                        .put("*", new JSONObject().put("read", true)));
+            }
+            results.put(post);
+        }
+        return new JSONObject().put("results", results).toString();
+    }
+
+    private static Object decode(Object value) throws JSONException {
+        if (value instanceof JSONObject) {
+            JSONObject object = (JSONObject) value;
+            Map<String, Object> map = new HashMap<>();
+            Iterator<?> keys = object.keys();
+            while (keys.hasNext()) {
+                String key = (String) keys.next();
+                map.put(key, decode(object.get(key)));
+            }
+            return map;
+        }
+        if (value instanceof JSONArray) {
+            JSONArray array = (JSONArray) value;
+            List<Object> list = new ArrayList<>(array.length());
+            for (int i = 0; i < array.length(); i++) {
+                list.add(decode(array.get(i)));
+            }
+            return list;
+        }
+        return value;
+    }
+
+    @Benchmark
+    public List<Object> decodePage() throws JSONException {
+        JSONArray results = new JSONObject(mResponse).getJSONArray("results");
+        List<Object> objects = new ArrayList<>(results.length());
+        for (int i = 0; i < results.length(); i++) {
+            objects.add(decode(results.getJSONObject(i)));
+        }
+        return objects;
+    }
+}
\ No newline at end of file
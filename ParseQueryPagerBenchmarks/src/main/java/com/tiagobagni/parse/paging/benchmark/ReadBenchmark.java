@@ -0,0 +1,73 @@
+package com.tiagobagni.parse.paging.benchmark;
+
+import com.tiagobagni.parse.paging.InMemoryPageSource;
+import com.tiagobagni.parse.paging.QueryPager;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the reads an adapter makes while binding rows: {@code getItem}, {@code getItemCount}
+ * and the pager state, on one thread and while another thread reads too.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+public class ReadBenchmark {
+
+    @Param({"1000", "10000", "100000"})
+    public int rows;
+
+    private QueryPager<InMemoryPageSource.Row> mPager;
+    private int mPosition;
+
+    @Setup
+    public void setUp() {
+        mPager = Pagers.newPager(Pagers.newSource(rows, true));
+        Pagers.loadAll(mPager);
+    }
+
+    /**
+     * Walks the list with a stride so consecutive reads don't hit the same cache lines.
+     */
+    private int nextPosition() {
+        mPosition = (mPosition + 4099) % rows;
+        return mPosition;
+    }
+
+    @Benchmark
+    public InMemoryPageSource.Row getItem() {
+        return mPager.getObjects().get(nextPosition());
+    }
+
+    @Benchmark
+    public int getItemCount() {
+        return mPager.getObjects().size();
+    }
+
+    @Benchmark
+    public boolean pagerState() {
+        return mPager.hasNextPage() && mPager.getCurrentPage() >= 0 && !mPager.isLoadingNextPage();
+    }
+
+    @Benchmark
+    @Threads(2)
+    public boolean pagerStateContended() {
+        return mPager.hasNextPage() && mPager.getCurrentPage() >= 0 && !mPager.isLoadingNextPage();
+    }
+}
\ No newline at end of file
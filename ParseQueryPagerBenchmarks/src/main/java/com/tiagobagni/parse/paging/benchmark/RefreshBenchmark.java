@@ -0,0 +1,130 @@
+package com.tiagobagni.parse.paging.benchmark;
+
+import com.tiagobagni.parse.paging.InMemoryPageSource;
+import com.tiagobagni.parse.paging.ListDiff;
+import com.tiagobagni.parse.paging.PageRequest;
+import com.tiagobagni.parse.paging.PageSource;
+import com.tiagobagni.parse.paging.QueryPager;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures refreshing a fully loaded list whose rows changed: 1% of them updated, 1% removed and
+ * 1% inserted. Each refresh goes back and forth between the two versions of the rows, so every
+ * refresh has the same amount of changes to apply.
+ * <p/>
+ * {@link #diff()} measures the diff alone, without reloading the pages.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+public class RefreshBenchmark {
+
+    /**
+     * Serves its pages from one of two sources, switched by {@link #flip()}.
+     */
+    static class AlternatingSource implements PageSource<InMemoryPageSource.Row> {
+        private final InMemoryPageSource mFirst;
+        private final InMemoryPageSource mSecond;
+        private boolean mIsSecond;
+
+        AlternatingSource(InMemoryPageSource first, InMemoryPageSource second) {
+            mFirst = first;
+            mSecond = second;
+        }
+
+        void flip() {
+            mIsSecond = !mIsSecond;
+        }
+
+        @Override
+        public void loadPage(PageRequest<InMemoryPageSource.Row> request,
+                Callback<InMemoryPageSource.Row> callback) {
+            (mIsSecond ? mSecond : mFirst).loadPage(request, callback);
+        }
+
+        @Override
+        public Object getKey(InMemoryPageSource.Row object) {
+            return mFirst.getKey(object);
+        }
+
+        @Override
+        public boolean areContentsTheSame(InMemoryPageSource.Row oldObject,
+                InMemoryPageSource.Row newObject) {
+            return mFirst.areContentsTheSame(oldObject, newObject);
+        }
+    }
+
+    @Param({"1000", "5000", "10000", "100000"})
+    public int rows;
+
+    private AlternatingSource mSource;
+    private QueryPager<InMemoryPageSource.Row> mPager;
+    private List<InMemoryPageSource.Row> mFirstRows;
+    private List<InMemoryPageSource.Row> mSecondRows;
+    private ListDiff.ItemCallback<InMemoryPageSource.Row> mDiffCallback;
+
+    @Setup
+    public void setUp() {
+        final InMemoryPageSource first = Pagers.newSource(rows, true);
+        InMemoryPageSource second = Pagers.newSource(rows, true);
+        int changes = Math.max(1, rows / 100);
+        int step = rows / changes;
+        for (int i = 0; i < changes; i++) {
+            int row = i * step;
+            second.update(String.valueOf(row));
+            second.remove(String.valueOf(row + 1));
+            second.insert(new InMemoryPageSource.Row("new" + i, row + 2));
+        }
+        mSource = new AlternatingSource(first, second);
+        mPager = Pagers.newPager(mSource);
+        Pagers.loadAll(mPager);
+
+        mFirstRows = new ArrayList<>(mPager.getObjects());
+        QueryPager<InMemoryPageSource.Row> secondPager = Pagers.newPager(second);
+        Pagers.loadAll(secondPager);
+        mSecondRows = new ArrayList<>(secondPager.getObjects());
+
+        mDiffCallback = new ListDiff.ItemCallback<InMemoryPageSource.Row>() {
+            @Override
+            public Object getKey(InMemoryPageSource.Row object) {
+                return first.getKey(object);
+            }
+
+            @Override
+            public boolean areContentsTheSame(InMemoryPageSource.Row oldObject,
+                    InMemoryPageSource.Row newObject) {
+                return first.areContentsTheSame(oldObject, newObject);
+            }
+        };
+    }
+
+    @Benchmark
+    public List<InMemoryPageSource.Row> refresh() {
+        mSource.flip();
+        mPager.refresh(null, null);
+        return mPager.getObjects();
+    }
+
+    @Benchmark
+    public List<ListDiff.Op> diff() {
+        return ListDiff.compute(mFirstRows, mSecondRows, mDiffCallback);
+    }
+}
\ No newline at end of file
@@ -0,0 +1,200 @@
+package com.tiagobagni.parse.paging;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * An in-memory index of the pages a persistent query cache holds or lacks, so a page source can
+ * tell whether a page is cached without reading the cache, which is usually on disk and looked up
+ * on the thread loading the page.
+ * <p/>
+ * Pages are identified like in a {@link PageCache}, by the key of their query and the key of the
+ * page within it. The index only knows what it was told: the result of a lookup in the cache, or
+ * that a page was stored in it by a load. It must be {@link #invalidateAll() invalidated} when the
+ * cache is cleared. A page that is wrongly known to be cached only costs a failed lookup, but one
+ * that is wrongly known not to be is never read from the cache, so pages stored by other code
+ * should be {@link #put(Object, Object, boolean) put} too. The index is bounded, forgetting the
+ * least recently used pages first, and thread safe.
+ */
+public class CachedResultIndex {
+
+    private static final int DEFAULT_MAX_ENTRIES = 1000;
+
+    private static CachedResultIndex sDefault;
+
+    private final int mMaxEntries;
+    // In access order, the least recently used page first
+    private final LinkedHashMap<Key, Entry> mEntries = new LinkedHashMap<>(16, 0.75f, true);
+
+    private long mHitCount;
+    private long mMissCount;
+
+    private static final class Key {
+        final Object queryKey;
+        final Object pageKey;
+
+        Key(Object queryKey, Object pageKey) {
+            this.queryKey = queryKey;
+            this.pageKey = pageKey;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key key = (Key) o;
+            return queryKey.equals(key.queryKey) && pageKey.equals(key.pageKey);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * queryKey.hashCode() + pageKey.hashCode();
+        }
+    }
+
+    private static final class Entry {
+        final boolean isCached;
+        // When the page was known to be cached, in System.nanoTime()
+        final long recordedNanos;
+
+        Entry(boolean isCached, long recordedNanos) {
+            this.isCached = isCached;
+            this.recordedNanos = recordedNanos;
+        }
+    }
+
+    /**
+     * Constructs an index of up to 1000 pages.
+     */
+    public CachedResultIndex() {
+        this(DEFAULT_MAX_ENTRIES);
+    }
+
+    /**
+     * @param maxEntries The maximum number of pages indexed.
+     */
+    public CachedResultIndex(int maxEntries) {
+        if (maxEntries < 1) {
+            throw new IllegalArgumentException("The index bound must be positive");
+        }
+        mMaxEntries = maxEntries;
+    }
+
+    /**
+     * @return the index shared by the whole process, like the query cache it indexes, created the
+     * first time it is needed.
+     */
+    public static synchronized CachedResultIndex getDefault() {
+        if (sDefault == null) {
+            sDefault = new CachedResultIndex();
+        }
+        return sDefault;
+    }
+
+    /**
+     * Returns whether a page is known to be cached, marking it as the most recently used one.
+     *
+     * @param queryKey     The key of the query of the page.
+     * @param pageKey      The key of the page within its query.
+     * @param maxAgeMillis The age after which the cache no longer returns a page, so a page known
+     *                     to be cached for longer than that is looked up again.
+     * @return whether the page is cached, or {@code null} if it isn't known and the cache must be
+     * looked up.
+     */
+    public synchronized Boolean isCached(Object queryKey, Object pageKey, long maxAgeMillis) {
+        Key key = new Key(queryKey, pageKey);
+        Entry entry = mEntries.get(key);
+        if (entry != null && entry.isCached) {
+            long age = System.nanoTime() - entry.recordedNanos;
+            if (age > TimeUnit.MILLISECONDS.toNanos(maxAgeMillis)) {
+                mEntries.remove(key);
+                entry = null;
+            }
+        }
+        if (entry == null) {
+            mMissCount++;
+            return null;
+        }
+        mHitCount++;
+        return entry.isCached;
+    }
+
+    /**
+     * Records whether a page is cached, after looking it up in the cache or storing it there.
+     *
+     * @param queryKey The key of the query of the page.
+     * @param pageKey  The key of the page within its query.
+     * @param isCached Whether the cache holds the page.
+     */
+    public synchronized void put(Object queryKey, Object pageKey, boolean isCached) {
+        mEntries.put(new Key(queryKey, pageKey), new Entry(isCached, System.nanoTime()));
+        if (mEntries.size() > mMaxEntries) {
+            Iterator<Entry> leastRecentlyUsed = mEntries.values().iterator();
+            leastRecentlyUsed.next();
+            leastRecentlyUsed.remove();
+        }
+    }
+
+    /**
+     * Forgets the pages of a query, such as after its results were cleared from the cache.
+     *
+     * @param queryKey The key of the query.
+     */
+    public synchronized void invalidate(Object queryKey) {
+        Iterator<Map.Entry<Key, Entry>> entries = mEntries.entrySet().iterator();
+        while (entries.hasNext()) {
+            if (entries.next().getKey().queryKey.equals(queryKey)) {
+                entries.remove();
+            }
+        }
+    }
+
+    /**
+     * Forgets every page, to be called when the cache is cleared.
+     */
+    public synchronized void invalidateAll() {
+        mEntries.clear();
+    }
+
+    /**
+     * @return the number of pages indexed.
+     */
+    public synchronized int size() {
+        return mEntries.size();
+    }
+
+    public int getMaxEntries() {
+        return mMaxEntries;
+    }
+
+    /**
+     * @return the number of lookups answered by the index.
+     */
+    public synchronized long getHitCount() {
+        return mHitCount;
+    }
+
+    /**
+     * @return the number of lookups that had to read the cache.
+     */
+    public synchronized long getMissCount() {
+        return mMissCount;
+    }
+
+    /**
+     * Resets the hit and miss counts.
+     */
+    public synchronized void resetStats() {
+        mHitCount = 0;
+        mMissCount = 0;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "CachedResultIndex{size=" + mEntries.size() + ", hits=" + mHitCount + ", misses=" +
+                mMissCount + "}";
+    }
+}
\ No newline at end of file
@@ -0,0 +1,11 @@
+package com.tiagobagni.parse.paging;
+
+/**
+ * Tells a {@link QueryPager} whether the operation it was given to has been canceled.
+ */
+public interface Cancellation {
+    /**
+     * @return whether cancellation has been requested.
+     */
+    boolean isCancellationRequested();
+}
\ No newline at end of file
@@ -0,0 +1,138 @@
+package com.tiagobagni.parse.paging;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Collects the changes reported by a {@link QueryPager} so they can be replayed later as fewer,
+ * larger ranges, such as once per frame.
+ * <p/>
+ * Each change is merged with the previous one when possible: adjacent insertions, removals and
+ * changes become a single range, and changes of objects inserted since the last
+ * {@link #flush(QueryPager, QueryPager.OnObjectsChangedCallback) flush} are dropped, as the
+ * inserted objects are displayed from scratch anyway. The replayed ranges transform the objects
+ * as of the previous flush into the objects as of this one, just like the original changes.
+ *
+ * @param <T>
+ */
+public class ChangeCoalescer<T extends QueryPager>
+        implements QueryPager.OnObjectsChangedCallback<T> {
+
+    private final List<ListDiff.Op> mOps = new ArrayList<>();
+    // Whether the whole list changed since the last flush, the ranges don't matter then
+    private boolean mIsChanged;
+
+    /**
+     * @return whether no change was received since the last flush.
+     */
+    public boolean isEmpty() {
+        return !mIsChanged && mOps.isEmpty();
+    }
+
+    /**
+     * Drops the changes received since the last flush.
+     */
+    public void clear() {
+        mIsChanged = false;
+        mOps.clear();
+    }
+
+    /**
+     * Replays the changes received since the last flush to {@code callback}, then clears them.
+     *
+     * @param sender   The pager passed to {@code callback}.
+     * @param callback The callback notified of the merged changes.
+     */
+    public void flush(T sender, QueryPager.OnObjectsChangedCallback<T> callback) {
+        if (mIsChanged) {
+            clear();
+            callback.onChanged(sender);
+            return;
+        }
+        List<ListDiff.Op> ops = new ArrayList<>(mOps);
+        mOps.clear();
+        for (ListDiff.Op op : ops) {
+            switch (op.type) {
+                case ListDiff.Op.REMOVE:
+                    callback.onItemRangeRemoved(sender, op.position, op.itemCount);
+                    break;
+                case ListDiff.Op.MOVE:
+                    callback.onItemRangeMoved(sender, op.position, op.toPosition, op.itemCount);
+                    break;
+                case ListDiff.Op.INSERT:
+                    callback.onItemRangeInserted(sender, op.position, op.itemCount);
+                    break;
+                case ListDiff.Op.CHANGE:
+                    callback.onItemRangeChanged(sender, op.position, op.itemCount);
+                    break;
+            }
+        }
+    }
+
+    @Override
+    public void onChanged(T sender) {
+        mOps.clear();
+        mIsChanged = true;
+    }
+
+    @Override
+    public void onItemRangeChanged(T sender, int positionStart, int itemCount) {
+        ListDiff.Op last = getLastOp();
+        if (last != null && last.type == ListDiff.Op.INSERT && positionStart >= last.position &&
+                positionStart + itemCount <= last.position + last.itemCount) {
+            // Inserted since the last flush, it will be displayed with its new contents
+            return;
+        }
+        if (last != null && last.type == ListDiff.Op.CHANGE &&
+                positionStart <= last.position + last.itemCount &&
+                last.position <= positionStart + itemCount) {
+            int start = Math.min(last.position, positionStart);
+            int end = Math.max(last.position + last.itemCount, positionStart + itemCount);
+            replaceLastOp(ListDiff.Op.CHANGE, start, end - start);
+            return;
+        }
+        add(ListDiff.Op.CHANGE, positionStart, -1, itemCount);
+    }
+
+    @Override
+    public void onItemRangeInserted(T sender, int positionStart, int itemCount) {
+        ListDiff.Op last = getLastOp();
+        if (last != null && last.type == ListDiff.Op.INSERT && positionStart >= last.position &&
+                positionStart <= last.position + last.itemCount) {
+            replaceLastOp(ListDiff.Op.INSERT, last.position, last.itemCount + itemCount);
+            return;
+        }
+        add(ListDiff.Op.INSERT, positionStart, -1, itemCount);
+    }
+
+    @Override
+    public void onItemRangeMoved(T sender, int fromPosition, int toPosition, int itemCount) {
+        add(ListDiff.Op.MOVE, fromPosition, toPosition, itemCount);
+    }
+
+    @Override
+    public void onItemRangeRemoved(T sender, int positionStart, int itemCount) {
+        ListDiff.Op last = getLastOp();
+        if (last != null && last.type == ListDiff.Op.REMOVE && last.position >= positionStart &&
+                last.position <= positionStart + itemCount) {
+            // The objects removed before surround, or directly follow, the ones removed now
+            replaceLastOp(ListDiff.Op.REMOVE, positionStart, last.itemCount + itemCount);
+            return;
+        }
+        add(ListDiff.Op.REMOVE, positionStart, -1, itemCount);
+    }
+
+    private ListDiff.Op getLastOp() {
+        return mIsChanged || mOps.isEmpty() ? null : mOps.get(mOps.size() - 1);
+    }
+
+    private void replaceLastOp(int type, int position, int itemCount) {
+        mOps.set(mOps.size() - 1, new ListDiff.Op(type, position, -1, itemCount));
+    }
+
+    private void add(int type, int position, int toPosition, int itemCount) {
+        if (!mIsChanged && itemCount > 0) {
+            mOps.add(new ListDiff.Op(type, position, toPosition, itemCount));
+        }
+    }
+}
\ No newline at end of file
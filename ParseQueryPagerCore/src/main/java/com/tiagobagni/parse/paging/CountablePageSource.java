@@ -0,0 +1,34 @@
+package com.tiagobagni.parse.paging;
+
+/**
+ * A {@link PageSource} that can count its objects, which is needed for
+ * {@link QueryPager#setCountMode(boolean)}.
+ *
+ * @param <T>
+ */
+public interface CountablePageSource<T> extends PageSource<T> {
+
+    /**
+     * Receives the result of a count.
+     */
+    interface CountResultCallback {
+        /**
+         * @param count The number of objects of the source.
+         */
+        void onCount(int count);
+
+        /**
+         * @param e The error that prevented the objects from being counted.
+         */
+        void onError(Exception e);
+    }
+
+    /**
+     * Counts the objects asynchronously, or synchronously if the source has the count at hand.
+     *
+     * @param isRefresh Whether the count should not come from a cache, like
+     *                  {@link PageRequest#isRefresh()}.
+     * @param callback  The callback to deliver the count to.
+     */
+    void countObjects(boolean isRefresh, CountResultCallback callback);
+}
\ No newline at end of file
@@ -0,0 +1,25 @@
+package com.tiagobagni.parse.paging;
+
+import java.util.List;
+
+/**
+ * A {@link PageSource} whose objects can be replaced by lightweight placeholders and loaded again
+ * later, which is needed for {@link QueryPager#setPageWindow(int)}.
+ *
+ * @param <T>
+ */
+public interface EvictablePageSource<T> extends PageSource<T> {
+    /**
+     * @return a placeholder that only holds what is needed to load {@code object} again.
+     */
+    T createPlaceholder(T object);
+
+    /**
+     * Loads the objects of {@code placeholders} again. Objects that no longer exist are left out of
+     * the result.
+     *
+     * @param placeholders Placeholders returned by {@link #createPlaceholder(Object)}.
+     * @param callback     The callback to deliver the objects to, in any order.
+     */
+    void loadObjects(List<T> placeholders, Callback<T> callback);
+}
\ No newline at end of file
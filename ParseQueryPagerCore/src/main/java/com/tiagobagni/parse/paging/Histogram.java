@@ -0,0 +1,117 @@
+package com.tiagobagni.parse.paging;
+
+/**
+ * A histogram of non-negative values, such as durations in nanoseconds.
+ * <p/>
+ * Values are counted in buckets whose width grows with the value, 8 buckets for each power of two,
+ * so percentiles are within 12.5% of the recorded values while the histogram keeps a fixed size.
+ */
+public class Histogram {
+
+    private static final int SUB_BUCKET_BITS = 3;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int BUCKETS = (64 - SUB_BUCKET_BITS + 1) * SUB_BUCKETS;
+
+    private final long[] mCounts = new long[BUCKETS];
+    private long mCount;
+    private long mSum;
+    private long mMin = Long.MAX_VALUE;
+    private long mMax;
+
+    /**
+     * Records {@code value}, negative values being recorded as 0.
+     */
+    public synchronized void record(long value) {
+        value = Math.max(0, value);
+        mCounts[bucketOf(value)]++;
+        mCount++;
+        mSum += value;
+        mMin = Math.min(mMin, value);
+        mMax = Math.max(mMax, value);
+    }
+
+    public synchronized long getCount() {
+        return mCount;
+    }
+
+    /**
+     * @return the smallest recorded value, or 0 if there is none.
+     */
+    public synchronized long getMin() {
+        return mCount == 0 ? 0 : mMin;
+    }
+
+    /**
+     * @return the largest recorded value, or 0 if there is none.
+     */
+    public synchronized long getMax() {
+        return mMax;
+    }
+
+    /**
+     * @return the mean of the recorded values, or 0 if there is none.
+     */
+    public synchronized double getMean() {
+        return mCount == 0 ? 0 : (double) mSum / mCount;
+    }
+
+    /**
+     * Returns the value below which {@code percentile} percent of the recorded values are.
+     *
+     * @param percentile A percentile between 0 and 100, such as 50 for the median.
+     * @return the upper bound of the bucket holding the percentile, or 0 if there is no value.
+     */
+    public synchronized long getPercentile(double percentile) {
+        if (percentile < 0 || percentile > 100) {
+            throw new IllegalArgumentException("The percentile must be between 0 and 100");
+        }
+        if (mCount == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(percentile / 100 * mCount));
+        long seen = 0;
+        for (int bucket = 0; bucket < BUCKETS; bucket++) {
+            seen += mCounts[bucket];
+            if (seen >= rank) {
+                return Math.max(mMin, Math.min(mMax, upperBoundOf(bucket)));
+            }
+        }
+        return mMax;
+    }
+
+    public synchronized void reset() {
+        for (int i = 0; i < BUCKETS; i++) {
+            mCounts[i] = 0;
+        }
+        mCount = 0;
+        mSum = 0;
+        mMin = Long.MAX_VALUE;
+        mMax = 0;
+    }
+
+    private static int bucketOf(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        int subBucket = (int) (value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+        return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + subBucket;
+    }
+
+    private static long upperBoundOf(int bucket) {
+        if (bucket < SUB_BUCKETS) {
+            return bucket;
+        }
+        int exponent = bucket / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+        long subBucket = bucket % SUB_BUCKETS;
+        long width = 1L << (exponent - SUB_BUCKET_BITS);
+        return ((SUB_BUCKETS + subBucket + 1) * width) - 1;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "Histogram{count=" + mCount + ", min=" + getMin() + ", p50=" + getPercentile(50) +
+                ", p90=" + getPercentile(90) + ", p99=" + getPercentile(99) + ", max=" + mMax +
+                "}";
+    }
+}
\ No newline at end of file
@@ -0,0 +1,168 @@
+package com.tiagobagni.parse.paging;
+
+/**
+ * {@link PagerMetrics} that keeps in-memory histograms of the page load phases, and counts the
+ * cache hits, cancellations and errors.
+ * <p/>
+ * Only the results that were merged into the pager are added to the time histograms, failed and
+ * cancelled ones are only counted.
+ */
+public class HistogramPagerMetrics implements PagerMetrics {
+
+    private final Histogram mCacheLookupNanos = new Histogram();
+    private final Histogram mFetchNanos = new Histogram();
+    private final Histogram mMergeNanos = new Histogram();
+    private final Histogram mNotifyNanos = new Histogram();
+    private final Histogram mTotalNanos = new Histogram();
+    private final Histogram mResultCounts = new Histogram();
+    private final Histogram mBytes = new Histogram();
+    private final Histogram mPageSizes = new Histogram();
+
+    private long mResultCount;
+    private long mRepeatedResultCount;
+    private long mCacheHitCount;
+    private long mCacheMissCount;
+    private long mCancelledCount;
+    private long mErrorCount;
+
+    @Override
+    public void onPageLoad(PageLoadTrace trace) {
+        synchronized (this) {
+            mResultCount++;
+            if (trace.getDelivery() > 0) {
+                mRepeatedResultCount++;
+            }
+            if (trace.isCacheLookedUp() && trace.getDelivery() == 0) {
+                if (trace.isCacheHit()) {
+                    mCacheHitCount++;
+                } else {
+                    mCacheMissCount++;
+                }
+            }
+            if (trace.isCancelled()) {
+                mCancelledCount++;
+                return;
+            }
+            if (trace.getError() != null) {
+                mErrorCount++;
+                return;
+            }
+        }
+
+        if (trace.isCacheLookedUp() && trace.getDelivery() == 0) {
+            mCacheLookupNanos.record(trace.getCacheLookupNanos());
+        }
+        mFetchNanos.record(trace.getFetchNanos());
+        mMergeNanos.record(trace.getMergeNanos());
+        mNotifyNanos.record(trace.getNotifyNanos());
+        mTotalNanos.record(trace.getTotalNanos());
+        mResultCounts.record(trace.getResultCount());
+        mPageSizes.record(trace.getPageSize());
+        if (trace.getBytes() >= 0) {
+            mBytes.record(trace.getBytes());
+        }
+    }
+
+    public Histogram getCacheLookupNanos() {
+        return mCacheLookupNanos;
+    }
+
+    public Histogram getFetchNanos() {
+        return mFetchNanos;
+    }
+
+    public Histogram getMergeNanos() {
+        return mMergeNanos;
+    }
+
+    public Histogram getNotifyNanos() {
+        return mNotifyNanos;
+    }
+
+    public Histogram getTotalNanos() {
+        return mTotalNanos;
+    }
+
+    /**
+     * @return the histogram of the number of objects in each result.
+     */
+    public Histogram getResultCounts() {
+        return mResultCounts;
+    }
+
+    /**
+     * @return the histogram of the response sizes, for the sources that know them.
+     */
+    public Histogram getBytes() {
+        return mBytes;
+    }
+
+    /**
+     * @return the histogram of the number of objects requested for each page, which varies with
+     * the {@link PageSizePolicy} of the pager.
+     */
+    public Histogram getPageSizes() {
+        return mPageSizes;
+    }
+
+    /**
+     * @return the number of results reported, including the failed and cancelled ones.
+     */
+    public synchronized long getResultCount() {
+        return mResultCount;
+    }
+
+    /**
+     * @return the number of results that followed an earlier result of the same page load, such as
+     * the network result of a cache then network query.
+     */
+    public synchronized long getRepeatedResultCount() {
+        return mRepeatedResultCount;
+    }
+
+    public synchronized long getCacheHitCount() {
+        return mCacheHitCount;
+    }
+
+    public synchronized long getCacheMissCount() {
+        return mCacheMissCount;
+    }
+
+    public synchronized long getCancelledCount() {
+        return mCancelledCount;
+    }
+
+    public synchronized long getErrorCount() {
+        return mErrorCount;
+    }
+
+    public void reset() {
+        synchronized (this) {
+            mResultCount = 0;
+            mRepeatedResultCount = 0;
+            mCacheHitCount = 0;
+            mCacheMissCount = 0;
+            mCancelledCount = 0;
+            mErrorCount = 0;
+        }
+        mCacheLookupNanos.reset();
+        mFetchNanos.reset();
+        mMergeNanos.reset();
+        mNotifyNanos.reset();
+        mTotalNanos.reset();
+        mResultCounts.reset();
+        mBytes.reset();
+        mPageSizes.reset();
+    }
+
+    @Override
+    public String toString() {
+        return "HistogramPagerMetrics{results=" + getResultCount() + ", repeatedResults=" +
+                getRepeatedResultCount() + ", cacheHits=" + getCacheHitCount() +
+                ", cacheMisses=" + getCacheMissCount() + ", cancelled=" + getCancelledCount() +
+                ", errors=" + getErrorCount() + ", cacheLookupNanos=" + mCacheLookupNanos +
+                ", fetchNanos=" + mFetchNanos + ", mergeNanos=" + mMergeNanos +
+                ", notifyNanos=" + mNotifyNanos + ", totalNanos=" + mTotalNanos +
+                ", pageSizes=" + mPageSizes + "}";
+    }
+}
\ No newline at end of file
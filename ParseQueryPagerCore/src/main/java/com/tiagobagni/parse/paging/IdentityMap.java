@@ -0,0 +1,118 @@
+package com.tiagobagni.parse.paging;
+
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Maps keys to the canonical instances of the objects they identify, so the copies of an object
+ * loaded by different pages, pagers or sources can be replaced by a single instance.
+ * <p/>
+ * Instances are weakly referenced: an object is forgotten once nothing else references it, so the
+ * map never keeps objects alive. It is thread safe.
+ *
+ * @param <K>
+ * @param <V>
+ */
+public class IdentityMap<K, V> {
+
+    private final Map<K, Ref<K, V>> mRefs = new HashMap<>();
+    private final ReferenceQueue<V> mQueue = new ReferenceQueue<>();
+
+    private long mInternCount;
+    private long mSharedCount;
+
+    private static final class Ref<K, V> extends WeakReference<V> {
+        final K key;
+
+        Ref(K key, V object, ReferenceQueue<V> queue) {
+            super(object, queue);
+            this.key = key;
+        }
+    }
+
+    /**
+     * Returns the canonical instance of the object identified by {@code key}, making
+     * {@code object} the canonical one if there is none.
+     *
+     * @param key    The key of the object.
+     * @param object An instance of the object.
+     * @return the canonical instance, {@code object} if there was none.
+     */
+    public synchronized V intern(K key, V object) {
+        purge();
+        mInternCount++;
+        Ref<K, V> ref = mRefs.get(key);
+        V canonical = ref != null ? ref.get() : null;
+        if (canonical != null) {
+            if (canonical != object) {
+                mSharedCount++;
+            }
+            return canonical;
+        }
+        mRefs.put(key, new Ref<>(key, object, mQueue));
+        return object;
+    }
+
+    /**
+     * @param key The key of an object.
+     * @return the canonical instance of the object, or {@code null} if there is none.
+     */
+    public synchronized V get(K key) {
+        purge();
+        Ref<K, V> ref = mRefs.get(key);
+        return ref != null ? ref.get() : null;
+    }
+
+    /**
+     * Forgets the canonical instance of the object identified by {@code key}, such as after it
+     * was deleted.
+     */
+    public synchronized void remove(K key) {
+        mRefs.remove(key);
+    }
+
+    /**
+     * @return the number of canonical instances still referenced.
+     */
+    public synchronized int size() {
+        purge();
+        return mRefs.size();
+    }
+
+    /**
+     * @return the number of instances interned.
+     */
+    public synchronized long getInternCount() {
+        return mInternCount;
+    }
+
+    /**
+     * @return the number of instances interned that were replaced by another canonical instance,
+     * each one an object held once instead of twice.
+     */
+    public synchronized long getSharedCount() {
+        return mSharedCount;
+    }
+
+    /**
+     * Drops the entries of the objects that were garbage collected.
+     */
+    @SuppressWarnings("unchecked")
+    private void purge() {
+        Ref<K, V> ref;
+        while ((ref = (Ref<K, V>) mQueue.poll()) != null) {
+            // The key may have been given another instance since
+            if (mRefs.get(ref.key) == ref) {
+                mRefs.remove(ref.key);
+            }
+        }
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "IdentityMap{size=" + mRefs.size() + ", interned=" + mInternCount + ", shared=" +
+                mSharedCount + "}";
+    }
+}
\ No newline at end of file
@@ -0,0 +1,259 @@
+package com.tiagobagni.parse.paging;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+
+/**
+ * An in-memory stand-in for a backend, to run a {@link QueryPager} in tests and benchmarks.
+ * <p/>
+ * Rows are ordered by descending sort key, then by descending id. Offset pages are served the way
+ * a database serves a skip, by walking over the skipped rows, while keyset pages start with a
+ * binary search after the last row of the previous page, so the cost of both modes can be
+ * compared.
+ */
+public class InMemoryPageSource implements EvictablePageSource<InMemoryPageSource.Row>,
+        RandomAccessPageSource<InMemoryPageSource.Row>,
+        CountablePageSource<InMemoryPageSource.Row> {
+
+    /**
+     * A row of the in-memory backend.
+     */
+    public static class Row {
+        private final String mId;
+        private final long mSortKey;
+        private final long mVersion;
+        private final boolean mIsPlaceholder;
+
+        public Row(String id, long sortKey) {
+            this(id, sortKey, 0, false);
+        }
+
+        private Row(String id, long sortKey, long version, boolean isPlaceholder) {
+            mId = id;
+            mSortKey = sortKey;
+            mVersion = version;
+            mIsPlaceholder = isPlaceholder;
+        }
+
+        public String getId() {
+            return mId;
+        }
+
+        public long getSortKey() {
+            return mSortKey;
+        }
+
+        /**
+         * @return the number of times the row was updated.
+         */
+        public long getVersion() {
+            return mVersion;
+        }
+
+        /**
+         * @return whether the row only holds its id, see
+         * {@link EvictablePageSource#createPlaceholder(Object)}.
+         */
+        public boolean isPlaceholder() {
+            return mIsPlaceholder;
+        }
+
+        @Override
+        public String toString() {
+            return "Row{id=" + mId + ", sortKey=" + mSortKey + ", version=" + mVersion +
+                    (mIsPlaceholder ? ", placeholder" : "") + "}";
+        }
+    }
+
+    private static final Comparator<Row> ORDER = new Comparator<Row>() {
+        @Override
+        public int compare(Row lhs, Row rhs) {
+            if (lhs.mSortKey != rhs.mSortKey) {
+                return lhs.mSortKey > rhs.mSortKey ? -1 : 1;
+            }
+            return rhs.mId.compareTo(lhs.mId);
+        }
+    };
+
+    private final List<Row> mRows = new ArrayList<>();
+    private final Map<String, Row> mRowsById = new HashMap<>();
+    private final boolean mIsKeyset;
+    private final Object mLock = new Object();
+    private Executor mExecutor;
+
+    /**
+     * @param keyset Whether pages are served from the last row of the previous page instead of
+     *               their offset.
+     */
+    public InMemoryPageSource(boolean keyset) {
+        mIsKeyset = keyset;
+    }
+
+    /**
+     * Delivers the pages on {@code executor} instead of synchronously.
+     */
+    public void setExecutor(Executor executor) {
+        mExecutor = executor;
+    }
+
+    /**
+     * Adds {@code count} rows with ids {@code "0"} to {@code count - 1}, ordered from the highest
+     * id to the lowest.
+     */
+    public void addRows(int count) {
+        synchronized (mLock) {
+            for (int i = 0; i < count; i++) {
+                Row row = new Row(String.valueOf(i), i);
+                mRowsById.put(row.mId, row);
+                mRows.add(row);
+            }
+            Collections.sort(mRows, ORDER);
+        }
+    }
+
+    /**
+     * Inserts {@code row} at its place in the order.
+     */
+    public void insert(Row row) {
+        synchronized (mLock) {
+            int index = Collections.binarySearch(mRows, row, ORDER);
+            mRows.add(index < 0 ? -index - 1 : index, row);
+            mRowsById.put(row.mId, row);
+        }
+    }
+
+    /**
+     * Increments the version of the row with {@code id}.
+     */
+    public void update(String id) {
+        synchronized (mLock) {
+            Row row = mRowsById.get(id);
+            Row updated = new Row(row.mId, row.mSortKey, row.mVersion + 1, false);
+            mRows.set(Collections.binarySearch(mRows, row, ORDER), updated);
+            mRowsById.put(id, updated);
+        }
+    }
+
+    /**
+     * Removes the row with {@code id}.
+     */
+    public void remove(String id) {
+        synchronized (mLock) {
+            Row row = mRowsById.remove(id);
+            mRows.remove(Collections.binarySearch(mRows, row, ORDER));
+        }
+    }
+
+    /**
+     * @return the number of rows.
+     */
+    public int size() {
+        synchronized (mLock) {
+            return mRows.size();
+        }
+    }
+
+    @Override
+    public void loadPage(PageRequest<Row> request, Callback<Row> callback) {
+        List<Row> page;
+        synchronized (mLock) {
+            List<Row> previousObjects = request.getPreviousObjects();
+            Row last = previousObjects.isEmpty() ? null :
+                    previousObjects.get(previousObjects.size() - 1);
+            int start;
+            if (mIsKeyset && last != null && !last.mIsPlaceholder) {
+                int index = Collections.binarySearch(mRows, last, ORDER);
+                start = index < 0 ? -index - 1 : index + 1;
+            } else {
+                start = skip(request.getOffset());
+            }
+            int end = Math.min(mRows.size(), start + request.getLimit());
+            page = new ArrayList<>(mRows.subList(start, end));
+        }
+        deliver(page, callback);
+    }
+
+    /**
+     * Walks over the first {@code offset} rows like a database would for a skip.
+     *
+     * @return the index of the first row after the skipped ones.
+     */
+    private int skip(int offset) {
+        int index = 0;
+        Iterator<Row> iterator = mRows.iterator();
+        while (index < offset && iterator.hasNext()) {
+            iterator.next();
+            index++;
+        }
+        return index;
+    }
+
+    @Override
+    public void countObjects(boolean isRefresh, final CountResultCallback callback) {
+        final int count = size();
+        if (mExecutor == null) {
+            callback.onCount(count);
+            return;
+        }
+        mExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                callback.onCount(count);
+            }
+        });
+    }
+
+    @Override
+    public boolean isRandomAccess() {
+        return !mIsKeyset;
+    }
+
+    @Override
+    public Object getKey(Row object) {
+        return object.mId;
+    }
+
+    @Override
+    public boolean areContentsTheSame(Row oldObject, Row newObject) {
+        return oldObject.mVersion == newObject.mVersion &&
+                oldObject.mIsPlaceholder == newObject.mIsPlaceholder;
+    }
+
+    @Override
+    public Row createPlaceholder(Row object) {
+        return new Row(object.mId, object.mSortKey, object.mVersion, true);
+    }
+
+    @Override
+    public void loadObjects(List<Row> placeholders, Callback<Row> callback) {
+        List<Row> rows = new ArrayList<>(placeholders.size());
+        synchronized (mLock) {
+            for (Row placeholder : placeholders) {
+                Row row = mRowsById.get(placeholder.mId);
+                if (row != null) {
+                    rows.add(row);
+                }
+            }
+        }
+        deliver(rows, callback);
+    }
+
+    private void deliver(final List<Row> rows, final Callback<Row> callback) {
+        if (mExecutor == null) {
+            callback.onResult(rows, true);
+            return;
+        }
+        mExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                callback.onResult(rows, true);
+            }
+        });
+    }
+}
\ No newline at end of file
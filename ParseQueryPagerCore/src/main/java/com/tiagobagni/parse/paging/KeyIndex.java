@@ -0,0 +1,127 @@
+package com.tiagobagni.parse.paging;
+
+import java.util.Arrays;
+
+/**
+ * Counts the keys of the loaded objects, to tell in constant time whether an object is already
+ * loaded. Open addressing over parallel arrays, so adding a key allocates nothing but the
+ * occasional resize, unlike a {@code HashMap} with its entries and boxed counts.
+ * <p/>
+ * Not thread safe, the pager guards it with its lock.
+ */
+class KeyIndex {
+
+    private static final int MIN_CAPACITY = 16;
+
+    private Object[] mKeys = new Object[MIN_CAPACITY];
+    // The spread hash of each key, compared before calling equals
+    private int[] mHashes = new int[MIN_CAPACITY];
+    private int[] mCounts = new int[MIN_CAPACITY];
+    private int mSize;
+
+    /**
+     * Adds one occurrence of {@code key}.
+     */
+    void add(Object key) {
+        if ((mSize + 1) * 4 > mKeys.length * 3) {
+            resize(mKeys.length * 2);
+        }
+        int hash = hash(key);
+        int slot = find(key, hash);
+        if (mKeys[slot] != null) {
+            mCounts[slot]++;
+            return;
+        }
+        mKeys[slot] = key;
+        mHashes[slot] = hash;
+        mCounts[slot] = 1;
+        mSize++;
+    }
+
+    /**
+     * Removes one occurrence of {@code key}, if there is one.
+     */
+    void remove(Object key) {
+        int slot = find(key, hash(key));
+        if (mKeys[slot] == null) {
+            return;
+        }
+        if (--mCounts[slot] > 0) {
+            return;
+        }
+        mSize--;
+        // Shift the following keys of the run back, so lookups never stop at a hole too early
+        int mask = mKeys.length - 1;
+        int hole = slot;
+        int next = (slot + 1) & mask;
+        while (mKeys[next] != null) {
+            int home = mHashes[next] & mask;
+            // Move the key into the hole unless its home slot lies after the hole
+            if (((next - home) & mask) >= ((next - hole) & mask)) {
+                mKeys[hole] = mKeys[next];
+                mHashes[hole] = mHashes[next];
+                mCounts[hole] = mCounts[next];
+                hole = next;
+            }
+            next = (next + 1) & mask;
+        }
+        mKeys[hole] = null;
+        mCounts[hole] = 0;
+    }
+
+    /**
+     * @return the number of occurrences of {@code key}.
+     */
+    int count(Object key) {
+        return mCounts[find(key, hash(key))];
+    }
+
+    void clear() {
+        Arrays.fill(mKeys, null);
+        Arrays.fill(mCounts, 0);
+        mSize = 0;
+    }
+
+    /**
+     * @return the number of distinct keys.
+     */
+    int size() {
+        return mSize;
+    }
+
+    /**
+     * @return the slot holding {@code key}, or the empty slot where it belongs.
+     */
+    private int find(Object key, int hash) {
+        int mask = mKeys.length - 1;
+        int slot = hash & mask;
+        while (mKeys[slot] != null &&
+                (mHashes[slot] != hash || !mKeys[slot].equals(key))) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    private void resize(int capacity) {
+        Object[] keys = mKeys;
+        int[] hashes = mHashes;
+        int[] counts = mCounts;
+        mKeys = new Object[capacity];
+        mHashes = new int[capacity];
+        mCounts = new int[capacity];
+        for (int i = 0; i < keys.length; i++) {
+            if (keys[i] != null) {
+                int slot = find(keys[i], hashes[i]);
+                mKeys[slot] = keys[i];
+                mHashes[slot] = hashes[i];
+                mCounts[slot] = counts[i];
+            }
+        }
+    }
+
+    private static int hash(Object key) {
+        // Spread the bits, so keys with close hash codes don't form long runs
+        int h = key.hashCode() * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+}
\ No newline at end of file
@@ -0,0 +1,301 @@
+package com.tiagobagni.parse.paging;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Computes the operations that turn one list of objects into another, identifying objects by a
+ * key rather than by equality.
+ * <p/>
+ * The result is made of removals, then moves, then insertions and finally changes, each position
+ * being relative to the list as left by the previous operations, so they can be replayed in order
+ * to {@link QueryPager.OnObjectsChangedCallback}. Only the objects outside of the longest
+ * run that kept its relative order are moved.
+ * <p/>
+ * {@code null} elements are placeholders, such as the rows of the pages not loaded in count mode.
+ * They are identified by their position, so the placeholders that stay in place aren't changed.
+ */
+public final class ListDiff {
+
+    /**
+     * Identifies objects and tells whether their contents have changed.
+     *
+     * @param <T>
+     */
+    public interface ItemCallback<T> {
+        /**
+         * @return the key identifying {@code object} in both lists. Never called with a
+         * placeholder.
+         */
+        Object getKey(T object);
+
+        /**
+         * @return whether {@code oldObject} and {@code newObject}, which have the same key, display
+         * the same contents. Never called with placeholders.
+         */
+        boolean areContentsTheSame(T oldObject, T newObject);
+    }
+
+    /**
+     * A single range operation.
+     */
+    public static class Op {
+        public static final int REMOVE = 0;
+        public static final int MOVE = 1;
+        public static final int INSERT = 2;
+        public static final int CHANGE = 3;
+
+        public final int type;
+        public final int position;
+        // Destination of a move, unused otherwise
+        public final int toPosition;
+        public final int itemCount;
+
+        Op(int type, int position, int toPosition, int itemCount) {
+            this.type = type;
+            this.position = position;
+            this.toPosition = toPosition;
+            this.itemCount = itemCount;
+        }
+
+        @Override
+        public String toString() {
+            return "Op{type=" + type + ", position=" + position + ", toPosition=" + toPosition +
+                    ", itemCount=" + itemCount + "}";
+        }
+    }
+
+    /**
+     * The key of the placeholder at a position.
+     */
+    private static final class PlaceholderKey {
+        private final int mPosition;
+
+        PlaceholderKey(int position) {
+            mPosition = position;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof PlaceholderKey && ((PlaceholderKey) o).mPosition == mPosition;
+        }
+
+        @Override
+        public int hashCode() {
+            return mPosition;
+        }
+    }
+
+    private ListDiff() {
+    }
+
+    /**
+     * Computes the operations that turn {@code oldList} into {@code newList}.
+     *
+     * @return the operations, or {@code null} if either list contains the same key twice, in which
+     * case the lists can't be matched and the whole list should be considered changed.
+     */
+    public static <T> List<Op> compute(List<T> oldList, List<T> newList,
+            ItemCallback<T> callback) {
+        Map<Object, Integer> newIndexes = indexKeys(newList, callback);
+        Map<Object, Integer> oldIndexes = indexKeys(oldList, callback);
+        if (newIndexes == null || oldIndexes == null) {
+            return null;
+        }
+
+        List<Op> ops = new ArrayList<>();
+
+        // 1. Removals, from the end so positions don't shift
+        List<Object> work = new ArrayList<>(oldList.size());
+        int removeEnd = -1;
+        for (int i = oldList.size() - 1; i >= 0; i--) {
+            boolean removed = !newIndexes.containsKey(getKey(oldList, i, callback));
+            if (removed && removeEnd < 0) {
+                removeEnd = i;
+            } else if (!removed && removeEnd >= 0) {
+                ops.add(new Op(Op.REMOVE, i + 1, -1, removeEnd - i));
+                removeEnd = -1;
+            }
+        }
+        if (removeEnd >= 0) {
+            ops.add(new Op(Op.REMOVE, 0, -1, removeEnd + 1));
+        }
+        for (int i = 0; i < oldList.size(); i++) {
+            Object key = getKey(oldList, i, callback);
+            if (newIndexes.containsKey(key)) {
+                work.add(key);
+            }
+        }
+
+        // 2. Moves. The objects in the longest increasing run of new indexes stay where they are,
+        // every other one is moved right after the object that precedes it in the new list.
+        int[] targets = new int[work.size()];
+        Map<Object, Integer> workIndexes = new HashMap<>(work.size() * 2);
+        for (int i = 0; i < targets.length; i++) {
+            targets[i] = newIndexes.get(work.get(i));
+            workIndexes.put(work.get(i), i);
+        }
+        boolean[] stays = longestIncreasingRun(targets, newList.size());
+        // The order of each object in the list being moved: its index plus one in the high bits.
+        // A moved object takes the high bits of the one it is moved after, 0 at the start of the
+        // list, and when it was moved in the low bits, so it sorts right after it.
+        long[] orders = new long[work.size()];
+        for (int i = 0; i < orders.length; i++) {
+            orders[i] = (long) (i + 1) << 32;
+        }
+        List<Integer> moved = new ArrayList<>();
+        int previous = -1;
+        for (int i = 0; i < newList.size(); i++) {
+            Integer index = workIndexes.get(getKey(newList, i, callback));
+            if (index == null) {
+                // Inserted, handled later
+                continue;
+            }
+            if (!stays[i]) {
+                long after = previous < 0 ? 0 : orders[previous] >>> 32;
+                moved.add(index);
+                orders[index] = after << 32 | moved.size();
+            }
+            previous = index;
+        }
+        addMoves(ops, orders, moved);
+
+        // 3. Insertions, in ascending order so the ones before are already in place
+        int insertStart = -1;
+        for (int i = 0; i <= newList.size(); i++) {
+            boolean inserted = i < newList.size() &&
+                    !oldIndexes.containsKey(getKey(newList, i, callback));
+            if (inserted && insertStart < 0) {
+                insertStart = i;
+            } else if (!inserted && insertStart >= 0) {
+                ops.add(new Op(Op.INSERT, insertStart, -1, i - insertStart));
+                insertStart = -1;
+            }
+        }
+
+        // 4. Changes, the list is now in its final order
+        int changeStart = -1;
+        for (int i = 0; i <= newList.size(); i++) {
+            boolean changed = false;
+            if (i < newList.size()) {
+                T newObject = newList.get(i);
+                Integer oldIndex = oldIndexes.get(getKey(newList, i, callback));
+                changed = oldIndex != null && newObject != null &&
+                        !callback.areContentsTheSame(oldList.get(oldIndex), newObject);
+            }
+            if (changed && changeStart < 0) {
+                changeStart = i;
+            } else if (!changed && changeStart >= 0) {
+                ops.add(new Op(Op.CHANGE, changeStart, -1, i - changeStart));
+                changeStart = -1;
+            }
+        }
+
+        return ops;
+    }
+
+    /**
+     * Replays the moves of the objects at the {@code moved} indexes, in turn, from the order of
+     * their index to the one they have in {@code orders}. Their positions are the number of
+     * objects ordered before them, counted with a Fenwick tree.
+     */
+    private static void addMoves(List<Op> ops, long[] orders, List<Integer> moved) {
+        if (moved.isEmpty()) {
+            return;
+        }
+        long[] sorted = new long[orders.length + moved.size()];
+        for (int i = 0; i < orders.length; i++) {
+            sorted[i] = (long) (i + 1) << 32;
+        }
+        for (int i = 0; i < moved.size(); i++) {
+            sorted[orders.length + i] = orders[moved.get(i)];
+        }
+        Arrays.sort(sorted);
+        int[] tree = new int[sorted.length + 1];
+        for (int i = 0; i < orders.length; i++) {
+            addCount(tree, Arrays.binarySearch(sorted, (long) (i + 1) << 32), 1);
+        }
+        for (int i = 0; i < moved.size(); i++) {
+            int fromIndex = Arrays.binarySearch(sorted, (long) (moved.get(i) + 1) << 32);
+            int from = countBefore(tree, fromIndex);
+            addCount(tree, fromIndex, -1);
+            // Each object is moved once, its order is the one it was moved to
+            int toIndex = Arrays.binarySearch(sorted, orders[moved.get(i)]);
+            int to = countBefore(tree, toIndex);
+            addCount(tree, toIndex, 1);
+            if (to != from) {
+                ops.add(new Op(Op.MOVE, from, to, 1));
+            }
+        }
+    }
+
+    private static void addCount(int[] tree, int index, int delta) {
+        for (int i = index + 1; i < tree.length; i += i & -i) {
+            tree[i] += delta;
+        }
+    }
+
+    /**
+     * @return the number of objects ordered before {@code sorted[index]}.
+     */
+    private static int countBefore(int[] tree, int index) {
+        int count = 0;
+        for (int i = index; i > 0; i -= i & -i) {
+            count += tree[i];
+        }
+        return count;
+    }
+
+    private static <T> Object getKey(List<T> list, int index, ItemCallback<T> callback) {
+        T object = list.get(index);
+        return object == null ? new PlaceholderKey(index) : callback.getKey(object);
+    }
+
+    private static <T> Map<Object, Integer> indexKeys(List<T> list, ItemCallback<T> callback) {
+        Map<Object, Integer> indexes = new HashMap<>(list.size() * 2);
+        for (int i = 0; i < list.size(); i++) {
+            if (indexes.put(getKey(list, i, callback), i) != null) {
+                return null;
+            }
+        }
+        return indexes;
+    }
+
+    /**
+     * Marks the values, all in {@code [0, range)}, that are part of the longest strictly increasing
+     * subsequence of {@code values}.
+     */
+    private static boolean[] longestIncreasingRun(int[] values, int range) {
+        int n = values.length;
+        // tails[k] is the index of the smallest tail of an increasing run of length k + 1
+        int[] tails = new int[n];
+        int[] previous = new int[n];
+        int length = 0;
+        for (int i = 0; i < n; i++) {
+            int low = 0;
+            int high = length;
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (values[tails[mid]] < values[i]) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            previous[i] = low > 0 ? tails[low - 1] : -1;
+            tails[low] = i;
+            if (low == length) {
+                length++;
+            }
+        }
+
+        boolean[] stays = new boolean[range];
+        for (int i = length > 0 ? tails[length - 1] : -1; i >= 0; i = previous[i]) {
+            stays[values[i]] = true;
+        }
+        return stays;
+    }
+}
\ No newline at end of file
@@ -0,0 +1,19 @@
+package com.tiagobagni.parse.paging;
+
+import java.util.List;
+
+/**
+ * The callback that is called by {@link QueryPager} with the result of a load.
+ *
+ * @param <T>
+ */
+public interface LoadCallback<T> {
+    /**
+     * Called with the result of a load. Both {@code objects} and {@code e} are {@code null} if the
+     * load was canceled.
+     *
+     * @param objects The loaded objects, or {@code null} if the load failed or was canceled.
+     * @param e       The error, or {@code null} if the load succeeded or was canceled.
+     */
+    void done(List<T> objects, Exception e);
+}
\ No newline at end of file
@@ -0,0 +1,342 @@
+package com.tiagobagni.parse.paging;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * An in-memory cache of loaded pages, shared by the pagers of a process so a pager created for a
+ * query that was displayed recently, such as after a screen is recreated, starts from its pages
+ * instead of the network.
+ * <p/>
+ * Pages are identified by the key of their query, the same for every page of a query, and by the
+ * key of the page within it, such as its offset and limit or its cursor. The cache is bounded by
+ * a number of pages and by an approximate number of bytes, evicting the least recently used pages
+ * first. It is thread safe.
+ * <p/>
+ * Each page is cached with a time to live, after which it is stale: it is still returned, so it
+ * can be displayed right away, but should be loaded again to revalidate it.
+ */
+public class PageCache {
+
+    private static final int DEFAULT_MAX_ENTRIES = 100;
+    private static final long DEFAULT_MAX_BYTES = 4 * 1024 * 1024;
+
+    private static PageCache sDefault;
+
+    private final int mMaxEntries;
+    private final long mMaxBytes;
+    // In access order, the least recently used page first
+    private final LinkedHashMap<Key, Entry> mEntries = new LinkedHashMap<>(16, 0.75f, true);
+    private long mBytes;
+
+    private long mHitCount;
+    private long mStaleHitCount;
+    private long mMissCount;
+    private long mEvictionCount;
+
+    private static final class Key {
+        final Object queryKey;
+        final Object pageKey;
+
+        Key(Object queryKey, Object pageKey) {
+            this.queryKey = queryKey;
+            this.pageKey = pageKey;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key key = (Key) o;
+            return queryKey.equals(key.queryKey) && pageKey.equals(key.pageKey);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * queryKey.hashCode() + pageKey.hashCode();
+        }
+    }
+
+    private static final class Entry {
+        final List<?> objects;
+        final long bytes;
+        final long createdNanos;
+        // When the page becomes stale, in System.nanoTime()
+        long staleNanos;
+
+        Entry(List<?> objects, long bytes, long createdNanos, long staleNanos) {
+            this.objects = objects;
+            this.bytes = bytes;
+            this.createdNanos = createdNanos;
+            this.staleNanos = staleNanos;
+        }
+    }
+
+    /**
+     * A page found in the cache.
+     *
+     * @param <T>
+     */
+    public static final class CachedPage<T> {
+        private final List<T> mObjects;
+        private final long mAgeMillis;
+        private final boolean mIsStale;
+
+        CachedPage(List<T> objects, long ageMillis, boolean isStale) {
+            mObjects = objects;
+            mAgeMillis = ageMillis;
+            mIsStale = isStale;
+        }
+
+        /**
+         * @return the objects of the page, immutable.
+         */
+        public List<T> getObjects() {
+            return mObjects;
+        }
+
+        /**
+         * @return the time since the page was cached.
+         */
+        public long getAgeMillis() {
+            return mAgeMillis;
+        }
+
+        /**
+         * @return whether the page outlived its time to live, or its query was marked stale, so it
+         * should be loaded again.
+         */
+        public boolean isStale() {
+            return mIsStale;
+        }
+    }
+
+    /**
+     * Constructs a cache of up to 100 pages and 4 MB.
+     */
+    public PageCache() {
+        this(DEFAULT_MAX_ENTRIES, DEFAULT_MAX_BYTES);
+    }
+
+    /**
+     * @param maxEntries The maximum number of pages kept.
+     * @param maxBytes   The maximum approximate size of the pages kept.
+     */
+    public PageCache(int maxEntries, long maxBytes) {
+        if (maxEntries < 1 || maxBytes < 1) {
+            throw new IllegalArgumentException("The cache bounds must be positive");
+        }
+        mMaxEntries = maxEntries;
+        mMaxBytes = maxBytes;
+    }
+
+    /**
+     * @return the cache shared by the whole process, created with the default bounds the first
+     * time it is needed.
+     */
+    public static synchronized PageCache getDefault() {
+        if (sDefault == null) {
+            sDefault = new PageCache();
+        }
+        return sDefault;
+    }
+
+    /**
+     * Returns the objects of a page, stale or not, marking it as the most recently used one.
+     *
+     * @param queryKey The key of the query of the page.
+     * @param pageKey  The key of the page within its query.
+     * @return the objects of the page, or {@code null} if it is not cached.
+     */
+    public <T> List<T> get(Object queryKey, Object pageKey) {
+        CachedPage<T> page = getPage(queryKey, pageKey);
+        return page != null ? page.getObjects() : null;
+    }
+
+    /**
+     * Returns a page, stale or not, marking it as the most recently used one.
+     *
+     * @param queryKey The key of the query of the page.
+     * @param pageKey  The key of the page within its query.
+     * @return the page, or {@code null} if it is not cached.
+     */
+    @SuppressWarnings("unchecked")
+    public synchronized <T> CachedPage<T> getPage(Object queryKey, Object pageKey) {
+        Entry entry = mEntries.get(new Key(queryKey, pageKey));
+        if (entry == null) {
+            mMissCount++;
+            return null;
+        }
+        long now = System.nanoTime();
+        boolean isStale = now - entry.staleNanos >= 0;
+        mHitCount++;
+        if (isStale) {
+            mStaleHitCount++;
+        }
+        return new CachedPage<>((List<T>) entry.objects,
+                TimeUnit.NANOSECONDS.toMillis(now - entry.createdNanos), isStale);
+    }
+
+    /**
+     * Caches the objects of a page without a time to live, so it is only stale once its query
+     * is {@link #markStale(Object) marked stale}.
+     *
+     * @see #put(Object, Object, List, long, long)
+     */
+    public void put(Object queryKey, Object pageKey, List<?> objects, long bytes) {
+        put(queryKey, pageKey, objects, bytes, Long.MAX_VALUE);
+    }
+
+    /**
+     * Caches the objects of a page, replacing the ones cached before, and evicts the least
+     * recently used pages if the cache is over its bounds. A page larger than the whole cache is
+     * not cached.
+     *
+     * @param queryKey  The key of the query of the page.
+     * @param pageKey   The key of the page within its query.
+     * @param objects   The objects of the page.
+     * @param bytes     The approximate size of the objects.
+     * @param ttlMillis The time after which the page is stale, {@link Long#MAX_VALUE} for never.
+     */
+    public synchronized void put(Object queryKey, Object pageKey, List<?> objects, long bytes,
+            long ttlMillis) {
+        if (ttlMillis < 0) {
+            throw new IllegalArgumentException("The time to live must not be negative");
+        }
+        Key key = new Key(queryKey, pageKey);
+        Entry previous = mEntries.remove(key);
+        if (previous != null) {
+            mBytes -= previous.bytes;
+        }
+        if (bytes > mMaxBytes) {
+            return;
+        }
+        long now = System.nanoTime();
+        // Pages that never go stale are given the largest time that can't overflow
+        long ttlNanos = Math.min(TimeUnit.MILLISECONDS.toNanos(ttlMillis), Long.MAX_VALUE / 2);
+        mEntries.put(key, new Entry(Collections.unmodifiableList(new ArrayList<>(objects)),
+                bytes, now, now + ttlNanos));
+        mBytes += bytes;
+
+        Iterator<Entry> leastRecentlyUsed = mEntries.values().iterator();
+        while (mEntries.size() > mMaxEntries || mBytes > mMaxBytes) {
+            mBytes -= leastRecentlyUsed.next().bytes;
+            leastRecentlyUsed.remove();
+            mEvictionCount++;
+        }
+    }
+
+    /**
+     * Drops the pages of a query, such as after objects it matches were saved or deleted.
+     *
+     * @param queryKey The key of the query.
+     */
+    public synchronized void invalidate(Object queryKey) {
+        Iterator<Map.Entry<Key, Entry>> entries = mEntries.entrySet().iterator();
+        while (entries.hasNext()) {
+            Map.Entry<Key, Entry> entry = entries.next();
+            if (entry.getKey().queryKey.equals(queryKey)) {
+                mBytes -= entry.getValue().bytes;
+                entries.remove();
+            }
+        }
+    }
+
+    /**
+     * Marks the pages of a query as stale, so they are revalidated the next time they are loaded
+     * while still being displayed right away.
+     *
+     * @param queryKey The key of the query.
+     */
+    public synchronized void markStale(Object queryKey) {
+        long now = System.nanoTime();
+        for (Map.Entry<Key, Entry> entry : mEntries.entrySet()) {
+            if (entry.getKey().queryKey.equals(queryKey)) {
+                entry.getValue().staleNanos = now;
+            }
+        }
+    }
+
+    /**
+     * Drops every page.
+     */
+    public synchronized void invalidateAll() {
+        mEntries.clear();
+        mBytes = 0;
+    }
+
+    /**
+     * @return the number of pages cached.
+     */
+    public synchronized int size() {
+        return mEntries.size();
+    }
+
+    /**
+     * @return the approximate size of the pages cached.
+     */
+    public synchronized long getBytes() {
+        return mBytes;
+    }
+
+    public int getMaxEntries() {
+        return mMaxEntries;
+    }
+
+    public long getMaxBytes() {
+        return mMaxBytes;
+    }
+
+    public synchronized long getHitCount() {
+        return mHitCount;
+    }
+
+    /**
+     * @return the number of lookups that found a stale page, included in {@link #getHitCount()}.
+     */
+    public synchronized long getStaleHitCount() {
+        return mStaleHitCount;
+    }
+
+    public synchronized long getMissCount() {
+        return mMissCount;
+    }
+
+    /**
+     * @return the share of the lookups that found their page, 0 if there was none.
+     */
+    public synchronized double getHitRate() {
+        long lookups = mHitCount + mMissCount;
+        return lookups == 0 ? 0 : (double) mHitCount / lookups;
+    }
+
+    /**
+     * @return the number of pages dropped to stay within the bounds, not counting invalidations.
+     */
+    public synchronized long getEvictionCount() {
+        return mEvictionCount;
+    }
+
+    /**
+     * Resets the hit, miss and eviction counts.
+     */
+    public synchronized void resetStats() {
+        mHitCount = 0;
+        mStaleHitCount = 0;
+        mMissCount = 0;
+        mEvictionCount = 0;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "PageCache{size=" + mEntries.size() + ", bytes=" + mBytes + ", hits=" + mHitCount +
+                ", staleHits=" + mStaleHitCount + ", misses=" + mMissCount + ", evictions=" +
+                mEvictionCount + "}";
+    }
+}
\ No newline at end of file
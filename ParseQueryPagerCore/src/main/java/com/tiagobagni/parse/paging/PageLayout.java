@@ -0,0 +1,96 @@
+package com.tiagobagni.parse.paging;
+
+import java.util.Arrays;
+
+/**
+ * The offsets of the pages of a {@link QueryPager}, whose sizes may differ from page to page.
+ * <p/>
+ * Pages are added in order, and their size never changes afterwards, so a position always maps to
+ * the same page. Not thread safe, guarded by the lock of the pager.
+ */
+final class PageLayout {
+
+    // mStarts[page] is the offset of the page, mStarts[mPageCount] the end of the last page
+    private int[] mStarts;
+    private int mPageCount;
+
+    PageLayout() {
+        mStarts = new int[16];
+    }
+
+    PageLayout(PageLayout layout) {
+        mStarts = layout.mStarts.clone();
+        mPageCount = layout.mPageCount;
+    }
+
+    /**
+     * @return the number of pages laid out so far.
+     */
+    int getPageCount() {
+        return mPageCount;
+    }
+
+    /**
+     * @return the position following the last page laid out so far.
+     */
+    int getEnd() {
+        return mStarts[mPageCount];
+    }
+
+    /**
+     * Adds a page of {@code size} objects after the last one.
+     */
+    void addPage(int size) {
+        if (mPageCount + 1 == mStarts.length) {
+            mStarts = Arrays.copyOf(mStarts, mStarts.length * 2);
+        }
+        mStarts[mPageCount + 1] = mStarts[mPageCount] + size;
+        mPageCount++;
+    }
+
+    /**
+     * @param page A page laid out already.
+     * @return the position of the first object of {@code page}.
+     */
+    int getStart(int page) {
+        checkPage(page);
+        return mStarts[page];
+    }
+
+    /**
+     * @param page A page laid out already.
+     * @return the number of objects of {@code page}.
+     */
+    int getSize(int page) {
+        checkPage(page);
+        return mStarts[page + 1] - mStarts[page];
+    }
+
+    /**
+     * @param position A position before {@link #getEnd()}.
+     * @return the page holding {@code position}.
+     */
+    int getPage(int position) {
+        if (position < 0 || position >= getEnd()) {
+            throw new IndexOutOfBoundsException("Position " + position + " is not laid out");
+        }
+        // The last start not after the position
+        int low = 0;
+        int high = mPageCount - 1;
+        while (low < high) {
+            int middle = (low + high + 1) >>> 1;
+            if (mStarts[middle] <= position) {
+                low = middle;
+            } else {
+                high = middle - 1;
+            }
+        }
+        return low;
+    }
+
+    private void checkPage(int page) {
+        if (page < 0 || page >= mPageCount) {
+            throw new IndexOutOfBoundsException("Page " + page + " is not laid out");
+        }
+    }
+}
\ No newline at end of file
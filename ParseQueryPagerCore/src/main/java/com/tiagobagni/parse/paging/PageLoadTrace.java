@@ -0,0 +1,160 @@
+package com.tiagobagni.parse.paging;
+
+/**
+ * The timings and outcome of a result of a page load, reported to {@link PagerMetrics}.
+ * <p/>
+ * The phases follow each other: the fetch, which includes the cache lookup, then merging the
+ * objects into the pager, then notifying its {@link QueryPager.OnObjectsChangedCallback}s. Phases
+ * that did not happen, such as the merge of a failed load, take 0 nanoseconds.
+ */
+public final class PageLoadTrace {
+
+    int mPage;
+    int mPageSize;
+    boolean mIsRefresh;
+    int mDelivery;
+    boolean mIsFinal;
+    boolean mIsCacheLookedUp;
+    boolean mIsCacheHit;
+    long mCacheLookupNanos;
+    long mFetchNanos;
+    long mMergeNanos;
+    long mNotifyNanos;
+    int mResultCount = -1;
+    long mBytes = -1;
+    boolean mIsCancelled;
+    Exception mError;
+
+    PageLoadTrace() {
+    }
+
+    /**
+     * @return the zero-based index of the page.
+     */
+    public int getPage() {
+        return mPage;
+    }
+
+    /**
+     * @return the number of objects requested for the page, which varies with the
+     * {@link PageSizePolicy} of the pager.
+     */
+    public int getPageSize() {
+        return mPageSize;
+    }
+
+    /**
+     * @return whether the page was loaded to refresh the pager.
+     */
+    public boolean isRefresh() {
+        return mIsRefresh;
+    }
+
+    /**
+     * Returns the index of this result among the results of the page load. A page loaded from a
+     * cache and then from the network has a first result with index 0 and a second one with index
+     * 1.
+     *
+     * @return the zero-based index of the result.
+     */
+    public int getDelivery() {
+        return mDelivery;
+    }
+
+    /**
+     * @return whether this is the last result of the page load.
+     */
+    public boolean isFinal() {
+        return mIsFinal;
+    }
+
+    /**
+     * @return whether the source looked the page up in a cache.
+     */
+    public boolean isCacheLookedUp() {
+        return mIsCacheLookedUp;
+    }
+
+    /**
+     * @return whether the source found the page in a cache.
+     */
+    public boolean isCacheHit() {
+        return mIsCacheHit;
+    }
+
+    /**
+     * @return the time the source spent looking the page up in a cache.
+     */
+    public long getCacheLookupNanos() {
+        return mCacheLookupNanos;
+    }
+
+    /**
+     * @return the time from the request of the page to the delivery of this result, including the
+     * cache lookup, the network and decoding the objects.
+     */
+    public long getFetchNanos() {
+        return mFetchNanos;
+    }
+
+    /**
+     * @return the time spent merging the objects into the pager.
+     */
+    public long getMergeNanos() {
+        return mMergeNanos;
+    }
+
+    /**
+     * @return the time spent notifying the callbacks of the pager.
+     */
+    public long getNotifyNanos() {
+        return mNotifyNanos;
+    }
+
+    /**
+     * @return the sum of the fetch, merge and notify times.
+     */
+    public long getTotalNanos() {
+        return mFetchNanos + mMergeNanos + mNotifyNanos;
+    }
+
+    /**
+     * @return the number of objects delivered by the source, or -1 if the load failed or was
+     * cancelled.
+     */
+    public int getResultCount() {
+        return mResultCount;
+    }
+
+    /**
+     * @return the size of the response, or -1 if the source doesn't know it.
+     */
+    public long getBytes() {
+        return mBytes;
+    }
+
+    /**
+     * @return whether the result was dropped because the load was cancelled.
+     */
+    public boolean isCancelled() {
+        return mIsCancelled;
+    }
+
+    /**
+     * @return the error the load failed with, if any.
+     */
+    public Exception getError() {
+        return mError;
+    }
+
+    @Override
+    public String toString() {
+        return "PageLoadTrace{page=" + mPage + ", pageSize=" + mPageSize + ", isRefresh=" +
+                mIsRefresh + ", delivery=" + mDelivery + ", isFinal=" + mIsFinal + ", cache=" +
+                (mIsCacheLookedUp ? (mIsCacheHit ? "hit" : "miss") : "none") +
+                ", cacheLookupNanos=" + mCacheLookupNanos + ", fetchNanos=" + mFetchNanos +
+                ", mergeNanos=" + mMergeNanos + ", notifyNanos=" + mNotifyNanos +
+                ", resultCount=" + mResultCount + ", bytes=" + mBytes + ", isCancelled=" +
+                mIsCancelled + ", error=" + mError + "}";
+    }
+}
\ No newline at end of file
@@ -0,0 +1,160 @@
+package com.tiagobagni.parse.paging;
+
+import java.util.List;
+
+/**
+ * Describes a page a {@link QueryPager} asks its {@link PageSource} for.
+ *
+ * @param <T>
+ */
+public class PageRequest<T> {
+
+    private final int mPage;
+    private final int mOffset;
+    private final int mPageSize;
+    private final List<T> mPreviousObjects;
+    private final boolean mIsRefresh;
+    private final boolean mIsGapFill;
+
+    // Set when the pager reports its page loads to PagerMetrics
+    private final boolean mIsTraced;
+    private final long mStartNanos;
+    private volatile boolean mIsCacheLookedUp;
+    private volatile boolean mIsCacheHit;
+    private volatile long mCacheLookupNanos;
+    private volatile long mBytes = -1;
+
+    PageRequest(int page, int offset, int pageSize, List<T> previousObjects, boolean isRefresh,
+            boolean traced) {
+        this(page, offset, pageSize, previousObjects, isRefresh, false, traced);
+    }
+
+    PageRequest(int page, int offset, int pageSize, List<T> previousObjects, boolean isRefresh,
+            boolean isGapFill, boolean traced) {
+        mPage = page;
+        mOffset = offset;
+        mPageSize = pageSize;
+        mPreviousObjects = previousObjects;
+        mIsRefresh = isRefresh;
+        mIsGapFill = isGapFill;
+        mIsTraced = traced;
+        mStartNanos = traced ? System.nanoTime() : 0;
+    }
+
+    /**
+     * @return the zero-based index of the page.
+     */
+    public int getPage() {
+        return mPage;
+    }
+
+    /**
+     * @return the position of the first object of the page in the result set.
+     */
+    public int getOffset() {
+        return mOffset;
+    }
+
+    /**
+     * @return the number of objects in the page.
+     */
+    public int getPageSize() {
+        return mPageSize;
+    }
+
+    /**
+     * Returns the number of objects to load: one more than the page size, so the pager can tell if
+     * there is a next page.
+     *
+     * @return the maximum number of objects to load.
+     */
+    public int getLimit() {
+        return mPageSize + 1;
+    }
+
+    /**
+     * Returns the objects of the page before this one, to build a cursor from. The last one is the
+     * object right before the requested page.
+     *
+     * @return the objects of the previous page, empty for the first page.
+     */
+    public List<T> getPreviousObjects() {
+        return mPreviousObjects;
+    }
+
+    /**
+     * @return whether the page is loaded to refresh the one already displayed, in which case it
+     * should not come from a cache.
+     */
+    public boolean isRefresh() {
+        return mIsRefresh;
+    }
+
+    /**
+     * @return whether the objects only fill the end of a page shortened by the duplicates it
+     * brought, in which case they should come from the network and not be cached, the page they
+     * belong to is cached on its own.
+     */
+    public boolean isGapFill() {
+        return mIsGapFill;
+    }
+
+    /**
+     * Records that the source looked the page up in a cache, for the {@link PagerMetrics} of the
+     * pager. Does nothing if the pager has none.
+     *
+     * @param hit   Whether the page was found.
+     * @param nanos The time spent looking it up.
+     */
+    public void recordCacheLookup(boolean hit, long nanos) {
+        if (mIsTraced) {
+            mIsCacheHit = hit;
+            mCacheLookupNanos = nanos;
+            mIsCacheLookedUp = true;
+        }
+    }
+
+    /**
+     * Records the size of the response, for the {@link PagerMetrics} of the pager. Does nothing if
+     * the pager has none.
+     *
+     * @param bytes The size of the response.
+     */
+    public void recordBytes(long bytes) {
+        if (mIsTraced) {
+            mBytes = bytes;
+        }
+    }
+
+    /**
+     * @return whether the pager measures its page loads, so the source can skip measuring what it
+     * would {@link #recordBytes(long) record} otherwise.
+     */
+    public boolean isTraced() {
+        return mIsTraced;
+    }
+
+    /**
+     * Starts the trace of a result of this request, with what was recorded so far.
+     */
+    PageLoadTrace newTrace(int delivery, boolean isFinal) {
+        PageLoadTrace trace = new PageLoadTrace();
+        trace.mPage = mPage;
+        trace.mPageSize = mPageSize;
+        trace.mIsRefresh = mIsRefresh;
+        trace.mDelivery = delivery;
+        trace.mIsFinal = isFinal;
+        trace.mIsCacheLookedUp = mIsCacheLookedUp;
+        trace.mIsCacheHit = mIsCacheHit;
+        trace.mCacheLookupNanos = mCacheLookupNanos;
+        trace.mBytes = mBytes;
+        trace.mFetchNanos = System.nanoTime() - mStartNanos;
+        return trace;
+    }
+
+    @Override
+    public String toString() {
+        return "PageRequest{page=" + mPage + ", offset=" + mOffset + ", pageSize=" + mPageSize +
+                ", isRefresh=" + mIsRefresh + "}";
+    }
+}
\ No newline at end of file
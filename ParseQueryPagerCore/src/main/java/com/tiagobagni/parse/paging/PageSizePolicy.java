@@ -0,0 +1,194 @@
+package com.tiagobagni.parse.paging;
+
+/**
+ * Decides the size of the pages a {@link QueryPager} requests, based on how long pages take to
+ * load, how large their objects are and how fast the user goes through them.
+ * <p/>
+ * The load time of a page is modelled as a fixed cost per request, the round trip, plus a cost per
+ * object, fitted on the measured page loads. Pages grow until the next page loads before the user
+ * is done with the current one, and until the fixed cost is a small share of the load time, as
+ * long as the user goes through that many objects within a few seconds. They shrink back when the
+ * user slows down. Either way they stay within the size bounds and the byte budget, and change by
+ * at most a factor of 2 from one page to the next.
+ */
+public class PageSizePolicy {
+
+    private static final int DEFAULT_MIN_SIZE = 10;
+    private static final int DEFAULT_MAX_SIZE = 200;
+    private static final long DEFAULT_MAX_BYTES = 256 * 1024;
+
+    // Weight of the newest sample in the moving averages
+    private static final double SMOOTHING = 0.3;
+    // A page should last this many times the load time of the next one
+    private static final double SAFETY_FACTOR = 2;
+    // Grow the pages until the fixed cost of a request is at most this share of its load time
+    private static final double MAX_OVERHEAD_SHARE = 0.25;
+    // But don't load more objects than the user goes through in this long
+    private static final long CONSUMPTION_HORIZON_MS = 10000;
+    // A pause longer than this is not scrolling, don't let it drag the rate down
+    private static final long MAX_BIND_INTERVAL_MS = 1000;
+    private static final int MAX_GROWTH = 2;
+
+    private int mMinSize = DEFAULT_MIN_SIZE;
+    private int mMaxSize = DEFAULT_MAX_SIZE;
+    private long mMaxBytes = DEFAULT_MAX_BYTES;
+
+    private int mLastPosition = -1;
+    private long mLastBindTime;
+    // Objects per millisecond, only counting forward scrolling
+    private double mConsumptionRate;
+
+    // Moving sums of the page loads, to fit the load time as a linear function of the size
+    private double mWeight;
+    private double mSumCount;
+    private double mSumLatency;
+    private double mSumCountSquared;
+    private double mSumCountLatency;
+    private double mBytesPerObject;
+
+    /**
+     * Sets the bounds of the page size.
+     *
+     * @param minSize The smallest page size.
+     * @param maxSize The largest page size.
+     */
+    public synchronized void setSizeBounds(int minSize, int maxSize) {
+        if (minSize < 1 || maxSize < minSize) {
+            throw new IllegalArgumentException("Invalid page size bounds: [" + minSize + ", " +
+                    maxSize + "]");
+        }
+        mMinSize = minSize;
+        mMaxSize = maxSize;
+    }
+
+    public synchronized int getMinSize() {
+        return mMinSize;
+    }
+
+    public synchronized int getMaxSize() {
+        return mMaxSize;
+    }
+
+    /**
+     * Limits the size of the pages to the number of objects that fit in {@code maxBytes}, for the
+     * sources that report the size of their responses.
+     *
+     * @param maxBytes The largest response size.
+     */
+    public synchronized void setMaxBytes(long maxBytes) {
+        if (maxBytes <= 0) {
+            throw new IllegalArgumentException("The byte budget must be positive");
+        }
+        mMaxBytes = maxBytes;
+    }
+
+    public synchronized long getMaxBytes() {
+        return mMaxBytes;
+    }
+
+    /**
+     * Records that the row at {@code position} was bound.
+     *
+     * @param position The adapter position.
+     * @param timeMs   The bind time, in milliseconds.
+     */
+    public synchronized void onBind(int position, long timeMs) {
+        if (position == mLastPosition) {
+            return;
+        }
+
+        if (mLastPosition >= 0 && position > mLastPosition) {
+            long interval = timeMs - mLastBindTime;
+            if (interval > 0 && interval <= MAX_BIND_INTERVAL_MS) {
+                double rate = (double) (position - mLastPosition) / interval;
+                mConsumptionRate = average(mConsumptionRate, rate);
+            }
+        }
+
+        mLastPosition = position;
+        mLastBindTime = timeMs;
+    }
+
+    /**
+     * Records a page load.
+     *
+     * @param resultCount The number of objects loaded.
+     * @param latencyMs   The time between the page request and its result, in milliseconds.
+     * @param bytes       The size of the response, or -1 if unknown.
+     */
+    public synchronized void onPageLoaded(int resultCount, long latencyMs, long bytes) {
+        if (resultCount < 0 || latencyMs < 0) {
+            return;
+        }
+        double decay = mWeight == 0 ? 0 : 1 - SMOOTHING;
+        mWeight = mWeight * decay + 1;
+        mSumCount = mSumCount * decay + resultCount;
+        mSumLatency = mSumLatency * decay + latencyMs;
+        mSumCountSquared = mSumCountSquared * decay + (double) resultCount * resultCount;
+        mSumCountLatency = mSumCountLatency * decay + (double) resultCount * latencyMs;
+        if (bytes >= 0 && resultCount > 0) {
+            mBytesPerObject = average(mBytesPerObject, (double) bytes / resultCount);
+        }
+    }
+
+    /**
+     * Returns the size of the page following a page of {@code previousSize} objects. Without
+     * measurements of both the page loads and the scrolling, that is {@code previousSize} within
+     * the bounds.
+     *
+     * @param previousSize The size of the previous page.
+     * @return the size of the next page.
+     */
+    public synchronized int getPageSize(int previousSize) {
+        int size = previousSize;
+        if (mWeight > 0 && mConsumptionRate > 0) {
+            size = (int) Math.min(Integer.MAX_VALUE, Math.ceil(getTargetSize()));
+            size = Math.max(previousSize / MAX_GROWTH,
+                    (int) Math.min(size, (long) previousSize * MAX_GROWTH));
+        }
+        if (mBytesPerObject > 0) {
+            size = (int) Math.min(size, Math.max(1, mMaxBytes / mBytesPerObject));
+        }
+        return Math.max(mMinSize, Math.min(mMaxSize, size));
+    }
+
+    private double getTargetSize() {
+        double meanCount = mSumCount / mWeight;
+        double meanLatency = mSumLatency / mWeight;
+        double variance = mSumCountSquared / mWeight - meanCount * meanCount;
+        // Until pages of different sizes were loaded, assume the load time is all round trip
+        double costPerObject = 0;
+        if (variance > 1) {
+            costPerObject = Math.max(0,
+                    (mSumCountLatency / mWeight - meanCount * meanLatency) / variance);
+        }
+        double fixedCost = Math.max(0, meanLatency - costPerObject * meanCount);
+
+        // The objects the user goes through while the next page loads, a + b * size
+        double stallSize;
+        double consumedPerObject = mConsumptionRate * costPerObject * SAFETY_FACTOR;
+        if (consumedPerObject >= 1) {
+            // Each object takes longer to load than to go through, load as much as possible
+            stallSize = Double.MAX_VALUE;
+        } else {
+            stallSize = mConsumptionRate * fixedCost * SAFETY_FACTOR / (1 - consumedPerObject);
+        }
+
+        double overheadSize = costPerObject == 0 ? Double.MAX_VALUE :
+                fixedCost * (1 - MAX_OVERHEAD_SHARE) / (MAX_OVERHEAD_SHARE * costPerObject);
+        double consumedSize = mConsumptionRate * CONSUMPTION_HORIZON_MS;
+        return Math.max(stallSize, Math.min(overheadSize, consumedSize));
+    }
+
+    /**
+     * Forgets the scroll position, keeping the measurements. Called when the list is reloaded.
+     */
+    public synchronized void reset() {
+        mLastPosition = -1;
+        mLastBindTime = 0;
+    }
+
+    private static double average(double current, double sample) {
+        return current == 0 ? sample : current + SMOOTHING * (sample - current);
+    }
+}
\ No newline at end of file
@@ -0,0 +1,52 @@
+package com.tiagobagni.parse.paging;
+
+import java.util.List;
+
+/**
+ * The backend a {@link QueryPager} loads its pages from.
+ *
+ * @param <T>
+ */
+public interface PageSource<T> {
+
+    /**
+     * Receives the result of a page load.
+     * <p/>
+     * A source may deliver a page more than once, for instance from a cache and then from the
+     * network, in which case only the last delivery is final.
+     *
+     * @param <T>
+     */
+    interface Callback<T> {
+        /**
+         * @param objects The objects of the page, at most {@link PageRequest#getLimit()} of them.
+         * @param isFinal Whether no other result will be delivered for this request.
+         */
+        void onResult(List<T> objects, boolean isFinal);
+
+        /**
+         * @param e       The error that prevented the page from being loaded.
+         * @param isFinal Whether no other result will be delivered for this request.
+         */
+        void onError(Exception e, boolean isFinal);
+    }
+
+    /**
+     * Loads a page asynchronously, or synchronously if the source has it at hand.
+     *
+     * @param request  The page to load.
+     * @param callback The callback to deliver the page to.
+     */
+    void loadPage(PageRequest<T> request, Callback<T> callback);
+
+    /**
+     * @return the key identifying {@code object} across loads, such as its id.
+     */
+    Object getKey(T object);
+
+    /**
+     * @return whether {@code oldObject} and {@code newObject}, which have the same key, display the
+     * same contents.
+     */
+    boolean areContentsTheSame(T oldObject, T newObject);
+}
\ No newline at end of file
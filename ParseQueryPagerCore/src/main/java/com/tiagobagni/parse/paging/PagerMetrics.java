@@ -0,0 +1,28 @@
+package com.tiagobagni.parse.paging;
+
+/**
+ * Receives the timings of the page loads of a {@link QueryPager}.
+ * <p/>
+ * Called on the thread the page was delivered on, once for each result of a page load, so twice
+ * for a page that comes from a cache and then from the network. Implementations should be fast and
+ * must not block.
+ */
+public interface PagerMetrics {
+
+    /**
+     * Does nothing. When set, the pager doesn't measure anything either.
+     */
+    PagerMetrics NONE = new PagerMetrics() {
+        @Override
+        public void onPageLoad(PageLoadTrace trace) {
+        }
+    };
+
+    /**
+     * Called after a result of a page load was merged and notified, or after the load failed or was
+     * cancelled.
+     *
+     * @param trace The timings and outcome of the result.
+     */
+    void onPageLoad(PageLoadTrace trace);
+}
\ No newline at end of file
@@ -0,0 +1,170 @@
+package com.tiagobagni.parse.paging;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Bounds the pages kept in a persistent store, such as pages pinned for offline use, by the number
+ * of objects they hold. Each page is identified by a label, and the least recently used pages are
+ * given back to be removed from the store once the budget is exceeded.
+ * <p/>
+ * The budget only keeps the bookkeeping, the caller stores and removes the pages. It is thread
+ * safe, and its state can be {@link #getPinnedPages() saved} and {@link #restore(Map) restored},
+ * so the pages stored in a previous process are still accounted for.
+ */
+public class PinBudget {
+
+    private static final int DEFAULT_MAX_OBJECTS = 2000;
+
+    private static PinBudget sDefault;
+
+    private final int mMaxObjects;
+    // The number of objects of each page, in access order, the least recently used page first
+    private final LinkedHashMap<String, Integer> mPages = new LinkedHashMap<>(16, 0.75f, true);
+    private int mObjectCount;
+
+    /**
+     * Constructs a budget of 2000 objects.
+     */
+    public PinBudget() {
+        this(DEFAULT_MAX_OBJECTS);
+    }
+
+    /**
+     * @param maxObjects The maximum number of objects of the pages kept.
+     */
+    public PinBudget(int maxObjects) {
+        if (maxObjects < 1) {
+            throw new IllegalArgumentException("The budget must be positive");
+        }
+        mMaxObjects = maxObjects;
+    }
+
+    /**
+     * @return the budget shared by the whole process, created with the default bound the first
+     * time it is needed.
+     */
+    public static synchronized PinBudget getDefault() {
+        if (sDefault == null) {
+            sDefault = new PinBudget();
+        }
+        return sDefault;
+    }
+
+    /**
+     * Records that the page {@code label} was stored with {@code objectCount} objects, replacing
+     * its previous objects, and makes it the most recently used page.
+     *
+     * @param label       The label of the page.
+     * @param objectCount The number of objects of the page.
+     * @return the labels of the least recently used pages to remove from the store to stay within
+     * the budget, never {@code label} itself.
+     */
+    public synchronized List<String> pin(String label, int objectCount) {
+        Integer previous = mPages.put(label, objectCount);
+        mObjectCount += objectCount - (previous != null ? previous : 0);
+        return evict(label);
+    }
+
+    /**
+     * Makes the page {@code label}, if it is stored, the most recently used page, such as after it
+     * was read from the store.
+     */
+    public synchronized void touch(String label) {
+        mPages.get(label);
+    }
+
+    /**
+     * Records that the page {@code label} was removed from the store.
+     */
+    public synchronized void unpin(String label) {
+        Integer previous = mPages.remove(label);
+        if (previous != null) {
+            mObjectCount -= previous;
+        }
+    }
+
+    /**
+     * @return whether the page {@code label} is stored.
+     */
+    public synchronized boolean isPinned(String label) {
+        return mPages.containsKey(label);
+    }
+
+    /**
+     * @return the number of objects of each stored page, the least recently used page first.
+     */
+    public synchronized Map<String, Integer> getPinnedPages() {
+        return Collections.unmodifiableMap(new LinkedHashMap<>(mPages));
+    }
+
+    /**
+     * Adds the pages stored in a previous process, as returned by {@link #getPinnedPages()}, as
+     * less recently used than the pages recorded since.
+     *
+     * @param pages The number of objects of each page, the least recently used page first.
+     * @return the labels of the pages to remove from the store to stay within the budget.
+     */
+    public synchronized List<String> restore(Map<String, Integer> pages) {
+        LinkedHashMap<String, Integer> recent = new LinkedHashMap<>(mPages);
+        mPages.clear();
+        mObjectCount = 0;
+        for (Map.Entry<String, Integer> page : pages.entrySet()) {
+            if (!recent.containsKey(page.getKey())) {
+                mPages.put(page.getKey(), page.getValue());
+                mObjectCount += page.getValue();
+            }
+        }
+        for (Map.Entry<String, Integer> page : recent.entrySet()) {
+            mPages.put(page.getKey(), page.getValue());
+            mObjectCount += page.getValue();
+        }
+        return evict(null);
+    }
+
+    private List<String> evict(String keptLabel) {
+        List<String> evicted = Collections.emptyList();
+        Iterator<Map.Entry<String, Integer>> leastRecentlyUsed = mPages.entrySet().iterator();
+        while (mObjectCount > mMaxObjects && leastRecentlyUsed.hasNext()) {
+            Map.Entry<String, Integer> page = leastRecentlyUsed.next();
+            if (page.getKey().equals(keptLabel)) {
+                continue;
+            }
+            if (evicted.isEmpty()) {
+                evicted = new ArrayList<>();
+            }
+            evicted.add(page.getKey());
+            mObjectCount -= page.getValue();
+            leastRecentlyUsed.remove();
+        }
+        return evicted;
+    }
+
+    /**
+     * @return the number of pages stored.
+     */
+    public synchronized int size() {
+        return mPages.size();
+    }
+
+    /**
+     * @return the number of objects of the pages stored.
+     */
+    public synchronized int getObjectCount() {
+        return mObjectCount;
+    }
+
+    public int getMaxObjects() {
+        return mMaxObjects;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "PinBudget{pages=" + mPages.size() + ", objects=" + mObjectCount + "/" +
+                mMaxObjects + "}";
+    }
+}
\ No newline at end of file
@@ -0,0 +1,120 @@
+package com.tiagobagni.parse.paging;
+
+/**
+ * Decides when the next page should be requested, based on how close the user is to the end of
+ * the loaded rows.
+ * <p/>
+ * The prefetch distance starts at a configurable number of rows and grows with the measured scroll
+ * speed and page latency, so that under steady scrolling the next page arrives before the last
+ * loaded row is bound.
+ */
+public class PrefetchPolicy {
+
+    private static final int DEFAULT_MIN_DISTANCE = 5;
+    private static final int DEFAULT_MAX_DISTANCE = 100;
+
+    // Weight of the newest sample in the moving averages
+    private static final double SMOOTHING = 0.3;
+    // Ask for the page a bit earlier than the measurements say we need to
+    private static final double SAFETY_FACTOR = 1.5;
+    // A pause longer than this is not scrolling, don't let it drag the speed down
+    private static final long MAX_BIND_INTERVAL_MS = 1000;
+
+    private int mMinDistance = DEFAULT_MIN_DISTANCE;
+    private int mMaxDistance = DEFAULT_MAX_DISTANCE;
+
+    private int mLastPosition = -1;
+    private long mLastBindTime;
+
+    // Rows per millisecond, only counting forward scrolling
+    private double mScrollSpeed;
+    private double mPageLatencyMs;
+
+    /**
+     * Sets the bounds of the prefetch distance.
+     *
+     * @param minDistance The number of rows left when the next page is requested, regardless of
+     *                    the measurements.
+     * @param maxDistance The upper bound of the adaptive distance.
+     */
+    public void setDistanceBounds(int minDistance, int maxDistance) {
+        if (minDistance < 0 || maxDistance < minDistance) {
+            throw new IllegalArgumentException("Invalid prefetch distance bounds: [" +
+                    minDistance + ", " + maxDistance + "]");
+        }
+        mMinDistance = minDistance;
+        mMaxDistance = maxDistance;
+    }
+
+    public int getMinDistance() {
+        return mMinDistance;
+    }
+
+    public int getMaxDistance() {
+        return mMaxDistance;
+    }
+
+    /**
+     * Records that the row at {@code position} was bound.
+     *
+     * @param position The adapter position.
+     * @param timeMs   The bind time, in milliseconds.
+     */
+    public void onBind(int position, long timeMs) {
+        if (position == mLastPosition) {
+            return;
+        }
+
+        if (mLastPosition >= 0 && position > mLastPosition) {
+            long interval = timeMs - mLastBindTime;
+            if (interval > 0 && interval <= MAX_BIND_INTERVAL_MS) {
+                double speed = (double) (position - mLastPosition) / interval;
+                mScrollSpeed = average(mScrollSpeed, speed);
+            }
+        }
+
+        mLastPosition = position;
+        mLastBindTime = timeMs;
+    }
+
+    /**
+     * Records how long a page took to load.
+     *
+     * @param latencyMs The time between the page request and its result, in milliseconds.
+     */
+    public void onPageLoaded(long latencyMs) {
+        if (latencyMs >= 0) {
+            mPageLatencyMs = average(mPageLatencyMs, latencyMs);
+        }
+    }
+
+    /**
+     * @return the number of rows before the end of the list at which the next page is requested.
+     */
+    public int getDistance() {
+        // Rows the user will go through while the next page is loading
+        int distance = (int) Math.ceil(mScrollSpeed * mPageLatencyMs * SAFETY_FACTOR);
+        return Math.max(mMinDistance, Math.min(mMaxDistance, distance));
+    }
+
+    /**
+     * @param position  The adapter position that was just bound.
+     * @param itemCount The number of loaded rows.
+     * @return whether the next page should be requested now.
+     */
+    public boolean shouldPrefetch(int position, int itemCount) {
+        return itemCount > 0 && itemCount - 1 - position <= getDistance();
+    }
+
+    /**
+     * Forgets the scroll position, keeping the measurements. Called when the list is reloaded.
+     */
+    public void reset() {
+        mLastPosition = -1;
+        mLastBindTime = 0;
+    }
+
+    private static double average(double current, double sample) {
+        return current == 0 ? sample : current + SMOOTHING * (sample - current);
+    }
+}
\ No newline at end of file
@@ -0,0 +1,2230 @@
+package com.tiagobagni.parse.paging;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Pages through the results of a {@link PageSource}, keeping the loaded objects in a single list
+ * and reporting every change to it as a range.
+ *
+ * @param <T>
+ */
+public class QueryPager<T> {
+
+    private static final int DEFAULT_PAGE_SIZE = 20;
+    // Stands for the page after the current page when loading a page
+    private static final int NEXT_PAGE = -1;
+
+    private static final Executor DIRECT_EXECUTOR = new Executor() {
+        @Override
+        public void execute(Runnable command) {
+            command.run();
+        }
+    };
+
+    private static ExecutorService sBackgroundExecutor;
+
+    /**
+     * The callback that is called by {@link QueryPager} when the results have changed.
+     *
+     * @param <T>
+     */
+    public interface OnObjectsChangedCallback<T extends QueryPager> {
+        /**
+         * Called whenever a change of unknown type has occurred, such as the entire list being set
+         * to new values.
+         *
+         * @param sender The changing pager.
+         */
+        void onChanged(T sender);
+
+        /**
+         * Called whenever one or more items have changed.
+         *
+         * @param sender        The changing pager.
+         * @param positionStart The starting index that has changed.
+         * @param itemCount     The number of items that have been changed.
+         */
+        void onItemRangeChanged(T sender, int positionStart, int itemCount);
+
+        /**
+         * Called whenever one or more items have been inserted into the result set.
+         *
+         * @param sender        The changing pager.
+         * @param positionStart The starting index that has been inserted.
+         * @param itemCount     The number of items that have been inserted.
+         */
+        void onItemRangeInserted(T sender, int positionStart, int itemCount);
+
+        /**
+         * Called whenever one or more items have been moved from the result set.
+         *
+         * @param sender       The changing pager.
+         * @param fromPosition The position from which the items were moved.
+         * @param toPosition   The destination position of the items.
+         * @param itemCount    The number of items that have been inserted.
+         */
+        void onItemRangeMoved(T sender, int fromPosition, int toPosition, int itemCount);
+
+        /**
+         * Called whenever one or more items have been removed from the result set.
+         *
+         * @param sender        The changing pager.
+         * @param positionStart The starting index that has been inserted.
+         * @param itemCount     The number of items that have been inserted.
+         */
+        void onItemRangeRemoved(T sender, int positionStart, int itemCount);
+    }
+
+    private final PageSource<T> mSource;
+    private final int mPageSize;
+    // The offsets of the pages, which vary with the page size policy
+    private PageLayout mLayout = new PageLayout();
+    private PageSizePolicy mPageSizePolicy;
+    private final List<T> mObjects = new ArrayList<>();
+    // Immutable copy of mObjects. Null in the pager of a refresh, which nobody observes, until
+    // the refresh is diffed.
+    private SnapshotList<T> mLatestSnapshot = SnapshotList.empty();
+    // The chunks of mLatestSnapshot whose objects were replaced since it was taken, and the
+    // position objects were inserted or removed from, so the next one only copies those
+    private final BitSet mChangedChunks = new BitSet();
+    private int mShiftStart = Integer.MAX_VALUE;
+    // The snapshot matching the changes dispatched so far, read without the lock
+    private volatile List<T> mSnapshot = SnapshotList.empty();
+    // Copied on write, so each change captures the callbacks to notify without copying them
+    private OnObjectsChangedCallback[] mCallbacks = new OnObjectsChangedCallback[0];
+    private final Object mLock = new Object();
+
+    // Changes and load results waiting to be dispatched to the callbacks, in order
+    private final Queue<Runnable> mDispatches = new ArrayDeque<>();
+    private boolean mIsDispatching;
+    // Where pages are requested, merged and notified, null to use the calling thread
+    private Executor mFetchExecutor;
+    private Executor mMergeExecutor;
+    private Executor mNotificationExecutor;
+    private final Runnable mDispatchRunnable = new Runnable() {
+        @Override
+        public void run() {
+            runDispatches();
+        }
+    };
+
+    // Objects are the same row if they have the same key, and need rebinding if they changed
+    private final ListDiff.ItemCallback<T> mDiffCallback = new ListDiff.ItemCallback<T>() {
+        @Override
+        public Object getKey(T object) {
+            return mSource.getKey(object);
+        }
+
+        @Override
+        public boolean areContentsTheSame(T oldObject, T newObject) {
+            return mSource.areContentsTheSame(oldObject, newObject);
+        }
+    };
+
+    private int mCurrentPage = -1;
+    private boolean mHasNextPage = true;
+    // Whether this pager only loads pages for the refresh of another one
+    private boolean mIsRefresh;
+    // Pages being loaded, so concurrent requests for the same page share a single query
+    private final Map<Integer, PageLoad> mPageLoads = new HashMap<>();
+    private int mRequestCount;
+    private int mDeduplicatedRequestCount;
+    // The keys of the loaded objects, so the objects a page brings again can be dropped
+    private final KeyIndex mLoadedKeys = new KeyIndex();
+    private boolean mIsDuplicateSuppression = true;
+    private int mDroppedDuplicateCount;
+    private int mGapFillRequestCount;
+    // The number of objects inserted before the loaded pages since they were loaded, seen as
+    // duplicates at the start of an offset page, so the next offset pages skip them
+    private int mSkipShift;
+    // Incremented each time mObjects is modified, so a refresh can tell if its diff is outdated
+    private int mModCount;
+    // Incremented each time a refresh replaces mObjects, so the pages requested before are dropped
+    private int mGeneration;
+
+    // Number of pages kept in memory around the visible position, 0 to keep them all
+    private int mPageWindow;
+    private int mVisiblePage = -1;
+    // Pages whose objects were replaced by placeholders, and the ones being reloaded
+    private final Set<Integer> mEvictedPages = new HashSet<>();
+    private final Set<Integer> mReloadingPages = new HashSet<>();
+
+    // Whether the objects are counted, so the rows of the pages not loaded yet are placeholders
+    private boolean mIsCountMode;
+    private int mTotalCount = -1;
+    private boolean mIsCountLoading;
+    // Pages loaded ahead of the current page in count mode, and whether more objects follow them
+    private final Map<Integer, Boolean> mPagesAhead = new HashMap<>();
+
+    private volatile PagerMetrics mMetrics = PagerMetrics.NONE;
+
+    /**
+     * Constructs a new instance of {@code QueryPager} loading its pages from {@code source}.
+     *
+     * @param source The source of the pages.
+     */
+    public QueryPager(PageSource<T> source) {
+        this(source, DEFAULT_PAGE_SIZE);
+    }
+
+    /**
+     * Constructs a new instance of {@code QueryPager} loading its pages from {@code source}.
+     *
+     * @param source   The source of the pages.
+     * @param pageSize The size of each page.
+     */
+    public QueryPager(PageSource<T> source, int pageSize) {
+        if (pageSize <= 0) {
+            throw new IllegalArgumentException("The page size must be positive");
+        }
+        mSource = source;
+        mPageSize = pageSize;
+    }
+
+    /**
+     * @return the source of the pages.
+     */
+    public PageSource<T> getSource() {
+        return mSource;
+    }
+
+    /**
+     * @return the size of each page for this {@code QueryPager}, or of the first page if there is
+     * a {@link #setPageSizePolicy(PageSizePolicy) page size policy}.
+     */
+    public int getPageSize() {
+        return mPageSize;
+    }
+
+    /**
+     * Sets the policy deciding the size of the pages not requested yet, from the measured page
+     * loads. The pages requested so far keep their size.
+     * <p/>
+     * The policy is told about every page load that did not come from a cache. It should also be
+     * told about the rows being displayed, with {@link PageSizePolicy#onBind(int, long)}.
+     *
+     * @param policy The policy, or {@code null} for pages of {@link #getPageSize()} objects.
+     */
+    public void setPageSizePolicy(PageSizePolicy policy) {
+        synchronized (mLock) {
+            mPageSizePolicy = policy;
+        }
+    }
+
+    /**
+     * @return the policy deciding the size of the pages, {@code null} by default.
+     */
+    public PageSizePolicy getPageSizePolicy() {
+        synchronized (mLock) {
+            return mPageSizePolicy;
+        }
+    }
+
+    /**
+     * Returns the size of {@code page}, deciding it if it was not requested yet, along with the
+     * size of the pages before it.
+     *
+     * @param page The zero-based page.
+     * @return the number of objects of the page, if it is not the last one.
+     */
+    public int getPageSize(int page) {
+        synchronized (mLock) {
+            layOutPages(page);
+            return mLayout.getSize(page);
+        }
+    }
+
+    /**
+     * Returns the position of the first object of {@code page}, deciding the size of the pages up
+     * to it if they were not requested yet.
+     *
+     * @param page The zero-based page.
+     * @return the position of the first object of the page.
+     */
+    public int getPageStart(int page) {
+        synchronized (mLock) {
+            layOutPages(page);
+            return mLayout.getStart(page);
+        }
+    }
+
+    /**
+     * Returns the page holding {@code position}, deciding the size of the pages up to it if they
+     * were not requested yet.
+     *
+     * @param position The position of an object.
+     * @return the zero-based page holding the object.
+     */
+    public int getPageAt(int position) {
+        if (position < 0) {
+            throw new IndexOutOfBoundsException("Negative position " + position);
+        }
+        synchronized (mLock) {
+            return pageAt(position);
+        }
+    }
+
+    /**
+     * Sizes the pages up to {@code page}, if they were not sized yet. Must be called while holding
+     * {@code mLock}.
+     */
+    private void layOutPages(int page) {
+        while (mLayout.getPageCount() <= page) {
+            mLayout.addPage(nextPageSize());
+        }
+    }
+
+    /**
+     * Returns the page holding {@code position}, sizing the pages up to it if needed. Must be
+     * called while holding {@code mLock}.
+     */
+    private int pageAt(int position) {
+        while (mLayout.getEnd() <= position) {
+            mLayout.addPage(nextPageSize());
+        }
+        return mLayout.getPage(position);
+    }
+
+    /**
+     * Returns the end of {@code page} within the objects. Must be called while holding
+     * {@code mLock}.
+     */
+    private int pageEnd(int page) {
+        layOutPages(page);
+        return Math.min(mObjects.size(), mLayout.getStart(page) + mLayout.getSize(page));
+    }
+
+    private int nextPageSize() {
+        int pageCount = mLayout.getPageCount();
+        if (mPageSizePolicy == null || pageCount == 0) {
+            // The first page keeps the configured size, it is displayed as soon as it loads
+            return mPageSize;
+        }
+        return mPageSizePolicy.getPageSize(mLayout.getSize(pageCount - 1));
+    }
+
+    /**
+     * Sets the executor the pages are requested from the {@link PageSource} on.
+     * <p/>
+     * By default pages are requested on the thread asking for them, which suits sources that are
+     * asynchronous already.
+     *
+     * @param executor The executor, or {@code null} to request pages on the calling thread.
+     */
+    public void setFetchExecutor(Executor executor) {
+        synchronized (mLock) {
+            mFetchExecutor = executor;
+        }
+    }
+
+    /**
+     * Sets the executor the pages are merged into the loaded objects on, and refreshes are diffed
+     * and applied on, such as a low priority pool.
+     * <p/>
+     * By default pages are merged on the thread the {@link PageSource} delivers them on, refreshes
+     * are diffed on the {@link #getBackgroundExecutor() background executor} and applied on the
+     * {@link #getCallbackExecutor() callback executor}.
+     * <p/>
+     * The work is queued and run one task at a time even on a pool, so the results of a page are
+     * merged in the order the {@link PageSource} delivered them and a cached result can't
+     * overwrite the final one.
+     *
+     * @param executor The executor, or {@code null} for the defaults.
+     */
+    public void setMergeExecutor(Executor executor) {
+        synchronized (mLock) {
+            mMergeExecutor = executor != null ? new SerialExecutor(executor) : null;
+        }
+    }
+
+    /**
+     * Sets the executor the {@link OnObjectsChangedCallback}s and the {@link LoadCallback}s are
+     * called on, such as the main thread of an app.
+     * <p/>
+     * By default they are called on the thread that changed the objects, once the pager lock is
+     * released. Either way, they are called one at a time, in the order of the changes, and the
+     * {@link LoadCallback} of a page is called after the notification of its objects. Changes made
+     * before the executor gets to run are dispatched together.
+     *
+     * @param executor The executor, or {@code null} to call them on the thread changing the
+     *                 objects.
+     */
+    public void setNotificationExecutor(Executor executor) {
+        synchronized (mLock) {
+            mNotificationExecutor = executor;
+        }
+    }
+
+    /**
+     * Runs {@code command} on {@code executor}, or right away if it is {@code null}.
+     */
+    private static void execute(Executor executor, Runnable command) {
+        if (executor == null) {
+            command.run();
+        } else {
+            executor.execute(command);
+        }
+    }
+
+    private Executor getFetchExecutor() {
+        synchronized (mLock) {
+            return mFetchExecutor;
+        }
+    }
+
+    private Executor getMergeExecutor() {
+        synchronized (mLock) {
+            return mMergeExecutor;
+        }
+    }
+
+    /**
+     * Returns the executor the background work, such as diffing a refresh, runs on when there is
+     * no {@link #setMergeExecutor(Executor) merge executor}.
+     * <p/>
+     * Defaults to a shared pool of daemon threads.
+     */
+    protected Executor getBackgroundExecutor() {
+        synchronized (QueryPager.class) {
+            if (sBackgroundExecutor == null) {
+                sBackgroundExecutor = Executors.newCachedThreadPool(new ThreadFactory() {
+                    @Override
+                    public Thread newThread(Runnable r) {
+                        Thread thread = new Thread(r, "QueryPager");
+                        thread.setDaemon(true);
+                        return thread;
+                    }
+                });
+            }
+            return sBackgroundExecutor;
+        }
+    }
+
+    /**
+     * Returns the executor the results of background work are applied on when there is no
+     * {@link #setMergeExecutor(Executor) merge executor}. It should be the thread the
+     * {@link PageSource} delivers its pages on.
+     * <p/>
+     * Defaults to running them on the background thread that produced them.
+     */
+    protected Executor getCallbackExecutor() {
+        return DIRECT_EXECUTOR;
+    }
+
+    /**
+     * Sets the listener the timings of the page loads are reported to.
+     *
+     * @param metrics The listener, or {@code null} to stop measuring page loads.
+     */
+    public void setMetrics(PagerMetrics metrics) {
+        mMetrics = metrics == null ? PagerMetrics.NONE : metrics;
+    }
+
+    /**
+     * @return the listener the timings of the page loads are reported to, {@link PagerMetrics#NONE}
+     * by default.
+     */
+    public PagerMetrics getMetrics() {
+        return mMetrics;
+    }
+
+    /**
+     * Enables or disables count mode.
+     * <p/>
+     * In count mode the objects are counted along with the first page, and {@link #getObjects()}
+     * holds that many objects: the rows of the pages not loaded yet are {@code null} placeholders,
+     * to be loaded with {@link #loadPage(int, LoadCallback, Cancellation)} when they are needed,
+     * in any order. The count is kept until a {@link #refresh(LoadCallback, Cancellation)}
+     * counts the objects again.
+     * <p/>
+     * Must be called before the first page is loaded.
+     *
+     * @param countMode Whether the objects are counted. Needs a {@link CountablePageSource}.
+     */
+    public void setCountMode(boolean countMode) {
+        if (countMode && !(mSource instanceof CountablePageSource)) {
+            throw new IllegalStateException("Count mode needs a CountablePageSource");
+        }
+        synchronized (mLock) {
+            if (mCurrentPage >= 0 || !mPageLoads.isEmpty()) {
+                throw new IllegalStateException("Count mode must be set before the first page " +
+                        "is loaded");
+            }
+            mIsCountMode = countMode;
+        }
+    }
+
+    /**
+     * @return whether this pager is in count mode.
+     */
+    public boolean isCountMode() {
+        synchronized (mLock) {
+            return mIsCountMode;
+        }
+    }
+
+    /**
+     * @return the number of objects counted in count mode, or -1 if they were not counted yet.
+     */
+    public int getTotalCount() {
+        synchronized (mLock) {
+            return mTotalCount;
+        }
+    }
+
+    /**
+     * Limits the number of pages whose objects are kept in memory.
+     * <p/>
+     * When set, only {@code pages} pages around the position given to
+     * {@link #setVisiblePosition(int, Cancellation)} keep their objects. The objects of the other
+     * pages are replaced by the placeholders of the {@link EvictablePageSource}, and are loaded
+     * again once their page gets back into the window.
+     *
+     * @param pages The number of pages to keep, or 0 to keep every loaded page.
+     */
+    public void setPageWindow(int pages) {
+        if (pages < 0) {
+            throw new IllegalArgumentException("The page window must not be negative");
+        }
+        if (pages > 0 && !(mSource instanceof EvictablePageSource)) {
+            throw new IllegalStateException("A page window needs an EvictablePageSource");
+        }
+        synchronized (mLock) {
+            mPageWindow = pages;
+            mVisiblePage = -1;
+        }
+    }
+
+    /**
+     * @return the number of pages kept in memory, or 0 if every loaded page is kept.
+     */
+    public int getPageWindow() {
+        synchronized (mLock) {
+            return mPageWindow;
+        }
+    }
+
+    /**
+     * Moves the page window to {@code position}, evicting the pages that fall out of it and
+     * reloading the evicted pages that fall into it. Does nothing if there is no page window.
+     *
+     * @param position     The position being displayed.
+     * @param cancellation Used to cancel the reloads, may be {@code null}.
+     */
+    public void setVisiblePosition(int position, Cancellation cancellation) {
+        List<Integer> pagesToReload = new ArrayList<>();
+        synchronized (mLock) {
+            if (mPageWindow <= 0) {
+                return;
+            }
+            int visiblePage = pageAt(position);
+            if (visiblePage == mVisiblePage) {
+                return;
+            }
+            mVisiblePage = visiblePage;
+
+            boolean isEvicted = false;
+            int pageCount = getPageCount();
+            for (int page = 0; page < pageCount; page++) {
+                boolean inWindow = isInPageWindow(page, pageCount);
+                boolean evicted = mEvictedPages.contains(page);
+                if (mReloadingPages.contains(page) || !isPageLoaded(page)) {
+                    continue;
+                }
+                if (!inWindow && !evicted) {
+                    evictPage(page);
+                    isEvicted = true;
+                } else if (inWindow && evicted) {
+                    mReloadingPages.add(page);
+                    pagesToReload.add(page);
+                }
+            }
+            if (isEvicted) {
+                // Evicted rows are off screen, there is nothing to notify
+                publishChange(Collections.<ListDiff.Op>emptyList());
+            }
+        }
+        dispatchChanges();
+
+        for (int page : pagesToReload) {
+            reloadEvictedPage(page, cancellation);
+        }
+    }
+
+    /**
+     * Returns the number of pages the objects span. Must be called while holding {@code mLock}.
+     */
+    private int getPageCount() {
+        return mObjects.isEmpty() ? 0 : pageAt(mObjects.size() - 1) + 1;
+    }
+
+    /**
+     * Returns whether {@code page} is in the window around the visible page. At the ends of the
+     * objects the window is moved inwards, so it still holds as many pages. Must be called while
+     * holding {@code mLock}.
+     */
+    private boolean isInPageWindow(int page, int pageCount) {
+        int firstPage = mVisiblePage - (mPageWindow - 1) / 2;
+        firstPage = Math.max(0, Math.min(firstPage, pageCount - mPageWindow));
+        return page >= firstPage && page < firstPage + mPageWindow;
+    }
+
+    private void evictPage(int page) {
+        EvictablePageSource<T> source = (EvictablePageSource<T>) mSource;
+        int start = mLayout.getStart(page);
+        int end = pageEnd(page);
+        for (int i = start; i < end; i++) {
+            mObjects.set(i, source.createPlaceholder(mObjects.get(i)));
+        }
+        markReplaced(start, end);
+        mEvictedPages.add(page);
+        mModCount++;
+    }
+
+    private void reloadEvictedPage(final int page, final Cancellation cancellation) {
+        final List<T> placeholders;
+        synchronized (mLock) {
+            int start = mLayout.getStart(page);
+            int end = pageEnd(page);
+            placeholders = new ArrayList<>(mObjects.subList(start, end));
+        }
+
+        final PageSource.Callback<T> sourceCallback = new PageSource.Callback<T>() {
+            @Override
+            public void onResult(final List<T> objects, final boolean isFinal) {
+                execute(getMergeExecutor(), new Runnable() {
+                    @Override
+                    public void run() {
+                        synchronized (mLock) {
+                            if (isFinal) {
+                                mReloadingPages.remove(page);
+                            }
+                            if (cancellation != null && cancellation.isCancellationRequested()) {
+                                return;
+                            }
+                            onEvictedPageReloaded(page, placeholders, objects);
+                        }
+                        dispatchChanges();
+                    }
+                });
+            }
+
+            @Override
+            public void onError(Exception e, boolean isFinal) {
+                synchronized (mLock) {
+                    if (isFinal) {
+                        mReloadingPages.remove(page);
+                        // Stay evicted, it will be retried when the page gets back in the window
+                        mVisiblePage = -1;
+                    }
+                }
+            }
+        };
+
+        // The objects of the page are known, no need to page through the results again
+        execute(getFetchExecutor(), new Runnable() {
+            @Override
+            public void run() {
+                ((EvictablePageSource<T>) mSource).loadObjects(placeholders, sourceCallback);
+            }
+        });
+    }
+
+    private void onEvictedPageReloaded(int page, List<T> placeholders, List<T> objects) {
+        synchronized (mLock) {
+            int start = mLayout.getStart(page);
+            if (!mEvictedPages.contains(page) || mObjects.size() < start + placeholders.size()) {
+                // Replaced by a page load or a refresh in the meantime
+                return;
+            }
+            if (mPageWindow > 0 && mVisiblePage >= 0 && !isInPageWindow(page, getPageCount())) {
+                // Scrolled away while it was reloading, it stays evicted
+                return;
+            }
+            List<Object> keys = new ArrayList<>(placeholders.size());
+            for (int i = 0; i < placeholders.size(); i++) {
+                Object key = mSource.getKey(placeholders.get(i));
+                if (!key.equals(mSource.getKey(mObjects.get(start + i)))) {
+                    return;
+                }
+                keys.add(key);
+            }
+
+            Map<Object, T> reloaded = new HashMap<>();
+            for (T object : objects) {
+                reloaded.put(mSource.getKey(object), object);
+            }
+            for (int i = 0; i < keys.size(); i++) {
+                T object = reloaded.get(keys.get(i));
+                // Deleted objects stay as placeholders
+                if (object != null) {
+                    mObjects.set(start + i, object);
+                }
+            }
+            markReplaced(start, start + keys.size());
+            mEvictedPages.remove(page);
+            mModCount++;
+            publishChange(Collections.singletonList(
+                    new ListDiff.Op(ListDiff.Op.CHANGE, start, 0, keys.size())));
+        }
+    }
+
+    /**
+     * Returns the current page of the pager in the result set.
+     * <p/>
+     * The value is zero-based. When the row set is first returned the pager will be at position -1,
+     * which is before the first page.
+     *
+     * @return the current page.
+     */
+    public int getCurrentPage() {
+        synchronized (mLock) {
+            return mCurrentPage;
+        }
+    }
+
+    /**
+     * @return whether the pager has more pages.
+     */
+    public boolean hasNextPage() {
+        synchronized (mLock) {
+            return mHasNextPage;
+        }
+    }
+
+    /**
+     * @return whether the pager is currently loading the next page.
+     */
+    public boolean isLoadingNextPage() {
+        synchronized (mLock) {
+            return !mPageLoads.isEmpty();
+        }
+    }
+
+    /**
+     * @param page The zero-based page.
+     * @return whether {@code page} was loaded, in count mode possibly ahead of the current page.
+     */
+    public boolean isPageLoaded(int page) {
+        synchronized (mLock) {
+            return page <= mCurrentPage || mPagesAhead.containsKey(page);
+        }
+    }
+
+    /**
+     * @param page The zero-based page.
+     * @return whether {@code page} is currently being loaded.
+     */
+    public boolean isLoadingPage(int page) {
+        synchronized (mLock) {
+            return mPageLoads.containsKey(page);
+        }
+    }
+
+    /**
+     * @return the number of page loads issued to the source by this pager.
+     */
+    public int getRequestCount() {
+        synchronized (mLock) {
+            return mRequestCount;
+        }
+    }
+
+    /**
+     * @return the number of page loads that joined a load already in flight for the same page
+     * instead of issuing a new one.
+     */
+    public int getDeduplicatedRequestCount() {
+        synchronized (mLock) {
+            return mDeduplicatedRequestCount;
+        }
+    }
+
+    /**
+     * Sets whether the objects a page brings again are dropped, the default. Offset pages shift
+     * when objects are inserted before them while paging, so a page can start with the last
+     * objects of the previous one. The duplicates are dropped when the page is merged, and if
+     * that leaves the page short while the results go on, the gap is filled with the objects that
+     * follow, loaded with one more request.
+     *
+     * @param suppression Whether to drop the objects already loaded.
+     */
+    public void setDuplicateSuppression(boolean suppression) {
+        synchronized (mLock) {
+            mIsDuplicateSuppression = suppression;
+        }
+    }
+
+    public boolean isDuplicateSuppression() {
+        synchronized (mLock) {
+            return mIsDuplicateSuppression;
+        }
+    }
+
+    /**
+     * @return the number of objects dropped from the pages because they were already loaded.
+     */
+    public int getDroppedDuplicateCount() {
+        synchronized (mLock) {
+            return mDroppedDuplicateCount;
+        }
+    }
+
+    /**
+     * @return the number of requests issued to fill the pages shortened by the dropped
+     * duplicates.
+     */
+    public int getGapFillRequestCount() {
+        synchronized (mLock) {
+            return mGapFillRequestCount;
+        }
+    }
+
+    /**
+     * Returns an immutable snapshot of the loaded objects.
+     * <p/>
+     * The snapshot is replaced, never modified, right before each change is dispatched to the
+     * {@link OnObjectsChangedCallback}s, so it can be read from any thread without blocking and
+     * always matches the notifications delivered so far. Call this method again to get the objects
+     * after a change.
+     *
+     * @return the loaded objects.
+     */
+    public List<T> getObjects() {
+        return mSnapshot;
+    }
+
+    /**
+     * Returns a snapshot of the objects including the changes not dispatched yet.
+     */
+    private List<T> getLatestObjects() {
+        synchronized (mLock) {
+            if (mLatestSnapshot == null) {
+                mLatestSnapshot = takeSnapshot();
+            }
+            return mLatestSnapshot;
+        }
+    }
+
+    /**
+     * Returns a snapshot of {@code mObjects}, copying only the chunks changed since the latest
+     * one. Must be called while holding {@code mLock}.
+     */
+    private SnapshotList<T> takeSnapshot() {
+        SnapshotList<T> snapshot = mLatestSnapshot == null ? SnapshotList.copyOf(mObjects) :
+                mLatestSnapshot.update(mObjects, mChangedChunks, mShiftStart);
+        mChangedChunks.clear();
+        mShiftStart = Integer.MAX_VALUE;
+        return snapshot;
+    }
+
+    /**
+     * Records that the objects from {@code start} to {@code end} were replaced. Must be called
+     * while holding {@code mLock}.
+     */
+    private void markReplaced(int start, int end) {
+        if (start < end) {
+            mChangedChunks.set(SnapshotList.getChunk(start), SnapshotList.getChunk(end - 1) + 1);
+        }
+    }
+
+    /**
+     * Records that objects were inserted or removed at {@code position}, moving the ones after
+     * it. Must be called while holding {@code mLock}.
+     */
+    private void markShifted(int position) {
+        mShiftStart = Math.min(mShiftStart, position);
+    }
+
+    /**
+     * Queues a change of {@code mObjects} to be dispatched by {@link #dispatchChanges()}, with a
+     * snapshot of the objects after it. Must be called while holding {@code mLock}, right after
+     * the change.
+     *
+     * @param ops The changed ranges, or {@code null} if the whole list changed.
+     */
+    private void publishChange(List<ListDiff.Op> ops) {
+        if (mIsRefresh) {
+            // Nobody observes the pages of a refresh, only copy them once they are all loaded
+            mLatestSnapshot = null;
+            return;
+        }
+        mLatestSnapshot = takeSnapshot();
+        mDispatches.add(new Dispatch(mLatestSnapshot, mCallbacks, ops));
+    }
+
+    /**
+     * Calls {@code callback} with a result, after the changes made so far are dispatched.
+     */
+    private void deliverResult(final LoadCallback<T> callback, final List<T> objects,
+            final Exception e) {
+        if (callback == null) {
+            return;
+        }
+        synchronized (mLock) {
+            mDispatches.add(new Runnable() {
+                @Override
+                public void run() {
+                    callback.done(objects, e);
+                }
+            });
+        }
+        dispatchChanges();
+    }
+
+    /**
+     * Dispatches the queued changes in order, on the
+     * {@link #setNotificationExecutor(Executor) notification executor} if there is one. Must be
+     * called without holding {@code mLock}, after {@link #publishChange(List)}.
+     * <p/>
+     * Only one thread dispatches at a time, the changes queued while it does are dispatched by it
+     * too, so the callbacks are never called concurrently nor out of order.
+     */
+    private void dispatchChanges() {
+        Executor executor;
+        synchronized (mLock) {
+            if (mIsDispatching || mDispatches.isEmpty()) {
+                return;
+            }
+            mIsDispatching = true;
+            executor = mNotificationExecutor;
+        }
+        if (executor == null) {
+            runDispatches();
+        } else {
+            executor.execute(mDispatchRunnable);
+        }
+    }
+
+    private void runDispatches() {
+        boolean isDrained = false;
+        try {
+            while (true) {
+                Runnable dispatch;
+                synchronized (mLock) {
+                    dispatch = mDispatches.poll();
+                    if (dispatch == null) {
+                        mIsDispatching = false;
+                        isDrained = true;
+                        return;
+                    }
+                }
+                dispatch.run();
+            }
+        } finally {
+            if (!isDrained) {
+                // A callback threw, the remaining changes are dispatched after the next one
+                synchronized (mLock) {
+                    mIsDispatching = false;
+                }
+            }
+        }
+    }
+
+    /**
+     * Notifies the callbacks that the rows holding the objects identified by {@code keys} changed,
+     * such as after the objects were updated in place by another pager sharing them. The rows
+     * themselves are kept.
+     *
+     * @param keys The {@link PageSource#getKey(Object) keys} of the updated objects.
+     */
+    public void notifyObjectsChanged(Collection<?> keys) {
+        Set<?> keySet = keys instanceof Set ? (Set<?>) keys : new HashSet<>(keys);
+        synchronized (mLock) {
+            List<ListDiff.Op> ops = new ArrayList<>();
+            int changeStart = -1;
+            for (int i = 0; i <= mObjects.size(); i++) {
+                T object = i < mObjects.size() ? mObjects.get(i) : null;
+                boolean isChanged = object != null && keySet.contains(mSource.getKey(object));
+                if (isChanged && changeStart < 0) {
+                    changeStart = i;
+                } else if (!isChanged && changeStart >= 0) {
+                    ops.add(new ListDiff.Op(ListDiff.Op.CHANGE, changeStart, -1, i - changeStart));
+                    changeStart = -1;
+                }
+            }
+            if (ops.isEmpty()) {
+                return;
+            }
+            publishChange(ops);
+        }
+        dispatchChanges();
+    }
+
+    /**
+     * Adds a callback notified of the changes made after this call. Callbacks are called in the
+     * order they were added.
+     */
+    public void addOnObjectsChangedCallback(OnObjectsChangedCallback callback) {
+        synchronized (mLock) {
+            if (Arrays.asList(mCallbacks).contains(callback)) {
+                return;
+            }
+            OnObjectsChangedCallback[] callbacks = Arrays.copyOf(mCallbacks, mCallbacks.length + 1);
+            callbacks[mCallbacks.length] = callback;
+            mCallbacks = callbacks;
+        }
+    }
+
+    /**
+     * Removes a callback. It is not notified of the changes made after this call, but may still be
+     * notified of the changes made before that were not dispatched yet.
+     */
+    public void removeOnObjectsChangedCallback(OnObjectsChangedCallback callback) {
+        synchronized (mLock) {
+            List<OnObjectsChangedCallback> callbacks = new ArrayList<>(Arrays.asList(mCallbacks));
+            if (callbacks.remove(callback)) {
+                mCallbacks = callbacks.toArray(new OnObjectsChangedCallback[callbacks.size()]);
+            }
+        }
+    }
+
+    /**
+     * Builds the request for {@code page}. Must be called while holding {@code mLock}.
+     */
+    private PageRequest<T> createRequest(int page) {
+        layOutPages(page);
+        int start = mLayout.getStart(page);
+        int previousEnd = Math.min(start, mObjects.size());
+        int previousStart = page == 0 ? previousEnd :
+                Math.min(mLayout.getStart(page - 1), previousEnd);
+        List<T> previousObjects = Collections.unmodifiableList(
+                new ArrayList<>(mObjects.subList(previousStart, previousEnd)));
+        // Past the objects inserted before the loaded pages, the first page starts at the top
+        int offset = page == 0 ? 0 : start + mSkipShift;
+        return new PageRequest<>(page, offset, mLayout.getSize(page), previousObjects,
+                mIsRefresh, mMetrics != PagerMetrics.NONE || mPageSizePolicy != null);
+    }
+
+    /**
+     * Loads the next page.
+     * <p/>
+     * The next page is defined by {@code mCurrentPage + 1}. If that page is already being loaded,
+     * no new load is issued and {@code callback} is called once with the final result of the load
+     * in flight.
+     *
+     * @param callback     A {@code callback} that will be called with the result of the next page,
+     *                     once for each result delivered by the source. May be {@code null}.
+     * @param cancellation Used to cancel the load, may be {@code null}.
+     */
+    public void loadNextPage(LoadCallback<T> callback, Cancellation cancellation) {
+        if (!hasNextPage()) {
+            throw new IllegalStateException("Unable to load next page when there are no more " +
+                    "pages available");
+        }
+        requestCount(false);
+        loadPage(NEXT_PAGE, callback, cancellation, false);
+    }
+
+    /**
+     * Loads {@code page}, such as when a placeholder row of count mode is displayed.
+     * <p/>
+     * The page after the current page is loaded like {@link #loadNextPage}. In count mode a page
+     * further ahead is loaded on its own if the source is a {@link RandomAccessPageSource} able to
+     * load pages from their offset, and merged in place of its placeholders, otherwise the pages
+     * up to it are loaded one after the other. If the page is already being loaded, no new load is
+     * issued.
+     *
+     * @param page         The zero-based page.
+     * @param callback     A {@code callback} that will be called with the objects of the page,
+     *                     right away if it was already loaded. May be {@code null}.
+     * @param cancellation Used to cancel the load, may be {@code null}.
+     */
+    public void loadPage(int page, LoadCallback<T> callback, Cancellation cancellation) {
+        List<T> objects = null;
+        boolean isNextPage;
+        boolean isCountMode;
+        synchronized (mLock) {
+            if (isPageLoaded(page) || (!mHasNextPage && page > mCurrentPage)) {
+                List<T> latestObjects = getLatestObjects();
+                layOutPages(page);
+                int start = Math.min(latestObjects.size(), mLayout.getStart(page));
+                int end = Math.min(latestObjects.size(), start + mLayout.getSize(page));
+                objects = new ArrayList<>(latestObjects.subList(start, end));
+            }
+            isNextPage = page == mCurrentPage + 1;
+            isCountMode = mIsCountMode;
+        }
+        if (objects != null) {
+            deliverResult(callback, objects, null);
+            return;
+        }
+
+        requestCount(false);
+        boolean isRandomAccess = mSource instanceof RandomAccessPageSource &&
+                ((RandomAccessPageSource<T>) mSource).isRandomAccess();
+        if (isNextPage || (isCountMode && isRandomAccess)) {
+            loadPage(page, callback, cancellation, false);
+        } else {
+            loadPages(page, 1, callback, cancellation);
+        }
+    }
+
+    /**
+     * Loads {@code page}, or the page after the current page if it is {@link #NEXT_PAGE}, unless
+     * it is already being loaded.
+     */
+    private void loadPage(final int requestedPage, final LoadCallback<T> callback,
+            final Cancellation cancellation, final boolean finalResultOnly) {
+        final int page;
+        final PageLoad load;
+        final PageRequest<T> request;
+        synchronized (mLock) {
+            page = requestedPage == NEXT_PAGE ? mCurrentPage + 1 : requestedPage;
+            PageLoad inFlight = mPageLoads.get(page);
+            if (inFlight != null) {
+                mDeduplicatedRequestCount++;
+                if (callback != null) {
+                    inFlight.joinedCallbacks.add(callback);
+                }
+                return;
+            }
+            mRequestCount++;
+            load = new PageLoad(mGeneration);
+            mPageLoads.put(page, load);
+            request = createRequest(page);
+        }
+
+        final PageSource.Callback<T> sourceCallback = new PageSource.Callback<T>() {
+
+            final AtomicInteger deliveries = new AtomicInteger();
+
+            @Override
+            public void onResult(final List<T> objects, final boolean isFinal) {
+                final PageLoadTrace trace = startTrace(isFinal);
+                execute(getMergeExecutor(), new Runnable() {
+                    @Override
+                    public void run() {
+                        boolean isCancelled = cancellation != null &&
+                                cancellation.isCancellationRequested();
+                        List<T> results = null;
+                        if (!isCancelled) {
+                            results = onPage(request.getPage(), load.generation, objects, trace);
+                            // The page doesn't fit anymore, treat it as a cancelled load
+                            isCancelled = results == null;
+                        }
+                        reportTrace(trace, isCancelled, null);
+                        deliver(results, null, isFinal);
+                    }
+                });
+            }
+
+            @Override
+            public void onError(final Exception e, final boolean isFinal) {
+                final PageLoadTrace trace = startTrace(isFinal);
+                // Through the serial merge executor too, so results are delivered in order
+                execute(getMergeExecutor(), new Runnable() {
+                    @Override
+                    public void run() {
+                        boolean isCancelled = cancellation != null &&
+                                cancellation.isCancellationRequested();
+                        reportTrace(trace, isCancelled, e);
+                        deliver(null, isCancelled ? null : e, isFinal);
+                    }
+                });
+            }
+
+            private PageLoadTrace startTrace(boolean isFinal) {
+                int delivery = deliveries.getAndIncrement();
+                return request.isTraced() ? request.newTrace(delivery, isFinal) : null;
+            }
+
+            private void deliver(List<T> objects, Exception e, boolean isFinal) {
+                List<LoadCallback<T>> joinedCallbacks = Collections.emptyList();
+                if (isFinal) {
+                    synchronized (mLock) {
+                        if (mPageLoads.get(page) == load) {
+                            mPageLoads.remove(page);
+                        }
+                        joinedCallbacks = new ArrayList<>(load.joinedCallbacks);
+                    }
+                }
+
+                if (isFinal || !finalResultOnly) {
+                    deliverResult(callback, objects, e);
+                }
+                for (LoadCallback<T> joinedCallback : joinedCallbacks) {
+                    deliverResult(joinedCallback, objects, e);
+                }
+            }
+        };
+
+        execute(getFetchExecutor(), new Runnable() {
+            @Override
+            public void run() {
+                mSource.loadPage(request, new GapFillingCallback(request, sourceCallback));
+            }
+        });
+    }
+
+    /**
+     * Loads the pages after the current page up to {@code toPage}, such as to jump to a position
+     * far from the loaded objects.
+     * <p/>
+     * When the source is a {@link RandomAccessPageSource} able to load pages from their offset, up
+     * to {@code maxConcurrency} pages are requested at a time, otherwise they are loaded one after
+     * the other. Either way the pages are merged in index order: a page delivered before the ones
+     * preceding it is kept aside until they are merged, while the following pages are requested.
+     * Loading stops at the last page of the results, or at the first page that fails to load.
+     *
+     * @param toPage         The zero-based index of the last page to load.
+     * @param maxConcurrency The maximum number of pages requested at a time.
+     * @param callback       Called once the pages are loaded, with their objects, or with the
+     *                       error that stopped the load. Called with {@code null} objects and
+     *                       error if the load was cancelled. May be {@code null}.
+     * @param cancellation   Used to cancel the load, may be {@code null}.
+     */
+    public void loadPages(int toPage, int maxConcurrency, LoadCallback<T> callback,
+            Cancellation cancellation) {
+        if (maxConcurrency < 1) {
+            throw new IllegalArgumentException("The maximum concurrency must be positive");
+        }
+        requestCount(false);
+        boolean isRandomAccess = mSource instanceof RandomAccessPageSource &&
+                ((RandomAccessPageSource<T>) mSource).isRandomAccess();
+        new RangeLoader(toPage, isRandomAccess ? maxConcurrency : 1, callback, cancellation)
+                .requestPages();
+    }
+
+    /**
+     * Counts the objects in count mode, unless they were counted already or {@code isRefresh} is
+     * set.
+     */
+    private void requestCount(final boolean isRefresh) {
+        synchronized (mLock) {
+            if (!mIsCountMode || mIsRefresh || (!isRefresh && (mTotalCount >= 0 ||
+                    mIsCountLoading))) {
+                return;
+            }
+            mIsCountLoading = true;
+        }
+
+        final CountablePageSource.CountResultCallback countCallback =
+                new CountablePageSource.CountResultCallback() {
+            @Override
+            public void onCount(final int count) {
+                execute(getMergeExecutor(), new Runnable() {
+                    @Override
+                    public void run() {
+                        onCountLoaded(count);
+                    }
+                });
+            }
+
+            @Override
+            public void onError(Exception e) {
+                // Counted again with the next page
+                synchronized (mLock) {
+                    mIsCountLoading = false;
+                }
+            }
+        };
+        execute(getFetchExecutor(), new Runnable() {
+            @Override
+            public void run() {
+                ((CountablePageSource<T>) mSource).countObjects(isRefresh, countCallback);
+            }
+        });
+    }
+
+    /**
+     * Adds or removes trailing placeholders so the objects match {@code count}.
+     */
+    private void onCountLoaded(int count) {
+        synchronized (mLock) {
+            mIsCountLoading = false;
+            int size = mObjects.size();
+            if (!mHasNextPage && mPagesAhead.isEmpty()) {
+                // Every object is loaded, they are the count
+                mTotalCount = size;
+                return;
+            }
+            mTotalCount = count;
+
+            List<ListDiff.Op> ops;
+            if (count > size) {
+                mObjects.addAll(Collections.<T>nCopies(count - size, null));
+                markShifted(size);
+                ops = Collections.singletonList(
+                        new ListDiff.Op(ListDiff.Op.INSERT, size, 0, count - size));
+            } else {
+                // Only placeholders are removed, loaded objects are more up to date than the count
+                int end = size;
+                while (end > count && mObjects.get(end - 1) == null) {
+                    end--;
+                }
+                if (end == size) {
+                    return;
+                }
+                mObjects.subList(end, size).clear();
+                markShifted(end);
+                ops = Collections.singletonList(
+                        new ListDiff.Op(ListDiff.Op.REMOVE, end, 0, size - end));
+            }
+            mModCount++;
+            publishChange(ops);
+        }
+        dispatchChanges();
+    }
+
+    /**
+     * Completes {@code trace}, if any, and reports it to the metrics.
+     */
+    private void reportTrace(PageLoadTrace trace, boolean isCancelled, Exception e) {
+        if (trace != null) {
+            trace.mIsCancelled = isCancelled;
+            trace.mError = isCancelled ? null : e;
+            mMetrics.onPageLoad(trace);
+
+            PageSizePolicy policy = getPageSizePolicy();
+            boolean isFromCache = trace.isCacheHit() && trace.getDelivery() == 0;
+            if (policy != null && !isCancelled && e == null && !isFromCache) {
+                policy.onPageLoaded(trace.getResultCount(), trace.getFetchNanos() / 1000000,
+                        trace.getBytes());
+            }
+        }
+    }
+
+    /**
+     * Removes {@code load} from the loads in flight and calls the callbacks that joined it.
+     */
+    private void finishPageLoad(int page, PageLoad load, List<T> objects, Exception e) {
+        List<LoadCallback<T>> joinedCallbacks;
+        synchronized (mLock) {
+            if (mPageLoads.get(page) == load) {
+                mPageLoads.remove(page);
+            }
+            joinedCallbacks = new ArrayList<>(load.joinedCallbacks);
+        }
+        for (LoadCallback<T> joinedCallback : joinedCallbacks) {
+            deliverResult(joinedCallback, objects, e);
+        }
+    }
+
+    /**
+     * Merges a page into the loaded objects.
+     *
+     * @return the objects of the page, or {@code null} if a refresh replaced the loaded objects
+     * since the page was requested.
+     */
+    private List<T> onPage(int page, int generation, List<T> objects, PageLoadTrace trace) {
+        long mergeStart = trace != null ? System.nanoTime() : 0;
+        List<T> results = mergePage(page, generation, objects);
+        long notifyStart = trace != null ? System.nanoTime() : 0;
+        dispatchChanges();
+        if (trace != null) {
+            trace.mResultCount = objects.size();
+            trace.mMergeNanos = notifyStart - mergeStart;
+            trace.mNotifyNanos = System.nanoTime() - notifyStart;
+        }
+        return results;
+    }
+
+    private List<T> mergePage(int page, int generation, List<T> objects) {
+        synchronized (mLock) {
+            if (generation != mGeneration) {
+                return null;
+            }
+            List<T> results = new ArrayList<>(objects);
+            int itemCount = results.size();
+            layOutPages(page);
+            int pageSize = mLayout.getSize(page);
+            int positionStart = mLayout.getStart(page);
+
+            // We detect if there are more pages by setting the limit pageSize + 1 and we
+            // remove the extra if there are more pages.
+            boolean hasNextPage = itemCount >= pageSize + 1;
+            if (mIsDuplicateSuppression) {
+                List<T> unique = new ArrayList<>(results);
+                int dropped = dropLoadedObjects(unique, positionStart,
+                        hasNextPage ? positionStart + pageSize : mObjects.size());
+                // The extra object takes the place of a dropped one. A page short of more would
+                // leave a hole before the next one, its duplicates are kept until its gap is
+                // filled, such as by the final result after a cached one.
+                if (!hasNextPage || unique.size() >= pageSize) {
+                    results = unique;
+                    mDroppedDuplicateCount += dropped;
+                }
+            }
+            if (results.size() > pageSize) {
+                results.subList(pageSize, results.size()).clear();
+            }
+
+            List<ListDiff.Op> ops = new ArrayList<>(3);
+            int objectsSize = mObjects.size();
+            if (objectsSize < positionStart && !mIsCountMode) {
+                // The pages before it don't fill their place, only count mode has placeholders
+                return null;
+            }
+            if (objectsSize < positionStart) {
+                // A page ahead of the objects in count mode, the rows before it are placeholders
+                int placeholderCount = positionStart - objectsSize;
+                mObjects.addAll(Collections.<T>nCopies(placeholderCount, null));
+                markShifted(objectsSize);
+                ops.add(new ListDiff.Op(ListDiff.Op.INSERT, objectsSize, 0, placeholderCount));
+                objectsSize = positionStart;
+            }
+            int newCount = results.size();
+            int oldCount = 0;
+            // The changes of a page loaded again, only the rows that differ
+            List<ListDiff.Op> pageOps = null;
+            if (objectsSize > positionStart) {
+                // The page was loaded before (e.g. cache then network) or holds placeholders,
+                // replace it. There are no objects after the last page, drop the ones left.
+                int end = hasNextPage ? Math.min(objectsSize, positionStart + pageSize) :
+                        objectsSize;
+                oldCount = end - positionStart;
+                List<T> oldObjects = mObjects.subList(positionStart, end);
+                if (!mEvictedPages.contains(page) && !oldObjects.contains(null)) {
+                    pageOps = ListDiff.compute(new ArrayList<>(oldObjects), results,
+                            mDiffCallback);
+                }
+                for (T oldObject : oldObjects) {
+                    if (oldObject != null) {
+                        mLoadedKeys.remove(mSource.getKey(oldObject));
+                    }
+                }
+                oldObjects.clear();
+            }
+            mObjects.addAll(positionStart, results);
+            if (oldCount == newCount) {
+                markReplaced(positionStart, positionStart + newCount);
+            } else {
+                markShifted(positionStart);
+            }
+            for (T object : results) {
+                mLoadedKeys.add(mSource.getKey(object));
+            }
+            mEvictedPages.remove(page);
+            mModCount++;
+
+            if (page > mCurrentPage + 1) {
+                mPagesAhead.put(page, hasNextPage);
+            } else if (page >= mCurrentPage) {
+                // A page loaded again, such as from the network after the cache, while the
+                // following pages were merged doesn't move the current page back
+                mCurrentPage = page;
+                mHasNextPage = hasNextPage;
+                // Catch up with the pages loaded ahead
+                Boolean hasPageAfter;
+                while (mHasNextPage &&
+                        (hasPageAfter = mPagesAhead.remove(mCurrentPage + 1)) != null) {
+                    mCurrentPage++;
+                    mHasNextPage = hasPageAfter;
+                }
+            }
+            if (!hasNextPage) {
+                if (page < mCurrentPage) {
+                    mCurrentPage = page;
+                    mHasNextPage = false;
+                }
+                Iterator<Integer> pagesAhead = mPagesAhead.keySet().iterator();
+                while (pagesAhead.hasNext()) {
+                    if (pagesAhead.next() > page) {
+                        pagesAhead.remove();
+                    }
+                }
+                if (mIsCountMode) {
+                    mTotalCount = mObjects.size();
+                }
+            }
+
+            if (pageOps != null) {
+                for (ListDiff.Op op : pageOps) {
+                    ops.add(new ListDiff.Op(op.type, positionStart + op.position,
+                            op.type == ListDiff.Op.MOVE ? positionStart + op.toPosition : 0,
+                            op.itemCount));
+                }
+                publishChange(ops);
+                return results;
+            }
+            int changedCount = Math.min(oldCount, newCount);
+            if (changedCount > 0) {
+                ops.add(new ListDiff.Op(ListDiff.Op.CHANGE, positionStart, 0, changedCount));
+            }
+            if (newCount > oldCount) {
+                ops.add(new ListDiff.Op(ListDiff.Op.INSERT, positionStart + changedCount, 0,
+                        newCount - changedCount));
+            } else if (oldCount > newCount) {
+                ops.add(new ListDiff.Op(ListDiff.Op.REMOVE, positionStart + changedCount, 0,
+                        oldCount - changedCount));
+            }
+            publishChange(ops);
+            return results;
+        }
+    }
+
+    /**
+     * Removes from {@code objects} the ones already loaded, except in the rows from {@code start}
+     * to {@code end} that they replace, and the ones repeated. Must be called while holding
+     * {@code mLock}.
+     *
+     * @return the number of objects removed.
+     */
+    private int dropLoadedObjects(List<T> objects, int start, int end) {
+        end = Math.min(end, mObjects.size());
+        Set<Object> replacedKeys = Collections.emptySet();
+        if (start < end) {
+            replacedKeys = new HashSet<>();
+            for (T object : mObjects.subList(start, end)) {
+                if (object != null) {
+                    replacedKeys.add(mSource.getKey(object));
+                }
+            }
+        }
+        Set<Object> pageKeys = new HashSet<>();
+        int dropped = 0;
+        Iterator<T> iterator = objects.iterator();
+        while (iterator.hasNext()) {
+            Object key = mSource.getKey(iterator.next());
+            int loadedCount = mLoadedKeys.count(key) - (replacedKeys.contains(key) ? 1 : 0);
+            if (loadedCount > 0 || !pageKeys.add(key)) {
+                iterator.remove();
+                dropped++;
+            }
+        }
+        return dropped;
+    }
+
+    /**
+     * Sets objects that were loaded earlier, such as a snapshot of a previous session, as the first
+     * pages of this pager. They can then be revalidated with
+     * {@link #refresh(LoadCallback, Cancellation)}.
+     * <p/>
+     * Must be called before the first page is loaded.
+     *
+     * @param objects     The objects of the first pages.
+     * @param hasNextPage Whether there were more pages after {@code objects}.
+     */
+    public void restoreObjects(List<T> objects, boolean hasNextPage) {
+        restoreObjects(objects, hasNextPage, -1);
+    }
+
+    /**
+     * Like {@link #restoreObjects(List, boolean)}, with the {@link #getTotalCount() count} of a
+     * pager in {@link #setCountMode(boolean) count mode}, so the placeholders of the pages not
+     * restored are back right away. The objects are counted again if {@code totalCount} is -1.
+     *
+     * @param totalCount The number of objects counted along with {@code objects}, or -1.
+     */
+    public void restoreObjects(List<T> objects, boolean hasNextPage, int totalCount) {
+        synchronized (mLock) {
+            if (mCurrentPage >= 0 || !mPageLoads.isEmpty()) {
+                throw new IllegalStateException("Objects must be restored before the first page " +
+                        "is loaded");
+            }
+
+            int pageSize = nextPageSize();
+            int count = objects.size();
+            if (hasNextPage) {
+                // Only keep full pages so the next page starts at the right offset
+                count -= count % pageSize;
+            }
+            if (count == 0) {
+                return;
+            }
+
+            mObjects.addAll(objects.subList(0, count));
+            markShifted(0);
+            for (T object : mObjects) {
+                mLoadedKeys.add(mSource.getKey(object));
+            }
+            mLayout = new PageLayout();
+            while (mLayout.getEnd() < count) {
+                mLayout.addPage(Math.min(pageSize, count - mLayout.getEnd()));
+            }
+            mCurrentPage = mLayout.getPageCount() - 1;
+            mHasNextPage = hasNextPage;
+            if (mIsCountMode && totalCount >= 0) {
+                mTotalCount = hasNextPage ? Math.max(totalCount, count) : count;
+                // The pages not restored are placeholders
+                mObjects.addAll(Collections.<T>nCopies(mTotalCount - count, null));
+            }
+            mModCount++;
+            publishChange(Collections.singletonList(
+                    new ListDiff.Op(ListDiff.Op.INSERT, 0, 0, mObjects.size())));
+        }
+        dispatchChanges();
+        requestCount(false);
+    }
+
+    /**
+     * Reloads the pages loaded so far without clearing the loaded objects.
+     * <p/>
+     * The pages are loaded into a separate pager, with {@link PageRequest#isRefresh()} set, then
+     * the differences with the loaded objects are computed on the
+     * {@link #setMergeExecutor(Executor) merge executor}, or the
+     * {@link #getBackgroundExecutor() background executor}, and applied on the merge executor, or
+     * the {@link #getCallbackExecutor() callback executor}, as the minimal set of removed, moved,
+     * inserted and changed ranges.
+     *
+     * @param callback     Called once the differences are applied, with the refreshed objects.
+     *                     May be {@code null}.
+     * @param cancellation Used to cancel the refresh, may be {@code null}.
+     */
+    public void refresh(final LoadCallback<T> callback, final Cancellation cancellation) {
+        // Counted again alongside the pages
+        requestCount(true);
+        final QueryPager<T> shadow = new QueryPager<>(mSource, mPageSize);
+        shadow.mIsRefresh = true;
+        shadow.mMetrics = mMetrics;
+        final int pageCount;
+        final Executor mergeExecutor;
+        synchronized (mLock) {
+            pageCount = Math.max(1, mCurrentPage + 1);
+            // The pages are reloaded with the same offsets, so the objects keep their pages
+            shadow.mLayout = new PageLayout(mLayout);
+            shadow.mPageSizePolicy = mPageSizePolicy;
+            shadow.mFetchExecutor = mFetchExecutor;
+            shadow.mMergeExecutor = mMergeExecutor;
+            shadow.mIsDuplicateSuppression = mIsDuplicateSuppression;
+            mergeExecutor = mMergeExecutor;
+        }
+
+        new ShadowPageLoader<>(shadow, pageCount, cancellation, new LoadCallback<T>() {
+            @Override
+            public void done(List<T> objects, Exception e) {
+                if (objects == null) {
+                    deliverResult(callback, null, e);
+                    return;
+                }
+                Executor diffExecutor =
+                        mergeExecutor != null ? mergeExecutor : getBackgroundExecutor();
+                final Executor applyExecutor =
+                        mergeExecutor != null ? mergeExecutor : getCallbackExecutor();
+                diffExecutor.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        final Refresh<T> refresh = diff(shadow);
+                        applyExecutor.execute(new Runnable() {
+                            @Override
+                            public void run() {
+                                if (cancellation != null &&
+                                        cancellation.isCancellationRequested()) {
+                                    deliverResult(callback, null, null);
+                                    return;
+                                }
+                                applyRefresh(refresh);
+                                deliverResult(callback, refresh.objects, null);
+                            }
+                        });
+                    }
+                });
+            }
+        }).loadPages();
+    }
+
+    private Refresh<T> diff(QueryPager<T> shadow) {
+        Refresh<T> refresh = new Refresh<>();
+        List<T> oldObjects;
+        synchronized (mLock) {
+            // The snapshot is immutable, no need to copy it
+            oldObjects = getLatestObjects();
+            refresh.modCount = mModCount;
+        }
+        refresh.objects = shadow.getLatestObjects();
+        refresh.currentPage = shadow.getCurrentPage();
+        refresh.hasNextPage = shadow.hasNextPage();
+        synchronized (shadow.mLock) {
+            refresh.skipShift = shadow.mSkipShift;
+        }
+        int totalCount = getTotalCount();
+        if (refresh.hasNextPage && totalCount > refresh.objects.size()) {
+            // Keep the placeholders of the pages that were not refreshed
+            List<T> objects = new ArrayList<>(totalCount);
+            objects.addAll(refresh.objects);
+            objects.addAll(Collections.<T>nCopies(totalCount - refresh.objects.size(), null));
+            refresh.objects = objects;
+        }
+        refresh.ops = ListDiff.compute(oldObjects, refresh.objects, mDiffCallback);
+        return refresh;
+    }
+
+    private void applyRefresh(Refresh<T> refresh) {
+        synchronized (mLock) {
+            // A page was loaded while diffing, the operations don't match mObjects anymore
+            List<ListDiff.Op> ops = refresh.modCount == mModCount ? refresh.ops : null;
+
+            mObjects.clear();
+            mObjects.addAll(refresh.objects);
+            markShifted(0);
+            mLoadedKeys.clear();
+            for (T object : mObjects) {
+                if (object != null) {
+                    mLoadedKeys.add(mSource.getKey(object));
+                }
+            }
+            mCurrentPage = refresh.currentPage;
+            mHasNextPage = refresh.hasNextPage;
+            // The pages were reloaded from the current results
+            mSkipShift = refresh.skipShift;
+            mPagesAhead.clear();
+            mEvictedPages.clear();
+            mVisiblePage = -1;
+            mModCount++;
+            mGeneration++;
+            // The pages in flight were requested for the replaced objects, don't join them
+            mPageLoads.clear();
+            publishChange(ops);
+        }
+        dispatchChanges();
+    }
+
+    /**
+     * A change of the objects waiting to be dispatched: the snapshot after it, the callbacks to
+     * notify and the changed ranges, {@code null} if the whole list changed.
+     */
+    private class Dispatch implements Runnable {
+        final List<T> snapshot;
+        final OnObjectsChangedCallback[] callbacks;
+        final List<ListDiff.Op> ops;
+
+        Dispatch(List<T> snapshot, OnObjectsChangedCallback[] callbacks, List<ListDiff.Op> ops) {
+            this.snapshot = snapshot;
+            this.callbacks = callbacks;
+            this.ops = ops;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public void run() {
+            QueryPager<T> sender = QueryPager.this;
+            mSnapshot = snapshot;
+            if (ops == null) {
+                for (OnObjectsChangedCallback callback : callbacks) {
+                    callback.onChanged(sender);
+                }
+                return;
+            }
+            for (ListDiff.Op op : ops) {
+                for (OnObjectsChangedCallback callback : callbacks) {
+                    switch (op.type) {
+                        case ListDiff.Op.REMOVE:
+                            callback.onItemRangeRemoved(sender, op.position, op.itemCount);
+                            break;
+                        case ListDiff.Op.MOVE:
+                            callback.onItemRangeMoved(sender, op.position, op.toPosition,
+                                    op.itemCount);
+                            break;
+                        case ListDiff.Op.INSERT:
+                            callback.onItemRangeInserted(sender, op.position, op.itemCount);
+                            break;
+                        case ListDiff.Op.CHANGE:
+                            callback.onItemRangeChanged(sender, op.position, op.itemCount);
+                            break;
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Fills the gap the objects already loaded leave in the final result of a page, such as when
+     * objects inserted before the page shifted its offset and it starts with the end of the
+     * previous page, with the objects that follow it, loaded with one more request. The result is
+     * delivered without the duplicates so the page stays full.
+     */
+    private class GapFillingCallback implements PageSource.Callback<T> {
+        private final PageRequest<T> mRequest;
+        private final PageSource.Callback<T> mCallback;
+
+        GapFillingCallback(PageRequest<T> request, PageSource.Callback<T> callback) {
+            mRequest = request;
+            mCallback = callback;
+        }
+
+        @Override
+        public void onResult(final List<T> objects, boolean isFinal) {
+            // Only a full result tells that the results go on after the page
+            if (!isFinal || objects.size() < mRequest.getLimit()) {
+                mCallback.onResult(objects, isFinal);
+                return;
+            }
+            final List<T> unique = new ArrayList<>(objects);
+            final int dropped;
+            final int previousShift;
+            final int shift;
+            int gap = 0;
+            synchronized (mLock) {
+                int start = mLayout.getStart(mRequest.getPage());
+                dropped = !mIsDuplicateSuppression ? 0 : dropLoadedObjects(unique, start,
+                        start + mRequest.getPageSize());
+                previousShift = mSkipShift;
+                // As many objects were inserted before the page since the previous pages were
+                // loaded, the following pages skip them too. Pages in flight may see the same
+                // insertions, so the largest shift is kept.
+                shift = Math.max(mSkipShift, mRequest.getOffset() - start + dropped);
+                if (dropped > 0) {
+                    mSkipShift = shift;
+                    // The extra object of the limit fills one dropped object
+                    gap = mRequest.getPageSize() - unique.size();
+                }
+                if (gap > 0) {
+                    mGapFillRequestCount++;
+                }
+            }
+            if (gap <= 0) {
+                mCallback.onResult(objects, true);
+                return;
+            }
+
+            // Right after the objects of the result, with one more object to tell if the results
+            // go on. Straight from the network, the results are only cached as the whole page.
+            final PageRequest<T> request = new PageRequest<>(mRequest.getPage(),
+                    mRequest.getOffset() + objects.size(), gap,
+                    Collections.unmodifiableList(objects), mRequest.isRefresh(), true, false);
+            final PageSource.Callback<T> callback = new PageSource.Callback<T>() {
+                @Override
+                public void onResult(List<T> following, boolean isFinal) {
+                    if (!isFinal) {
+                        return;
+                    }
+                    List<T> filled = new ArrayList<>(unique.size() + following.size());
+                    filled.addAll(unique);
+                    filled.addAll(following);
+                    synchronized (mLock) {
+                        mDroppedDuplicateCount += dropped;
+                    }
+                    mCallback.onResult(filled, true);
+                }
+
+                @Override
+                public void onError(Exception e, boolean isFinal) {
+                    if (!isFinal) {
+                        return;
+                    }
+                    // The page fails as a whole, a short page would leave a hole before the next
+                    // one. It is loaded again from the same offset.
+                    synchronized (mLock) {
+                        if (mSkipShift == shift) {
+                            mSkipShift = previousShift;
+                        }
+                    }
+                    mCallback.onError(e, true);
+                }
+            };
+            execute(getFetchExecutor(), new Runnable() {
+                @Override
+                public void run() {
+                    mSource.loadPage(request, callback);
+                }
+            });
+        }
+
+        @Override
+        public void onError(Exception e, boolean isFinal) {
+            mCallback.onError(e, isFinal);
+        }
+    }
+
+    /**
+     * A page load in flight, and the callbacks of the loads that joined it.
+     */
+    private class PageLoad {
+        final int generation;
+        final List<LoadCallback<T>> joinedCallbacks = new ArrayList<>();
+
+        PageLoad(int generation) {
+            this.generation = generation;
+        }
+    }
+
+    /**
+     * A result of a page of {@link RangeLoader}, waiting for the pages before it to be merged.
+     */
+    private class PageResult {
+        final PageLoad load;
+        final List<T> objects;
+        final Exception error;
+        final boolean isFinal;
+        final PageLoadTrace trace;
+
+        PageResult(PageLoad load, List<T> objects, Exception error, boolean isFinal,
+                PageLoadTrace trace) {
+            this.load = load;
+            this.objects = objects;
+            this.error = error;
+            this.isFinal = isFinal;
+            this.trace = trace;
+        }
+    }
+
+    /**
+     * Loads a range of pages with a bounded number of requests in flight, merging them in order.
+     * <p/>
+     * Its state is guarded by {@code mLock}. Only one thread merges at a time, and pages delivered
+     * synchronously continue the loop of {@link #requestPages()} instead of requesting the next
+     * pages from the callback, so a range of many pages doesn't grow the stack.
+     */
+    private class RangeLoader {
+        private final int mFirstPage;
+        private final int mToPage;
+        private final int mMaxConcurrency;
+        private final LoadCallback<T> mCallback;
+        private final Cancellation mCancellation;
+        private final int mPagerGeneration;
+
+        private int mNextPage;
+        private int mInFlightCount;
+        // The last page that may be merged, lowered by errors, cancellation and the last page
+        private int mStopPage;
+        private boolean mIsCancelled;
+        private Exception mError;
+        // Results waiting for the pages before them, by page
+        private final TreeMap<Integer, PageResult> mResults = new TreeMap<>();
+        private boolean mIsRequesting;
+        private boolean mIsMerging;
+        private boolean mIsDone;
+
+        RangeLoader(int toPage, int maxConcurrency, LoadCallback<T> callback,
+                Cancellation cancellation) {
+            mToPage = toPage;
+            mMaxConcurrency = maxConcurrency;
+            mCallback = callback;
+            mCancellation = cancellation;
+            synchronized (mLock) {
+                mFirstPage = mCurrentPage + 1;
+                mPagerGeneration = mGeneration;
+                mNextPage = mFirstPage;
+                mStopPage = mHasNextPage ? toPage : mCurrentPage;
+            }
+        }
+
+        void requestPages() {
+            synchronized (mLock) {
+                if (mIsRequesting) {
+                    // The loop below picks up the free slots
+                    return;
+                }
+                mIsRequesting = true;
+            }
+            boolean isCancellationRequested = isCancellationRequested();
+            while (true) {
+                List<Runnable> requests = new ArrayList<>();
+                synchronized (mLock) {
+                    checkStopped(isCancellationRequested);
+                    while (mInFlightCount < mMaxConcurrency && mNextPage <= mStopPage) {
+                        int page = mNextPage++;
+                        if (isPageLoaded(page)) {
+                            // Loaded in the meantime, or ahead in count mode
+                            continue;
+                        }
+                        mInFlightCount++;
+                        Runnable request = newRequest(page);
+                        if (request != null) {
+                            requests.add(request);
+                        }
+                    }
+                    if (requests.isEmpty()) {
+                        mIsRequesting = false;
+                        break;
+                    }
+                }
+                for (Runnable request : requests) {
+                    request.run();
+                }
+            }
+            finishIfDone();
+        }
+
+        private boolean isCancellationRequested() {
+            return mCancellation != null && mCancellation.isCancellationRequested();
+        }
+
+        /**
+         * Stops at the current page if the range was cancelled or replaced by a refresh. Must be
+         * called while holding {@code mLock}.
+         */
+        private void checkStopped(boolean isCancellationRequested) {
+            if (!mIsCancelled && (isCancellationRequested || mGeneration != mPagerGeneration)) {
+                mIsCancelled = true;
+                mStopPage = -1;
+            }
+        }
+
+        /**
+         * Registers the load of {@code page}, or joins the load in flight. Must be called while
+         * holding {@code mLock}.
+         *
+         * @return the request to issue, or {@code null} if the page was already being loaded.
+         */
+        private Runnable newRequest(final int page) {
+            PageLoad inFlight = mPageLoads.get(page);
+            if (inFlight != null) {
+                mDeduplicatedRequestCount++;
+                inFlight.joinedCallbacks.add(new LoadCallback<T>() {
+                    @Override
+                    public void done(List<T> objects, Exception e) {
+                        // The load in flight merged the page itself
+                        onJoinedPage(page, objects, e);
+                    }
+                });
+                return null;
+            }
+
+            mRequestCount++;
+            final PageLoad load = new PageLoad(mGeneration);
+            mPageLoads.put(page, load);
+            final PageRequest<T> request = createRequest(page);
+            final PageSource.Callback<T> sourceCallback = new PageSource.Callback<T>() {
+
+                final AtomicInteger deliveries = new AtomicInteger();
+
+                @Override
+                public void onResult(List<T> objects, boolean isFinal) {
+                    onPageResult(page, new PageResult(load, objects, null, isFinal,
+                            startTrace(isFinal)));
+                }
+
+                @Override
+                public void onError(Exception e, boolean isFinal) {
+                    onPageResult(page, new PageResult(load, null, e, isFinal,
+                            startTrace(isFinal)));
+                }
+
+                private PageLoadTrace startTrace(boolean isFinal) {
+                    int delivery = deliveries.getAndIncrement();
+                    return request.isTraced() ? request.newTrace(delivery, isFinal) : null;
+                }
+            };
+            return new Runnable() {
+                @Override
+                public void run() {
+                    execute(getFetchExecutor(), new Runnable() {
+                        @Override
+                        public void run() {
+                            mSource.loadPage(request,
+                                    new GapFillingCallback(request, sourceCallback));
+                        }
+                    });
+                }
+            };
+        }
+
+        private void onPageResult(final int page, final PageResult result) {
+            execute(getMergeExecutor(), new Runnable() {
+                @Override
+                public void run() {
+                    boolean isCancellationRequested = isCancellationRequested();
+                    PageResult dropped = null;
+                    synchronized (mLock) {
+                        checkStopped(isCancellationRequested);
+                        if (result.isFinal) {
+                            mInFlightCount--;
+                        }
+                        if (result.error != null) {
+                            // Only a final error stops the range, the next result may still work
+                            if (result.isFinal && !mIsCancelled) {
+                                stopAt(page - 1, result.error);
+                            }
+                            dropped = result;
+                        } else if (page > mStopPage) {
+                            dropped = result;
+                        } else {
+                            // A later result of the same page replaces the one waiting
+                            dropped = mResults.put(page, result);
+                        }
+                    }
+                    if (dropped != null) {
+                        drop(page, dropped);
+                    }
+                    merge();
+                    requestPages();
+                }
+            });
+        }
+
+        private void onJoinedPage(int page, List<T> objects, Exception e) {
+            synchronized (mLock) {
+                mInFlightCount--;
+                if (objects == null) {
+                    stopAt(page - 1, e);
+                }
+            }
+            merge();
+            requestPages();
+        }
+
+        /**
+         * Lowers the last page to merge. Must be called while holding {@code mLock}.
+         */
+        private void stopAt(int page, Exception e) {
+            mStopPage = Math.min(mStopPage, page);
+            if (mError == null) {
+                mError = e;
+            }
+        }
+
+        /**
+         * Merges the results that follow the current page, in order.
+         */
+        private void merge() {
+            synchronized (mLock) {
+                if (mIsMerging) {
+                    return;
+                }
+                mIsMerging = true;
+            }
+            while (true) {
+                Map.Entry<Integer, PageResult> entry;
+                synchronized (mLock) {
+                    entry = mResults.firstEntry();
+                    if (entry == null || entry.getKey() > mCurrentPage + 1 ||
+                            entry.getKey() > mStopPage) {
+                        mIsMerging = false;
+                        return;
+                    }
+                    mResults.remove(entry.getKey());
+                }
+
+                int page = entry.getKey();
+                PageResult result = entry.getValue();
+                List<T> objects = onPage(page, mPagerGeneration, result.objects, result.trace);
+                reportTrace(result.trace, objects == null, null);
+                synchronized (mLock) {
+                    if (objects == null) {
+                        // Replaced by a refresh
+                        checkStopped(true);
+                    } else if (page == mCurrentPage && !mHasNextPage) {
+                        stopAt(page, null);
+                    }
+                }
+                if (result.isFinal) {
+                    finishPageLoad(page, result.load, objects, null);
+                }
+            }
+        }
+
+        private void drop(int page, PageResult result) {
+            reportTrace(result.trace, result.error == null, result.error);
+            if (result.isFinal) {
+                finishPageLoad(page, result.load, null, result.error);
+            }
+        }
+
+        /**
+         * Calls the callback once nothing is in flight or waiting to be merged anymore.
+         */
+        private void finishIfDone() {
+            Map<Integer, PageResult> dropped;
+            List<T> objects = null;
+            Exception error;
+            synchronized (mLock) {
+                Integer firstResult = mResults.isEmpty() ? null : mResults.firstKey();
+                if (mIsDone || mInFlightCount > 0 || mIsRequesting || mIsMerging ||
+                        mNextPage <= mStopPage ||
+                        (firstResult != null && firstResult <= mCurrentPage + 1 &&
+                                firstResult <= mStopPage)) {
+                    return;
+                }
+                mIsDone = true;
+                // Pages past the last page, an error or a cancellation
+                dropped = new TreeMap<>(mResults);
+                mResults.clear();
+                error = mIsCancelled ? null : mError;
+                int lastPage = Math.min(mToPage, mCurrentPage);
+                if (!mIsCancelled && error == null && lastPage < mFirstPage) {
+                    objects = new ArrayList<>();
+                } else if (!mIsCancelled && error == null) {
+                    List<T> latestObjects = getLatestObjects();
+                    int start = Math.min(latestObjects.size(), mLayout.getStart(mFirstPage));
+                    objects = new ArrayList<>(latestObjects.subList(start, pageEnd(lastPage)));
+                }
+            }
+            for (Map.Entry<Integer, PageResult> entry : dropped.entrySet()) {
+                drop(entry.getKey(), entry.getValue());
+            }
+            deliverResult(mCallback, objects, error);
+        }
+    }
+
+    /**
+     * Loads the pages of the shadow pager of a refresh one after the other.
+     * <p/>
+     * Pages delivered synchronously continue the loop of {@link #loadPages()} instead of loading
+     * the next page from the callback, so a refresh of many pages doesn't grow the stack.
+     */
+    private static class ShadowPageLoader<T> implements LoadCallback<T> {
+        private final QueryPager<T> mShadow;
+        private final int mPageCount;
+        private final Cancellation mCancellation;
+        private final LoadCallback<T> mCallback;
+        // Whether loadPages is waiting for the page it requested, and whether that page is loaded
+        private boolean mIsLoading;
+        private boolean mIsPageLoaded;
+
+        ShadowPageLoader(QueryPager<T> shadow, int pageCount, Cancellation cancellation,
+                LoadCallback<T> callback) {
+            mShadow = shadow;
+            mPageCount = pageCount;
+            mCancellation = cancellation;
+            mCallback = callback;
+        }
+
+        void loadPages() {
+            while (true) {
+                synchronized (this) {
+                    mIsLoading = true;
+                    mIsPageLoaded = false;
+                }
+                mShadow.loadPage(NEXT_PAGE, this, mCancellation, true);
+                synchronized (this) {
+                    mIsLoading = false;
+                    if (!mIsPageLoaded) {
+                        // Still loading, the callback takes it from here
+                        return;
+                    }
+                }
+            }
+        }
+
+        @Override
+        public void done(List<T> objects, Exception e) {
+            if (objects == null) {
+                mCallback.done(null, e);
+                return;
+            }
+            if (!mShadow.hasNextPage() || mShadow.getCurrentPage() + 1 >= mPageCount) {
+                mCallback.done(mShadow.getLatestObjects(), null);
+                return;
+            }
+            synchronized (this) {
+                if (mIsLoading) {
+                    mIsPageLoaded = true;
+                    return;
+                }
+            }
+            loadPages();
+        }
+    }
+
+    /**
+     * The result of a refresh, computed in the background.
+     */
+    private static class Refresh<T> {
+        List<T> objects;
+        List<ListDiff.Op> ops;
+        int modCount;
+        int currentPage;
+        boolean hasNextPage;
+        int skipShift;
+    }
+}
\ No newline at end of file
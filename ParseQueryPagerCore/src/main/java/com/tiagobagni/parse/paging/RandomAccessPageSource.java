@@ -0,0 +1,16 @@
+package com.tiagobagni.parse.paging;
+
+/**
+ * A {@link PageSource} that may load a page from its offset alone, without the objects of the
+ * previous page, which lets {@link QueryPager#loadPages(int, int, LoadCallback, Cancellation)}
+ * request several pages at once.
+ *
+ * @param <T>
+ */
+public interface RandomAccessPageSource<T> extends PageSource<T> {
+    /**
+     * @return whether pages can currently be loaded from their offset, in any order. Sources
+     * building pages from the previous one, such as with keyset pagination, return {@code false}.
+     */
+    boolean isRandomAccess();
+}
\ No newline at end of file
@@ -0,0 +1,72 @@
+package com.tiagobagni.parse.paging;
+
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.Executor;
+
+/**
+ * Runs the tasks one at a time, in the order they were submitted, on an executor that may run
+ * them concurrently, such as a pool. The next task is submitted once the previous one finishes.
+ */
+class SerialExecutor implements Executor {
+
+    private final Executor mExecutor;
+    private final Queue<Runnable> mTasks = new ArrayDeque<>();
+    // Whether a task is submitted to mExecutor and not finished yet
+    private boolean mIsRunning;
+
+    SerialExecutor(Executor executor) {
+        mExecutor = executor;
+    }
+
+    @Override
+    public void execute(final Runnable command) {
+        Runnable task = new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    command.run();
+                } finally {
+                    submit(next());
+                }
+            }
+        };
+        synchronized (mTasks) {
+            mTasks.add(task);
+            if (mIsRunning) {
+                return;
+            }
+            mIsRunning = true;
+        }
+        // Outside the lock, mExecutor may run the task right away
+        submit(next());
+    }
+
+    /**
+     * @return the next task to run, or {@code null} if there is none.
+     */
+    private Runnable next() {
+        synchronized (mTasks) {
+            Runnable next = mTasks.poll();
+            if (next == null) {
+                mIsRunning = false;
+            }
+            return next;
+        }
+    }
+
+    private void submit(Runnable task) {
+        if (task == null) {
+            return;
+        }
+        try {
+            mExecutor.execute(task);
+        } catch (RuntimeException e) {
+            // Rejected, the remaining tasks are submitted along with the next one
+            synchronized (mTasks) {
+                mIsRunning = false;
+            }
+            throw e;
+        }
+    }
+}
\ No newline at end of file
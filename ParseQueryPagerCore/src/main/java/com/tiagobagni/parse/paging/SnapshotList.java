@@ -0,0 +1,93 @@
+package com.tiagobagni.parse.paging;
+
+import java.util.AbstractList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.RandomAccess;
+
+/**
+ * An immutable list published by {@link QueryPager} after each change to its objects so they can
+ * be read from any thread without locking.
+ * <p/>
+ * The elements are held in chunks of {@link #CHUNK_SIZE}, and the snapshot taken after a change
+ * shares the chunks that didn't change with the previous one, so loading a page only copies the
+ * chunks of that page.
+ *
+ * @param <T>
+ */
+final class SnapshotList<T> extends AbstractList<T> implements RandomAccess {
+
+    private static final int CHUNK_SHIFT = 6;
+    static final int CHUNK_SIZE = 1 << CHUNK_SHIFT;
+
+    private static final SnapshotList<Object> EMPTY = new SnapshotList<>(new Object[0][], 0);
+
+    private final Object[][] mChunks;
+    private final int mSize;
+
+    private SnapshotList(Object[][] chunks, int size) {
+        mChunks = chunks;
+        mSize = size;
+    }
+
+    @SuppressWarnings("unchecked")
+    static <T> SnapshotList<T> empty() {
+        return (SnapshotList<T>) EMPTY;
+    }
+
+    /**
+     * @return the chunk holding {@code position}.
+     */
+    static int getChunk(int position) {
+        return position >> CHUNK_SHIFT;
+    }
+
+    /**
+     * @return an immutable copy of {@code objects}.
+     */
+    static <T> SnapshotList<T> copyOf(List<T> objects) {
+        return SnapshotList.<T>empty().update(objects, new BitSet(), 0);
+    }
+
+    /**
+     * Returns an immutable copy of {@code objects}, which were this snapshot before some of their
+     * elements changed.
+     *
+     * @param objects       The objects after the change.
+     * @param changedChunks The chunks whose elements were replaced.
+     * @param shiftStart    The position elements were inserted or removed from, after which no
+     *                      chunk is shared, or {@link Integer#MAX_VALUE}.
+     */
+    SnapshotList<T> update(List<T> objects, BitSet changedChunks, int shiftStart) {
+        int size = objects.size();
+        if (size == 0) {
+            return empty();
+        }
+        Object[][] chunks = new Object[getChunk(size - 1) + 1][];
+        for (int i = 0; i < chunks.length; i++) {
+            int start = i << CHUNK_SHIFT;
+            int end = Math.min(size, start + CHUNK_SIZE);
+            if (i < mChunks.length && end <= shiftStart && !changedChunks.get(i) &&
+                    mChunks[i].length == end - start) {
+                chunks[i] = mChunks[i];
+            } else {
+                chunks[i] = objects.subList(start, end).toArray();
+            }
+        }
+        return new SnapshotList<>(chunks, size);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public T get(int location) {
+        if (location < 0 || location >= mSize) {
+            throw new IndexOutOfBoundsException("Index: " + location + ", size: " + mSize);
+        }
+        return (T) mChunks[location >> CHUNK_SHIFT][location & (CHUNK_SIZE - 1)];
+    }
+
+    @Override
+    public int size() {
+        return mSize;
+    }
+}
\ No newline at end of file
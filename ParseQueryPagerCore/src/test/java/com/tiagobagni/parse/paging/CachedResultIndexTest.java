@@ -0,0 +1,51 @@
+package com.tiagobagni.parse.paging;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class CachedResultIndexTest {
+
+    @Test
+    public void remembersCachedAndMissingPages() throws Exception {
+        CachedResultIndex index = new CachedResultIndex(2);
+        assertNull(index.isCached("query", 0, Long.MAX_VALUE));
+
+        index.put("query", 0, false);
+        index.put("query", 1, true);
+        assertFalse(index.isCached("query", 0, Long.MAX_VALUE));
+        assertTrue(index.isCached("query", 1, Long.MAX_VALUE));
+
+        // Forgets the least recently used page
+        index.put("query", 2, true);
+        assertNull(index.isCached("query", 0, Long.MAX_VALUE));
+        assertEquals(2, index.size());
+        assertEquals(2, index.getHitCount());
+        assertEquals(2, index.getMissCount());
+    }
+
+    @Test
+    public void looksUpCachedPagesAgainOnceTooOld() throws Exception {
+        CachedResultIndex index = new CachedResultIndex();
+        index.put("query", 0, true);
+        index.put("query", 1, false);
+
+        assertNull(index.isCached("query", 0, 0));
+        // Pages missing from the cache stay missing until they are loaded
+        assertFalse(index.isCached("query", 1, 0));
+    }
+
+    @Test
+    public void invalidatesTheQueryOnly() throws Exception {
+        CachedResultIndex index = new CachedResultIndex();
+        index.put("query", 0, true);
+        index.put("other", 0, true);
+
+        index.invalidate("query");
+        assertNull(index.isCached("query", 0, Long.MAX_VALUE));
+        assertTrue(index.isCached("other", 0, Long.MAX_VALUE));
+
+        index.invalidateAll();
+        assertEquals(0, index.size());
+    }
+}
\ No newline at end of file
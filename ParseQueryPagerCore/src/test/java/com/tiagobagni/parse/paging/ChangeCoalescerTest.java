@@ -0,0 +1,129 @@
+package com.tiagobagni.parse.paging;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class ChangeCoalescerTest {
+
+    /**
+     * Applies the changes it is notified of to a list of row names, renaming the inserted and
+     * changed rows to "*".
+     */
+    static class ListCallback extends QueryPagerTest.RecordingCallback {
+        final List<String> rows;
+
+        ListCallback(List<String> rows) {
+            this.rows = new ArrayList<>(rows);
+        }
+
+        @Override
+        public void onItemRangeChanged(QueryPager sender, int positionStart, int itemCount) {
+            super.onItemRangeChanged(sender, positionStart, itemCount);
+            for (int i = positionStart; i < positionStart + itemCount; i++) {
+                rows.set(i, "*");
+            }
+        }
+
+        @Override
+        public void onItemRangeInserted(QueryPager sender, int positionStart, int itemCount) {
+            super.onItemRangeInserted(sender, positionStart, itemCount);
+            rows.addAll(positionStart, Collections.nCopies(itemCount, "*"));
+        }
+
+        @Override
+        public void onItemRangeRemoved(QueryPager sender, int positionStart, int itemCount) {
+            super.onItemRangeRemoved(sender, positionStart, itemCount);
+            rows.subList(positionStart, positionStart + itemCount).clear();
+        }
+    }
+
+    private ChangeCoalescer<QueryPager> mCoalescer;
+    private QueryPagerTest.RecordingCallback mCallback;
+
+    @Before
+    public void setUp() {
+        mCoalescer = new ChangeCoalescer<>();
+        mCallback = new QueryPagerTest.RecordingCallback();
+    }
+
+    @Test
+    public void flush_mergesPagesAndTheirNetworkResults() throws Exception {
+        // Two pages loaded from the cache, then the first one again from the network
+        mCoalescer.onItemRangeInserted(null, 0, 20);
+        mCoalescer.onItemRangeInserted(null, 20, 20);
+        mCoalescer.onItemRangeChanged(null, 5, 10);
+        mCoalescer.flush(null, mCallback);
+
+        assertEquals("[inserted 0 40]", mCallback.events.toString());
+        assertTrue(mCoalescer.isEmpty());
+    }
+
+    @Test
+    public void flush_mergesAdjacentRemovalsAndChanges() throws Exception {
+        mCoalescer.onItemRangeRemoved(null, 10, 5);
+        mCoalescer.onItemRangeRemoved(null, 5, 5);
+        mCoalescer.onItemRangeChanged(null, 0, 2);
+        mCoalescer.onItemRangeChanged(null, 2, 3);
+        mCoalescer.onItemRangeMoved(null, 1, 4, 1);
+        mCoalescer.flush(null, mCallback);
+
+        assertEquals("[removed 5 10, changed 0 5, moved 1 4 1]", mCallback.events.toString());
+    }
+
+    @Test
+    public void flush_wholeListChange() throws Exception {
+        mCoalescer.onItemRangeInserted(null, 0, 20);
+        mCoalescer.onChanged(null);
+        mCoalescer.onItemRangeInserted(null, 20, 20);
+        mCoalescer.flush(null, mCallback);
+        mCoalescer.flush(null, mCallback);
+
+        assertEquals("[changed]", mCallback.events.toString());
+    }
+
+    @Test
+    public void flush_replaysTheSameChanges() throws Exception {
+        Random random = new Random(42);
+        for (int run = 0; run < 200; run++) {
+            List<String> rows = new ArrayList<>();
+            for (int i = 0; i < 30; i++) {
+                rows.add(String.valueOf(i));
+            }
+            ListCallback expected = new ListCallback(rows);
+            ListCallback actual = new ListCallback(rows);
+
+            for (int i = 0; i < 10; i++) {
+                int size = expected.rows.size();
+                int start = random.nextInt(size + 1);
+                int count = 1 + random.nextInt(5);
+                switch (random.nextInt(3)) {
+                    case 0:
+                        expected.onItemRangeInserted(null, start, count);
+                        mCoalescer.onItemRangeInserted(null, start, count);
+                        break;
+                    case 1:
+                        count = Math.min(count, size - start);
+                        expected.onItemRangeRemoved(null, start, count);
+                        mCoalescer.onItemRangeRemoved(null, start, count);
+                        break;
+                    default:
+                        count = Math.min(count, size - start);
+                        expected.onItemRangeChanged(null, start, count);
+                        mCoalescer.onItemRangeChanged(null, start, count);
+                        break;
+                }
+            }
+            mCoalescer.flush(null, actual);
+
+            assertEquals(expected.rows, actual.rows);
+            assertTrue(actual.events.size() <= expected.events.size());
+        }
+    }
+}
\ No newline at end of file
@@ -0,0 +1,27 @@
+package com.tiagobagni.parse.paging;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class IdentityMapTest {
+
+    @Test
+    public void internReturnsTheCanonicalInstance() throws Exception {
+        IdentityMap<String, StringBuilder> map = new IdentityMap<>();
+        StringBuilder first = new StringBuilder("a");
+        StringBuilder copy = new StringBuilder("a");
+
+        assertSame(first, map.intern("a", first));
+        assertSame(first, map.intern("a", copy));
+        assertSame(first, map.intern("a", first));
+        assertSame(first, map.get("a"));
+        assertNull(map.get("b"));
+        assertEquals(3, map.getInternCount());
+        assertEquals(1, map.getSharedCount());
+
+        map.remove("a");
+        assertSame(copy, map.intern("a", copy));
+        assertEquals(1, map.size());
+    }
+}
\ No newline at end of file
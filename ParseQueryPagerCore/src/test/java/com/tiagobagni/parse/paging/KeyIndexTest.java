@@ -0,0 +1,70 @@
+package com.tiagobagni.parse.paging;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class KeyIndexTest {
+
+    /**
+     * Keys with the same hash code, so they share a run of slots.
+     */
+    private static class CollidingKey {
+        private final int mId;
+
+        CollidingKey(int id) {
+            mId = id;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof CollidingKey && ((CollidingKey) o).mId == mId;
+        }
+
+        @Override
+        public int hashCode() {
+            return 42;
+        }
+    }
+
+    @Test
+    public void countsTheOccurrencesOfEachKey() throws Exception {
+        KeyIndex index = new KeyIndex();
+        for (int i = 0; i < 1000; i++) {
+            index.add(String.valueOf(i));
+        }
+        index.add("7");
+        assertEquals(1000, index.size());
+        assertEquals(2, index.count("7"));
+
+        index.remove("7");
+        assertEquals(1, index.count("7"));
+        index.remove("7");
+        index.remove("unknown");
+        assertEquals(0, index.count("7"));
+        assertEquals(999, index.size());
+        assertEquals(1, index.count("999"));
+
+        index.clear();
+        assertEquals(0, index.count("999"));
+    }
+
+    @Test
+    public void removingAKeyKeepsTheFollowingOnesReachable() throws Exception {
+        KeyIndex index = new KeyIndex();
+        for (int i = 0; i < 5; i++) {
+            index.add(new CollidingKey(i));
+        }
+        index.add("other");
+
+        index.remove(new CollidingKey(1));
+        index.remove(new CollidingKey(3));
+
+        assertEquals(1, index.count(new CollidingKey(0)));
+        assertEquals(0, index.count(new CollidingKey(1)));
+        assertEquals(1, index.count(new CollidingKey(2)));
+        assertEquals(1, index.count(new CollidingKey(4)));
+        assertEquals(1, index.count("other"));
+        assertEquals(4, index.size());
+    }
+}
\ No newline at end of file
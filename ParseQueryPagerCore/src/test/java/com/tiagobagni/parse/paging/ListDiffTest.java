@@ -0,0 +1,114 @@
+package com.tiagobagni.parse.paging;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class ListDiffTest {
+
+    /**
+     * Identifies strings by their first character, the rest being their contents.
+     */
+    private static final ListDiff.ItemCallback<String> CALLBACK =
+            new ListDiff.ItemCallback<String>() {
+        @Override
+        public Object getKey(String object) {
+            return object.charAt(0);
+        }
+
+        @Override
+        public boolean areContentsTheSame(String oldObject, String newObject) {
+            return oldObject.equals(newObject);
+        }
+    };
+
+    /**
+     * Replays {@code ops} on {@code oldList}, taking the inserted and changed objects from
+     * {@code newList}.
+     */
+    private static List<String> apply(List<String> oldList, List<String> newList,
+            List<ListDiff.Op> ops) {
+        List<String> list = new ArrayList<>(oldList);
+        for (ListDiff.Op op : ops) {
+            switch (op.type) {
+                case ListDiff.Op.REMOVE:
+                    list.subList(op.position, op.position + op.itemCount).clear();
+                    break;
+                case ListDiff.Op.MOVE:
+                    list.add(op.toPosition, list.remove(op.position));
+                    break;
+                case ListDiff.Op.INSERT:
+                    list.addAll(op.position,
+                            newList.subList(op.position, op.position + op.itemCount));
+                    break;
+                case ListDiff.Op.CHANGE:
+                    for (int i = op.position; i < op.position + op.itemCount; i++) {
+                        list.set(i, newList.get(i));
+                    }
+                    break;
+            }
+        }
+        return list;
+    }
+
+    @Test
+    public void compute_movesOnlyTheObjectsOutOfOrder() throws Exception {
+        List<String> oldList = Arrays.asList("a", "b", "c", "d", "e");
+        List<String> newList = Arrays.asList("b", "c", "d", "a", "e");
+
+        List<ListDiff.Op> ops = ListDiff.compute(oldList, newList, CALLBACK);
+
+        assertEquals(1, ops.size());
+        assertEquals(ListDiff.Op.MOVE, ops.get(0).type);
+        assertEquals(0, ops.get(0).position);
+        assertEquals(3, ops.get(0).toPosition);
+        assertEquals(newList, apply(oldList, newList, ops));
+    }
+
+    @Test
+    public void compute_keepsThePlaceholdersInPlace() throws Exception {
+        List<String> oldList = Arrays.asList("a", "b", null, null, null);
+        List<String> newList = Arrays.asList("b2", "a", null, null, null);
+
+        List<ListDiff.Op> ops = ListDiff.compute(oldList, newList, CALLBACK);
+
+        for (ListDiff.Op op : ops) {
+            assertTrue(op.toString(), op.type == ListDiff.Op.MOVE ||
+                    op.type == ListDiff.Op.CHANGE);
+            assertTrue(op.toString(), op.position + op.itemCount <= 2);
+        }
+        assertEquals(newList, apply(oldList, newList, ops));
+    }
+
+    @Test
+    public void compute_replaysToTheNewList() throws Exception {
+        Random random = new Random(42);
+        for (int run = 0; run < 500; run++) {
+            List<String> keys = new ArrayList<>();
+            for (char c = '!'; c < '!' + 60; c++) {
+                keys.add(String.valueOf(c));
+            }
+            Collections.shuffle(keys, random);
+            List<String> oldList = new ArrayList<>(keys.subList(0, 40));
+            List<String> newList = new ArrayList<>(keys.subList(random.nextInt(20), 60));
+            Collections.shuffle(newList.subList(0, random.nextInt(newList.size())), random);
+            for (int i = 0; i < newList.size(); i += 1 + random.nextInt(5)) {
+                newList.set(i, newList.get(i) + "'");
+            }
+            for (int i = 0; i < random.nextInt(4); i++) {
+                oldList.add(null);
+                newList.add(null);
+            }
+
+            List<ListDiff.Op> ops = ListDiff.compute(oldList, newList, CALLBACK);
+
+            assertEquals(newList, apply(oldList, newList, ops));
+        }
+    }
+}
\ No newline at end of file
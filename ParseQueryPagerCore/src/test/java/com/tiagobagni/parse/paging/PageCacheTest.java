@@ -0,0 +1,79 @@
+package com.tiagobagni.parse.paging;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class PageCacheTest {
+
+    private static final List<String> PAGE = Arrays.asList("a", "b");
+
+    @Test
+    public void evictsTheLeastRecentlyUsedPages() throws Exception {
+        PageCache cache = new PageCache(2, 1000);
+        cache.put("query", 0, PAGE, 10);
+        cache.put("query", 1, PAGE, 10);
+        assertNotNull(cache.get("query", 0));
+
+        cache.put("query", 2, PAGE, 10);
+        assertNull(cache.get("query", 1));
+        assertNotNull(cache.get("query", 0));
+        assertNotNull(cache.get("query", 2));
+        assertEquals(1, cache.getEvictionCount());
+        assertEquals(0.75, cache.getHitRate(), 0);
+    }
+
+    @Test
+    public void staysWithinTheByteBudget() throws Exception {
+        PageCache cache = new PageCache(10, 100);
+        cache.put("query", 0, PAGE, 40);
+        cache.put("query", 1, PAGE, 40);
+        cache.put("query", 0, PAGE, 50);
+        assertEquals(90, cache.getBytes());
+
+        cache.put("query", 2, PAGE, 30);
+        assertNull(cache.get("query", 1));
+        assertEquals(80, cache.getBytes());
+
+        // Larger than the whole cache, not cached
+        cache.put("query", 3, PAGE, 101);
+        assertNull(cache.get("query", 3));
+        assertEquals(2, cache.size());
+    }
+
+    @Test
+    public void expiredPagesAreStillReturnedAsStale() throws Exception {
+        PageCache cache = new PageCache();
+        cache.put("query", 0, PAGE, 10, 0);
+        cache.put("query", 1, PAGE, 10);
+        cache.put("other", 0, PAGE, 10, 60000);
+
+        assertTrue(cache.getPage("query", 0).isStale());
+        assertFalse(cache.getPage("query", 1).isStale());
+        assertFalse(cache.getPage("other", 0).isStale());
+
+        cache.markStale("query");
+        assertTrue(cache.getPage("query", 1).isStale());
+        assertFalse(cache.getPage("other", 0).isStale());
+        assertEquals(PAGE, cache.getPage("query", 1).getObjects());
+        assertEquals(3, cache.getStaleHitCount());
+    }
+
+    @Test
+    public void invalidatesTheQueryOnly() throws Exception {
+        PageCache cache = new PageCache();
+        cache.put("query", 0, PAGE, 10);
+        cache.put("query", 1, PAGE, 10);
+        cache.put("other", 0, PAGE, 10);
+
+        cache.invalidate("query");
+
+        assertNull(cache.get("query", 0));
+        assertEquals(PAGE, cache.get("other", 0));
+        assertEquals(10, cache.getBytes());
+        assertEquals(0, cache.getEvictionCount());
+    }
+}
\ No newline at end of file
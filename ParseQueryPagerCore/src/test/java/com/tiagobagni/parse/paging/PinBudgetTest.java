@@ -0,0 +1,49 @@
+package com.tiagobagni.parse.paging;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class PinBudgetTest {
+
+    @Test
+    public void unpinsTheLeastRecentlyUsedPages() throws Exception {
+        PinBudget budget = new PinBudget(100);
+        assertEquals(Collections.emptyList(), budget.pin("a", 40));
+        assertEquals(Collections.emptyList(), budget.pin("b", 40));
+        budget.touch("a");
+
+        assertEquals(Arrays.asList("b"), budget.pin("c", 40));
+        assertEquals(80, budget.getObjectCount());
+
+        // A page larger than the budget only evicts the others
+        assertEquals(Arrays.asList("a", "c"), budget.pin("d", 150));
+        assertTrue(budget.isPinned("d"));
+        assertEquals(150, budget.getObjectCount());
+    }
+
+    @Test
+    public void restoredPagesAreOlderThanTheRecentOnes() throws Exception {
+        PinBudget budget = new PinBudget(100);
+        budget.pin("recent", 40);
+
+        Map<String, Integer> saved = new LinkedHashMap<>();
+        saved.put("old", 30);
+        saved.put("recent", 10);
+        saved.put("older", 50);
+        assertEquals(Arrays.asList("old"), budget.restore(saved));
+
+        assertEquals(Arrays.asList("older", "recent"),
+                Arrays.asList(budget.getPinnedPages().keySet().toArray()));
+        assertEquals(90, budget.getObjectCount());
+
+        budget.unpin("older");
+        assertEquals(40, budget.getObjectCount());
+        assertEquals(1, budget.size());
+    }
+}
\ No newline at end of file
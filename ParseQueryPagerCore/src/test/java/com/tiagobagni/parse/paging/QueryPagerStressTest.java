@@ -0,0 +1,237 @@
+package com.tiagobagni.parse.paging;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.Assert.*;
+
+/**
+ * Loads and refreshes pages from several threads while other threads read the objects, the way
+ * the UI thread reads them while pages are delivered in the background.
+ */
+public class QueryPagerStressTest {
+
+    private static final int ROWS = 20000;
+
+    /**
+     * Checks that the objects always match the notifications received so far.
+     */
+    static class ConsistencyCallback implements QueryPager.OnObjectsChangedCallback<QueryPager> {
+        final Queue<String> errors;
+        int size;
+
+        ConsistencyCallback(Queue<String> errors) {
+            this.errors = errors;
+        }
+
+        private void check(QueryPager sender, String event) {
+            int actual = sender.getObjects().size();
+            if (actual != size) {
+                errors.add("After " + event + " expected " + size + " objects but got " + actual);
+                size = actual;
+            }
+        }
+
+        @Override
+        public void onChanged(QueryPager sender) {
+            size = sender.getObjects().size();
+        }
+
+        @Override
+        public void onItemRangeChanged(QueryPager sender, int positionStart, int itemCount) {
+            check(sender, "changed " + positionStart + " " + itemCount);
+        }
+
+        @Override
+        public void onItemRangeInserted(QueryPager sender, int positionStart, int itemCount) {
+            size += itemCount;
+            check(sender, "inserted " + positionStart + " " + itemCount);
+        }
+
+        @Override
+        public void onItemRangeMoved(QueryPager sender, int fromPosition, int toPosition,
+                int itemCount) {
+            check(sender, "moved " + fromPosition + " " + toPosition + " " + itemCount);
+        }
+
+        @Override
+        public void onItemRangeRemoved(QueryPager sender, int positionStart, int itemCount) {
+            size -= itemCount;
+            check(sender, "removed " + positionStart + " " + itemCount);
+        }
+    }
+
+    private ExecutorService mDeliveryExecutor;
+    private InMemoryPageSource mSource;
+    private QueryPager<InMemoryPageSource.Row> mPager;
+    private Queue<String> mErrors;
+
+    @Before
+    public void setUp() {
+        mDeliveryExecutor = Executors.newFixedThreadPool(4);
+        mSource = new InMemoryPageSource(true);
+        mSource.addRows(ROWS);
+        mSource.setExecutor(mDeliveryExecutor);
+        mPager = new QueryPager<>(mSource);
+        mErrors = new ConcurrentLinkedQueue<>();
+        mPager.addOnObjectsChangedCallback(new ConsistencyCallback(mErrors));
+    }
+
+    @After
+    public void tearDown() {
+        mDeliveryExecutor.shutdownNow();
+    }
+
+    private static void await(CountDownLatch latch) throws InterruptedException {
+        if (!latch.await(10, TimeUnit.SECONDS)) {
+            throw new AssertionError("Timed out");
+        }
+    }
+
+    private Thread startLoader() {
+        Thread thread = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    while (mPager.hasNextPage()) {
+                        final CountDownLatch latch = new CountDownLatch(1);
+                        mPager.loadNextPage(new LoadCallback<InMemoryPageSource.Row>() {
+                            @Override
+                            public void done(List<InMemoryPageSource.Row> objects, Exception e) {
+                                latch.countDown();
+                            }
+                        }, null);
+                        await(latch);
+                    }
+                } catch (IllegalStateException e) {
+                    // Another loader loaded the last page in the meantime
+                } catch (Throwable t) {
+                    mErrors.add("Loader failed: " + t);
+                }
+            }
+        };
+        thread.start();
+        return thread;
+    }
+
+    private Thread startRangeLoader() {
+        Thread thread = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    while (mPager.hasNextPage()) {
+                        final CountDownLatch latch = new CountDownLatch(1);
+                        mPager.loadPages(mPager.getCurrentPage() + 10, 4,
+                                new LoadCallback<InMemoryPageSource.Row>() {
+                            @Override
+                            public void done(List<InMemoryPageSource.Row> objects, Exception e) {
+                                latch.countDown();
+                            }
+                        }, null);
+                        await(latch);
+                    }
+                } catch (Throwable t) {
+                    mErrors.add("Range loader failed: " + t);
+                }
+            }
+        };
+        thread.start();
+        return thread;
+    }
+
+    private Thread startRefresher(final int refreshes) {
+        Thread thread = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    for (int i = 0; i < refreshes; i++) {
+                        final CountDownLatch latch = new CountDownLatch(1);
+                        mPager.refresh(new LoadCallback<InMemoryPageSource.Row>() {
+                            @Override
+                            public void done(List<InMemoryPageSource.Row> objects, Exception e) {
+                                latch.countDown();
+                            }
+                        }, null);
+                        await(latch);
+                    }
+                } catch (Throwable t) {
+                    mErrors.add("Refresher failed: " + t);
+                }
+            }
+        };
+        thread.start();
+        return thread;
+    }
+
+    private Thread startReader(final AtomicBoolean isDone) {
+        Thread thread = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    while (!isDone.get()) {
+                        List<InMemoryPageSource.Row> objects = mPager.getObjects();
+                        int size = objects.size();
+                        long previousSortKey = Long.MAX_VALUE;
+                        for (int i = 0; i < size; i++) {
+                            InMemoryPageSource.Row row = objects.get(i);
+                            if (row == null || row.getSortKey() >= previousSortKey) {
+                                mErrors.add("Torn read at " + i + ": " + row);
+                                return;
+                            }
+                            previousSortKey = row.getSortKey();
+                        }
+                        if (objects.size() != size) {
+                            mErrors.add("Snapshot changed while being read");
+                            return;
+                        }
+                    }
+                } catch (Throwable t) {
+                    mErrors.add("Reader failed: " + t);
+                }
+            }
+        };
+        thread.start();
+        return thread;
+    }
+
+    @Test
+    public void concurrentLoadsAndReads() throws Exception {
+        AtomicBoolean isDone = new AtomicBoolean();
+        List<Thread> readers = new ArrayList<>();
+        for (int i = 0; i < 2; i++) {
+            readers.add(startReader(isDone));
+        }
+        List<Thread> writers = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            writers.add(startLoader());
+        }
+        writers.add(startRangeLoader());
+        writers.add(startRefresher(5));
+
+        for (Thread writer : writers) {
+            writer.join();
+        }
+        // A refresh may have rolled back pages loaded while it was running
+        while (mPager.hasNextPage() && mErrors.isEmpty()) {
+            startLoader().join();
+        }
+        isDone.set(true);
+        for (Thread reader : readers) {
+            reader.join();
+        }
+
+        assertTrue(mErrors.toString(), mErrors.isEmpty());
+        assertEquals(ROWS, mPager.getObjects().size());
+    }
+}
\ No newline at end of file
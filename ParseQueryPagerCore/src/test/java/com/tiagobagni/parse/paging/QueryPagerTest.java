@@ -0,0 +1,740 @@
+package com.tiagobagni.parse.paging;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class QueryPagerTest {
+
+    private static final int PAGE_SIZE = 20;
+
+    /**
+     * Records the changes reported by a pager.
+     */
+    static class RecordingCallback implements QueryPager.OnObjectsChangedCallback<QueryPager> {
+        final List<String> events = new ArrayList<>();
+
+        @Override
+        public void onChanged(QueryPager sender) {
+            events.add("changed");
+        }
+
+        @Override
+        public void onItemRangeChanged(QueryPager sender, int positionStart, int itemCount) {
+            events.add("changed " + positionStart + " " + itemCount);
+        }
+
+        @Override
+        public void onItemRangeInserted(QueryPager sender, int positionStart, int itemCount) {
+            events.add("inserted " + positionStart + " " + itemCount);
+        }
+
+        @Override
+        public void onItemRangeMoved(QueryPager sender, int fromPosition, int toPosition,
+                int itemCount) {
+            events.add("moved " + fromPosition + " " + toPosition + " " + itemCount);
+        }
+
+        @Override
+        public void onItemRangeRemoved(QueryPager sender, int positionStart, int itemCount) {
+            events.add("removed " + positionStart + " " + itemCount);
+        }
+    }
+
+    /**
+     * Holds the tasks it is given until they are run.
+     */
+    static class QueueExecutor implements Executor {
+        final List<Runnable> tasks = new ArrayList<>();
+
+        @Override
+        public void execute(Runnable command) {
+            tasks.add(command);
+        }
+
+        void runAll() {
+            while (!tasks.isEmpty()) {
+                tasks.remove(0).run();
+            }
+        }
+    }
+
+    /**
+     * Runs the background work of the pager on the calling thread.
+     */
+    static class SynchronousPager extends QueryPager<InMemoryPageSource.Row> {
+        SynchronousPager(InMemoryPageSource source) {
+            super(source, PAGE_SIZE);
+        }
+
+        @Override
+        protected Executor getBackgroundExecutor() {
+            return getCallbackExecutor();
+        }
+    }
+
+    private InMemoryPageSource mSource;
+    private QueryPager<InMemoryPageSource.Row> mPager;
+    private RecordingCallback mCallback;
+
+    @Before
+    public void setUp() {
+        mSource = new InMemoryPageSource(false);
+        mSource.addRows(50);
+        mPager = new SynchronousPager(mSource);
+        mCallback = new RecordingCallback();
+        mPager.addOnObjectsChangedCallback(mCallback);
+    }
+
+    private static List<String> ids(List<InMemoryPageSource.Row> rows) {
+        List<String> ids = new ArrayList<>();
+        for (InMemoryPageSource.Row row : rows) {
+            ids.add(row.getId());
+        }
+        return ids;
+    }
+
+    private static void loadAll(QueryPager<InMemoryPageSource.Row> pager) {
+        while (pager.hasNextPage()) {
+            pager.loadNextPage(null, null);
+        }
+    }
+
+    @Test
+    public void loadNextPage_insertsEachPage() throws Exception {
+        loadAll(mPager);
+
+        assertEquals(50, mPager.getObjects().size());
+        assertEquals(2, mPager.getCurrentPage());
+        assertFalse(mPager.hasNextPage());
+        assertEquals("49", mPager.getObjects().get(0).getId());
+        assertEquals("[inserted 0 20, inserted 20 20, inserted 40 10]",
+                mCallback.events.toString());
+    }
+
+    @Test
+    public void notifyObjectsChanged_changesTheRowsOfTheKeys() throws Exception {
+        loadAll(mPager);
+        mCallback.events.clear();
+
+        mPager.notifyObjectsChanged(Arrays.asList("49", "48", "45", "unknown"));
+        mPager.notifyObjectsChanged(Collections.singleton("unknown"));
+
+        assertEquals("[changed 0 2, changed 4 1]", mCallback.events.toString());
+        assertEquals(50, mPager.getObjects().size());
+    }
+
+    @Test
+    public void loadNextPage_dropsTheObjectsShiftedIntoTheNextPage() throws Exception {
+        mPager.loadNextPage(null, null);
+        // Shifts the next pages by two objects
+        mSource.insert(new InMemoryPageSource.Row("a", 100));
+        mSource.insert(new InMemoryPageSource.Row("b", 101));
+        loadAll(mPager);
+
+        assertEquals(50, mPager.getObjects().size());
+        assertEquals(50, new HashSet<>(ids(mPager.getObjects())).size());
+        assertEquals("10", mPager.getObjects().get(39).getId());
+        // 31 and 30 in the second page, the last one skips them
+        assertEquals(2, mPager.getDroppedDuplicateCount());
+        assertEquals(1, mPager.getGapFillRequestCount());
+        assertEquals("[inserted 0 20, inserted 20 20, inserted 40 10]",
+                mCallback.events.toString());
+    }
+
+    @Test
+    public void loadNextPage_failsThePageWhenItsGapCantBeFilled() throws Exception {
+        final List<PageRequest<InMemoryPageSource.Row>> failed = new ArrayList<>();
+        InMemoryPageSource source = new InMemoryPageSource(false) {
+            @Override
+            public void loadPage(PageRequest<Row> request, Callback<Row> callback) {
+                if (request.isGapFill() && failed.isEmpty()) {
+                    failed.add(request);
+                    callback.onError(new Exception("offline"), true);
+                    return;
+                }
+                super.loadPage(request, callback);
+            }
+        };
+        source.addRows(50);
+        QueryPager<InMemoryPageSource.Row> pager = new SynchronousPager(source);
+        pager.loadNextPage(null, null);
+        source.insert(new InMemoryPageSource.Row("a", 100));
+        source.insert(new InMemoryPageSource.Row("b", 101));
+        final List<Exception> errors = new ArrayList<>();
+        pager.loadNextPage(new LoadCallback<InMemoryPageSource.Row>() {
+            @Override
+            public void done(List<InMemoryPageSource.Row> objects, Exception e) {
+                errors.add(e);
+            }
+        }, null);
+
+        assertEquals(1, failed.size());
+        assertEquals(1, errors.size());
+        assertNotNull(errors.get(0));
+        assertEquals(20, pager.getObjects().size());
+        assertEquals(0, pager.getCurrentPage());
+
+        // Loaded again from the same offset, without holes
+        loadAll(pager);
+        assertEquals(50, pager.getObjects().size());
+        assertFalse(pager.getObjects().contains(null));
+        assertEquals(50, new HashSet<>(ids(pager.getObjects())).size());
+        assertEquals(2, pager.getGapFillRequestCount());
+    }
+
+    @Test
+    public void loadNextPage_shiftsTheOffsetsOfTheFollowingPages() throws Exception {
+        final List<PageRequest<InMemoryPageSource.Row>> requests = new ArrayList<>();
+        InMemoryPageSource source = new InMemoryPageSource(false) {
+            @Override
+            public void loadPage(PageRequest<Row> request, Callback<Row> callback) {
+                requests.add(request);
+                super.loadPage(request, callback);
+            }
+        };
+        source.addRows(200);
+        QueryPager<InMemoryPageSource.Row> pager = new SynchronousPager(source);
+        pager.loadNextPage(null, null);
+        source.insert(new InMemoryPageSource.Row("a", 1000));
+        source.insert(new InMemoryPageSource.Row("b", 1001));
+        source.insert(new InMemoryPageSource.Row("c", 1002));
+        loadAll(pager);
+
+        assertEquals(200, pager.getObjects().size());
+        assertEquals(200, new HashSet<>(ids(pager.getObjects())).size());
+        assertEquals(3, pager.getDroppedDuplicateCount());
+        assertEquals(1, pager.getGapFillRequestCount());
+        // The gap fill request right after the second page, then the pages past the insertions
+        assertTrue(requests.get(2).isGapFill());
+        assertEquals(41, requests.get(2).getOffset());
+        assertEquals(43, requests.get(3).getOffset());
+        assertEquals(183, requests.get(requests.size() - 1).getOffset());
+    }
+
+    @Test
+    public void keyset_loadsTheSamePagesAsOffsets() throws Exception {
+        InMemoryPageSource keysetSource = new InMemoryPageSource(true);
+        keysetSource.addRows(50);
+        QueryPager<InMemoryPageSource.Row> keysetPager = new QueryPager<>(keysetSource, PAGE_SIZE);
+
+        loadAll(mPager);
+        loadAll(keysetPager);
+
+        assertEquals(ids(mPager.getObjects()), ids(keysetPager.getObjects()));
+    }
+
+    @Test
+    public void loadNextPage_joinsThePageInFlight() throws Exception {
+        QueueExecutor executor = new QueueExecutor();
+        mSource.setExecutor(executor);
+        final List<Integer> results = new ArrayList<>();
+        LoadCallback<InMemoryPageSource.Row> callback = new LoadCallback<InMemoryPageSource.Row>() {
+            @Override
+            public void done(List<InMemoryPageSource.Row> objects, Exception e) {
+                results.add(objects.size());
+            }
+        };
+
+        mPager.loadNextPage(callback, null);
+        mPager.loadNextPage(callback, null);
+        mPager.loadNextPage(callback, null);
+        executor.runAll();
+
+        assertEquals(1, mPager.getRequestCount());
+        assertEquals(2, mPager.getDeduplicatedRequestCount());
+        assertEquals("[20, 20, 20]", results.toString());
+        assertEquals("[inserted 0 20]", mCallback.events.toString());
+    }
+
+    @Test
+    public void loadNextPage_cancelled() throws Exception {
+        final List<String> results = new ArrayList<>();
+        mPager.loadNextPage(new LoadCallback<InMemoryPageSource.Row>() {
+            @Override
+            public void done(List<InMemoryPageSource.Row> objects, Exception e) {
+                results.add(objects + " " + e);
+            }
+        }, new Cancellation() {
+            @Override
+            public boolean isCancellationRequested() {
+                return true;
+            }
+        });
+
+        assertEquals("[null null]", results.toString());
+        assertTrue(mPager.getObjects().isEmpty());
+        assertTrue(mCallback.events.isEmpty());
+    }
+
+    @Test
+    public void loadPages_mergesPagesInOrder() throws Exception {
+        QueueExecutor executor = new QueueExecutor();
+        mSource.setExecutor(executor);
+        final List<Integer> results = new ArrayList<>();
+        mPager.loadPages(2, 3, new LoadCallback<InMemoryPageSource.Row>() {
+            @Override
+            public void done(List<InMemoryPageSource.Row> objects, Exception e) {
+                results.add(objects.size());
+            }
+        }, null);
+
+        // All the pages are requested at once, and delivered last to first
+        assertEquals(3, executor.tasks.size());
+        Collections.reverse(executor.tasks);
+        executor.runAll();
+
+        assertEquals("[50]", results.toString());
+        assertEquals(3, mPager.getRequestCount());
+        assertFalse(mPager.hasNextPage());
+        assertFalse(mPager.isLoadingNextPage());
+        assertEquals("[inserted 0 20, inserted 20 20, inserted 40 10]",
+                mCallback.events.toString());
+    }
+
+    @Test
+    public void loadPages_keysetLoadsOnePageAtATime() throws Exception {
+        InMemoryPageSource keysetSource = new InMemoryPageSource(true);
+        keysetSource.addRows(50);
+        QueueExecutor executor = new QueueExecutor();
+        keysetSource.setExecutor(executor);
+        QueryPager<InMemoryPageSource.Row> keysetPager = new QueryPager<>(keysetSource, PAGE_SIZE);
+        keysetPager.loadPages(1, 3, null, null);
+
+        assertEquals(1, executor.tasks.size());
+        executor.runAll();
+
+        loadAll(mPager);
+        assertEquals(ids(mPager.getObjects()).subList(0, 40), ids(keysetPager.getObjects()));
+        assertTrue(keysetPager.hasNextPage());
+    }
+
+    @Test
+    public void countMode_loadsPagesInPlaceOfPlaceholders() throws Exception {
+        QueueExecutor executor = new QueueExecutor();
+        mSource.setExecutor(executor);
+        mPager.setCountMode(true);
+        mPager.loadNextPage(null, null);
+        mPager.loadPage(2, null, null);
+        mPager.loadPage(2, null, null);
+        executor.runAll();
+
+        assertEquals(50, mPager.getTotalCount());
+        assertEquals(50, mPager.getObjects().size());
+        assertNull(mPager.getObjects().get(20));
+        assertEquals("9", mPager.getObjects().get(40).getId());
+        assertTrue(mPager.isPageLoaded(2));
+        assertFalse(mPager.isPageLoaded(1));
+        assertEquals(0, mPager.getCurrentPage());
+        assertEquals(1, mPager.getDeduplicatedRequestCount());
+
+        // Loading the missing page catches up with the page loaded ahead
+        mPager.loadPage(1, null, null);
+        executor.runAll();
+        assertEquals(2, mPager.getCurrentPage());
+        assertFalse(mPager.hasNextPage());
+        QueryPager<InMemoryPageSource.Row> reference = new SynchronousPager(mSource);
+        mSource.setExecutor(null);
+        loadAll(reference);
+        assertEquals(ids(reference.getObjects()), ids(mPager.getObjects()));
+        assertEquals("[inserted 0 50, changed 0 20, changed 40 10, changed 20 20]",
+                mCallback.events.toString());
+    }
+
+    @Test
+    public void countMode_refreshCountsAgain() throws Exception {
+        mPager.setCountMode(true);
+        mPager.loadNextPage(null, null);
+        mSource.remove("0");
+        mSource.remove("1");
+        mPager.refresh(null, null);
+
+        assertEquals(48, mPager.getTotalCount());
+        assertEquals(48, mPager.getObjects().size());
+        assertEquals("49", mPager.getObjects().get(0).getId());
+        assertNull(mPager.getObjects().get(47));
+    }
+
+    @Test
+    public void countMode_refreshKeepsThePlaceholders() throws Exception {
+        mPager.setCountMode(true);
+        mPager.loadNextPage(null, null);
+        mSource.update("49");
+        mCallback.events.clear();
+        mPager.refresh(null, null);
+
+        assertEquals(50, mPager.getObjects().size());
+        assertEquals("[changed 0 1]", mCallback.events.toString());
+    }
+
+    @Test
+    public void notificationExecutor_dispatchesChangesInOrder() throws Exception {
+        QueueExecutor executor = new QueueExecutor();
+        mPager.setNotificationExecutor(executor);
+        mPager.loadNextPage(null, null);
+        mPager.loadNextPage(null, null);
+
+        // Not dispatched yet, the snapshot still matches the notifications received so far
+        assertTrue(mCallback.events.isEmpty());
+        assertTrue(mPager.getObjects().isEmpty());
+        assertEquals(1, mPager.getCurrentPage());
+
+        executor.runAll();
+        assertEquals("[inserted 0 20, inserted 20 20]", mCallback.events.toString());
+        assertEquals(40, mPager.getObjects().size());
+    }
+
+    @Test
+    public void executors_fetchMergeAndNotifyInTurn() throws Exception {
+        QueueExecutor fetchExecutor = new QueueExecutor();
+        QueueExecutor mergeExecutor = new QueueExecutor();
+        QueueExecutor notificationExecutor = new QueueExecutor();
+        mPager.setFetchExecutor(fetchExecutor);
+        mPager.setMergeExecutor(mergeExecutor);
+        mPager.setNotificationExecutor(notificationExecutor);
+        final List<String> results = new ArrayList<>();
+        mPager.loadNextPage(new LoadCallback<InMemoryPageSource.Row>() {
+            @Override
+            public void done(List<InMemoryPageSource.Row> objects, Exception e) {
+                results.add(mCallback.events + " " + objects.size());
+            }
+        }, null);
+
+        assertTrue(mergeExecutor.tasks.isEmpty());
+        fetchExecutor.runAll();
+        assertEquals(1, mergeExecutor.tasks.size());
+        assertEquals(-1, mPager.getCurrentPage());
+        mergeExecutor.runAll();
+        assertEquals(0, mPager.getCurrentPage());
+        assertTrue(mPager.getObjects().isEmpty());
+        assertTrue(results.isEmpty());
+
+        // The page is notified before its load callback is called
+        notificationExecutor.runAll();
+        assertEquals("[[inserted 0 20] 20]", results.toString());
+        assertEquals(20, mPager.getObjects().size());
+    }
+
+    @Test
+    public void mergeExecutor_mergesTheResultsOfAPageInOrderOnAPool() throws Exception {
+        final List<InMemoryPageSource.Row> cached = new ArrayList<>();
+        InMemoryPageSource source = new InMemoryPageSource(false) {
+            @Override
+            public void loadPage(PageRequest<Row> request, Callback<Row> callback) {
+                // The cached page first, then the current one
+                callback.onResult(cached, false);
+                super.loadPage(request, callback);
+            }
+        };
+        source.addRows(50);
+        mSource.loadPage(new PageRequest<>(0, 0, PAGE_SIZE,
+                Collections.<InMemoryPageSource.Row>emptyList(), false, false),
+                new PageSource.Callback<InMemoryPageSource.Row>() {
+            @Override
+            public void onResult(List<InMemoryPageSource.Row> objects, boolean isFinal) {
+                cached.addAll(objects);
+            }
+
+            @Override
+            public void onError(Exception e, boolean isFinal) {
+            }
+        });
+        source.update("49");
+
+        final ExecutorService pool = Executors.newFixedThreadPool(4);
+        final AtomicInteger submitted = new AtomicInteger();
+        final CountDownLatch merged = new CountDownLatch(2);
+        QueryPager<InMemoryPageSource.Row> pager = new QueryPager<>(source, PAGE_SIZE);
+        pager.setMergeExecutor(new Executor() {
+            @Override
+            public void execute(final Runnable command) {
+                // The earlier tasks start later, a pool running them together reorders them
+                final long delay = Math.max(0, 100 - 50 * submitted.getAndIncrement());
+                pool.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            Thread.sleep(delay);
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                        }
+                        command.run();
+                        merged.countDown();
+                    }
+                });
+            }
+        });
+        try {
+            pager.loadNextPage(null, null);
+
+            assertTrue(merged.await(10, TimeUnit.SECONDS));
+            assertEquals(2, submitted.get());
+            assertEquals(1, pager.getObjects().get(0).getVersion());
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    @Test
+    public void metrics_reportEachResult() throws Exception {
+        HistogramPagerMetrics metrics = new HistogramPagerMetrics();
+        mPager.setMetrics(metrics);
+        loadAll(mPager);
+        mPager = new SynchronousPager(mSource);
+        mPager.setMetrics(metrics);
+        mPager.loadNextPage(null, new Cancellation() {
+            @Override
+            public boolean isCancellationRequested() {
+                return true;
+            }
+        });
+
+        assertEquals(4, metrics.getResultCount());
+        assertEquals(1, metrics.getCancelledCount());
+        assertEquals(0, metrics.getCacheHitCount() + metrics.getCacheMissCount());
+        assertEquals(3, metrics.getTotalNanos().getCount());
+        assertEquals(10, metrics.getResultCounts().getMin());
+        assertEquals(21, metrics.getResultCounts().getMax());
+        assertTrue(metrics.getTotalNanos().getPercentile(50) > 0);
+    }
+
+    @Test
+    public void refresh_notifiesOnlyTheDifferences() throws Exception {
+        loadAll(mPager);
+        mCallback.events.clear();
+
+        mSource.update("45");
+        mSource.remove("30");
+        mSource.insert(new InMemoryPageSource.Row("new", 100));
+        mPager.refresh(null, null);
+
+        assertEquals("[new, 49]", ids(mPager.getObjects()).subList(0, 2).toString());
+        assertEquals(50, mPager.getObjects().size());
+        assertEquals("[removed 19 1, inserted 0 1, changed 5 1]", mCallback.events.toString());
+    }
+
+    @Test
+    public void refresh_manySynchronousPages() throws Exception {
+        InMemoryPageSource source = new InMemoryPageSource(true);
+        source.addRows(100000);
+        QueryPager<InMemoryPageSource.Row> pager = new SynchronousPager(source);
+        loadAll(pager);
+
+        source.remove("0");
+        pager.refresh(null, null);
+
+        assertEquals(99999, pager.getObjects().size());
+    }
+
+    @Test
+    public void pageWindow_evictsAndReloadsPages() throws Exception {
+        mPager.setPageWindow(1);
+        loadAll(mPager);
+
+        mPager.setVisiblePosition(45, null);
+        assertTrue(mPager.getObjects().get(0).isPlaceholder());
+        assertTrue(mPager.getObjects().get(20).isPlaceholder());
+        assertFalse(mPager.getObjects().get(40).isPlaceholder());
+
+        mPager.setVisiblePosition(0, null);
+        assertFalse(mPager.getObjects().get(0).isPlaceholder());
+        assertTrue(mPager.getObjects().get(40).isPlaceholder());
+        assertEquals("changed 0 20", mCallback.events.get(mCallback.events.size() - 1));
+    }
+
+    @Test
+    public void pageWindow_keepsAsManyPagesAtTheEdges() throws Exception {
+        mPager.setPageWindow(2);
+        loadAll(mPager);
+
+        mPager.setVisiblePosition(0, null);
+        assertFalse(mPager.getObjects().get(0).isPlaceholder());
+        assertFalse(mPager.getObjects().get(20).isPlaceholder());
+        assertTrue(mPager.getObjects().get(40).isPlaceholder());
+        assertTrue(mPager.getObjects().get(49).isPlaceholder());
+
+        // The last page is short, the window still holds the page before it
+        mPager.setVisiblePosition(49, null);
+        assertTrue(mPager.getObjects().get(0).isPlaceholder());
+        assertFalse(mPager.getObjects().get(20).isPlaceholder());
+        assertFalse(mPager.getObjects().get(49).isPlaceholder());
+        assertEquals(50, mPager.getObjects().size());
+    }
+
+    @Test
+    public void pageWindow_pageScrolledAwayWhileReloadingStaysEvicted() throws Exception {
+        mPager.setPageWindow(1);
+        loadAll(mPager);
+        mPager.setVisiblePosition(45, null);
+        QueueExecutor executor = new QueueExecutor();
+        mSource.setExecutor(executor);
+
+        mPager.setVisiblePosition(0, null);
+        mPager.setVisiblePosition(45, null);
+        executor.runAll();
+
+        assertTrue(mPager.getObjects().get(0).isPlaceholder());
+        assertFalse(mPager.getObjects().get(40).isPlaceholder());
+
+        // Reloaded once it is back in the window
+        mPager.setVisiblePosition(0, null);
+        executor.runAll();
+        assertFalse(mPager.getObjects().get(0).isPlaceholder());
+        assertTrue(mPager.getObjects().get(40).isPlaceholder());
+    }
+
+    @Test
+    public void loadNextPage_revalidatedPageOnlyNotifiesTheDifferences() throws Exception {
+        final List<InMemoryPageSource.Row> cached = new ArrayList<>();
+        InMemoryPageSource source = new InMemoryPageSource(false) {
+            @Override
+            public void loadPage(PageRequest<Row> request, Callback<Row> callback) {
+                // The cached page first, then the current one
+                callback.onResult(cached, false);
+                super.loadPage(request, callback);
+            }
+        };
+        source.addRows(50);
+        mSource.loadPage(new PageRequest<>(0, 0, PAGE_SIZE,
+                Collections.<InMemoryPageSource.Row>emptyList(), false, false),
+                new PageSource.Callback<InMemoryPageSource.Row>() {
+            @Override
+            public void onResult(List<InMemoryPageSource.Row> objects, boolean isFinal) {
+                cached.addAll(objects);
+            }
+
+            @Override
+            public void onError(Exception e, boolean isFinal) {
+            }
+        });
+        source.update("45");
+        source.remove("40");
+        QueryPager<InMemoryPageSource.Row> pager = new SynchronousPager(source);
+        RecordingCallback callback = new RecordingCallback();
+        pager.addOnObjectsChangedCallback(callback);
+
+        pager.loadNextPage(null, null);
+
+        assertEquals("[inserted 0 20, removed 9 1, inserted 19 1, changed 4 1]",
+                callback.events.toString());
+        assertEquals("29", pager.getObjects().get(19).getId());
+    }
+
+    @Test
+    public void pageSizePolicy_pagesKeepTheirOffsets() throws Exception {
+        InMemoryPageSource source = new InMemoryPageSource(false);
+        source.addRows(500);
+        InMemoryPageSource keysetSource = new InMemoryPageSource(true);
+        keysetSource.addRows(500);
+        QueryPager<InMemoryPageSource.Row> pager = new SynchronousPager(source);
+        QueryPager<InMemoryPageSource.Row> keysetPager = new SynchronousPager(keysetSource);
+        HistogramPagerMetrics metrics = new HistogramPagerMetrics();
+        pager.setMetrics(metrics);
+        PageSizePolicy doubling = new PageSizePolicy() {
+            @Override
+            public int getPageSize(int previousSize) {
+                return previousSize * 2;
+            }
+        };
+        pager.setPageSizePolicy(doubling);
+        keysetPager.setPageSizePolicy(doubling);
+
+        loadAll(pager);
+        loadAll(keysetPager);
+
+        assertEquals(500, pager.getObjects().size());
+        assertEquals(ids(pager.getObjects()), ids(keysetPager.getObjects()));
+        // Pages of 20, 40, 80, 160 and the 200 objects left
+        assertEquals(4, pager.getCurrentPage());
+        assertEquals(140, pager.getPageStart(3));
+        assertEquals(3, pager.getPageAt(299));
+        assertEquals(4, pager.getPageAt(300));
+        assertEquals(20, metrics.getPageSizes().getMin());
+        assertEquals(320, metrics.getPageSizes().getMax());
+
+        source.remove("499");
+        pager.refresh(null, null);
+        assertEquals(499, pager.getObjects().size());
+        assertEquals(140, pager.getPageStart(3));
+    }
+
+    @Test
+    public void pageSizePolicy_growsWithLatencyAndShrinksWhenIdle() throws Exception {
+        PageSizePolicy policy = new PageSizePolicy();
+        policy.setSizeBounds(10, 500);
+        // No scrolling measured yet
+        policy.onPageLoaded(21, 2000, -1);
+        assertEquals(20, policy.getPageSize(20));
+
+        // 20 rows per second on a 2 second round trip
+        for (int i = 0; i < 20; i++) {
+            policy.onBind(i, i * 50);
+        }
+        assertEquals(40, policy.getPageSize(20));
+        assertEquals(160, policy.getPageSize(80));
+
+        // Large objects are bounded by the byte budget
+        policy.setMaxBytes(64 * 1024);
+        policy.onPageLoaded(21, 2000, 21 * 1024);
+        assertEquals(64, policy.getPageSize(80));
+
+        // 1 row every second on a fast network
+        PageSizePolicy idle = new PageSizePolicy();
+        idle.onPageLoaded(21, 50, -1);
+        idle.onPageLoaded(41, 60, -1);
+        for (int i = 0; i < 5; i++) {
+            idle.onBind(i, i * 1000);
+        }
+        assertEquals(10, idle.getPageSize(20));
+    }
+
+    @Test
+    public void restoreObjects_keepsFullPagesOnly() throws Exception {
+        loadAll(mPager);
+        List<InMemoryPageSource.Row> snapshot = new ArrayList<>(mPager.getObjects().subList(0, 30));
+
+        QueryPager<InMemoryPageSource.Row> restored = new QueryPager<>(mSource, PAGE_SIZE);
+        restored.restoreObjects(snapshot, true);
+
+        assertEquals(20, restored.getObjects().size());
+        assertEquals(0, restored.getCurrentPage());
+        restored.loadNextPage(null, null);
+        assertEquals(ids(mPager.getObjects()).subList(0, 40), ids(restored.getObjects()));
+    }
+
+    @Test
+    public void restoreObjects_restoresThePlaceholdersOfTheCount() throws Exception {
+        loadAll(mPager);
+        List<InMemoryPageSource.Row> snapshot = new ArrayList<>(mPager.getObjects().subList(0, 20));
+
+        QueryPager<InMemoryPageSource.Row> restored = new QueryPager<>(mSource, PAGE_SIZE);
+        restored.setCountMode(true);
+        restored.restoreObjects(snapshot, true, 50);
+
+        assertEquals(50, restored.getTotalCount());
+        assertEquals(50, restored.getObjects().size());
+        assertNull(restored.getObjects().get(20));
+        restored.loadPage(2, null, null);
+        assertEquals("9", restored.getObjects().get(40).getId());
+
+        // Without the count, the objects are counted again
+        QueryPager<InMemoryPageSource.Row> uncounted = new QueryPager<>(mSource, PAGE_SIZE);
+        uncounted.setCountMode(true);
+        uncounted.restoreObjects(snapshot, true, -1);
+        assertEquals(50, uncounted.getTotalCount());
+        assertEquals(50, uncounted.getObjects().size());
+    }
+}
\ No newline at end of file
@@ -0,0 +1,76 @@
+package com.tiagobagni.parse.paging;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class SnapshotListTest {
+
+    @Test
+    public void update_copiesTheChangedChunksOnly() throws Exception {
+        List<Integer> objects = new ArrayList<>();
+        for (int i = 0; i < 3 * SnapshotList.CHUNK_SIZE; i++) {
+            objects.add(i);
+        }
+        SnapshotList<Integer> snapshot = SnapshotList.copyOf(objects);
+        objects.set(0, -1);
+        objects.set(SnapshotList.CHUNK_SIZE, -2);
+        BitSet changedChunks = new BitSet();
+        changedChunks.set(0);
+
+        SnapshotList<Integer> updated = snapshot.update(objects, changedChunks, Integer.MAX_VALUE);
+
+        // The second chunk wasn't marked, it is shared
+        assertEquals(-1, (int) updated.get(0));
+        assertEquals(SnapshotList.CHUNK_SIZE, (int) updated.get(SnapshotList.CHUNK_SIZE));
+        assertEquals(0, (int) snapshot.get(0));
+    }
+
+    @Test
+    public void update_matchesTheObjectsAfterEachChange() throws Exception {
+        Random random = new Random(42);
+        List<Integer> objects = new ArrayList<>();
+        SnapshotList<Integer> snapshot = SnapshotList.copyOf(objects);
+        int next = 0;
+        for (int run = 0; run < 1000; run++) {
+            BitSet changedChunks = new BitSet();
+            int shiftStart = Integer.MAX_VALUE;
+            int position = objects.isEmpty() ? 0 : random.nextInt(objects.size());
+            switch (random.nextInt(3)) {
+                case 0:
+                    int count = 1 + random.nextInt(100);
+                    for (int i = 0; i < count; i++) {
+                        objects.add(position, next++);
+                    }
+                    shiftStart = position;
+                    break;
+                case 1:
+                    int end = Math.min(objects.size(), position + random.nextInt(100));
+                    objects.subList(position, end).clear();
+                    shiftStart = position;
+                    break;
+                default:
+                    end = Math.min(objects.size(), position + random.nextInt(100));
+                    for (int i = position; i < end; i++) {
+                        objects.set(i, next++);
+                    }
+                    if (position < end) {
+                        changedChunks.set(SnapshotList.getChunk(position),
+                                SnapshotList.getChunk(end - 1) + 1);
+                    }
+                    break;
+            }
+
+            snapshot = snapshot.update(objects, changedChunks, shiftStart);
+
+            assertEquals(objects, snapshot);
+        }
+        assertEquals(Collections.emptyList(), SnapshotList.copyOf(new ArrayList<Integer>()));
+    }
+}
\ No newline at end of file